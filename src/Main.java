@@ -1,4 +1,5 @@
 import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.FacadeInstrumentada;
 import easyaccept.EasyAccept;
 
 public class Main {
@@ -19,11 +20,15 @@ public class Main {
 
         Facade facade = new Facade();
         facade.zerarSistema();
+
+        // com -Djackut.metricas=true os scripts rodam sobre a Facade instrumentada
+        String classeFacade = Boolean.getBoolean("jackut.metricas")
+                ? FacadeInstrumentada.class.getName() : Facade.class.getName();
         
-        for (int i = 1; i <= 9; i++)
+        for (int i = 1; i <= 14; i++)
         {
-            String[] args2 = { "br.ufal.ic.p2.jackut.models.Facade", "tests/us" + i + "_1.txt" };
-            String[] args3 = { "br.ufal.ic.p2.jackut.models.Facade", "tests/us" + i + "_2.txt" };
+            String[] args2 = { classeFacade, "tests/us" + i + "_1.txt" };
+            String[] args3 = { classeFacade, "tests/us" + i + "_2.txt" };
             EasyAccept.main(args2);
             EasyAccept.main(args3);
         }
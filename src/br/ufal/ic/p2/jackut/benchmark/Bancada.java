@@ -0,0 +1,222 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Harness de microbenchmark no estilo do JMH, que o projeto não tem como dependência:
+ * iterações de aquecimento descartadas, iterações medidas com o tempo médio por operação e,
+ * como o profiler {@code gc} do JMH, a alocação por operação e as coletas de lixo.
+ *
+ * <p>Cada iteração executa um número fixo de operações, depois de um preparo que não entra
+ * na medição (como o {@code Level.Iteration} do JMH), de forma que operações que consomem
+ * estado, como ler recados ou remover usuários, recebem o estado de que precisam. A alocação
+ * é a soma dos bytes alocados por todas as threads vivas
+ * ({@code com.sun.management.ThreadMXBean}), o que inclui as threads de fundo da Facade,
+ * como o journal e o índice de mensagens; threads que terminam durante a iteração ficam de
+ * fora.</p>
+ */
+public class Bancada {
+    private final int aquecimento;
+    private final int medicoes;
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<GarbageCollectorMXBean> coletores = ManagementFactory.getGarbageCollectorMXBeans();
+
+    /**
+     * Uma operação medida; {@code i} é o número da operação na iteração.
+     */
+    public interface Operacao {
+        void executar(int i) throws Exception;
+    }
+
+    /**
+     * Preparo de uma iteração, fora da medição.
+     */
+    public interface Preparo {
+        void preparar(int operacoes) throws Exception;
+    }
+
+    /**
+     * Cria a bancada.
+     *
+     * @param aquecimento Quantas iterações rodam antes das medidas.
+     * @param medicoes Quantas iterações são medidas.
+     */
+    public Bancada(int aquecimento, int medicoes) {
+        this.aquecimento = aquecimento;
+        this.medicoes = Math.max(1, medicoes);
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threads = bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+        if (threads != null && threads.isThreadAllocatedMemorySupported()) threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Mede uma operação.
+     *
+     * @param nome O nome da operação no relatório.
+     * @param operacoes Quantas operações cada iteração executa.
+     * @param preparo O preparo de cada iteração, ou null.
+     * @param operacao A operação.
+     * @return O resultado das iterações medidas.
+     */
+    public Resultado medir(String nome, int operacoes, Preparo preparo, Operacao operacao) throws Exception {
+        double[] nanos = new double[medicoes];
+        long bytes = 0;
+        long coletas = 0;
+        long milisColetas = 0;
+        long nanosTotal = 0;
+        for (int iteracao = 0; iteracao < aquecimento + medicoes; iteracao++) {
+            if (preparo != null) preparo.preparar(operacoes);
+            long bytesAntes = alocados();
+            long coletasAntes = coletas();
+            long milisAntes = milisColetas();
+            long inicio = System.nanoTime();
+            for (int i = 0; i < operacoes; i++) operacao.executar(i);
+            long duracao = System.nanoTime() - inicio;
+            if (iteracao < aquecimento) continue;
+
+            nanos[iteracao - aquecimento] = (double) duracao / operacoes;
+            nanosTotal += duracao;
+            bytes += alocados() - bytesAntes;
+            coletas += coletas() - coletasAntes;
+            milisColetas += milisColetas() - milisAntes;
+        }
+        long total = (long) operacoes * medicoes;
+        return new Resultado(nome, nanos, bytes < 0 ? -1 : (double) bytes / total,
+                nanosTotal == 0 ? 0 : bytes / (nanosTotal / 1e9) / (1024 * 1024), coletas, milisColetas);
+    }
+
+    private long alocados() {
+        if (threads == null || !threads.isThreadAllocatedMemoryEnabled()) return Long.MIN_VALUE / 4;
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    private long coletas() {
+        long total = 0;
+        for (GarbageCollectorMXBean c : coletores) total += Math.max(0, c.getCollectionCount());
+        return total;
+    }
+
+    private long milisColetas() {
+        long total = 0;
+        for (GarbageCollectorMXBean c : coletores) total += Math.max(0, c.getCollectionTime());
+        return total;
+    }
+
+    /**
+     * Imprime o cabeçalho da tabela de resultados.
+     */
+    public static void imprimirCabecalho() {
+        System.out.printf("%-22s %10s %14s %12s %14s %10s %6s %8s%n",
+                "operacao", "usuarios", "ns/op", "desvio", "B/op", "MB/s", "gc", "gc ms");
+    }
+
+    /**
+     * Imprime a média e os percentis 50 e 99 de latências medidas uma a uma, para os
+     * benchmarks que comparam abordagens fora da bancada.
+     *
+     * @param nome O nome da medida no relatório.
+     * @param tempos As latências, em nanossegundos.
+     */
+    public static void imprimirLatencias(String nome, long[] tempos) {
+        long[] ordenados = tempos.clone();
+        Arrays.sort(ordenados);
+        double media = Arrays.stream(ordenados).average().orElse(0);
+        System.out.printf("%-32s media %9.4f ms   p50 %9.4f ms   p99 %9.4f ms%n", nome + ":",
+                media / 1e6, ordenados[ordenados.length / 2] / 1e6,
+                ordenados[(int) (ordenados.length * 0.99)] / 1e6);
+    }
+
+    /**
+     * Apaga um arquivo ou um diretório com tudo o que há dentro, como o diretório temporário
+     * do banco ao fim de um benchmark.
+     *
+     * @param arquivo O arquivo ou diretório.
+     */
+    public static void apagar(File arquivo) {
+        File[] filhos = arquivo.listFiles();
+        if (filhos != null) {
+            for (File f : filhos) apagar(f);
+        }
+        arquivo.delete();
+    }
+
+    /**
+     * Resultado das iterações medidas de uma operação.
+     */
+    public static class Resultado {
+        private final String nome;
+        private final double[] nanosPorOperacao;
+        private final double bytesPorOperacao;
+        private final double megabytesPorSegundo;
+        private final long coletas;
+        private final long milisColetas;
+
+        Resultado(String nome, double[] nanosPorOperacao, double bytesPorOperacao, double megabytesPorSegundo,
+                  long coletas, long milisColetas) {
+            this.nome = nome;
+            this.nanosPorOperacao = nanosPorOperacao;
+            this.bytesPorOperacao = bytesPorOperacao;
+            this.megabytesPorSegundo = megabytesPorSegundo;
+            this.coletas = coletas;
+            this.milisColetas = milisColetas;
+        }
+
+        public String getNome() { return nome; }
+
+        /**
+         * Recupera o tempo médio por operação, na média das iterações medidas.
+         *
+         * @return Nanossegundos por operação.
+         */
+        public double getMedia() {
+            double soma = 0;
+            for (double n : nanosPorOperacao) soma += n;
+            return soma / nanosPorOperacao.length;
+        }
+
+        /**
+         * Recupera o desvio padrão do tempo médio entre as iterações medidas.
+         *
+         * @return O desvio, em nanossegundos por operação.
+         */
+        public double getDesvio() {
+            if (nanosPorOperacao.length < 2) return 0;
+            double media = getMedia();
+            double soma = 0;
+            for (double n : nanosPorOperacao) soma += (n - media) * (n - media);
+            return Math.sqrt(soma / (nanosPorOperacao.length - 1));
+        }
+
+        /**
+         * Recupera quantos bytes foram alocados por operação, somando todas as threads.
+         *
+         * @return Bytes por operação, ou um valor negativo se a JVM não mede alocação.
+         */
+        public double getBytesPorOperacao() { return bytesPorOperacao; }
+
+        public double getMegabytesPorSegundo() { return megabytesPorSegundo; }
+
+        public long getColetas() { return coletas; }
+
+        public long getMilisColetas() { return milisColetas; }
+
+        /**
+         * Imprime uma linha da tabela de resultados.
+         *
+         * @param usuarios O tamanho do banco em que a operação foi medida.
+         */
+        public void imprimir(int usuarios) {
+            System.out.printf("%-22s %10d %14.1f %12.1f %14.1f %10.1f %6d %8d%n", nome, usuarios, getMedia(),
+                    getDesvio(), bytesPorOperacao, megabytesPorSegundo, coletas, milisColetas);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Comunidade;
+import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.IndicePerfil;
+import br.ufal.ic.p2.jackut.models.SnapshotBinario;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mede a busca de comunidades por prefixo do nome (para completar enquanto se digita) e
+ * por palavras da descrição, pelos índices da Facade, e compara com a varredura de todas
+ * as comunidades seguida de ordenação pelo número de membros.
+ *
+ * <p>Os nomes e as descrições são sorteados de um vocabulário de 5000 palavras;
+ * o número de membros segue uma distribuição de cauda longa. Os prefixos têm de 1 a 4
+ * letras, o pior caso do completar, em que muitas comunidades casam. O journal roda no
+ * modo {@code ASSINCRONO}.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkBuscaComunidades [comunidades] [usuarios] [consultas]}</p>
+ */
+public class BenchmarkBuscaComunidades {
+    private static final int PALAVRAS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int totalComunidades = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int totalUsuarios = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int consultas = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        System.setProperty("jackut.journal.modo", "ASSINCRONO");
+
+        File dir = Files.createTempDirectory("jackut-comunidades").toFile();
+        List<Usuario> gerados = DadosSinteticos.usuarios(totalUsuarios);
+        List<Comunidade> todas = gerarComunidades(gerados, totalComunidades);
+        SnapshotBinario.gravar(new File(dir, "snapshot.bin"), gerados, todas);
+        long inicio = System.nanoTime();
+        Facade facade = new Facade(dir);
+        System.out.printf("%d comunidades, %d usuarios; carga com os indices: %.1f s%n",
+                totalComunidades, totalUsuarios, (System.nanoTime() - inicio) / 1e9);
+
+        Random random = new Random(8);
+        String[] prefixos = new String[consultas];
+        String[] termos = new String[consultas];
+        for (int i = 0; i < consultas; i++) {
+            String palavra = palavra(random.nextInt(PALAVRAS));
+            prefixos[i] = palavra.substring(0, 1 + random.nextInt(Math.min(4, palavra.length())));
+            termos[i] = palavra(random.nextInt(PALAVRAS)) + " " + palavra(random.nextInt(200));
+        }
+
+        long[] nome = new long[consultas];
+        long[] descricao = new long[consultas];
+        long[] varredura = new long[Math.min(consultas, 100)];
+        for (int rodada = 0; rodada < 2; rodada++) {
+            for (int i = 0; i < consultas; i++) {
+                inicio = System.nanoTime();
+                facade.buscarComunidades(prefixos[i], 10);
+                nome[i] = System.nanoTime() - inicio;
+
+                inicio = System.nanoTime();
+                facade.buscarComunidadesPorDescricao(termos[i], 10);
+                descricao[i] = System.nanoTime() - inicio;
+            }
+            for (int i = 0; i < varredura.length; i++) {
+                inicio = System.nanoTime();
+                buscarPorVarredura(todas, prefixos[i], 10);
+                varredura[i] = System.nanoTime() - inicio;
+            }
+        }
+
+        Bancada.imprimirLatencias("prefixo do nome pelo indice", nome);
+        Bancada.imprimirLatencias("palavras da descricao", descricao);
+        Bancada.imprimirLatencias("prefixo do nome por varredura", varredura);
+
+        facade.zerarSistema();
+        Bancada.apagar(dir);
+    }
+
+    /**
+     * Procura sem índice: confere o nome de todas as comunidades e ordena as que casam.
+     */
+    private static List<Comunidade> buscarPorVarredura(List<Comunidade> todas, String prefixo, int limite) {
+        String chave = IndicePerfil.normalizar(prefixo);
+        List<Comunidade> encontradas = new ArrayList<>();
+        for (Comunidade c : todas) {
+            if (IndicePerfil.normalizar(c.getNome()).startsWith(chave)) encontradas.add(c);
+        }
+        encontradas.sort(Comparator.<Comunidade>comparingInt(c -> -c.getMembros().size())
+                .thenComparing(Comunidade::getNome));
+        return encontradas.subList(0, Math.min(limite, encontradas.size()));
+    }
+
+    private static String palavra(int i) {
+        // sílabas alternadas dão palavras pronunciáveis e prefixos compartilhados
+        String[] silabas = {"ba", "ca", "da", "fe", "ge", "lu", "ma", "no", "pi", "ro", "sa", "tu", "vi", "\u00e7\u00e3o"};
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append(silabas[i % silabas.length]);
+            i /= silabas.length;
+        } while (i > 0);
+        return sb.toString();
+    }
+
+    /**
+     * Sorteia as comunidades entre os usuários; a varredura percorre a lista devolvida.
+     */
+    private static List<Comunidade> gerarComunidades(List<Usuario> usuarios, int totalComunidades) {
+        int totalUsuarios = usuarios.size();
+        Random random = new Random(42);
+        List<Comunidade> comunidades = new ArrayList<>(totalComunidades);
+        for (int i = 0; i < totalComunidades; i++) {
+            String nome = palavra(random.nextInt(PALAVRAS)) + " " + palavra(random.nextInt(PALAVRAS)) + " " + i;
+            StringBuilder descricao = new StringBuilder();
+            for (int j = 0; j < 8; j++) {
+                // metade das palavras vem de um vocabulário pequeno e comum
+                descricao.append(palavra(random.nextInt(j % 2 == 0 ? 200 : PALAVRAS))).append(' ');
+            }
+            Usuario dono = usuarios.get(random.nextInt(totalUsuarios));
+            Comunidade c = new Comunidade(nome, descricao.toString().trim(), dono.getLogin(), null);
+            dono.getComunidades().add(nome);
+            double x = random.nextDouble();
+            int membros = (int) (x * x * x * x * 200);
+            for (int j = 0; j < membros; j++) {
+                Usuario membro = usuarios.get(random.nextInt(totalUsuarios));
+                if (c.getMembros().add(membro.getLogin())) membro.getComunidades().add(nome);
+            }
+            comunidades.add(c);
+        }
+        return comunidades;
+    }
+}
@@ -0,0 +1,151 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.IndiceComunidades;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mede o envio de mensagens com o índice de busca ligado e a busca por palavras nas
+ * mensagens das comunidades do usuário, comparada com a varredura dos textos.
+ *
+ * <p>Cada usuário participa de {@code porUsuario} comunidades sorteadas. As palavras das
+ * mensagens seguem uma distribuição de Zipf sobre um vocabulário de 20000 palavras, como
+ * em texto real: poucas palavras muito comuns e muitas raras. As consultas têm uma ou duas
+ * palavras, com limite de 20 resultados. O journal roda no modo {@code ASSINCRONO}.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkBuscaMensagens [mensagens] [usuarios] [comunidades] [porUsuario]}</p>
+ */
+public class BenchmarkBuscaMensagens {
+    private static final int VOCABULARIO = 20000;
+
+    public static void main(String[] args) throws Exception {
+        int totalMensagens = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+        int totalUsuarios = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int totalComunidades = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int porUsuario = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        System.setProperty("jackut.journal.modo", "ASSINCRONO");
+
+        File dir = Files.createTempDirectory("jackut-busca").toFile();
+        Facade facade = new Facade(dir);
+        Random random = new Random(21);
+        String[] sessoes = new String[totalUsuarios];
+        List<List<Integer>> participacoes = new ArrayList<>();
+        for (int i = 0; i < totalUsuarios; i++) {
+            facade.criarUsuario("usuario" + i, "s", "Usuario " + i);
+            sessoes[i] = facade.abrirSessao("usuario" + i, "s");
+            participacoes.add(new ArrayList<>());
+        }
+        for (int c = 0; c < totalComunidades; c++) {
+            facade.criarComunidade(sessoes[c % totalUsuarios], "comunidade" + c, "Comunidade " + c);
+            participacoes.get(c % totalUsuarios).add(c);
+        }
+        for (int i = 0; i < totalUsuarios; i++) {
+            while (participacoes.get(i).size() < porUsuario) {
+                int c = random.nextInt(totalComunidades);
+                if (participacoes.get(i).contains(c)) continue;
+                facade.adicionarComunidade(sessoes[i], "comunidade" + c);
+                participacoes.get(i).add(c);
+            }
+        }
+
+        double[] acumulada = zipf(VOCABULARIO);
+        List<List<String>> textos = new ArrayList<>();
+        for (int c = 0; c < totalComunidades; c++) textos.add(new ArrayList<>());
+        long[] envio = new long[totalMensagens];
+        long inicio = System.nanoTime();
+        for (int m = 0; m < totalMensagens; m++) {
+            int autor = random.nextInt(totalUsuarios);
+            List<Integer> suas = participacoes.get(autor);
+            int c = suas.get(random.nextInt(suas.size()));
+            StringBuilder texto = new StringBuilder();
+            for (int p = 6 + random.nextInt(10); p > 0; p--) {
+                texto.append(palavra(sortear(acumulada, random))).append(' ');
+            }
+            String mensagem = texto.toString().trim();
+            textos.get(c).add(mensagem);
+            long antes = System.nanoTime();
+            facade.enviarMensagem(sessoes[autor], "comunidade" + c, mensagem);
+            envio[m] = System.nanoTime() - antes;
+        }
+        long enviadas = System.nanoTime() - inicio;
+        facade.iniciarSnapshot();
+        facade.aguardarSnapshot();
+        System.out.printf("%d mensagens enviadas em %.1f s; indexadas e gravadas %.1f s depois do ultimo envio%n",
+                totalMensagens, enviadas / 1e9, (System.nanoTime() - inicio - enviadas) / 1e9);
+        System.out.println(facade.getEstatisticasBusca());
+        Bancada.imprimirLatencias("envio de mensagem", envio);
+
+        int consultas = 2000;
+        long[] umaPalavra = new long[consultas];
+        long[] duasPalavras = new long[consultas];
+        long[] varredura = new long[50];
+        for (int rodada = 0; rodada < 2; rodada++) {
+            for (int q = 0; q < consultas; q++) {
+                int usuario = random.nextInt(totalUsuarios);
+                // palavras do meio da distribuição: nem as muito comuns, nem as que quase não aparecem
+                String termo = palavra(50 + random.nextInt(2000));
+                long antes = System.nanoTime();
+                facade.buscarMensagens(sessoes[usuario], termo, 20);
+                umaPalavra[q] = System.nanoTime() - antes;
+
+                termo = palavra(random.nextInt(50)) + " " + palavra(50 + random.nextInt(2000));
+                antes = System.nanoTime();
+                facade.buscarMensagens(sessoes[usuario], termo, 20);
+                duasPalavras[q] = System.nanoTime() - antes;
+            }
+            for (int q = 0; q < varredura.length; q++) {
+                int usuario = random.nextInt(totalUsuarios);
+                String termo = palavra(50 + random.nextInt(2000));
+                long antes = System.nanoTime();
+                buscarPorVarredura(textos, participacoes.get(usuario), termo, 20);
+                varredura[q] = System.nanoTime() - antes;
+            }
+        }
+        Bancada.imprimirLatencias("uma palavra pelo indice", umaPalavra);
+        Bancada.imprimirLatencias("duas palavras pelo indice", duasPalavras);
+        Bancada.imprimirLatencias("uma palavra por varredura", varredura);
+
+        facade.zerarSistema();
+        Bancada.apagar(dir);
+    }
+
+    /**
+     * Procura sem índice: quebra em palavras os textos de todas as comunidades do usuário.
+     */
+    private static List<String> buscarPorVarredura(List<List<String>> textos, List<Integer> comunidades,
+                                                   String termo, int limite) {
+        List<String> encontrados = new ArrayList<>();
+        for (int c : comunidades) {
+            for (String texto : textos.get(c)) {
+                if (IndiceComunidades.palavras(texto).contains(termo)) encontrados.add(texto);
+            }
+        }
+        return encontrados.subList(0, Math.min(limite, encontrados.size()));
+    }
+
+    private static double[] zipf(int n) {
+        double[] acumulada = new double[n];
+        double soma = 0;
+        for (int i = 0; i < n; i++) {
+            soma += 1.0 / (i + 1);
+            acumulada[i] = soma;
+        }
+        for (int i = 0; i < n; i++) acumulada[i] /= soma;
+        return acumulada;
+    }
+
+    private static int sortear(double[] acumulada, Random random) {
+        int i = Arrays.binarySearch(acumulada, random.nextDouble());
+        return Math.min(i >= 0 ? i : -i - 1, acumulada.length - 1);
+    }
+
+    private static String palavra(int i) {
+        return "p" + Integer.toString(i, 36);
+    }
+}
@@ -0,0 +1,111 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.IndicePerfil;
+import br.ufal.ic.p2.jackut.models.SnapshotBinario;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mede a busca de usuários por atributo de perfil, pelo índice invertido, e compara com a
+ * varredura de todos os perfis.
+ *
+ * <p>Cada usuário tem cidade (sorteada entre {@code cidades} nomes, com as primeiras bem
+ * mais frequentes), estado e profissão. As consultas são por valor exato da cidade e por
+ * prefixo do nome, com limite de 20 resultados. O journal roda no modo
+ * {@code ASSINCRONO}.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkBuscaPerfil [usuarios] [cidades] [consultas]}</p>
+ */
+public class BenchmarkBuscaPerfil {
+    private static final String[] ESTADOS = {"AL", "PE", "PB", "SE", "BA", "RN", "CE"};
+    private static final String[] PROFISSOES = {"Professor", "Estudante", "Engenheira", "Médica", "Advogado"};
+
+    public static void main(String[] args) throws Exception {
+        int totalUsuarios = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int cidades = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int consultas = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        System.setProperty("jackut.journal.modo", "ASSINCRONO");
+
+        File dir = Files.createTempDirectory("jackut-perfil").toFile();
+        List<Usuario> gerados = DadosSinteticos.usuarios(totalUsuarios);
+        preencherPerfis(gerados, cidades);
+        SnapshotBinario.gravar(new File(dir, "snapshot.bin"), gerados, Collections.emptyList());
+        long inicio = System.nanoTime();
+        Facade facade = new Facade(dir);
+        System.out.printf("%d usuarios, %d cidades; carga com o indice: %.1f s%n",
+                totalUsuarios, cidades, (System.nanoTime() - inicio) / 1e9);
+
+        Random random = new Random(5);
+        String[] valores = new String[consultas];
+        String[] prefixos = new String[consultas];
+        for (int i = 0; i < consultas; i++) {
+            valores[i] = cidade(random.nextInt(cidades));
+            prefixos[i] = "usuario " + random.nextInt(1000);
+        }
+
+        long[] exata = new long[consultas];
+        long[] prefixo = new long[consultas];
+        long[] varredura = new long[Math.min(consultas, 50)];
+        for (int rodada = 0; rodada < 2; rodada++) {
+            for (int i = 0; i < consultas; i++) {
+                inicio = System.nanoTime();
+                facade.buscarUsuarios("cidade", valores[i], 20);
+                exata[i] = System.nanoTime() - inicio;
+
+                inicio = System.nanoTime();
+                facade.buscarUsuariosPorPrefixo("nome", prefixos[i], 20);
+                prefixo[i] = System.nanoTime() - inicio;
+            }
+            for (int i = 0; i < varredura.length; i++) {
+                inicio = System.nanoTime();
+                buscarPorVarredura(facade, "cidade", valores[i], 20);
+                varredura[i] = System.nanoTime() - inicio;
+            }
+        }
+
+        Bancada.imprimirLatencias("valor exato pelo indice", exata);
+        Bancada.imprimirLatencias("prefixo do nome pelo indice", prefixo);
+        Bancada.imprimirLatencias("valor exato por varredura", varredura);
+
+        facade.zerarSistema();
+        Bancada.apagar(dir);
+    }
+
+    /**
+     * Procura sem índice, percorrendo os perfis de todos os usuários.
+     */
+    private static List<String> buscarPorVarredura(Facade facade, String atributo, String valor, int limite) {
+        String chave = IndicePerfil.normalizar(valor);
+        List<String> logins = new ArrayList<>();
+        for (Usuario u : facade.getUsuarios().values()) {
+            String v = u.getPerfil().getAtributo(atributo);
+            if (v != null && IndicePerfil.normalizar(v).equals(chave)) {
+                logins.add(u.getLogin());
+                if (logins.size() == limite) break;
+            }
+        }
+        return logins;
+    }
+
+    private static String cidade(int i) {
+        return i == 0 ? "Maceió" : "Cidade " + i;
+    }
+
+    private static void preencherPerfis(List<Usuario> usuarios, int cidades) {
+        Random random = new Random(42);
+        for (Usuario u : usuarios) {
+            // o quadrado de um sorteio uniforme concentra os usuários nas primeiras cidades
+            double x = random.nextDouble();
+            u.getPerfil().adicionarAtributo("cidade", cidade((int) (x * x * cidades)));
+            u.getPerfil().adicionarAtributo("estado", ESTADOS[random.nextInt(ESTADOS.length)]);
+            u.getPerfil().adicionarAtributo("profissao", PROFISSOES[random.nextInt(PROFISSOES.length)]);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.Histograma;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Gerador de carga sintética: executa contra a Facade, com muitas sessões concorrentes, os
+ * comandos que os scripts de aceitação ({@code tests/us*.txt}) usam, e relata a vazão e as
+ * latências p50, p99 e p999 de cada operação.
+ *
+ * <p>O banco é gerado por {@link DadosSinteticos}: amizades por ligação preferencial e
+ * uma comunidade a cada 50 usuários, com tamanhos em lei de Zipf (a maior tem um vigésimo
+ * dos usuários). O {@link Vocabulario} dos scripts dá os comandos, a assinatura de cada um
+ * e os textos usados como recados, mensagens, atributos e valores. Cada cliente é uma
+ * thread que, em laço fechado, sorteia leitura ou escrita pela fração {@code leituras} e,
+ * dentro do grupo, o comando pelo número de ocorrências nos scripts; o usuário que age é
+ * sorteado entre todos, e as comunidades consultadas, na proporção do tamanho delas.
+ * Usuários criados pela carga são os únicos removidos. Os comandos são chamados por
+ * reflexão, como o EasyAccept faz, e os erros de validação da Facade (amizade repetida,
+ * caixa vazia) são contados à parte. Os primeiros {@code segundos / 5} segundos são
+ * aquecimento e não entram no relatório. O journal roda no modo {@code ASSINCRONO}.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkCarga [usuarios] [clientes] [segundos] [leituras] [testes]}</p>
+ */
+public class BenchmarkCarga {
+    private final Facade facade;
+    private final DadosSinteticos dados;
+    private final Vocabulario vocabulario;
+    private final List<Operacao> leituras = new ArrayList<>();
+    private final List<Operacao> escritas = new ArrayList<>();
+    private final long[] acumuladaComunidades;
+    private final AtomicReferenceArray<String> sessoes;
+    private final AtomicInteger novos = new AtomicInteger();
+
+    private volatile boolean medindo;
+    private volatile boolean parar;
+
+    /**
+     * Um comando do vocabulário ligado ao método da Facade que o executa.
+     */
+    private static class Operacao {
+        final int indice;
+        final Vocabulario.Comando comando;
+        final Method metodo;
+
+        Operacao(int indice, Vocabulario.Comando comando, Method metodo) {
+            this.indice = indice;
+            this.comando = comando;
+            this.metodo = metodo;
+        }
+    }
+
+    /**
+     * Estado de um cliente: o sorteio, as latências e os erros de cada operação e os
+     * usuários que ele criou, candidatos à remoção.
+     */
+    private static class Cliente {
+        final Random random;
+        final Histograma[] latencias;
+        final long[] erros;
+        final List<String> criados = new ArrayList<>();
+
+        Cliente(long semente, int operacoes) {
+            random = new Random(semente);
+            latencias = new Histograma[operacoes];
+            for (int i = 0; i < operacoes; i++) latencias[i] = new Histograma();
+            erros = new long[operacoes];
+        }
+    }
+
+    private BenchmarkCarga(Facade facade, DadosSinteticos dados, Vocabulario vocabulario) {
+        this.facade = facade;
+        this.dados = dados;
+        this.vocabulario = vocabulario;
+        this.sessoes = new AtomicReferenceArray<>(dados.getUsuarios());
+        this.acumuladaComunidades = new long[dados.getComunidades()];
+        long soma = 0;
+        for (int k = 0; k < acumuladaComunidades.length; k++) {
+            soma += dados.getTamanho(k);
+            acumuladaComunidades[k] = soma;
+        }
+
+        for (Vocabulario.Comando comando : vocabulario.getComandos()) {
+            Method metodo = metodo(comando);
+            if (metodo == null) {
+                System.out.println("comando ignorado: " + comando.getNome() + " " + comando.getParametros());
+                continue;
+            }
+            Operacao operacao = new Operacao(leituras.size() + escritas.size(), comando, metodo);
+            (comando.isLeitura() ? leituras : escritas).add(operacao);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int totalUsuarios = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int clientes = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int segundos = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        double fracaoLeituras = args.length > 3 ? Double.parseDouble(args[3]) : 0.8;
+        File testes = new File(args.length > 4 ? args[4] : "tests");
+        System.setProperty("jackut.journal.modo", "ASSINCRONO");
+
+        Vocabulario vocabulario = Vocabulario.ler(testes);
+        File dir = Files.createTempDirectory("jackut-carga").toFile();
+        DadosSinteticos dados = DadosSinteticos.gerar(dir, totalUsuarios, 5, Math.max(1, totalUsuarios / 50),
+                Math.max(2, totalUsuarios / 20), 1.0, 42);
+        BenchmarkCarga carga = new BenchmarkCarga(new Facade(dir), dados, vocabulario);
+        System.out.printf("%d usuarios, %d amizades, %d comunidades; %d clientes por %d s, %.0f%% leituras%n",
+                totalUsuarios, dados.getAmizades(), dados.getComunidades(), clientes, segundos, fracaoLeituras * 100);
+
+        carga.executar(clientes, segundos, fracaoLeituras);
+
+        carga.facade.zerarSistema();
+        Bancada.apagar(dir);
+    }
+
+    private void executar(int totalClientes, int segundos, double fracaoLeituras) throws InterruptedException {
+        int operacoes = leituras.size() + escritas.size();
+        List<Cliente> clientes = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < totalClientes; c++) {
+            Cliente cliente = new Cliente(23L * (c + 1), operacoes);
+            clientes.add(cliente);
+            Thread thread = new Thread(() -> rodar(cliente, fracaoLeituras), "carga-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+
+        Thread.sleep(1000L * segundos / 5);
+        medindo = true;
+        long inicio = System.nanoTime();
+        Thread.sleep(1000L * (segundos - segundos / 5));
+        medindo = false;
+        double duracao = (System.nanoTime() - inicio) / 1e9;
+        parar = true;
+        for (Thread thread : threads) thread.join();
+
+        Histograma[] latencias = new Histograma[operacoes];
+        long[] erros = new long[operacoes];
+        for (int i = 0; i < operacoes; i++) latencias[i] = new Histograma();
+        for (Cliente cliente : clientes) {
+            for (int i = 0; i < operacoes; i++) {
+                latencias[i].somar(cliente.latencias[i]);
+                erros[i] += cliente.erros[i];
+            }
+        }
+
+        System.out.printf("%-28s %4s %10s %9s %10s %10s %10s %10s %10s%n", "operacao", "tipo", "chamadas", "erros",
+                "ops/s", "p50 us", "p99 us", "p999 us", "max us");
+        long total = 0;
+        List<Operacao> todas = new ArrayList<>(leituras);
+        todas.addAll(escritas);
+        for (Operacao operacao : todas) {
+            Histograma h = latencias[operacao.indice];
+            total += h.getContagem();
+            System.out.printf("%-28s %4s %10d %9d %10.0f %10.1f %10.1f %10.1f %10.1f%n", operacao.comando.getNome(),
+                    operacao.comando.isLeitura() ? "L" : "E", h.getContagem(), erros[operacao.indice],
+                    h.getContagem() / duracao, h.percentil(0.50) / 1e3, h.percentil(0.99) / 1e3,
+                    h.percentil(0.999) / 1e3, h.getMaximo() / 1e3);
+        }
+        System.out.printf("total: %d chamadas em %.1f s, %.0f ops/s%n", total, duracao, total / duracao);
+    }
+
+    private void rodar(Cliente cliente, double fracaoLeituras) {
+        while (!parar) {
+            List<Operacao> grupo = cliente.random.nextDouble() < fracaoLeituras ? leituras : escritas;
+            if (grupo.isEmpty()) grupo = grupo == leituras ? escritas : leituras;
+            Operacao operacao = sortear(grupo, cliente.random);
+            String[] argumentos = argumentos(operacao.comando, cliente);
+            if (argumentos == null) continue;
+
+            boolean erro = false;
+            long inicio = System.nanoTime();
+            try {
+                operacao.metodo.invoke(facade, (Object[]) argumentos);
+            } catch (InvocationTargetException e) {
+                if (!(e.getCause() instanceof RuntimeException)) throw new IllegalStateException(e.getCause());
+                erro = true;
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            long duracao = System.nanoTime() - inicio;
+
+            if (!erro && operacao.comando.getNome().equals("criarUsuario")) cliente.criados.add(argumentos[0]);
+            if (medindo) {
+                cliente.latencias[operacao.indice].registrar(duracao);
+                if (erro) cliente.erros[operacao.indice]++;
+            }
+        }
+    }
+
+    /**
+     * Sorteia um comando do grupo com peso igual ao número de ocorrências nos scripts.
+     */
+    private static Operacao sortear(List<Operacao> grupo, Random random) {
+        int total = 0;
+        for (Operacao o : grupo) total += o.comando.getOcorrencias();
+        int alvo = random.nextInt(total);
+        for (Operacao o : grupo) {
+            alvo -= o.comando.getOcorrencias();
+            if (alvo < 0) return o;
+        }
+        return grupo.get(grupo.size() - 1);
+    }
+
+    /**
+     * Monta os argumentos do comando pelos nomes dos parâmetros nos scripts.
+     *
+     * @return Os argumentos, ou null se o comando não tem como ser executado agora.
+     */
+    private String[] argumentos(Vocabulario.Comando comando, Cliente cliente) {
+        Random random = cliente.random;
+        int ator = random.nextInt(dados.getUsuarios());
+        String login = DadosSinteticos.login(ator);
+        String sessao = null;
+        if (comando.getNome().equals("removerUsuario")) {
+            if (cliente.criados.isEmpty()) return null;
+            login = cliente.criados.remove(cliente.criados.size() - 1);
+            sessao = facade.abrirSessao(login, "s");
+        } else if (comando.getNome().equals("enviarMensagem")) {
+            for (int tentativa = 0; dados.getComunidadesDe(ator).length == 0; tentativa++) {
+                if (tentativa == 10) return null;
+                ator = random.nextInt(dados.getUsuarios());
+            }
+            login = DadosSinteticos.login(ator);
+        }
+
+        List<String> parametros = comando.getParametros();
+        String[] argumentos = new String[parametros.size()];
+        for (int i = 0; i < argumentos.length; i++) {
+            switch (parametros.get(i)) {
+                case "id":
+                case "sessao":
+                    argumentos[i] = sessao != null ? sessao : sessao(ator);
+                    break;
+                case "login":
+                case "login1":
+                    argumentos[i] = comando.getNome().equals("criarUsuario") ? "carga" + novos.incrementAndGet() : login;
+                    break;
+                case "senha":
+                    argumentos[i] = "s";
+                    break;
+                case "nome":
+                    if (!comando.getNome().contains("Comunidade")) {
+                        argumentos[i] = "Usuario de carga";
+                    } else if (comando.getNome().equals("criarComunidade")) {
+                        argumentos[i] = "carga-comunidade" + novos.incrementAndGet();
+                    } else {
+                        argumentos[i] = comunidade(random);
+                    }
+                    break;
+                case "comunidade":
+                    int[] suas = dados.getComunidadesDe(ator);
+                    argumentos[i] = comando.getNome().equals("enviarMensagem")
+                            ? DadosSinteticos.comunidade(suas[random.nextInt(suas.length)]) : comunidade(random);
+                    break;
+                case "amigo":
+                case "idolo":
+                case "inimigo":
+                case "paquera":
+                case "destinatario":
+                case "login2":
+                    int outro = random.nextInt(dados.getUsuarios() - 1);
+                    argumentos[i] = DadosSinteticos.login(outro >= ator ? outro + 1 : outro);
+                    break;
+                default:
+                    List<String> literais = vocabulario.getLiterais(parametros.get(i));
+                    argumentos[i] = literais.get(random.nextInt(literais.size()));
+            }
+        }
+        return argumentos;
+    }
+
+    /**
+     * Acha o método da Facade com o nome do comando e um parâmetro {@code String} para cada
+     * parâmetro dos scripts, desde que o gerador saiba produzir todos eles.
+     */
+    private Method metodo(Vocabulario.Comando comando) {
+        List<String> conhecidos = Arrays.asList("id", "sessao", "login", "login1", "login2", "senha", "nome",
+                "comunidade", "amigo", "idolo", "inimigo", "paquera", "destinatario");
+        for (String parametro : comando.getParametros()) {
+            if (!conhecidos.contains(parametro) && vocabulario.getLiterais(parametro).isEmpty()) return null;
+        }
+
+        for (Method metodo : Facade.class.getMethods()) {
+            if (!metodo.getName().equals(comando.getNome())
+                    || metodo.getParameterCount() != comando.getParametros().size()) {
+                continue;
+            }
+            boolean textos = true;
+            for (Class<?> tipo : metodo.getParameterTypes()) textos &= tipo == String.class;
+            if (textos) return metodo;
+        }
+        return null;
+    }
+
+    private String sessao(int usuario) {
+        String sessao = sessoes.get(usuario);
+        if (sessao == null) {
+            sessao = facade.abrirSessao(DadosSinteticos.login(usuario), "s");
+            if (!sessoes.compareAndSet(usuario, null, sessao)) sessao = sessoes.get(usuario);
+        }
+        return sessao;
+    }
+
+    /**
+     * Sorteia uma comunidade na proporção do número de membros.
+     */
+    private String comunidade(Random random) {
+        long total = acumuladaComunidades[acumuladaComunidades.length - 1];
+        long alvo = (long) (random.nextDouble() * total);
+        int k = Arrays.binarySearch(acumuladaComunidades, alvo + 1);
+        return DadosSinteticos.comunidade(k >= 0 ? k : -k - 1);
+    }
+}
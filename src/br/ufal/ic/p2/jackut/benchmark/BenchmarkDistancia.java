@@ -0,0 +1,106 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.BuscaDistancia;
+import br.ufal.ic.p2.jackut.models.GrafoRelacoes;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Mede a consulta de distância entre usuários num grafo de amizades aleatório grande,
+ * montado direto no {@link GrafoRelacoes} pelos IDs, sem passar pela Facade.
+ *
+ * <p>Compara a busca em largura bidirecional de {@link BuscaDistancia}, com arrays
+ * reaproveitados, com uma busca em largura simples só a partir da origem, que guarda os
+ * visitados num {@code HashMap<Integer, Integer>} novo a cada consulta. As duas param no
+ * mesmo limite de distância.</p>
+ *
+ * <p>Uso: {@code java -Xmx3g br.ufal.ic.p2.jackut.benchmark.BenchmarkDistancia [usuarios] [amigos] [consultas] [maximo]}</p>
+ */
+public class BenchmarkDistancia {
+
+    public static void main(String[] args) {
+        int totalUsuarios = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int amigos = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int consultas = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int maximo = args.length > 3 ? Integer.parseInt(args[3]) : 6;
+
+        GrafoRelacoes grafo = new GrafoRelacoes();
+        Random random = new Random(42);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < totalUsuarios; i++) {
+            // cada usuário escolhe metade dos amigos; a outra metade vem das escolhas dos outros
+            for (int j = 0; j < amigos / 2; j++) {
+                int outro = random.nextInt(totalUsuarios);
+                if (outro != i) grafo.adicionar(GrafoRelacoes.Tipo.AMIZADE, i, outro);
+            }
+        }
+        System.out.printf("%d usuarios, ~%d amigos cada, montado em %.1f s%n",
+                totalUsuarios, amigos, (System.nanoTime() - inicio) / 1e9);
+
+        int[] origens = new int[consultas];
+        int[] destinos = new int[consultas];
+        for (int i = 0; i < consultas; i++) {
+            origens[i] = random.nextInt(totalUsuarios);
+            destinos[i] = random.nextInt(totalUsuarios);
+        }
+
+        BuscaDistancia busca = new BuscaDistancia(grafo);
+        long[] bidirecional = new long[consultas];
+        long[] simples = new long[consultas];
+        int encontrados = 0;
+        for (int rodada = 0; rodada < 2; rodada++) {
+            encontrados = 0;
+            long visitasAntes = busca.getVisitados();
+            for (int i = 0; i < consultas; i++) {
+                inicio = System.nanoTime();
+                int[] caminho = busca.caminho(origens[i], destinos[i], maximo);
+                bidirecional[i] = System.nanoTime() - inicio;
+                if (caminho != null) encontrados++;
+            }
+            if (rodada == 1) {
+                System.out.printf("caminhos com ate %d amizades: %d de %d; %.0f visitados por consulta%n",
+                        maximo, encontrados, consultas, (busca.getVisitados() - visitasAntes) / (double) consultas);
+            }
+        }
+        for (int rodada = 0; rodada < 2; rodada++) {
+            for (int i = 0; i < consultas; i++) {
+                inicio = System.nanoTime();
+                int distancia = distanciaSimples(grafo, origens[i], destinos[i], maximo);
+                simples[i] = System.nanoTime() - inicio;
+                if ((distancia >= 0) != (busca.caminho(origens[i], destinos[i], maximo) != null)) {
+                    throw new IllegalStateException("Buscas divergentes para " + origens[i] + " e " + destinos[i]);
+                }
+            }
+        }
+
+        Bancada.imprimirLatencias("bidirecional com arrays", bidirecional);
+        Bancada.imprimirLatencias("largura simples com HashMap", simples);
+    }
+
+    /**
+     * Busca em largura a partir da origem, parando no limite de distância.
+     *
+     * @return A distância, ou -1 se for maior que o limite.
+     */
+    private static int distanciaSimples(GrafoRelacoes grafo, int origem, int destino, int maximo) {
+        Map<Integer, Integer> distancias = new HashMap<>();
+        ArrayDeque<Integer> fila = new ArrayDeque<>();
+        distancias.put(origem, 0);
+        fila.add(origem);
+        while (!fila.isEmpty()) {
+            int atual = fila.poll();
+            int d = distancias.get(atual);
+            if (atual == destino) return d;
+            if (d == maximo) continue;
+            GrafoRelacoes.No no = grafo.buscar(atual);
+            if (no == null) continue;
+            for (int amigo : no.getArestas(GrafoRelacoes.Tipo.AMIZADE, true).paraArray()) {
+                if (distancias.putIfAbsent(amigo, d + 1) == null) fila.add(amigo);
+            }
+        }
+        return -1;
+    }
+}
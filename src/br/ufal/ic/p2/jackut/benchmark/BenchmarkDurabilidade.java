@@ -0,0 +1,71 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Journal;
+import br.ufal.ic.p2.jackut.models.RegistroJournal;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mede quantas mutações por segundo o journal consegue tornar duráveis em cada
+ * {@link Journal.Modo}, com várias threads gravando ao mesmo tempo, como fazem
+ * as sessões concorrentes da Facade.
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkDurabilidade [operacoes] [janelaMicros]}</p>
+ */
+public class BenchmarkDurabilidade {
+
+    public static void main(String[] args) throws Exception {
+        int operacoes = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long janelaMicros = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        int[] threads = {1, 4, 16};
+
+        System.out.printf("%-12s %-8s %-10s %12s%n", "modo", "threads", "janela(us)", "ops/s");
+        for (Journal.Modo modo : Journal.Modo.values()) {
+            for (int t : threads) {
+                if (modo == Journal.Modo.GRUPO) {
+                    imprimir(modo, t, 0, medir(modo, t, 0, operacoes));
+                    imprimir(modo, t, janelaMicros, medir(modo, t, janelaMicros, operacoes));
+                } else {
+                    imprimir(modo, t, 0, medir(modo, t, 0, operacoes));
+                }
+            }
+        }
+    }
+
+    private static void imprimir(Journal.Modo modo, int threads, long janela, double opsPorSegundo) {
+        System.out.printf("%-12s %-8d %-10d %12.0f%n", modo, threads, janela, opsPorSegundo);
+    }
+
+    private static double medir(Journal.Modo modo, int numeroThreads, long janelaMicros, int operacoes)
+            throws Exception {
+        File dir = Files.createTempDirectory("jackut-bench").toFile();
+        Journal journal = new Journal(new File(dir, "journal.log"), modo, janelaMicros, 512);
+        int porThread = Math.max(1, operacoes / numeroThreads);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numeroThreads; t++) {
+            final int id = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < porThread; i++) {
+                    String login = "usuario" + id + "_" + i;
+                    long lsn = journal.anexar(new RegistroJournal(
+                            RegistroJournal.Tipo.CRIAR_USUARIO, login, "senha", "Nome " + login));
+                    journal.aguardar(lsn);
+                }
+            }));
+        }
+
+        long inicio = System.nanoTime();
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        journal.fechar();
+        long duracao = System.nanoTime() - inicio;
+
+        journal.apagar();
+        dir.delete();
+        return porThread * (double) numeroThreads / (duracao / 1e9);
+    }
+}
@@ -0,0 +1,248 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Mede cada operação da Facade com a {@link Bancada}, em bancos de tamanhos crescentes,
+ * relatando o tempo médio por operação, a alocação por operação e as coletas de lixo.
+ *
+ * <p>Os bancos são gerados por {@link DadosSinteticos}, com amizades por ligação
+ * preferencial (5 por usuário novo) e uma comunidade a cada 100 usuários, todas com
+ * {@code membros} membros. Cada iteração executa {@code operacoes} chamadas (um décimo
+ * disso para {@code removerUsuario} e uma só para {@code salvar} e {@code carregar});
+ * o preparo da iteração, fora da medição, sorteia os argumentos e cria o estado que a
+ * operação consome: recados a ler, usuários a remover, perfis alterados para o snapshot
+ * incremental. {@code salvar} grava um snapshot depois de alterar {@code operacoes / 10}
+ * perfis; {@code carregar} encerra o sistema e cria uma Facade nova sobre o diretório.
+ * O journal roda no modo {@code ASSINCRONO}.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkFacade [usuarios,...] [membros] [operacoes] [operacao,...]}</p>
+ */
+public class BenchmarkFacade {
+    private static final String TEXTO = "Oi, tudo bem? Vamos marcar aquele encontro da comunidade.";
+
+    private final File dir;
+    private final DadosSinteticos dados;
+    private final Random random = new Random(22);
+    private Facade facade;
+    private String[] sessoes;
+    private int novos;
+
+    private int[] primeiros;
+    private int[] segundos;
+    private String[] sessoesPreparadas;
+
+    private BenchmarkFacade(File dir, DadosSinteticos dados) {
+        this.dir = dir;
+        this.dados = dados;
+        this.facade = new Facade(dir);
+        this.sessoes = new String[dados.getUsuarios()];
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] tamanhos = (args.length > 0 ? args[0] : "1000,100000,1000000").split(",");
+        int membros = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int operacoes = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        Set<String> escolhidas = args.length > 3 ? new HashSet<>(Arrays.asList(args[3].split(","))) : null;
+        System.setProperty("jackut.journal.modo", "ASSINCRONO");
+
+        Bancada bancada = new Bancada(3, 5);
+        Bancada.imprimirCabecalho();
+        for (String tamanho : tamanhos) {
+            int usuarios = Integer.parseInt(tamanho.trim());
+            File dir = Files.createTempDirectory("jackut-facade").toFile();
+            DadosSinteticos dados = DadosSinteticos.gerar(dir, usuarios, 5, Math.max(1, usuarios / 100),
+                    Math.min(membros, usuarios), 0, 42);
+            BenchmarkFacade benchmark = new BenchmarkFacade(dir, dados);
+
+            for (Map.Entry<String, Cenario> cenario : benchmark.cenarios(operacoes).entrySet()) {
+                if (escolhidas != null && !escolhidas.contains(cenario.getKey())) continue;
+                Cenario c = cenario.getValue();
+                bancada.medir(cenario.getKey(), c.operacoes, c.preparo, c.operacao).imprimir(usuarios);
+            }
+
+            benchmark.facade.zerarSistema();
+            Bancada.apagar(dir);
+            System.gc();
+        }
+    }
+
+    /**
+     * Uma operação medida, com o número de chamadas por iteração e o preparo delas.
+     */
+    private static class Cenario {
+        final int operacoes;
+        final Bancada.Preparo preparo;
+        final Bancada.Operacao operacao;
+
+        Cenario(int operacoes, Bancada.Preparo preparo, Bancada.Operacao operacao) {
+            this.operacoes = operacoes;
+            this.preparo = preparo;
+            this.operacao = operacao;
+        }
+    }
+
+    private Map<String, Cenario> cenarios(int operacoes) {
+        int usuarios = dados.getUsuarios();
+        Map<String, Cenario> cenarios = new LinkedHashMap<>();
+
+        cenarios.put("criarUsuario", new Cenario(operacoes, null,
+                i -> facade.criarUsuario("novo" + novos++, "s", "Novo")));
+
+        cenarios.put("abrirSessao", new Cenario(operacoes, n -> sortearUsuarios(n),
+                i -> facade.abrirSessao(DadosSinteticos.login(primeiros[i]), "s")));
+
+        // as chamadas pares convidam e as ímpares aceitam o convite
+        cenarios.put("adicionarAmigo", new Cenario(Math.max(2, Math.min(operacoes, usuarios / 2) & ~1),
+                n -> sortearDesconhecidos(n / 2),
+                i -> {
+                    int par = i / 2;
+                    if (i % 2 == 0) facade.adicionarAmigo(sessao(primeiros[par]), DadosSinteticos.login(segundos[par]));
+                    else facade.adicionarAmigo(sessao(segundos[par]), DadosSinteticos.login(primeiros[par]));
+                }));
+
+        cenarios.put("enviarRecado", new Cenario(operacoes, n -> sortearPares(n),
+                i -> facade.enviarRecado(sessao(primeiros[i]), DadosSinteticos.login(segundos[i]), TEXTO)));
+
+        cenarios.put("lerRecado", new Cenario(operacoes, n -> {
+            sortearPares(n);
+            for (int i = 0; i < n; i++) {
+                facade.enviarRecado(sessao(segundos[i]), DadosSinteticos.login(primeiros[i]), TEXTO);
+            }
+        }, i -> facade.lerRecado(sessao(primeiros[i]))));
+
+        cenarios.put("enviarMensagem", new Cenario(operacoes, n -> sortearParticipacoes(n),
+                i -> facade.enviarMensagem(sessao(primeiros[i]), DadosSinteticos.comunidade(segundos[i]), TEXTO)));
+
+        cenarios.put("getMembrosComunidade", new Cenario(operacoes, n -> {
+            primeiros = new int[n];
+            for (int i = 0; i < n; i++) primeiros[i] = random.nextInt(dados.getComunidades());
+        }, i -> facade.getMembrosComunidade(DadosSinteticos.comunidade(primeiros[i]))));
+
+        cenarios.put("removerUsuario", new Cenario(Math.max(1, operacoes / 10), n -> criarVitimas(n),
+                i -> facade.removerUsuario(sessoesPreparadas[i])));
+
+        cenarios.put("salvar", new Cenario(1, n -> {
+            facade.aguardarSnapshot();
+            sortearUsuarios(Math.max(1, operacoes / 10));
+            for (int i = 0; i < primeiros.length; i++) {
+                facade.editarPerfil(sessao(primeiros[i]), "cidade", "Cidade " + random.nextInt(usuarios));
+            }
+        }, i -> {
+            facade.iniciarSnapshot();
+            facade.aguardarSnapshot();
+        }));
+
+        cenarios.put("carregar", new Cenario(1, n -> {
+            facade.encerrarSistema();
+            facade = null;
+            sessoes = new String[usuarios];
+            System.gc();
+        }, i -> facade = new Facade(dir)));
+        return cenarios;
+    }
+
+    private String sessao(int usuario) {
+        if (sessoes[usuario] == null) sessoes[usuario] = facade.abrirSessao(DadosSinteticos.login(usuario), "s");
+        return sessoes[usuario];
+    }
+
+    private void sortearUsuarios(int n) {
+        primeiros = new int[n];
+        for (int i = 0; i < n; i++) primeiros[i] = random.nextInt(dados.getUsuarios());
+    }
+
+    /**
+     * Sorteia pares de usuários distintos e abre as sessões deles, para que a medição não
+     * inclua a primeira abertura.
+     */
+    private void sortearPares(int n) {
+        primeiros = new int[n];
+        segundos = new int[n];
+        for (int i = 0; i < n; i++) {
+            primeiros[i] = random.nextInt(dados.getUsuarios());
+            do {
+                segundos[i] = random.nextInt(dados.getUsuarios());
+            } while (segundos[i] == primeiros[i]);
+            sessao(primeiros[i]);
+            sessao(segundos[i]);
+        }
+    }
+
+    /**
+     * Sorteia pares de usuários que ainda não são amigos nem têm convite entre si; cada
+     * usuário aparece em um só par da iteração, por isso a iteração tem no máximo
+     * {@code usuarios / 2} chamadas.
+     */
+    private void sortearDesconhecidos(int n) {
+        primeiros = new int[n];
+        segundos = new int[n];
+        Map<String, Usuario> usuarios = facade.getUsuarios();
+        Set<Integer> usados = new HashSet<>();
+        for (int i = 0; i < n; ) {
+            int a = random.nextInt(dados.getUsuarios());
+            int b = random.nextInt(dados.getUsuarios());
+            Usuario u = usuarios.get(DadosSinteticos.login(a));
+            String outro = DadosSinteticos.login(b);
+            if (a == b || usados.contains(a) || usados.contains(b) || u.getAmigos().contains(outro)
+                    || u.getConvitesEnviados().contains(outro) || u.getConvitesRecebidos().contains(outro)) {
+                continue;
+            }
+            usados.add(a);
+            usados.add(b);
+            primeiros[i] = a;
+            segundos[i] = b;
+            sessao(a);
+            sessao(b);
+            i++;
+        }
+    }
+
+    /**
+     * Sorteia membros de comunidades e, em {@code segundos}, uma das comunidades de cada um.
+     */
+    private void sortearParticipacoes(int n) {
+        primeiros = new int[n];
+        segundos = new int[n];
+        for (int i = 0; i < n; ) {
+            int usuario = random.nextInt(dados.getUsuarios());
+            int[] suas = dados.getComunidadesDe(usuario);
+            if (suas.length == 0) continue;
+            primeiros[i] = usuario;
+            segundos[i] = suas[random.nextInt(suas.length)];
+            sessao(usuario);
+            i++;
+        }
+    }
+
+    /**
+     * Cria usuários com uma amizade, uma comunidade, um recado e uma mensagem, para que a
+     * remoção tenha vestígios a apagar.
+     */
+    private void criarVitimas(int n) {
+        sessoesPreparadas = new String[n];
+        for (int i = 0; i < n; i++) {
+            String login = "vitima" + novos++;
+            facade.criarUsuario(login, "s", "Vitima");
+            String sessao = facade.abrirSessao(login, "s");
+            int amigo = random.nextInt(dados.getUsuarios());
+            facade.adicionarAmigo(sessao, DadosSinteticos.login(amigo));
+            facade.adicionarAmigo(sessao(amigo), login);
+            String comunidade = DadosSinteticos.comunidade(random.nextInt(dados.getComunidades()));
+            facade.adicionarComunidade(sessao, comunidade);
+            facade.enviarMensagem(sessao, comunidade, TEXTO);
+            facade.enviarRecado(sessao, DadosSinteticos.login(amigo), TEXTO);
+            sessoesPreparadas[i] = sessao;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Comunidade;
+import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.SnapshotBinario;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mede o tempo de inicialização a frio da Facade sobre um snapshot sintético,
+ * variando a quantidade de threads usadas na carga paralela. A primeira carga
+ * converte o snapshot único em segmentos; as medidas seguintes leem os segmentos.
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkInicializacao [usuarios] [amigos] [membros]}</p>
+ */
+public class BenchmarkInicializacao {
+
+    public static void main(String[] args) throws Exception {
+        int totalUsuarios = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int amigos = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int membros = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        File dir = Files.createTempDirectory("jackut-carga").toFile();
+        gerarSnapshot(dir, totalUsuarios, amigos, membros);
+        System.out.printf("snapshot: %d usuarios, %.1f MB%n", totalUsuarios,
+                new File(dir, "snapshot.bin").length() / 1e6);
+
+        int processadores = Runtime.getRuntime().availableProcessors();
+        for (int threads : new int[]{1, Math.max(2, processadores / 2), processadores}) {
+            System.setProperty("jackut.carga.threads", Integer.toString(threads));
+            // primeira rodada aquece o JIT, a segunda é a medida
+            new Facade(dir);
+            System.gc();
+            Facade facade = new Facade(dir);
+            System.out.printf("threads=%-3d %s%n", threads, facade.getEstatisticasCarga());
+        }
+
+        Bancada.apagar(dir);
+    }
+
+    /**
+     * Gera o banco com cidade no perfil e, para cada comunidade de que o usuário participa,
+     * uma mensagem na fila de mensagens antigas, que a carga também lê.
+     */
+    private static void gerarSnapshot(File dir, int totalUsuarios, int amigos, int membros) throws Exception {
+        Random random = new Random(42);
+        List<Usuario> usuarios = DadosSinteticos.usuarios(totalUsuarios);
+        DadosSinteticos.ligarAmigos(usuarios, amigos, random);
+        List<Comunidade> comunidades = DadosSinteticos.comunidadesUniformes(usuarios, totalUsuarios / membros,
+                membros, random);
+        for (int i = 0; i < totalUsuarios; i++) {
+            Usuario u = usuarios.get(i);
+            u.getPerfil().adicionarAtributo("cidade", "Cidade " + (i % 500));
+            for (String c : u.getComunidades()) u.receberMensagemComunidade("Bem-vindo a " + c);
+        }
+        SnapshotBinario.gravar(new File(dir, "snapshot.bin"), usuarios, comunidades);
+    }
+}
@@ -0,0 +1,94 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Facade;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Mede as listagens {@code {a,b,c}} numa carga de 95% de leituras, com e sem o cache de
+ * listagens da Facade.
+ *
+ * <p>Os usuários têm {@code amigos} amigos cada e participam de algumas comunidades. Cada
+ * operação sorteia um usuário e, em 95% das vezes, lista os amigos, os fãs, as comunidades
+ * ou os membros de uma comunidade; no restante, inclui um ídolo ou entra numa comunidade,
+ * o que invalida as listagens afetadas. A mesma sequência roda com o cache ligado e com
+ * {@code jackut.cache.entradas=0}. O journal roda no modo {@code ASSINCRONO}.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkListagens [usuarios] [amigos] [operacoes]}</p>
+ */
+public class BenchmarkListagens {
+
+    public static void main(String[] args) throws Exception {
+        int totalUsuarios = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int amigos = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int operacoes = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+        System.setProperty("jackut.journal.modo", "ASSINCRONO");
+
+        for (boolean cache : new boolean[] {false, true, false, true}) {
+            System.setProperty("jackut.cache.entradas", cache ? "65536" : "0");
+            File dir = Files.createTempDirectory("jackut-listagens").toFile();
+            Facade facade = new Facade(dir);
+            String[] sessoes = popular(facade, totalUsuarios, amigos);
+
+            Random random = new Random(3);
+            long inicio = System.nanoTime();
+            long caracteres = 0;
+            for (int i = 0; i < operacoes; i++) {
+                int u = random.nextInt(totalUsuarios);
+                int sorteio = random.nextInt(100);
+                if (sorteio < 95) {
+                    switch (sorteio % 4) {
+                        case 0: caracteres += facade.getAmigos("usuario" + u).length(); break;
+                        case 1: caracteres += facade.getFas("usuario" + u).length(); break;
+                        case 2: caracteres += facade.getComunidades("usuario" + u).length(); break;
+                        default: caracteres += facade.getMembrosComunidade("comunidade" + u % 50).length(); break;
+                    }
+                } else if (sorteio < 98) {
+                    int idolo = random.nextInt(totalUsuarios);
+                    if (idolo != u && !facade.ehFa("usuario" + u, "usuario" + idolo)) {
+                        facade.adicionarIdolo(sessoes[u], "usuario" + idolo);
+                    }
+                } else {
+                    try {
+                        facade.adicionarComunidade(sessoes[u], "comunidade" + random.nextInt(50));
+                    } catch (RuntimeException jaEhMembro) {
+                        // a entrada repetida é recusada sem alterar nada
+                    }
+                }
+            }
+            long nanos = System.nanoTime() - inicio;
+
+            System.out.printf("cache %-9s %8.0f operacoes/s (%.2f us por operacao, %d caracteres lidos)%n",
+                    cache ? "ligado:" : "desligado:", operacoes / (nanos / 1e9), nanos / 1e3 / operacoes, caracteres);
+            if (cache) System.out.println("  " + facade.getEstatisticasCache());
+            facade.zerarSistema();
+            Bancada.apagar(dir);
+        }
+    }
+
+    /**
+     * Cria os usuários, as amizades (cada usuário com os {@code amigos} seguintes, em anel)
+     * e 50 comunidades com alguns membros.
+     *
+     * @return As sessões dos usuários.
+     */
+    private static String[] popular(Facade facade, int totalUsuarios, int amigos) {
+        String[] sessoes = new String[totalUsuarios];
+        for (int i = 0; i < totalUsuarios; i++) {
+            facade.criarUsuario("usuario" + i, "s", "Usuario " + i);
+            sessoes[i] = facade.abrirSessao("usuario" + i, "s");
+        }
+        for (int i = 0; i < totalUsuarios; i++) {
+            for (int j = 1; j <= amigos / 2; j++) {
+                int outro = (i + j) % totalUsuarios;
+                facade.adicionarAmigo(sessoes[i], "usuario" + outro);
+                facade.adicionarAmigo(sessoes[outro], "usuario" + i);
+            }
+        }
+        for (int c = 0; c < 50; c++) facade.criarComunidade(sessoes[c], "comunidade" + c, "Comunidade " + c);
+        for (int i = 50; i < totalUsuarios; i++) facade.adicionarComunidade(sessoes[i], "comunidade" + i % 50);
+        return sessoes;
+    }
+}
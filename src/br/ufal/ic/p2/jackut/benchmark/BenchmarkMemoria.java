@@ -0,0 +1,190 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.ConjuntoNomes;
+import br.ufal.ic.p2.jackut.models.Dicionario;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compara o heap ocupado pelos relacionamentos dos usuários guardados como
+ * {@code Set<String>} de logins, como era antes, com os conjuntos de IDs inteiros
+ * ({@link ConjuntoNomes}) usados hoje, e o custo da consulta de amizade nos dois casos.
+ *
+ * <p>Cada usuário recebe {@code relacoes} vínculos sorteados em cada um dos sete conjuntos
+ * (amigos, convites enviados e recebidos, fãs, ídolos, paqueras e inimigos), mais o conjunto
+ * de comunidades, vazio. Na versão antiga cada vínculo guarda uma cópia do login, como
+ * acontecia na carga do banco, que lia os logins de cada linha; na nova entra na conta o
+ * {@link Dicionario} de logins. O heap é medido pela memória usada depois de coletas forçadas,
+ * então o resultado é aproximado; rode com um heap fixo ({@code -Xms}/{@code -Xmx}) para
+ * números mais estáveis.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkMemoria [usuarios] [relacoes]}</p>
+ */
+public class BenchmarkMemoria {
+    private static Object retido;
+
+    public static void main(String[] args) {
+        int totalUsuarios = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int relacoes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        System.out.printf("%d usuarios, %d vinculos em cada um dos 7 conjuntos%n", totalUsuarios, relacoes);
+
+        String[] logins = new String[totalUsuarios];
+        for (int i = 0; i < totalUsuarios; i++) logins[i] = "usuario" + i;
+
+        long base = heapUsado();
+        retido = gerarLegados(logins, relacoes);
+        long bytesLegado = heapUsado() - base;
+
+        retido = null;
+        base = heapUsado();
+        retido = gerarNovos(logins, relacoes);
+        long bytesNovo = heapUsado() - base;
+
+        System.out.printf("Set<String> de logins: %8.1f bytes por usuario%n", (double) bytesLegado / totalUsuarios);
+        System.out.printf("conjuntos de IDs:      %8.1f bytes por usuario%n", (double) bytesNovo / totalUsuarios);
+        System.out.printf("reducao: %.1fx%n", (double) bytesLegado / bytesNovo);
+
+        compararConsultas(logins, relacoes);
+    }
+
+    /**
+     * Mede a consulta de amizade dos dois lados, como {@code ehAmigo}: pelo login nos
+     * conjuntos antigos e pelo ID nos novos.
+     */
+    private static void compararConsultas(String[] logins, int relacoes) {
+        List<UsuarioLegado> legados = gerarLegados(logins, relacoes);
+        @SuppressWarnings("unchecked")
+        List<UsuarioNovo> novos = (List<UsuarioNovo>) retido;
+        int consultas = 2_000_000;
+        Random random = new Random(3);
+        int[] pares = new int[consultas * 2];
+        for (int i = 0; i < pares.length; i++) pares[i] = random.nextInt(logins.length);
+
+        long encontradosLegado = 0;
+        long encontradosNovo = 0;
+        long legado = Long.MAX_VALUE;
+        long novo = Long.MAX_VALUE;
+        for (int rodada = 0; rodada < 5; rodada++) {
+            long inicio = System.nanoTime();
+            for (int i = 0; i < pares.length; i += 2) {
+                UsuarioLegado a = legados.get(pares[i]);
+                UsuarioLegado b = legados.get(pares[i + 1]);
+                if (a.amigos.contains(b.login) && b.amigos.contains(a.login)) encontradosLegado++;
+            }
+            legado = Math.min(legado, System.nanoTime() - inicio);
+
+            inicio = System.nanoTime();
+            for (int i = 0; i < pares.length; i += 2) {
+                UsuarioNovo a = novos.get(pares[i]);
+                UsuarioNovo b = novos.get(pares[i + 1]);
+                if (a.amigos.contemId(b.id) && b.amigos.contemId(a.id)) encontradosNovo++;
+            }
+            novo = Math.min(novo, System.nanoTime() - inicio);
+        }
+        if (encontradosLegado != encontradosNovo) {
+            throw new IllegalStateException("Resultados diferentes: " + encontradosLegado + " e " + encontradosNovo);
+        }
+        System.out.printf("ehAmigo por login: %6.1f ns por consulta%n", (double) legado / consultas);
+        System.out.printf("ehAmigo por ID:    %6.1f ns por consulta%n", (double) novo / consultas);
+    }
+
+    private static List<UsuarioLegado> gerarLegados(String[] logins, int relacoes) {
+        Random random = new Random(42);
+        List<UsuarioLegado> usuarios = new ArrayList<>(logins.length);
+        for (String login : logins) usuarios.add(new UsuarioLegado(new String(login)));
+        for (UsuarioLegado u : usuarios) {
+            for (int j = 0; j < relacoes; j++) {
+                UsuarioLegado outro = usuarios.get(random.nextInt(logins.length));
+                if (outro == u) continue;
+                u.amigos.add(new String(outro.login));
+                outro.amigos.add(new String(u.login));
+                u.convitesEnviados.add(new String(logins[random.nextInt(logins.length)]));
+                u.convitesRecebidos.add(new String(logins[random.nextInt(logins.length)]));
+                u.idolos.add(new String(logins[random.nextInt(logins.length)]));
+                u.fas.add(new String(logins[random.nextInt(logins.length)]));
+                u.paqueras.add(new String(logins[random.nextInt(logins.length)]));
+                u.inimigos.add(new String(logins[random.nextInt(logins.length)]));
+            }
+        }
+        return usuarios;
+    }
+
+    private static List<UsuarioNovo> gerarNovos(String[] logins, int relacoes) {
+        Random random = new Random(42);
+        List<UsuarioNovo> usuarios = new ArrayList<>(logins.length);
+        for (String login : logins) usuarios.add(new UsuarioNovo(new String(login)));
+        for (UsuarioNovo u : usuarios) {
+            for (int j = 0; j < relacoes; j++) {
+                UsuarioNovo outro = usuarios.get(random.nextInt(logins.length));
+                if (outro == u) continue;
+                u.amigos.add(new String(outro.login));
+                outro.amigos.add(new String(u.login));
+                u.convitesEnviados.add(new String(logins[random.nextInt(logins.length)]));
+                u.convitesRecebidos.add(new String(logins[random.nextInt(logins.length)]));
+                u.idolos.add(new String(logins[random.nextInt(logins.length)]));
+                u.fas.add(new String(logins[random.nextInt(logins.length)]));
+                u.paqueras.add(new String(logins[random.nextInt(logins.length)]));
+                u.inimigos.add(new String(logins[random.nextInt(logins.length)]));
+            }
+        }
+        return usuarios;
+    }
+
+    private static long heapUsado() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Os conjuntos de relacionamento de um usuário como eram antes dos IDs inteiros.
+     */
+    private static class UsuarioLegado {
+        private final String login;
+        private final Set<String> amigos = new LinkedHashSet<>();
+        private final Set<String> convitesEnviados = new LinkedHashSet<>();
+        private final Set<String> convitesRecebidos = new LinkedHashSet<>();
+        private final Set<String> comunidades = new HashSet<>();
+        private final Set<String> fas = new HashSet<>();
+        private final Set<String> idolos = new HashSet<>();
+        private final Set<String> paqueras = new HashSet<>();
+        private final Set<String> inimigos = new HashSet<>();
+
+        UsuarioLegado(String login) {
+            this.login = login;
+        }
+    }
+
+    /**
+     * Os mesmos conjuntos guardados como IDs, como em {@code Usuario}.
+     */
+    private static class UsuarioNovo {
+        private final String login;
+        private final int id;
+        private final ConjuntoNomes amigos = new ConjuntoNomes(Dicionario.LOGINS);
+        private final ConjuntoNomes convitesEnviados = new ConjuntoNomes(Dicionario.LOGINS);
+        private final ConjuntoNomes convitesRecebidos = new ConjuntoNomes(Dicionario.LOGINS);
+        private final ConjuntoNomes comunidades = new ConjuntoNomes(Dicionario.COMUNIDADES);
+        private final ConjuntoNomes fas = new ConjuntoNomes(Dicionario.LOGINS);
+        private final ConjuntoNomes idolos = new ConjuntoNomes(Dicionario.LOGINS);
+        private final ConjuntoNomes paqueras = new ConjuntoNomes(Dicionario.LOGINS);
+        private final ConjuntoNomes inimigos = new ConjuntoNomes(Dicionario.LOGINS);
+
+        UsuarioNovo(String login) {
+            this.login = login;
+            this.id = Dicionario.LOGINS.id(login);
+        }
+    }
+}
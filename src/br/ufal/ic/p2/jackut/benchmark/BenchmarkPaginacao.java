@@ -0,0 +1,101 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Facade;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.file.Files;
+
+/**
+ * Mede a listagem dos membros de uma comunidade muito grande: o texto inteiro, páginas
+ * pelo cursor em profundidades diferentes e a escrita direta num {@link Writer}.
+ *
+ * <p>O cache de listagens fica desligado, para medir a montagem do texto a cada chamada.
+ * O journal roda no modo {@code ASSINCRONO}.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkPaginacao [membros] [limite]}</p>
+ */
+public class BenchmarkPaginacao {
+
+    public static void main(String[] args) throws Exception {
+        int totalMembros = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+        int limite = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        System.setProperty("jackut.journal.modo", "ASSINCRONO");
+        System.setProperty("jackut.cache.entradas", "0");
+
+        File dir = Files.createTempDirectory("jackut-paginacao").toFile();
+        Facade facade = new Facade(dir);
+        facade.criarUsuario("dono", "s", "Dono");
+        facade.criarComunidade(facade.abrirSessao("dono", "s"), "grande", "Comunidade grande");
+        for (int i = 0; i < totalMembros; i++) {
+            facade.criarUsuario("membro" + i, "s", "Membro " + i);
+            facade.adicionarComunidade(facade.abrirSessao("membro" + i, "s"), "grande");
+        }
+
+        long inicio = 0;
+        long completa = Long.MAX_VALUE;
+        int tamanho = 0;
+        for (int rodada = 0; rodada < 5; rodada++) {
+            inicio = System.nanoTime();
+            tamanho = facade.getMembrosComunidade("grande").length();
+            completa = Math.min(completa, System.nanoTime() - inicio);
+        }
+        System.out.printf("%d membros; listagem completa: %8.3f ms, %d caracteres%n",
+                totalMembros + 1, completa / 1e6, tamanho);
+
+        int[] profundidades = {0, totalMembros / 2, totalMembros - limite};
+        for (int profundidade : profundidades) {
+            String cursor = profundidade == 0 ? null : "membro" + (profundidade - 1);
+            long melhor = Long.MAX_VALUE;
+            for (int rodada = 0; rodada < 1000; rodada++) {
+                inicio = System.nanoTime();
+                facade.getMembrosComunidade("grande", cursor, limite);
+                melhor = Math.min(melhor, System.nanoTime() - inicio);
+            }
+            System.out.printf("pagina de %d a partir da posicao %7d: %8.3f ms%n", limite, profundidade, melhor / 1e6);
+        }
+
+        long escrita = Long.MAX_VALUE;
+        ContadorCaracteres contador = new ContadorCaracteres();
+        for (int rodada = 0; rodada < 5; rodada++) {
+            contador.total = 0;
+            inicio = System.nanoTime();
+            facade.escreverMembrosComunidade("grande", contador);
+            escrita = Math.min(escrita, System.nanoTime() - inicio);
+        }
+        System.out.printf("escrita direta no Writer:  %8.3f ms, %d caracteres%n", escrita / 1e6, contador.total);
+
+        facade.zerarSistema();
+        Bancada.apagar(dir);
+    }
+
+    /**
+     * Writer que só conta os caracteres recebidos.
+     */
+    private static final class ContadorCaracteres extends Writer {
+        private long total;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            total += len;
+        }
+
+        @Override
+        public void write(String str) {
+            total += str.length();
+        }
+
+        @Override
+        public void write(int c) {
+            total++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.SnapshotBinario;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compara a remoção de conta pelos índices reversos com a varredura de todos os usuários
+ * que a remoção fazia antes. Gera um snapshot sintético com amizades, paqueras, inimigos,
+ * ídolos, recados e comunidades, remove contas sorteadas e imprime o tempo médio de cada
+ * abordagem por conta. A varredura é medida sem alterar os dados: só percorre os conjuntos
+ * de todos os usuários procurando o login, como o código antigo fazia.
+ *
+ * <p>O journal roda no modo {@code ASSINCRONO} para medir a remoção e não o fsync.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkRemocao [usuarios] [relacoes] [remocoes]}</p>
+ */
+public class BenchmarkRemocao {
+
+    public static void main(String[] args) throws Exception {
+        int totalUsuarios = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int relacoes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int remocoes = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        System.setProperty("jackut.journal.modo", "ASSINCRONO");
+
+        File dir = Files.createTempDirectory("jackut-remocao").toFile();
+        Random sorteio = new Random(42);
+        List<Usuario> gerados = DadosSinteticos.usuarios(totalUsuarios);
+        relacionar(gerados, relacoes, sorteio);
+        SnapshotBinario.gravar(new File(dir, "snapshot.bin"), gerados,
+                DadosSinteticos.comunidadesUniformes(gerados, totalUsuarios / 50, 50, sorteio));
+        Facade facade = new Facade(dir);
+        Map<String, Usuario> usuarios = facade.getUsuarios();
+        System.out.printf("%d usuarios, %d relacoes de cada tipo por usuario%n", totalUsuarios, relacoes);
+
+        Random random = new Random(7);
+        long varredura = 0;
+        long indices = 0;
+        int removidos = 0;
+        long encontrados = 0;
+        for (int k = 0; k < remocoes; k++) {
+            String login = "usuario" + random.nextInt(totalUsuarios);
+            if (!usuarios.containsKey(login)) continue;
+
+            long inicio = System.nanoTime();
+            encontrados += varrer(usuarios, login);
+            varredura += System.nanoTime() - inicio;
+
+            String sessao = facade.abrirSessao(login, "s");
+            inicio = System.nanoTime();
+            facade.removerUsuario(sessao);
+            indices += System.nanoTime() - inicio;
+            removidos++;
+        }
+
+        System.out.printf("varredura de todos os usuarios: %10.3f ms por conta (%d vinculos encontrados)%n",
+                varredura / 1e6 / removidos, encontrados);
+        System.out.printf("indices reversos:               %10.3f ms por conta%n", indices / 1e6 / removidos);
+        System.out.printf("aceleracao: %.1fx em %d remocoes%n", (double) varredura / indices, removidos);
+
+        facade.zerarSistema();
+        Bancada.apagar(dir);
+    }
+
+    /**
+     * Percorre todos os usuários como a remoção antiga: recados com o prefixo do login e os
+     * sete conjuntos de relacionamento.
+     *
+     * @return Quantos usuários têm algum vínculo com o login, para que o JIT não descarte o laço.
+     */
+    private static long varrer(Map<String, Usuario> usuarios, String login) {
+        String prefixo = login + ":";
+        long vinculados = 0;
+        for (Usuario u : usuarios.values()) {
+            if (u.getRecadosRecebidos().stream().anyMatch(r -> r != null && r.startsWith(prefixo))
+                    || u.getAmigos().contains(login) || u.getFas().contains(login) || u.getIdolos().contains(login)
+                    || u.getPaqueras().contains(login) || u.getInimigos().contains(login)
+                    || u.getConvitesEnviados().contains(login) || u.getConvitesRecebidos().contains(login)) {
+                vinculados++;
+            }
+        }
+        return vinculados;
+    }
+
+    /**
+     * Sorteia, para cada usuário, {@code relacoes} vínculos alternando entre amizade, ídolo,
+     * paquera, inimigo e recado.
+     */
+    private static void relacionar(List<Usuario> usuarios, int relacoes, Random random) {
+        for (Usuario u : usuarios) {
+            for (int j = 0; j < relacoes; j++) {
+                Usuario outro = usuarios.get(random.nextInt(usuarios.size()));
+                if (outro == u) continue;
+                switch (j % 5) {
+                    case 0:
+                        u.getAmigos().add(outro.getLogin());
+                        outro.getAmigos().add(u.getLogin());
+                        break;
+                    case 1:
+                        u.getIdolos().add(outro.getLogin());
+                        outro.getFas().add(u.getLogin());
+                        break;
+                    case 2:
+                        u.getPaqueras().add(outro.getLogin());
+                        break;
+                    case 3:
+                        u.getInimigos().add(outro.getLogin());
+                        break;
+                    default:
+                        outro.getRecadosRecebidos().add(u.getLogin() + ":recado " + j);
+                        break;
+                }
+            }
+        }
+    }
+}
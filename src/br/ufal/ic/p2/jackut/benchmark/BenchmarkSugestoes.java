@@ -0,0 +1,111 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Mede as sugestões de amizade num grafo de lei de potência, gerado por ligação
+ * preferencial: cada usuário novo faz amizade com {@code ligacoes} usuários sorteados com
+ * probabilidade proporcional ao número de amigos, o que produz alguns usuários com milhares
+ * de amigos e a maioria com poucos.
+ *
+ * <p>Compara a consulta pelo índice de amigos em comum com o cálculo a cada pedido,
+ * percorrendo os amigos dos amigos, e mede o custo de montar o índice e de mantê-lo quando
+ * uma amizade nova é aceita. O journal roda no modo {@code ASSINCRONO}.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.BenchmarkSugestoes [usuarios] [ligacoes] [consultas]}</p>
+ */
+public class BenchmarkSugestoes {
+
+    public static void main(String[] args) throws Exception {
+        int totalUsuarios = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int ligacoes = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int consultas = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        System.setProperty("jackut.journal.modo", "ASSINCRONO");
+
+        File dir = Files.createTempDirectory("jackut-sugestoes").toFile();
+        DadosSinteticos.gerar(dir, totalUsuarios, ligacoes, 0, 0, 0, 42);
+        Facade facade = new Facade(dir);
+        Map<String, Usuario> usuarios = facade.getUsuarios();
+        int maiorGrau = 0;
+        for (Usuario u : usuarios.values()) maiorGrau = Math.max(maiorGrau, u.getAmigos().size());
+        System.out.printf("%d usuarios, %d amizades por usuario novo, maior grau %d%n",
+                totalUsuarios, ligacoes, maiorGrau);
+
+        Random random = new Random(11);
+        String[] sessoes = new String[consultas];
+        String[] logins = new String[consultas];
+        for (int i = 0; i < consultas; i++) {
+            logins[i] = "usuario" + random.nextInt(totalUsuarios);
+            sessoes[i] = facade.abrirSessao(logins[i], "s");
+        }
+
+        long inicio = System.nanoTime();
+        facade.getSugestoesAmizade(sessoes[0], 10);
+        long montagem = System.nanoTime() - inicio;
+
+        long indice = Long.MAX_VALUE;
+        long varredura = Long.MAX_VALUE;
+        for (int rodada = 0; rodada < 3; rodada++) {
+            inicio = System.nanoTime();
+            for (String sessao : sessoes) facade.getSugestoesAmizade(sessao, 10);
+            indice = Math.min(indice, System.nanoTime() - inicio);
+
+            inicio = System.nanoTime();
+            for (String login : logins) sugerirPorVarredura(usuarios, usuarios.get(login), 10);
+            varredura = Math.min(varredura, System.nanoTime() - inicio);
+        }
+
+        int novas = 0;
+        long manutencao = 0;
+        for (int i = 0; i + 1 < consultas; i += 2) {
+            if (logins[i].equals(logins[i + 1]) || usuarios.get(logins[i]).getAmigos().contains(logins[i + 1])) continue;
+            facade.adicionarAmigo(sessoes[i], logins[i + 1]);
+            inicio = System.nanoTime();
+            facade.adicionarAmigo(sessoes[i + 1], logins[i]);
+            manutencao += System.nanoTime() - inicio;
+            novas++;
+        }
+
+        System.out.printf("montagem do indice:           %10.1f ms%n", montagem / 1e6);
+        System.out.printf("sugestao pelo indice:         %10.3f ms por consulta%n", indice / 1e6 / consultas);
+        System.out.printf("sugestao por varredura:       %10.3f ms por consulta%n", varredura / 1e6 / consultas);
+        System.out.printf("aceite de amizade com indice: %10.3f ms (%d amizades novas)%n",
+                manutencao / 1e6 / Math.max(1, novas), novas);
+
+        facade.zerarSistema();
+        Bancada.apagar(dir);
+    }
+
+    /**
+     * Calcula as sugestões sem índice: conta os amigos em comum percorrendo os amigos de
+     * cada amigo do usuário.
+     */
+    private static List<String> sugerirPorVarredura(Map<String, Usuario> usuarios, Usuario usuario, int quantidade) {
+        Map<String, Integer> comuns = new HashMap<>();
+        for (String amigo : usuario.getAmigos()) {
+            for (String candidato : usuarios.get(amigo).getAmigos()) {
+                comuns.merge(candidato, 1, Integer::sum);
+            }
+        }
+        List<String> candidatos = new ArrayList<>();
+        for (String candidato : comuns.keySet()) {
+            if (candidato.equals(usuario.getLogin()) || usuario.getAmigos().contains(candidato)
+                    || usuario.getInimigos().contains(candidato) || usuario.getConvitesEnviados().contains(candidato)) {
+                continue;
+            }
+            candidatos.add(candidato);
+        }
+        candidatos.sort((a, b) -> comuns.get(a).equals(comuns.get(b))
+                ? a.compareTo(b) : comuns.get(b) - comuns.get(a));
+        return candidatos.subList(0, Math.min(quantidade, candidatos.size()));
+    }
+}
@@ -0,0 +1,186 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Comunidade;
+import br.ufal.ic.p2.jackut.models.SnapshotBinario;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Gera bancos sintéticos para os benchmarks, gravados direto como {@code snapshot.bin} para
+ * que bancos de milhões de usuários não precisem passar pela Facade.
+ *
+ * <p>As amizades seguem uma ligação preferencial: cada usuário novo liga-se a
+ * {@code ligacoes} usuários sorteados na proporção de quantos amigos já têm, o que dá a
+ * distribuição de graus em lei de potência das redes sociais. O tamanho da comunidade de
+ * posição {@code k} é {@code maiorComunidade / (k + 1)^expoente}, uma lei de Zipf; com
+ * expoente zero todas têm {@code maiorComunidade} membros. Os membros são sorteados entre
+ * todos os usuários, e o primeiro é o dono. Os logins são {@code usuario<i>}, as senhas
+ * {@code s} e as comunidades {@code comunidade<k>}.</p>
+ */
+public class DadosSinteticos {
+    private final int usuarios;
+    private final int[] tamanhos;
+    private final int[] donos;
+    private final int[][] participacoes;
+    private final long amizades;
+
+    private DadosSinteticos(int usuarios, int[] tamanhos, int[] donos, int[][] participacoes, long amizades) {
+        this.usuarios = usuarios;
+        this.tamanhos = tamanhos;
+        this.donos = donos;
+        this.participacoes = participacoes;
+        this.amizades = amizades;
+    }
+
+    /**
+     * Gera o banco e grava o snapshot em {@code diretorio}, que a Facade carrega depois.
+     *
+     * @param diretorio O diretório de dados do banco.
+     * @param usuarios Quantos usuários.
+     * @param ligacoes Quantos amigos cada usuário novo procura.
+     * @param comunidades Quantas comunidades.
+     * @param maiorComunidade O número de membros da maior comunidade.
+     * @param expoente O expoente da lei de Zipf dos tamanhos das comunidades.
+     * @param semente A semente dos sorteios, para que o banco seja reproduzível.
+     * @return A descrição do banco gerado.
+     * @throws IOException Se o snapshot não puder ser gravado.
+     */
+    public static DadosSinteticos gerar(File diretorio, int usuarios, int ligacoes, int comunidades,
+                                        int maiorComunidade, double expoente, long semente) throws IOException {
+        Random random = new Random(semente);
+        List<Usuario> todos = usuarios(usuarios);
+        long amizades = ligarAmigos(todos, ligacoes, random);
+
+        int[] tamanhos = new int[comunidades];
+        int[] donos = new int[comunidades];
+        int[] porUsuario = new int[usuarios];
+        List<int[]> membros = new ArrayList<>(comunidades);
+        List<Comunidade> comunidadesGeradas = new ArrayList<>(comunidades);
+        for (int k = 0; k < comunidades; k++) {
+            int tamanho = (int) Math.max(1, Math.min(usuarios, Math.round(maiorComunidade / Math.pow(k + 1, expoente))));
+            int dono = random.nextInt(usuarios);
+            Comunidade c = new Comunidade(comunidade(k), "Comunidade " + k, login(dono), null);
+            // o construtor já inclui o dono entre os membros
+            int[] escolhidos = new int[tamanho];
+            int n = 0;
+            for (int m = dono; n < tamanho; m = random.nextInt(usuarios)) {
+                if (m != dono || n > 0) {
+                    if (!c.getMembros().add(login(m))) continue;
+                }
+                todos.get(m).getComunidades().add(comunidade(k));
+                escolhidos[n++] = m;
+                porUsuario[m]++;
+            }
+            tamanhos[k] = tamanho;
+            donos[k] = dono;
+            membros.add(escolhidos);
+            comunidadesGeradas.add(c);
+        }
+        SnapshotBinario.gravar(new File(diretorio, "snapshot.bin"), todos, comunidadesGeradas);
+
+        int[][] participacoes = new int[usuarios][];
+        for (int i = 0; i < usuarios; i++) participacoes[i] = new int[porUsuario[i]];
+        for (int k = 0; k < comunidades; k++) {
+            for (int m : membros.get(k)) participacoes[m][--porUsuario[m]] = k;
+        }
+        return new DadosSinteticos(usuarios, tamanhos, donos, participacoes, amizades);
+    }
+
+    /**
+     * Cria usuários sem relacionamentos, com os logins e a senha dos bancos gerados, para os
+     * benchmarks que montam o próprio banco.
+     *
+     * @param quantidade Quantos usuários.
+     * @return Os usuários, na ordem dos números.
+     */
+    public static List<Usuario> usuarios(int quantidade) {
+        List<Usuario> usuarios = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) usuarios.add(new Usuario(login(i), "s", "Usuario " + i));
+        return usuarios;
+    }
+
+    /**
+     * Liga os usuários por ligação preferencial: cada um, na ordem da lista, procura
+     * {@code ligacoes} amigos entre os anteriores, sorteados na proporção de quantos amigos
+     * já têm.
+     *
+     * @param usuarios Os usuários, ainda sem amigos.
+     * @param ligacoes Quantos amigos cada usuário procura.
+     * @param random O gerador dos sorteios.
+     * @return Quantas amizades foram criadas.
+     */
+    public static long ligarAmigos(List<Usuario> usuarios, int ligacoes, Random random) {
+        // cada ponta de amizade entra uma vez no vetor, então sortear dele favorece quem tem mais amigos
+        int[] pontas = new int[16];
+        int totalPontas = 0;
+        for (int i = 0; i < usuarios.size(); i++) {
+            Usuario u = usuarios.get(i);
+            for (int j = 0; j < Math.min(i, ligacoes); j++) {
+                int outro = totalPontas == 0 ? random.nextInt(i) : pontas[random.nextInt(totalPontas)];
+                Usuario amigo = usuarios.get(outro);
+                if (outro == i || !u.getAmigos().add(amigo.getLogin())) continue;
+                amigo.getAmigos().add(u.getLogin());
+                if (totalPontas + 2 > pontas.length) pontas = Arrays.copyOf(pontas, pontas.length * 2);
+                pontas[totalPontas++] = i;
+                pontas[totalPontas++] = outro;
+            }
+        }
+        return totalPontas / 2;
+    }
+
+    /**
+     * Cria comunidades de dono sorteado com {@code membros} sorteios de membro cada uma, todos
+     * os usuários com a mesma chance. Sorteios repetidos não contam de novo, então algumas
+     * ficam um pouco menores. Cada comunidade é incluída nas dos seus membros.
+     *
+     * @param usuarios Os usuários.
+     * @param quantidade Quantas comunidades.
+     * @param membros Quantos membros cada uma sorteia, contando o dono.
+     * @param random O gerador dos sorteios.
+     * @return As comunidades, ainda não gravadas.
+     */
+    public static List<Comunidade> comunidadesUniformes(List<Usuario> usuarios, int quantidade, int membros,
+                                                        Random random) {
+        List<Comunidade> comunidades = new ArrayList<>(quantidade);
+        for (int k = 0; k < quantidade; k++) {
+            Usuario dono = usuarios.get(random.nextInt(usuarios.size()));
+            Comunidade c = new Comunidade(comunidade(k), "Comunidade " + k, dono.getLogin(), null);
+            dono.adicionarComunidade(c.getNome());
+            for (int j = 1; j < membros; j++) {
+                Usuario membro = usuarios.get(random.nextInt(usuarios.size()));
+                c.getMembros().add(membro.getLogin());
+                membro.adicionarComunidade(c.getNome());
+            }
+            comunidades.add(c);
+        }
+        return comunidades;
+    }
+
+    public static String login(int usuario) { return "usuario" + usuario; }
+
+    public static String comunidade(int k) { return "comunidade" + k; }
+
+    public int getUsuarios() { return usuarios; }
+
+    public int getComunidades() { return tamanhos.length; }
+
+    public long getAmizades() { return amizades; }
+
+    public int getTamanho(int comunidade) { return tamanhos[comunidade]; }
+
+    public int getDono(int comunidade) { return donos[comunidade]; }
+
+    /**
+     * Recupera as comunidades de que o usuário participa no banco gerado.
+     *
+     * @param usuario O número do usuário.
+     * @return Os números das comunidades, possivelmente nenhum.
+     */
+    public int[] getComunidadesDe(int usuario) { return participacoes[usuario]; }
+}
@@ -0,0 +1,161 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import br.ufal.ic.p2.jackut.models.Facade;
+import br.ufal.ic.p2.jackut.models.Usuario;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Teste de estresse da Facade com várias sessões concorrentes. Cada thread faz operações
+ * aleatórias entre pares de usuários (amizade, recado, paquera, ídolo, leitura) e, ao
+ * final, as invariantes bidirecionais são conferidas:
+ * <ul>
+ *     <li>amizade é simétrica e não convive com convite pendente entre o mesmo par;</li>
+ *     <li>todo convite enviado aparece como recebido do outro lado;</li>
+ *     <li>todo ídolo tem o usuário entre os fãs;</li>
+ *     <li>nenhum recado se perde: os lidos mais os que estão na fila somam os enviados
+ *     mais dois avisos por paquera mútua.</li>
+ * </ul>
+ * Também imprime a vazão para cada quantidade de threads.
+ *
+ * <p>O journal roda no modo {@code ASSINCRONO} para medir a Facade e não o fsync, a menos
+ * que {@code jackut.journal.modo} seja informado.</p>
+ *
+ * <p>Uso: {@code java br.ufal.ic.p2.jackut.benchmark.EstresseConcorrencia [usuarios] [operacoesPorThread] [maxThreads]}</p>
+ */
+public class EstresseConcorrencia {
+
+    public static void main(String[] args) throws Exception {
+        int totalUsuarios = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int operacoes = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+                : Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+        if (System.getProperty("jackut.journal.modo") == null) {
+            System.setProperty("jackut.journal.modo", "ASSINCRONO");
+        }
+
+        boolean ok = true;
+        System.out.printf("%-8s %12s %10s%n", "threads", "ops/s", "invariantes");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            ok &= rodar(totalUsuarios, operacoes, threads);
+        }
+        if (!ok) System.exit(1);
+    }
+
+    private static boolean rodar(int totalUsuarios, int operacoes, int numeroThreads) throws Exception {
+        File dir = Files.createTempDirectory("jackut-estresse").toFile();
+        Facade facade = new Facade(dir);
+        String[] sessoes = new String[totalUsuarios];
+        for (int i = 0; i < totalUsuarios; i++) {
+            facade.criarUsuario("u" + i, "s", "Usuario " + i);
+            sessoes[i] = facade.abrirSessao("u" + i, "s");
+        }
+
+        AtomicLong enviados = new AtomicLong();
+        AtomicLong lidos = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numeroThreads; t++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int k = 0; k < operacoes; k++) {
+                    int a = random.nextInt(totalUsuarios);
+                    int b = random.nextInt(totalUsuarios);
+                    try {
+                        switch (random.nextInt(6)) {
+                            case 0:
+                            case 1:
+                                facade.adicionarAmigo(sessoes[a], "u" + b);
+                                break;
+                            case 2:
+                                facade.enviarRecado(sessoes[a], "u" + b, "r");
+                                enviados.incrementAndGet();
+                                break;
+                            case 3:
+                                facade.adicionarPaquera(sessoes[a], "u" + b);
+                                break;
+                            case 4:
+                                facade.adicionarIdolo(sessoes[a], "u" + b);
+                                break;
+                            default:
+                                facade.lerRecado(sessoes[a]);
+                                lidos.incrementAndGet();
+                                break;
+                        }
+                    } catch (RuntimeException e) {
+                        // validações da Facade (já é amigo, sem recados...) fazem parte da carga
+                    }
+                }
+            }));
+        }
+
+        long inicio = System.nanoTime();
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        long duracao = System.nanoTime() - inicio;
+
+        List<String> violacoes = verificar(facade.getUsuarios(), enviados.get(), lidos.get());
+        System.out.printf("%-8d %12.0f %10s%n", numeroThreads,
+                (double) operacoes * numeroThreads / (duracao / 1e9), violacoes.isEmpty() ? "ok" : "FALHOU");
+        for (String v : violacoes.subList(0, Math.min(10, violacoes.size()))) {
+            System.out.println("  " + v);
+        }
+
+        facade.zerarSistema();
+        Bancada.apagar(dir);
+        return violacoes.isEmpty();
+    }
+
+    private static List<String> verificar(Map<String, Usuario> usuarios, long enviados, long lidos) {
+        List<String> violacoes = new ArrayList<>();
+        long naFila = 0;
+        long paquerasMutuas = 0;
+        for (Usuario u : usuarios.values()) {
+            String login = u.getLogin();
+            for (String a : u.getAmigos()) {
+                if (!usuarios.get(a).getAmigos().contains(login)) {
+                    violacoes.add("amizade assimetrica: " + login + " -> " + a);
+                }
+                if (u.getConvitesEnviados().contains(a) || u.getConvitesRecebidos().contains(a)) {
+                    violacoes.add("amigo com convite pendente: " + login + " / " + a);
+                }
+            }
+            for (String c : u.getConvitesEnviados()) {
+                if (!usuarios.get(c).getConvitesRecebidos().contains(login)) {
+                    violacoes.add("convite sem recebimento: " + login + " -> " + c);
+                }
+            }
+            for (String c : u.getConvitesRecebidos()) {
+                if (!usuarios.get(c).getConvitesEnviados().contains(login)) {
+                    violacoes.add("convite sem envio: " + c + " -> " + login);
+                }
+            }
+            for (String i : u.getIdolos()) {
+                if (!usuarios.get(i).getFas().contains(login)) {
+                    violacoes.add("idolo sem fa: " + login + " -> " + i);
+                }
+            }
+            for (String f : u.getFas()) {
+                if (!usuarios.get(f).getIdolos().contains(login)) {
+                    violacoes.add("fa sem idolo: " + f + " -> " + login);
+                }
+            }
+            for (String p : u.getPaqueras()) {
+                if (usuarios.get(p).getPaqueras().contains(login)) paquerasMutuas++;
+            }
+            naFila += u.getRecadosRecebidos().size();
+        }
+
+        // cada paquera mútua foi contada dos dois lados e gerou um aviso para cada um
+        long esperados = enviados + paquerasMutuas;
+        if (naFila + lidos != esperados) {
+            violacoes.add("recados: " + lidos + " lidos + " + naFila + " na fila != " + esperados + " esperados");
+        }
+        return violacoes;
+    }
+}
@@ -0,0 +1,158 @@
+package br.ufal.ic.p2.jackut.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vocabulário de comandos lido dos scripts do EasyAccept ({@code tests/us*.txt}): quais
+ * comandos da Facade os scripts usam, com que parâmetros, com que frequência e com que
+ * textos, para que o gerador de carga exercite o sistema com as mesmas operações.
+ *
+ * <p>Cada linha de comando tem a forma {@code [expect|expectError <valor>] [var=]comando
+ * parametro=valor ...}, com valores entre aspas quando têm espaços. Comentários
+ * ({@code #}) e os comandos de ciclo de vida ({@code zerarSistema}, {@code encerrarSistema},
+ * {@code quit}) ficam de fora. Dos valores, só os literais (não {@code ${var}}) são
+ * guardados, por nome de parâmetro.</p>
+ */
+public class Vocabulario {
+    private static final List<String> CICLO_DE_VIDA = Arrays.asList("zerarSistema", "encerrarSistema", "quit");
+
+    private final Map<String, Comando> comandos = new LinkedHashMap<>();
+    private final Map<String, List<String>> literais = new LinkedHashMap<>();
+
+    /**
+     * Um comando do vocabulário, com a assinatura da sua ocorrência mais completa: os
+     * scripts às vezes omitem parâmetros para testar erros de validação.
+     */
+    public static class Comando {
+        private final String nome;
+        private List<String> parametros;
+        private int ocorrencias;
+
+        Comando(String nome, List<String> parametros) {
+            this.nome = nome;
+            this.parametros = parametros;
+        }
+
+        public String getNome() { return nome; }
+
+        public List<String> getParametros() { return parametros; }
+
+        /**
+         * Recupera quantas vezes o comando aparece nos scripts.
+         *
+         * @return As ocorrências, com qualquer lista de parâmetros.
+         */
+        public int getOcorrencias() { return ocorrencias; }
+
+        /**
+         * Informa se o comando só consulta o estado: os que começam com {@code get},
+         * {@code eh} ou {@code buscar}. Os de leitura de recados e mensagens consomem a
+         * fila e contam como escrita.
+         *
+         * @return true se o comando é de leitura.
+         */
+        public boolean isLeitura() {
+            return nome.startsWith("get") || nome.startsWith("eh") || nome.startsWith("buscar");
+        }
+    }
+
+    /**
+     * Lê todos os scripts {@code us*.txt} do diretório.
+     *
+     * @param diretorio O diretório dos testes de aceitação.
+     * @return O vocabulário dos scripts.
+     * @throws IOException Se algum script não puder ser lido.
+     */
+    public static Vocabulario ler(File diretorio) throws IOException {
+        File[] scripts = diretorio.listFiles((d, nome) -> nome.startsWith("us") && nome.endsWith(".txt"));
+        if (scripts == null || scripts.length == 0) {
+            throw new IOException("Nenhum script us*.txt em " + diretorio);
+        }
+        Arrays.sort(scripts);
+
+        Vocabulario vocabulario = new Vocabulario();
+        for (File script : scripts) {
+            for (String linha : Files.readAllLines(script.toPath(), StandardCharsets.ISO_8859_1)) {
+                vocabulario.interpretar(linha);
+            }
+        }
+        return vocabulario;
+    }
+
+    private void interpretar(String linha) {
+        List<String> tokens = separar(linha);
+        if (tokens.isEmpty() || tokens.get(0).startsWith("#")) return;
+        if (tokens.get(0).startsWith("expect")) {
+            if (tokens.size() < 3) return;
+            tokens = tokens.subList(2, tokens.size());
+        }
+
+        String nome = tokens.get(0);
+        int atribuicao = nome.indexOf('=');
+        if (atribuicao >= 0) nome = nome.substring(atribuicao + 1);
+        if (!nome.matches("[A-Za-z]+") || CICLO_DE_VIDA.contains(nome)) return;
+
+        List<String> parametros = new ArrayList<>();
+        for (String token : tokens.subList(1, tokens.size())) {
+            int igual = token.indexOf('=');
+            if (igual <= 0) continue;
+            String parametro = token.substring(0, igual);
+            String valor = token.substring(igual + 1);
+            parametros.add(parametro);
+            if (!valor.isEmpty() && !valor.contains("${")) {
+                List<String> valores = literais.computeIfAbsent(parametro, p -> new ArrayList<>());
+                if (!valores.contains(valor)) valores.add(valor);
+            }
+        }
+        Comando comando = comandos.computeIfAbsent(nome, n -> new Comando(n, parametros));
+        if (parametros.size() > comando.parametros.size()) comando.parametros = parametros;
+        comando.ocorrencias++;
+    }
+
+    /**
+     * Separa a linha em tokens por espaços, mantendo juntos os trechos entre aspas, que
+     * perdem as aspas.
+     */
+    private static List<String> separar(String linha) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder atual = new StringBuilder();
+        boolean aspas = false;
+        boolean temToken = false;
+        for (char c : linha.trim().toCharArray()) {
+            if (c == '"') {
+                aspas = !aspas;
+                temToken = true;
+            } else if (Character.isWhitespace(c) && !aspas) {
+                if (temToken) tokens.add(atual.toString());
+                atual.setLength(0);
+                temToken = false;
+            } else {
+                atual.append(c);
+                temToken = true;
+            }
+        }
+        if (temToken) tokens.add(atual.toString());
+        return tokens;
+    }
+
+    public Collection<Comando> getComandos() { return comandos.values(); }
+
+    /**
+     * Recupera os valores literais que os scripts passam a um parâmetro.
+     *
+     * @param parametro O nome do parâmetro, como {@code atributo} ou {@code mensagem}.
+     * @return Os valores distintos, na ordem em que aparecem; vazio se não houver.
+     */
+    public List<String> getLiterais(String parametro) {
+        return literais.getOrDefault(parametro, new ArrayList<>());
+    }
+}
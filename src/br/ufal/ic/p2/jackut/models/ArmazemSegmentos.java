@@ -0,0 +1,500 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
+/**
+ * Armazenamento segmentado do snapshot do sistema Jackut.
+ *
+ * <p>Usuários são distribuídos entre segmentos pelo hash do login e comunidades pelo hash
+ * do nome. Cada segmento é um arquivo no formato de {@link SnapshotBinario}. Usuários e
+ * comunidades alterados são marcados, e uma gravação regrava apenas os segmentos que
+ * contêm algum registro alterado, em vez do banco inteiro.</p>
+ *
+ * <p>Cada regravação gera um novo arquivo de segmento ({@code segmento-NNNN.G.bin}, em que
+ * G é a geração). O índice ({@code indice.bin}) lista a geração atual de cada segmento e o
+ * LSN do journal incorporado; ele é trocado atomicamente por último e é o ponto de commit
+ * da gravação. Arquivos de gerações antigas são apagados depois disso.</p>
+ *
+ * <p>A gravação é dividida em duas fases para poder rodar fora da thread que altera os dados:
+ * {@link #capturar(long)} fixa, em memória e sem tocar o disco, quais registros compõem o
+ * snapshot, e {@link #gravar(Captura)} grava esse retrato. Enquanto a captura está pendente,
+ * {@link #alterado(Usuario)} deve ser chamado <em>antes</em> de alterar um registro: se ele
+ * pertence a um segmento ainda não copiado, uma cópia é preservada para o snapshot
+ * (copy-on-write), de modo que os arquivos refletem exatamente o estado no LSN capturado.</p>
+ *
+ * <p>{@link #adicionar(Usuario)}, {@link #remover(Usuario)} e {@link #alterado(Usuario)} podem
+ * ser chamados por várias threads ao mesmo tempo, desde que cada registro seja alterado por
+ * uma thread de cada vez; {@link #capturar(long)} e {@link #apagar()} exigem que nenhuma
+ * alteração esteja em andamento.</p>
+ */
+public class ArmazemSegmentos {
+    private static final int MAGICO = 0x4A4B4958;
+    private static final short VERSAO = 1;
+
+    private final File diretorio;
+    private final File arquivoIndice;
+    private final int quantidadePadrao;
+    private int quantidade;
+    private long[] geracoes;
+    private int[] totalUsuarios;
+    private int[] totalComunidades;
+    private List<Map<String, Usuario>> usuarios;
+    private List<Map<String, Comunidade>> comunidades;
+    private AtomicIntegerArray sujos;
+    private final Queue<Usuario> usuariosAlterados = new ConcurrentLinkedQueue<>();
+    private final Queue<Comunidade> comunidadesAlteradas = new ConcurrentLinkedQueue<>();
+    private volatile Captura captura;
+    private int blocosCarregados;
+
+    /**
+     * Cria o armazenamento sobre um diretório. A quantidade de segmentos só é usada ao criar
+     * um banco novo; um banco existente mantém a quantidade registrada no índice.
+     *
+     * @param diretorio O diretório dos segmentos.
+     * @param quantidadePadrao A quantidade de segmentos de um banco novo.
+     */
+    public ArmazemSegmentos(File diretorio, int quantidadePadrao) {
+        this.diretorio = diretorio;
+        this.arquivoIndice = new File(diretorio, "indice.bin");
+        this.quantidadePadrao = Math.max(1, quantidadePadrao);
+        iniciar(this.quantidadePadrao);
+    }
+
+    private void iniciar(int quantidade) {
+        this.quantidade = quantidade;
+        this.geracoes = new long[quantidade];
+        this.totalUsuarios = new int[quantidade];
+        this.totalComunidades = new int[quantidade];
+        this.usuarios = new ArrayList<>(quantidade);
+        this.comunidades = new ArrayList<>(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            usuarios.add(new ConcurrentHashMap<>());
+            comunidades.add(new ConcurrentHashMap<>());
+        }
+        this.sujos = new AtomicIntegerArray(quantidade);
+        usuariosAlterados.clear();
+        comunidadesAlteradas.clear();
+    }
+
+    /**
+     * Verifica se já existe um banco segmentado gravado no diretório.
+     *
+     * @return true se o índice existe.
+     */
+    public boolean existe() {
+        return arquivoIndice.exists();
+    }
+
+    public int getQuantidade() { return quantidade; }
+
+    public int getBlocosCarregados() { return blocosCarregados; }
+
+    /**
+     * Recupera a quantidade de segmentos com alterações ainda não gravadas.
+     *
+     * @return Os segmentos que a próxima gravação vai regravar.
+     */
+    public int getSegmentosSujos() {
+        int total = 0;
+        for (int i = 0; i < quantidade; i++) total += sujos.get(i);
+        return total;
+    }
+
+    private int segmento(String chave) {
+        return Math.floorMod(chave.hashCode() * 0x9E3779B9, quantidade);
+    }
+
+    /**
+     * Carrega todos os segmentos em paralelo para os mapas da Facade e valida os membros
+     * das comunidades numa única passada.
+     *
+     * @param destinoUsuarios O mapa de usuários a ser preenchido.
+     * @param destinoComunidades O mapa de comunidades a ser preenchido.
+     * @param facade A Facade dona das comunidades.
+     * @param paralelismo Quantidade de threads usadas na carga.
+     * @return O LSN do journal já incorporado aos segmentos.
+     * @throws IOException Se o índice ou algum segmento não puder ser lido.
+     */
+    public long carregar(Map<String, Usuario> destinoUsuarios, Map<String, Comunidade> destinoComunidades,
+                         Facade facade, int paralelismo) throws IOException {
+        EventoCarga evento = EventoCarga.iniciar(diretorio.getName());
+        long lsn;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivoIndice)))) {
+            if (in.readInt() != MAGICO || in.readShort() != VERSAO) {
+                throw new IOException("Índice de segmentos inválido: " + arquivoIndice);
+            }
+            lsn = in.readLong();
+            iniciar(in.readInt());
+            for (int i = 0; i < quantidade; i++) {
+                geracoes[i] = in.readLong();
+                totalUsuarios[i] = in.readInt();
+                totalComunidades[i] = in.readInt();
+            }
+        }
+        apagarNaoReferenciados();
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, paralelismo));
+        long bytes = arquivoIndice.length();
+        try {
+            List<ForkJoinTask<SnapshotBinario.Conteudo>> tarefas = new ArrayList<>();
+            for (int i = 0; i < quantidade; i++) {
+                if (geracoes[i] == 0) {
+                    tarefas.add(null);
+                    continue;
+                }
+                File arquivo = arquivoSegmento(i, geracoes[i]);
+                bytes += arquivo.length();
+                tarefas.add(pool.submit(() -> {
+                    try {
+                        return SnapshotBinario.ler(arquivo, facade, pool);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+
+            blocosCarregados = 0;
+            for (int i = 0; i < quantidade; i++) {
+                if (tarefas.get(i) == null) continue;
+                SnapshotBinario.Conteudo conteudo;
+                try {
+                    conteudo = tarefas.get(i).join();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                for (Usuario u : conteudo.usuarios) {
+                    usuarios.get(i).put(u.getLogin(), u);
+                    destinoUsuarios.put(u.getLogin(), u);
+                }
+                for (Comunidade c : conteudo.comunidades) {
+                    comunidades.get(i).put(c.getNome(), c);
+                    destinoComunidades.put(c.getNome(), c);
+                }
+                blocosCarregados += conteudo.blocos;
+            }
+            SnapshotBinario.validarMembros(pool, destinoComunidades.values(), destinoUsuarios);
+        } finally {
+            pool.shutdown();
+        }
+        evento.concluir(destinoUsuarios.size() + destinoComunidades.size(), bytes);
+        return lsn;
+    }
+
+    /**
+     * Registra um usuário novo no seu segmento.
+     *
+     * @param u O usuário criado.
+     */
+    public void adicionar(Usuario u) {
+        usuarios.get(segmento(u.getLogin())).put(u.getLogin(), u);
+        alterado(u);
+    }
+
+    /**
+     * Registra uma comunidade nova no seu segmento.
+     *
+     * @param c A comunidade criada.
+     */
+    public void adicionar(Comunidade c) {
+        comunidades.get(segmento(c.getNome())).put(c.getNome(), c);
+        alterado(c);
+    }
+
+    public void remover(Usuario u) {
+        int s = segmento(u.getLogin());
+        usuarios.get(s).remove(u.getLogin());
+        sujos.set(s, 1);
+    }
+
+    public void remover(Comunidade c) {
+        int s = segmento(c.getNome());
+        comunidades.get(s).remove(c.getNome());
+        sujos.set(s, 1);
+    }
+
+    /**
+     * Marca um usuário como alterado, para que o segmento dele seja regravado. Deve ser
+     * chamado antes da alteração, para que uma captura pendente preserve o estado anterior.
+     * Uma aresta entre dois usuários altera os dois, já que o nó de cada um guarda também as
+     * arestas recebidas: as duas pontas precisam ser marcadas antes de a aresta mudar.
+     *
+     * @param u O usuário que vai ser alterado.
+     */
+    public void alterado(Usuario u) {
+        int s = segmento(u.getLogin());
+        Captura c = captura;
+        if (c != null) c.preservar(u, s, Usuario::copia);
+        if (u.marcarAlterado()) {
+            usuariosAlterados.add(u);
+            sujos.set(s, 1);
+        }
+    }
+
+    /**
+     * Marca uma comunidade como alterada, para que o segmento dela seja regravado. Deve ser
+     * chamado antes da alteração, para que uma captura pendente preserve o estado anterior.
+     *
+     * @param c A comunidade que vai ser alterada.
+     */
+    public void alterado(Comunidade c) {
+        int s = segmento(c.getNome());
+        Captura atual = captura;
+        if (atual != null) atual.preservar(c, s, Comunidade::copia);
+        if (c.marcarAlterado()) {
+            comunidadesAlteradas.add(c);
+            sujos.set(s, 1);
+        }
+    }
+
+    /**
+     * Fixa o conteúdo dos segmentos sujos como o próximo snapshot, sem gravar nada. As
+     * marcas de alteração são zeradas, de forma que alterações seguintes já contam para o
+     * snapshot posterior. Só pode haver uma captura pendente por vez.
+     *
+     * @param lsn O LSN do último registro do journal refletido no estado em memória.
+     * @return A captura, a ser gravada com {@link #gravar(Captura)}.
+     */
+    public synchronized Captura capturar(long lsn) {
+        if (captura != null) {
+            throw new IllegalStateException("Já existe um snapshot em andamento.");
+        }
+        BitSet marcados = new BitSet(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            if (sujos.getAndSet(i, 0) != 0) marcados.set(i);
+        }
+        Captura nova = new Captura(lsn, marcados);
+        for (int j = 0; j < nova.segmentos.length; j++) {
+            int i = nova.segmentos[j];
+            nova.usuarios.add(new ArrayList<>(usuarios.get(i).values()));
+            nova.comunidades.add(new ArrayList<>(comunidades.get(i).values()));
+        }
+
+        for (Usuario u : usuariosAlterados) u.limparAlterado();
+        for (Comunidade c : comunidadesAlteradas) c.limparAlterado();
+        usuariosAlterados.clear();
+        comunidadesAlteradas.clear();
+        captura = nova;
+        return nova;
+    }
+
+    /**
+     * Desiste de gravar uma captura: os segmentos dela voltam a ficar sujos e entram no
+     * próximo snapshot.
+     *
+     * @param c A captura devolvida por {@link #capturar(long)}.
+     */
+    public synchronized void abandonar(Captura c) {
+        for (int i : c.segmentos) sujos.set(i, 1);
+        if (captura == c) captura = null;
+    }
+
+    /**
+     * Captura e grava imediatamente os segmentos sujos.
+     *
+     * @param lsn O LSN do último registro do journal refletido no estado em memória.
+     * @return A quantidade de segmentos regravados.
+     * @throws IOException Se a gravação falhar; nesse caso o índice anterior continua válido.
+     */
+    public int gravar(long lsn) throws IOException {
+        return gravar(capturar(lsn));
+    }
+
+    /**
+     * Grava os segmentos de uma captura e troca o índice. Pode rodar em outra thread
+     * enquanto os registros continuam sendo alterados. Se falhar, os segmentos da captura
+     * voltam a ser marcados como sujos para a próxima tentativa.
+     *
+     * @param c A captura devolvida por {@link #capturar(long)}.
+     * @return A quantidade de segmentos regravados.
+     * @throws IOException Se a gravação falhar; nesse caso o índice anterior continua válido.
+     */
+    public int gravar(Captura c) throws IOException {
+        try {
+            diretorio.mkdirs();
+            long[] novas = geracoes.clone();
+            int[] novosUsuarios = totalUsuarios.clone();
+            int[] novasComunidades = totalComunidades.clone();
+            List<File> antigos = new ArrayList<>();
+            List<File> criados = new ArrayList<>();
+
+            try {
+                for (int j = 0; j < c.segmentos.length; j++) {
+                    int i = c.segmentos[j];
+                    List<Usuario> segmentoUsuarios = new ArrayList<>();
+                    List<Comunidade> segmentoComunidades = new ArrayList<>();
+                    c.congelar(j, segmentoUsuarios, segmentoComunidades);
+
+                    if (geracoes[i] != 0) antigos.add(arquivoSegmento(i, geracoes[i]));
+                    novosUsuarios[i] = segmentoUsuarios.size();
+                    novasComunidades[i] = segmentoComunidades.size();
+                    if (segmentoUsuarios.isEmpty() && segmentoComunidades.isEmpty()) {
+                        novas[i] = 0;
+                    } else {
+                        novas[i] = geracoes[i] + 1;
+                        File arquivo = arquivoSegmento(i, novas[i]);
+                        criados.add(arquivo);
+                        SnapshotBinario.gravar(arquivo, segmentoUsuarios, segmentoComunidades);
+                    }
+                }
+                gravarIndice(novas, novosUsuarios, novasComunidades, c.lsn);
+            } catch (IOException | RuntimeException e) {
+                for (File f : criados) f.delete();
+                for (int i : c.segmentos) sujos.set(i, 1);
+                throw e;
+            }
+
+            geracoes = novas;
+            totalUsuarios = novosUsuarios;
+            totalComunidades = novasComunidades;
+            for (File f : antigos) f.delete();
+            return c.segmentos.length;
+        } finally {
+            synchronized (this) {
+                if (captura == c) captura = null;
+            }
+        }
+    }
+
+    /**
+     * Registra um banco inteiro carregado de outro formato, marcando tudo como alterado.
+     *
+     * @param todosUsuarios Os usuários carregados.
+     * @param todasComunidades As comunidades carregadas.
+     */
+    public synchronized void adicionarTodos(Collection<Usuario> todosUsuarios, Collection<Comunidade> todasComunidades) {
+        for (Usuario u : todosUsuarios) adicionar(u);
+        for (Comunidade c : todasComunidades) adicionar(c);
+    }
+
+    /**
+     * Apaga todos os segmentos e o índice, voltando a um banco vazio.
+     */
+    public synchronized void apagar() {
+        File[] arquivos = diretorio.listFiles();
+        if (arquivos != null) {
+            for (File f : arquivos) f.delete();
+        }
+        iniciar(quantidadePadrao);
+    }
+
+    private void gravarIndice(long[] novas, int[] novosUsuarios, int[] novasComunidades, long lsn)
+            throws IOException {
+        File temporario = new File(diretorio, "indice.bin.tmp");
+        EventoGravacao evento = EventoGravacao.iniciar();
+        try (FileOutputStream arquivo = new FileOutputStream(temporario);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(arquivo))) {
+            out.writeInt(MAGICO);
+            out.writeShort(VERSAO);
+            out.writeLong(lsn);
+            out.writeInt(quantidade);
+            for (int i = 0; i < quantidade; i++) {
+                out.writeLong(novas[i]);
+                out.writeInt(novosUsuarios[i]);
+                out.writeInt(novasComunidades[i]);
+            }
+            out.flush();
+            long inicioFsync = System.nanoTime();
+            arquivo.getFD().sync();
+            evento.concluir(arquivoIndice, out.size(), System.nanoTime() - inicioFsync);
+        }
+        Arquivos.substituir(temporario, arquivoIndice);
+    }
+
+    /**
+     * Apaga arquivos de segmento que o índice não referencia, deixados por uma
+     * gravação interrompida.
+     */
+    private void apagarNaoReferenciados() {
+        Set<String> referenciados = new HashSet<>();
+        for (int i = 0; i < quantidade; i++) {
+            if (geracoes[i] != 0) referenciados.add(arquivoSegmento(i, geracoes[i]).getName());
+        }
+        File[] arquivos = diretorio.listFiles((d, nome) -> nome.startsWith("segmento-"));
+        if (arquivos == null) return;
+        for (File f : arquivos) {
+            if (!referenciados.contains(f.getName())) f.delete();
+        }
+    }
+
+    private File arquivoSegmento(int segmento, long geracao) {
+        return new File(diretorio, String.format("segmento-%04d.%d.bin", segmento, geracao));
+    }
+
+    /**
+     * Retrato dos segmentos sujos num LSN. Guarda as listas de registros de cada segmento
+     * e as cópias dos registros alterados depois da captura, até o segmento ser congelado
+     * pela gravação.
+     *
+     * <p>Cada segmento capturado tem sua própria trava: copiar um registro pode ler recados
+     * transbordados do disco, e uma alteração só espera pela cópia do seu segmento, nunca
+     * pelas dos outros nem pelo congelamento que a gravação está fazendo em outro.</p>
+     */
+    public static class Captura {
+        final long lsn;
+        final int[] segmentos;
+        final List<List<Usuario>> usuarios = new ArrayList<>();
+        final List<List<Comunidade>> comunidades = new ArrayList<>();
+        private final List<Copias> copias;
+
+        Captura(long lsn, BitSet sujos) {
+            this.lsn = lsn;
+            this.segmentos = sujos.stream().toArray();
+            this.copias = new ArrayList<>(segmentos.length);
+            for (int j = 0; j < segmentos.length; j++) copias.add(new Copias());
+        }
+
+        public long getLsn() { return lsn; }
+
+        public int getQuantidadeSegmentos() { return segmentos.length; }
+
+        /**
+         * Preserva o estado atual de um registro prestes a ser alterado, se o segmento
+         * dele ainda não foi congelado pela gravação.
+         */
+        <T> void preservar(T registro, int segmento, Function<T, T> copiar) {
+            int j = Arrays.binarySearch(segmentos, segmento);
+            if (j < 0) return;
+            Copias c = copias.get(j);
+            synchronized (c) {
+                if (!c.congelado && !c.registros.containsKey(registro)) {
+                    c.registros.put(registro, copiar.apply(registro));
+                }
+            }
+        }
+
+        /**
+         * Produz cópias de todos os registros de um segmento no estado do LSN capturado.
+         * Depois disso o segmento deixa de exigir cópias das alterações.
+         */
+        void congelar(int j, List<Usuario> destinoUsuarios, List<Comunidade> destinoComunidades) {
+            Copias c = copias.get(j);
+            synchronized (c) {
+                c.congelado = true;
+                for (Usuario u : usuarios.get(j)) {
+                    Object copia = c.registros.remove(u);
+                    destinoUsuarios.add(copia != null ? (Usuario) copia : u.copia());
+                }
+                for (Comunidade m : comunidades.get(j)) {
+                    Object copia = c.registros.remove(m);
+                    destinoComunidades.add(copia != null ? (Comunidade) copia : m.copia());
+                }
+                c.registros.clear();
+            }
+        }
+    }
+
+    /**
+     * Cópias preservadas de um segmento capturado; o próprio objeto é a trava do segmento.
+     */
+    private static class Copias {
+        boolean congelado;
+        final Map<Object, Object> registros = new IdentityHashMap<>();
+    }
+}
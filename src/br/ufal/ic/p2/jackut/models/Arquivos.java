@@ -0,0 +1,50 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Operações de arquivo comuns à persistência do sistema Jackut.
+ */
+final class Arquivos {
+    private Arquivos() {
+    }
+
+    /**
+     * Troca o destino por um temporário já gravado e sincronizado, atomicamente, e sincroniza
+     * o diretório. Sem o {@code fsync} do diretório, a renomeação pode se perder numa queda
+     * de energia mesmo depois de o método retornar, e o arquivo antigo volta.
+     *
+     * @param temporario O arquivo novo, já sincronizado com o disco.
+     * @param destino O arquivo a ser substituído.
+     * @throws IOException Se a renomeação falhar.
+     */
+    static void substituir(File temporario, File destino) throws IOException {
+        Files.move(temporario.toPath(), destino.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        sincronizarDiretorio(destino.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Sincroniza as entradas de um diretório com o disco. Sistemas que não permitem abrir um
+     * diretório para leitura, como o Windows, já gravam a renomeação junto com ela.
+     *
+     * @param diretorio O diretório.
+     * @throws IOException Se o diretório aberto não puder ser sincronizado.
+     */
+    static void sincronizarDiretorio(File diretorio) throws IOException {
+        FileChannel canal;
+        try {
+            canal = FileChannel.open(diretorio.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return;
+        }
+        try (FileChannel c = canal) {
+            c.force(true);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Busca do menor caminho de amizades entre dois usuários, em largura a partir das duas
+ * pontas ao mesmo tempo.
+ *
+ * <p>A cada passo é expandido um nível inteiro da fronteira menor; quando um nível alcança
+ * um usuário já visitado pelo outro lado, o menor caminho passa por um dos encontros desse
+ * nível. A busca para quando a soma das profundidades dos dois lados chega ao limite de
+ * distância, de forma que uma consulta com limite pequeno visita só a vizinhança próxima
+ * das pontas, mesmo num grafo grande.</p>
+ *
+ * <p>Os arrays de visitados, pais, distâncias e fronteiras são reaproveitados entre as
+ * buscas. Em vez de limpá-los, cada busca usa um número de época novo, e uma posição só
+ * vale se a sua marca for a época atual. A busca não é sincronizada: a Facade a usa com a
+ * trava global exclusiva.</p>
+ */
+public class BuscaDistancia {
+    private final GrafoRelacoes grafo;
+
+    private int epoca;
+    private int[] marcaOrigem = new int[0];
+    private int[] marcaDestino = new int[0];
+    private int[] paiOrigem = new int[0];
+    private int[] paiDestino = new int[0];
+    private int[] distanciaOrigem = new int[0];
+    private int[] distanciaDestino = new int[0];
+
+    private int[] fronteiraOrigem = new int[16];
+    private int[] fronteiraDestino = new int[16];
+    private int[] proxima = new int[16];
+    private int tamanhoProxima;
+    private long visitados;
+
+    private final Expansao expansao = new Expansao();
+
+    /**
+     * Cria a busca sobre as amizades de um grafo.
+     *
+     * @param grafo O grafo de relacionamentos.
+     */
+    public BuscaDistancia(GrafoRelacoes grafo) {
+        this.grafo = grafo;
+    }
+
+    /**
+     * Procura o menor caminho de amizades entre dois usuários.
+     *
+     * @param origem O ID de onde o caminho sai.
+     * @param destino O ID aonde o caminho chega.
+     * @param maximo O maior número de amizades no caminho.
+     * @return Os IDs do caminho, da origem ao destino, ou null se não houver caminho com até
+     *         {@code maximo} amizades.
+     */
+    public int[] caminho(int origem, int destino, int maximo) {
+        if (origem == destino) return new int[] {origem};
+        if (maximo <= 0) return null;
+        novaEpoca(Math.max(origem, destino));
+
+        marcar(marcaOrigem, paiOrigem, distanciaOrigem, origem, -1, 0);
+        marcar(marcaDestino, paiDestino, distanciaDestino, destino, -1, 0);
+        fronteiraOrigem[0] = origem;
+        fronteiraDestino[0] = destino;
+        int tamanhoOrigem = 1;
+        int tamanhoDestino = 1;
+        int profundidadeOrigem = 0;
+        int profundidadeDestino = 0;
+
+        while (tamanhoOrigem > 0 && tamanhoDestino > 0 && profundidadeOrigem + profundidadeDestino < maximo) {
+            boolean ladoOrigem = tamanhoOrigem <= tamanhoDestino;
+            if (ladoOrigem) {
+                expandir(true, fronteiraOrigem, tamanhoOrigem, profundidadeOrigem);
+                int[] troca = fronteiraOrigem;
+                fronteiraOrigem = proxima;
+                proxima = troca;
+                tamanhoOrigem = tamanhoProxima;
+                profundidadeOrigem++;
+            } else {
+                expandir(false, fronteiraDestino, tamanhoDestino, profundidadeDestino);
+                int[] troca = fronteiraDestino;
+                fronteiraDestino = proxima;
+                proxima = troca;
+                tamanhoDestino = tamanhoProxima;
+                profundidadeDestino++;
+            }
+            if (expansao.encontro >= 0 && expansao.melhor <= maximo) {
+                return montarCaminho(expansao.encontro, expansao.melhor);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recupera quantos usuários as buscas já visitaram, somando todas as buscas.
+     *
+     * @return O total de visitas.
+     */
+    public long getVisitados() { return visitados; }
+
+    /**
+     * Expande um nível da fronteira de um lado para {@link #proxima}, registrando o melhor
+     * encontro com o outro lado.
+     */
+    private void expandir(boolean ladoOrigem, int[] fronteira, int tamanho, int profundidade) {
+        tamanhoProxima = 0;
+        expansao.ladoOrigem = ladoOrigem;
+        expansao.profundidade = profundidade + 1;
+        expansao.encontro = -1;
+        expansao.melhor = Integer.MAX_VALUE;
+        for (int i = 0; i < tamanho; i++) {
+            GrafoRelacoes.No no = grafo.buscar(fronteira[i]);
+            if (no == null) continue;
+            expansao.pai = fronteira[i];
+            no.getArestas(GrafoRelacoes.Tipo.AMIZADE, true).paraCada(expansao);
+        }
+    }
+
+    /**
+     * Visita cada amigo de um usuário da fronteira. É um objeto só, reaproveitado, para
+     * que a expansão não crie um objeto por usuário visitado.
+     */
+    private final class Expansao implements IntConsumer {
+        private boolean ladoOrigem;
+        private int profundidade;
+        private int pai;
+        private int encontro;
+        private int melhor;
+
+        @Override
+        public void accept(int amigo) {
+            garantirCapacidade(amigo);
+            int[] marca = ladoOrigem ? marcaOrigem : marcaDestino;
+            if (marca[amigo] == epoca) return;
+            marcar(marca, ladoOrigem ? paiOrigem : paiDestino, ladoOrigem ? distanciaOrigem : distanciaDestino,
+                    amigo, pai, profundidade);
+            visitados++;
+            if (tamanhoProxima == proxima.length) proxima = Arrays.copyOf(proxima, proxima.length * 2);
+            proxima[tamanhoProxima++] = amigo;
+
+            int[] outraMarca = ladoOrigem ? marcaDestino : marcaOrigem;
+            if (outraMarca[amigo] == epoca) {
+                int total = profundidade + (ladoOrigem ? distanciaDestino : distanciaOrigem)[amigo];
+                if (total < melhor) {
+                    melhor = total;
+                    encontro = amigo;
+                }
+            }
+        }
+    }
+
+    private int[] montarCaminho(int encontro, int comprimento) {
+        int[] caminho = new int[comprimento + 1];
+        int i = distanciaOrigem[encontro];
+        for (int v = encontro; v >= 0; v = paiOrigem[v]) caminho[i--] = v;
+        i = distanciaOrigem[encontro];
+        for (int v = encontro; v >= 0; v = paiDestino[v]) caminho[i++] = v;
+        return caminho;
+    }
+
+    private void marcar(int[] marca, int[] pai, int[] distancia, int id, int anterior, int profundidade) {
+        marca[id] = epoca;
+        pai[id] = anterior;
+        distancia[id] = profundidade;
+    }
+
+    private void novaEpoca(int maiorId) {
+        garantirCapacidade(maiorId);
+        if (++epoca == Integer.MAX_VALUE) {
+            Arrays.fill(marcaOrigem, 0);
+            Arrays.fill(marcaDestino, 0);
+            epoca = 1;
+        }
+    }
+
+    private void garantirCapacidade(int id) {
+        if (id < marcaOrigem.length) return;
+        int capacidade = Math.max(id + 1, marcaOrigem.length * 2);
+        marcaOrigem = Arrays.copyOf(marcaOrigem, capacidade);
+        marcaDestino = Arrays.copyOf(marcaDestino, capacidade);
+        paiOrigem = Arrays.copyOf(paiOrigem, capacidade);
+        paiDestino = Arrays.copyOf(paiDestino, capacidade);
+        distanciaOrigem = Arrays.copyOf(distanciaOrigem, capacidade);
+        distanciaDestino = Arrays.copyOf(distanciaDestino, capacidade);
+    }
+}
@@ -0,0 +1,176 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache das listagens no formato {@code {a,b,c}} (amigos, fãs, paqueras, membros e
+ * comunidades), para não remontar o texto a cada leitura.
+ *
+ * <p>Cada entrada guarda o {@link ConjuntoInteiros} de onde o texto saiu e a versão dele
+ * naquele momento. O conjunto muda de versão a cada inclusão ou remoção, então uma entrada
+ * só é usada se o conjunto atual da listagem for o mesmo objeto, na mesma versão; não é
+ * preciso avisar o cache quando um relacionamento muda, e uma entrada velha é só
+ * descartada na próxima leitura.</p>
+ *
+ * <p>As entradas ficam em segmentos escolhidos pela chave, cada um com a sua trava e a sua
+ * fila LRU, limitada pela quantidade de entradas e pelo total de caracteres. Uma listagem
+ * maior que o limite de caracteres do segmento não é guardada: ela esvaziaria o segmento
+ * inteiro e sairia junto. Quem chama deve ter a trava do registro dono do conjunto, para
+ * que ele não mude durante a montagem do texto.</p>
+ */
+public class CacheListagens {
+
+    /**
+     * As listagens guardadas no cache. Cada uma tem o seu espaço de chaves.
+     */
+    public enum Lista { AMIGOS, FAS, PAQUERAS, MEMBROS, COMUNIDADES }
+
+    private final Segmento[] segmentos;
+    private final int mascara;
+    private final int maximoEntradas;
+    private final long maximoCaracteres;
+
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+    private final LongAdder descartes = new LongAdder();
+
+    /**
+     * Cria o cache.
+     *
+     * @param maximoEntradas O número máximo de listagens guardadas; 0 desliga o cache.
+     * @param maximoCaracteres O total máximo de caracteres dos textos guardados.
+     * @param quantidadeSegmentos A quantidade mínima de segmentos; é arredondada para a
+     *                            próxima potência de 2.
+     */
+    public CacheListagens(int maximoEntradas, long maximoCaracteres, int quantidadeSegmentos) {
+        int tamanho = Integer.highestOneBit(Math.max(1, quantidadeSegmentos - 1)) << 1;
+        this.segmentos = new Segmento[tamanho];
+        this.mascara = tamanho - 1;
+        this.maximoEntradas = Math.max(0, maximoEntradas);
+        this.maximoCaracteres = Math.max(0, maximoCaracteres);
+        for (int i = 0; i < tamanho; i++) {
+            segmentos[i] = new Segmento(ceil(this.maximoEntradas, tamanho), ceil(this.maximoCaracteres, tamanho));
+        }
+    }
+
+    /**
+     * Recupera a listagem de um conjunto, do cache se ela ainda valer para a versão atual
+     * do conjunto, ou montando e guardando o texto.
+     *
+     * @param lista O tipo de listagem.
+     * @param dono O ID do usuário ou da comunidade dona do conjunto, no dicionário dele.
+     * @param ids O conjunto listado.
+     * @param dicionario O dicionário que traduz os IDs do conjunto.
+     * @return O texto {@code {a,b,c}}, na ordem do conjunto.
+     */
+    public String listar(Lista lista, int dono, ConjuntoInteiros ids, Dicionario dicionario) {
+        if (maximoEntradas == 0) return Listagem.montar(ids, dicionario);
+        long chave = ((long) lista.ordinal() << 32) | (dono & 0xFFFFFFFFL);
+        Segmento segmento = segmentos[espalhar(chave) & mascara];
+        int versao = ids.getVersao();
+        synchronized (segmento) {
+            Entrada entrada = segmento.entradas.get(chave);
+            if (entrada != null && entrada.ids == ids && entrada.versao == versao) {
+                acertos.increment();
+                return entrada.texto;
+            }
+        }
+        falhas.increment();
+        String texto = Listagem.montar(ids, dicionario);
+        synchronized (segmento) {
+            segmento.guardar(chave, new Entrada(ids, versao, texto));
+        }
+        return texto;
+    }
+
+    /**
+     * Descarta todas as entradas. Os contadores continuam.
+     */
+    public void limpar() {
+        for (Segmento segmento : segmentos) {
+            synchronized (segmento) {
+                segmento.entradas.clear();
+                segmento.caracteres = 0;
+            }
+        }
+    }
+
+    /**
+     * Recupera as métricas do cache.
+     *
+     * @return Os acertos, falhas e descartes desde a criação, e o conteúdo atual.
+     */
+    public EstatisticasCache getEstatisticas() {
+        int entradas = 0;
+        long caracteres = 0;
+        for (Segmento segmento : segmentos) {
+            synchronized (segmento) {
+                entradas += segmento.entradas.size();
+                caracteres += segmento.caracteres;
+            }
+        }
+        return new EstatisticasCache(acertos.sum(), falhas.sum(), descartes.sum(), entradas, caracteres,
+                maximoEntradas, maximoCaracteres);
+    }
+
+    private static int espalhar(long chave) {
+        long h = chave * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int ceil(int total, int partes) {
+        return (total + partes - 1) / partes;
+    }
+
+    private static long ceil(long total, int partes) {
+        return (total + partes - 1) / partes;
+    }
+
+    private static final class Entrada {
+        private final ConjuntoInteiros ids;
+        private final int versao;
+        private final String texto;
+
+        private Entrada(ConjuntoInteiros ids, int versao, String texto) {
+            this.ids = ids;
+            this.versao = versao;
+            this.texto = texto;
+        }
+    }
+
+    /**
+     * Um segmento do cache: um mapa em ordem de acesso, do menos para o mais usado.
+     */
+    private final class Segmento {
+        private final LinkedHashMap<Long, Entrada> entradas = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maximoEntradas;
+        private final long maximoCaracteres;
+        private long caracteres;
+
+        private Segmento(int maximoEntradas, long maximoCaracteres) {
+            this.maximoEntradas = maximoEntradas;
+            this.maximoCaracteres = maximoCaracteres;
+        }
+
+        private void guardar(long chave, Entrada entrada) {
+            if (entrada.texto.length() > maximoCaracteres) {
+                Entrada velha = entradas.remove(chave);
+                if (velha != null) caracteres -= velha.texto.length();
+                return;
+            }
+            Entrada anterior = entradas.put(chave, entrada);
+            if (anterior != null) caracteres -= anterior.texto.length();
+            caracteres += entrada.texto.length();
+            Iterator<Map.Entry<Long, Entrada>> it = entradas.entrySet().iterator();
+            while ((entradas.size() > maximoEntradas || caracteres > maximoCaracteres) && it.hasNext()) {
+                Entrada velha = it.next().getValue();
+                it.remove();
+                caracteres -= velha.texto.length();
+                descartes.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.*;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Fila FIFO de textos (recados ou mensagens) com memória limitada.
+ *
+ * <p>Os textos ficam num buffer circular de blocos de {@value #BLOCO} posições: cada bloco é
+ * um array, e a fila guarda só os índices de início e de fim, sem um nó por elemento.
+ * Blocos esvaziados são reaproveitados.</p>
+ *
+ * <p>No máximo {@code limite} textos ficam em memória ({@code jackut.caixa.limite}). Os
+ * excedentes transbordam para um arquivo próprio da caixa, criado sob demanda em
+ * {@code jackut.caixa.diretorio} (por padrão o diretório temporário). Enquanto houver texto no
+ * arquivo, os novos também vão para ele, e a leitura os traz de volta em lotes, na ordem de
+ * chegada. O arquivo não faz parte do banco: o snapshot grava a fila inteira, e o arquivo é
+ * apagado quando a fila volta a caber na memória, quando a caixa é descartada (como as
+ * cópias feitas para o snapshot) ou quando a JVM termina. Pelo mesmo motivo, na serialização
+ * a caixa é gravada como a sequência dos seus textos, incluindo os que estão no disco.</p>
+ *
+ * <p>A caixa não é sincronizada; cada usuário altera a sua com a própria trava.</p>
+ */
+public class CaixaEntrada extends AbstractQueue<String> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final int BLOCO = 64;
+    private static final int LIMITE_PADRAO = Integer.getInteger("jackut.caixa.limite", 4096);
+    private static final File DIRETORIO_TRANSBORDO = new File(
+            System.getProperty("jackut.caixa.diretorio", System.getProperty("java.io.tmpdir")));
+    private static final Cleaner LIMPEZA = Cleaner.create();
+    private static final Set<File> TRANSBORDOS = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (File f : TRANSBORDOS) f.delete();
+        }, "jackut-caixas"));
+    }
+
+    private final int limite;
+    private transient ArrayDeque<String[]> blocos = new ArrayDeque<>();
+    private transient String[] reserva;
+    private transient int inicio;
+    private transient int fim;
+    private transient int emMemoria;
+
+    private transient File arquivo;
+    private transient Cleaner.Cleanable remocao;
+    private transient long posicaoLeitura;
+    private transient long posicaoEscrita;
+    private transient int emArquivo;
+    private transient List<String> aGravar = new ArrayList<>();
+    private int maiorTamanho;
+    private long transbordados;
+
+    /**
+     * Cria uma caixa com o limite de memória padrão.
+     */
+    public CaixaEntrada() {
+        this(LIMITE_PADRAO);
+    }
+
+    /**
+     * Cria uma caixa com o limite de memória informado.
+     *
+     * @param limite Quantos textos podem ficar em memória antes de transbordar para o disco.
+     */
+    public CaixaEntrada(int limite) {
+        this.limite = Math.max(1, limite);
+    }
+
+    @Override
+    public boolean offer(String texto) {
+        if (emDisco() > 0 || emMemoria >= limite) {
+            transbordar(texto);
+        } else {
+            empilhar(texto);
+        }
+        maiorTamanho = Math.max(maiorTamanho, size());
+        return true;
+    }
+
+    @Override
+    public String poll() {
+        if (emMemoria == 0 && emDisco() > 0) recarregar();
+        if (emMemoria == 0) return null;
+
+        String[] primeiro = blocos.peekFirst();
+        String texto = primeiro[inicio];
+        primeiro[inicio++] = null;
+        emMemoria--;
+        if (inicio == BLOCO || emMemoria == 0) {
+            reserva = blocos.pollFirst();
+            inicio = 0;
+            if (blocos.isEmpty()) fim = 0;
+        }
+        return texto;
+    }
+
+    @Override
+    public String peek() {
+        if (emMemoria == 0 && emDisco() > 0) recarregar();
+        return emMemoria == 0 ? null : blocos.peekFirst()[inicio];
+    }
+
+    @Override
+    public int size() {
+        return emMemoria + emDisco();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        blocos.clear();
+        inicio = 0;
+        fim = 0;
+        emMemoria = 0;
+        aGravar.clear();
+        descartarArquivo();
+    }
+
+    /**
+     * Remove os textos que satisfazem o filtro, mantendo a ordem dos demais. Os textos
+     * mantidos passam por uma caixa auxiliar e voltam, sem passar do limite de memória.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super String> filtro) {
+        int antes = size();
+        CaixaEntrada mantidos = new CaixaEntrada(limite);
+        for (int n = antes; n > 0; n--) {
+            String texto = poll();
+            if (!filtro.test(texto)) mantidos.offer(texto);
+        }
+        boolean removido = mantidos.size() < antes;
+        for (int n = mantidos.size(); n > 0; n--) {
+            offer(mantidos.poll());
+        }
+        return removido;
+    }
+
+    /**
+     * Percorre a fila na ordem de leitura, incluindo os textos que estão no disco, sem
+     * consumi-los. Remoção pelo iterador não é suportada.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        List<String[]> memoria = new ArrayList<>(blocos);
+        int inicioMemoria = inicio;
+        int totalMemoria = emMemoria;
+        long leitura = posicaoLeitura;
+        long escrita = posicaoEscrita;
+        File origem = arquivo;
+        List<String> pendentes = new ArrayList<>(aGravar);
+
+        return new Iterator<String>() {
+            private int lidosMemoria;
+            private long posicao = leitura;
+            private final ArrayDeque<String> lote = new ArrayDeque<>();
+            private int lidosPendentes;
+
+            @Override
+            public boolean hasNext() {
+                if (lidosMemoria < totalMemoria || !lote.isEmpty()) return true;
+                if (posicao < escrita) {
+                    posicao = lerLote(origem, posicao, escrita, BLOCO, lote);
+                    return true;
+                }
+                return lidosPendentes < pendentes.size();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                if (lidosMemoria < totalMemoria) {
+                    int i = inicioMemoria + lidosMemoria++;
+                    return memoria.get(i / BLOCO)[i % BLOCO];
+                }
+                if (!lote.isEmpty()) return lote.poll();
+                return pendentes.get(lidosPendentes++);
+            }
+        };
+    }
+
+    /**
+     * Recupera quantos textos estão em memória.
+     *
+     * @return Os textos no buffer circular.
+     */
+    public int getEmMemoria() { return emMemoria; }
+
+    /**
+     * Recupera quantos textos transbordaram para o disco e ainda não foram lidos.
+     *
+     * @return Os textos no arquivo de transbordo.
+     */
+    public int getEmDisco() { return emDisco(); }
+
+    public long getBytesEmDisco() { return posicaoEscrita - posicaoLeitura; }
+
+    /**
+     * Recupera o maior tamanho que a fila já teve.
+     *
+     * @return O pico de textos na fila.
+     */
+    public int getMaiorTamanho() { return maiorTamanho; }
+
+    /**
+     * Recupera quantos textos já passaram pelo disco desde a criação da caixa.
+     *
+     * @return O total de textos transbordados.
+     */
+    public long getTransbordados() { return transbordados; }
+
+    public int getLimite() { return limite; }
+
+    /**
+     * Recupera as métricas de tamanho da caixa.
+     *
+     * @return Os textos em memória e em disco, o pico e o total transbordado.
+     */
+    public EstatisticasCaixa getEstatisticas() {
+        return new EstatisticasCaixa(size(), emMemoria, emDisco(), getBytesEmDisco(), maiorTamanho, transbordados,
+                limite);
+    }
+
+    /*
+     * O buffer e o arquivo de transbordo só valem nesta JVM: a fila é gravada texto a texto,
+     * na ordem de leitura, e volta transbordando de novo o que não couber no limite.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size());
+        for (String texto : this) out.writeObject(texto);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int pico = maiorTamanho;
+        long totalTransbordados = transbordados;
+        blocos = new ArrayDeque<>();
+        aGravar = new ArrayList<>();
+        for (int n = in.readInt(); n > 0; n--) offer((String) in.readObject());
+        maiorTamanho = Math.max(pico, size());
+        transbordados = totalTransbordados;
+    }
+
+    private int emDisco() {
+        return emArquivo + aGravar.size();
+    }
+
+    private void empilhar(String texto) {
+        if (blocos.isEmpty() || fim == BLOCO) {
+            String[] novo = reserva != null ? reserva : new String[BLOCO];
+            reserva = null;
+            blocos.addLast(novo);
+            fim = 0;
+        }
+        blocos.peekLast()[fim++] = texto;
+        emMemoria++;
+    }
+
+    /**
+     * Guarda um texto excedente. Os textos são acumulados e gravados no arquivo um bloco
+     * por vez.
+     */
+    private void transbordar(String texto) {
+        aGravar.add(texto);
+        transbordados++;
+        if (aGravar.size() < BLOCO) return;
+
+        try {
+            if (arquivo == null) {
+                DIRETORIO_TRANSBORDO.mkdirs();
+                arquivo = File.createTempFile("jackut-caixa", ".bin", DIRETORIO_TRANSBORDO);
+                File criado = arquivo;
+                TRANSBORDOS.add(criado);
+                remocao = LIMPEZA.register(this, () -> {
+                    TRANSBORDOS.remove(criado);
+                    criado.delete();
+                });
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (String t : aGravar) {
+                if (t == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+                byte[] b = t.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+            try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    posicaoEscrita += canal.write(buffer, posicaoEscrita);
+                }
+            }
+        } catch (IOException e) {
+            throw EncodingUtil.createException("Erro ao gravar a caixa de entrada.");
+        }
+        emArquivo += aGravar.size();
+        aGravar.clear();
+    }
+
+    /**
+     * Traz de volta para a memória os textos mais antigos do disco, até o limite.
+     */
+    private void recarregar() {
+        ArrayDeque<String> lote = new ArrayDeque<>();
+        if (emArquivo > 0) {
+            posicaoLeitura = lerLote(arquivo, posicaoLeitura, posicaoEscrita, limite, lote);
+            emArquivo -= lote.size();
+        }
+        while (lote.size() < limite && !aGravar.isEmpty() && emArquivo == 0) {
+            lote.add(aGravar.remove(0));
+        }
+        for (String texto : lote) empilhar(texto);
+        if (emArquivo == 0) descartarArquivo();
+    }
+
+    private void descartarArquivo() {
+        if (remocao != null) remocao.clean();
+        remocao = null;
+        arquivo = null;
+        posicaoLeitura = 0;
+        posicaoEscrita = 0;
+        emArquivo = 0;
+    }
+
+    /**
+     * Lê até {@code maximo} textos do arquivo a partir de uma posição.
+     *
+     * @return A posição logo depois do último texto lido.
+     */
+    private static long lerLote(File arquivo, long posicao, long fim, int maximo, Collection<String> destino) {
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(canal.position(posicao)), 1 << 16));
+            int lidos = 0;
+            while (posicao < fim && lidos < maximo) {
+                int tamanho = in.readInt();
+                posicao += 4;
+                lidos++;
+                if (tamanho < 0) {
+                    destino.add(null);
+                    continue;
+                }
+                byte[] b = new byte[tamanho];
+                in.readFully(b);
+                destino.add(new String(b, StandardCharsets.UTF_8));
+                posicao += tamanho;
+            }
+            return posicao;
+        } catch (IOException e) {
+            throw EncodingUtil.createException("Erro ao ler a caixa de entrada.");
+        }
+    }
+}
@@ -1,12 +1,10 @@
 package br.ufal.ic.p2.jackut.models;
 
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * Representa uma comunidade dentro do sistema Jackut.
- * A comunidade possui um nome, descrio, dono e membros.
+ * A comunidade possui um nome, descrio, dono, membros e o log das mensagens enviadas a ela.
  */
 public class Comunidade implements Serializable {
     private static final long serialVersionUID = 1L;
@@ -14,8 +12,11 @@ public class Comunidade implements Serializable {
     private final String nome;
     private final String descricao;
     private final String dono;
-    private final Set<String> membros = new HashSet<>();
+    private final ConjuntoNomes membros = new ConjuntoNomes(Dicionario.LOGINS,
+            OrdemRelacao.configurada("membros", OrdemRelacao.INCLUSAO));
+    private final LogMensagens mensagens = new LogMensagens();
     private final Facade facade;
+    private transient boolean alterado;
 
     /**
      * Construtor que inicializa a comunidade com nome, descrio, dono e a instncia da Facade.
@@ -39,7 +40,37 @@ public class Comunidade implements Serializable {
 
     public String getDono() { return dono; }
 
-    public Set<String> getMembros() { return membros; }
+    public ConjuntoNomes getMembros() { return membros; }
+
+    public LogMensagens getMensagens() { return mensagens; }
+
+    /**
+     * Marca a comunidade como alterada desde a ltima gravao.
+     *
+     * @return true se a comunidade ainda no estava marcada
+     */
+    public boolean marcarAlterado() {
+        if (alterado) return false;
+        alterado = true;
+        return true;
+    }
+
+    public boolean isAlterado() { return alterado; }
+
+    /**
+     * Cria uma cpia independente da comunidade, usada para gravar o snapshot
+     * enquanto a original continua recebendo membros e mensagens.
+     *
+     * @return A cpia da comunidade.
+     */
+    public Comunidade copia() {
+        Comunidade copia = new Comunidade(nome, descricao, dono, facade);
+        copia.membros.addAll(membros);
+        copia.mensagens.anexarTodas(mensagens);
+        return copia;
+    }
+
+    public void limparAlterado() { alterado = false; }
 
     /**
      * Adiciona um novo membro  comunidade.
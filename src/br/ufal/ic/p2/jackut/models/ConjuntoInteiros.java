@@ -0,0 +1,447 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Conjunto de inteiros não negativos, sem boxing, que preserva a ordem de inclusão ou,
+ * se criado com um {@link Dicionario}, a ordem alfabética dos nomes dos IDs.
+ *
+ * <p>Os elementos ficam num array na ordem do conjunto; um elemento removido deixa uma
+ * lacuna, e o array é compactado quando as lacunas passam de um quarto dele. Para que um
+ * percurso em páginas possa continuar depois de um elemento removido, mesmo com o array já
+ * compactado, a ordem de inclusão numera cada inclusão e guarda o número dos removidos;
+ * a ordem alfabética não precisa disso, já que o nome dá a posição.</p>
+ *
+ * <p>Na ordem alfabética a inclusão procura a posição por busca binária e desloca o final
+ * do array, de forma que percorrer o conjunto já devolve os elementos ordenados.
+ * Conjuntos pequenos (até
+ * {@value #LIMITE_VARREDURA} posições) são consultados por varredura do array; os maiores
+ * ganham uma tabela de endereçamento aberto com as posições dos elementos, de forma que
+ * {@link #contem(int)} continua O(1). Os arrays só são criados na primeira inclusão, então
+ * um conjunto vazio custa um objeto.</p>
+ *
+ * <p>Cada inclusão ou remoção muda a {@linkplain #getVersao() versão} do conjunto, que
+ * permite guardar resultados derivados dele (como o texto de uma listagem) e saber depois
+ * se ainda valem. O conjunto não é sincronizado.</p>
+ */
+public class ConjuntoInteiros {
+    private static final int[] VAZIO = new int[0];
+    private static final int LIMITE_VARREDURA = 8;
+
+    private int[] elementos = VAZIO;
+    private int usados;
+    private int tamanho;
+    /** Posição de cada elemento em {@link #elementos}, mais um; 0 indica célula vazia. */
+    private int[] tabela;
+    /** Dicionário da ordem alfabética, ou null para a ordem de inclusão. */
+    private final Dicionario alfabetica;
+    private int versao;
+    /**
+     * Número de inclusão de cada posição de {@link #elementos}, crescente ao longo do array.
+     * Só existe na ordem de inclusão e depois da primeira remoção; antes dela o número de
+     * cada posição é a própria posição mais um.
+     */
+    private int[] ordens;
+    private int ultimaOrdem;
+    /** Número de inclusão de cada elemento removido, usado como mapa de ID para número. */
+    private ContagemInteiros removidos;
+
+    /**
+     * Cria um conjunto vazio na ordem de inclusão.
+     */
+    public ConjuntoInteiros() {
+        this(null);
+    }
+
+    /**
+     * Cria um conjunto vazio que mantém os elementos em ordem alfabética dos nomes.
+     *
+     * @param alfabetica O dicionário que dá o nome de cada ID, ou null para a ordem de
+     *                   inclusão.
+     */
+    public ConjuntoInteiros(Dicionario alfabetica) {
+        this.alfabetica = alfabetica;
+    }
+
+    /**
+     * Verifica se o conjunto contém um elemento.
+     *
+     * @param id O elemento.
+     * @return true se estiver no conjunto.
+     */
+    public boolean contem(int id) {
+        return id >= 0 && posicao(id) >= 0;
+    }
+
+    /**
+     * Inclui um elemento no fim da ordem de inclusão, ou na sua posição alfabética.
+     *
+     * @param id O elemento; deve ser não negativo.
+     * @return true se o elemento ainda não estava no conjunto.
+     */
+    public boolean adicionar(int id) {
+        if (id < 0) throw new IllegalArgumentException("Elemento negativo: " + id);
+        if (posicao(id) >= 0) return false;
+        if (usados == elementos.length) abrirEspaco();
+        if (alfabetica != null) {
+            inserirEmOrdem(id);
+        } else {
+            elementos[usados] = id;
+            if (ordens != null) ordens[usados] = ++ultimaOrdem;
+            if (removidos != null) removidos.descartar(id);
+            if (tabela != null) inserirNaTabela(usados);
+        }
+        usados++;
+        tamanho++;
+        versao++;
+        if (tabela == null ? usados > LIMITE_VARREDURA : tamanho * 2 > tabela.length) {
+            reconstruirTabela();
+        }
+        return true;
+    }
+
+    /**
+     * Remove um elemento. A posição dele vira uma lacuna; a ordem dos demais não muda.
+     * Se as lacunas passarem de um quarto do array, ele é compactado.
+     *
+     * @param id O elemento.
+     * @return true se o elemento estava no conjunto.
+     */
+    public boolean remover(int id) {
+        return remover(id, true);
+    }
+
+    /**
+     * Remove um elemento, compactando o array só se permitido: o iterador remove sem
+     * compactar, para não deslocar as posições que ainda vai percorrer.
+     */
+    private boolean remover(int id, boolean compactar) {
+        if (id < 0) return false;
+        int p = posicao(id);
+        if (p < 0) return false;
+        if (alfabetica == null) guardarOrdem(id, p);
+        if (tabela != null) removerDaTabela(id, p);
+        elementos[p] = ~id;
+        tamanho--;
+        versao++;
+        if (tamanho == 0) {
+            usados = 0;
+            tabela = null;
+        } else if (compactar && usados - tamanho > Math.max(LIMITE_VARREDURA, usados / 4)) {
+            compactar();
+        }
+        return true;
+    }
+
+    /**
+     * Guarda o número de inclusão de um elemento que vai ser removido, numerando as
+     * posições na primeira remoção.
+     */
+    private void guardarOrdem(int id, int posicao) {
+        if (ordens == null) {
+            ordens = new int[elementos.length];
+            for (int i = 0; i < usados; i++) ordens[i] = i + 1;
+            ultimaOrdem = usados;
+        }
+        if (removidos == null) removidos = new ContagemInteiros();
+        removidos.somar(id, ordens[posicao]);
+    }
+
+    /**
+     * Inclui todos os elementos de outro conjunto, na ordem dele (ou na alfabética, se for a
+     * deste conjunto).
+     *
+     * @param outro O conjunto de origem.
+     * @return true se algum elemento foi incluído.
+     */
+    public boolean adicionarTodos(ConjuntoInteiros outro) {
+        if (tamanho == 0 && ordens == null && outro.tamanho == outro.usados && alfabetica == outro.alfabetica) {
+            // cópia direta dos arrays quando este está vazio e o outro, na mesma ordem, não tem lacunas
+            if (outro.tamanho == 0) return false;
+            elementos = Arrays.copyOf(outro.elementos, outro.usados);
+            tabela = outro.tabela == null ? null : outro.tabela.clone();
+            usados = outro.usados;
+            tamanho = outro.tamanho;
+            versao++;
+            return true;
+        }
+        boolean alterado = false;
+        for (int i = 0; i < outro.usados; i++) {
+            int id = outro.elementos[i];
+            if (id >= 0) alterado |= adicionar(id);
+        }
+        return alterado;
+    }
+
+    public int tamanho() { return tamanho; }
+
+    public boolean vazio() { return tamanho == 0; }
+
+    /**
+     * Recupera a versão do conjunto, que muda a cada inclusão ou remoção efetiva.
+     *
+     * @return A versão atual.
+     */
+    public int getVersao() { return versao; }
+
+    /**
+     * Remove todos os elementos e libera os arrays.
+     */
+    public void limpar() {
+        elementos = VAZIO;
+        tabela = null;
+        ordens = null;
+        ultimaOrdem = 0;
+        removidos = null;
+        usados = 0;
+        tamanho = 0;
+        versao++;
+    }
+
+    /**
+     * Copia os elementos para um array, na ordem do conjunto.
+     *
+     * @return Os elementos.
+     */
+    public int[] paraArray() {
+        int[] copia = new int[tamanho];
+        int n = 0;
+        for (int i = 0; i < usados; i++) {
+            if (elementos[i] >= 0) copia[n++] = elementos[i];
+        }
+        return copia;
+    }
+
+    /**
+     * Passa cada elemento, na ordem do conjunto, para a ação, sem criar um iterador.
+     *
+     * @param acao A ação; não deve alterar o conjunto.
+     */
+    public void paraCada(IntConsumer acao) {
+        for (int i = 0; i < usados; i++) {
+            if (elementos[i] >= 0) acao.accept(elementos[i]);
+        }
+    }
+
+    /**
+     * Percorre os elementos na ordem do conjunto. O iterador aceita {@code remove()}; incluir
+     * elementos por fora durante a iteração não é suportado.
+     *
+     * @return O iterador.
+     */
+    public PrimitiveIterator.OfInt iterador() {
+        return new PrimitiveIterator.OfInt() {
+            private int proxima = avancar(0);
+            private int ultima = -1;
+
+            private int avancar(int i) {
+                while (i < usados && elementos[i] < 0) i++;
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return proxima < usados;
+            }
+
+            @Override
+            public int nextInt() {
+                if (proxima >= usados) throw new NoSuchElementException();
+                ultima = proxima;
+                proxima = avancar(proxima + 1);
+                return elementos[ultima];
+            }
+
+            @Override
+            public void remove() {
+                if (ultima < 0) throw new IllegalStateException();
+                remover(elementos[ultima], false);
+                ultima = -1;
+            }
+        };
+    }
+
+    /**
+     * Encontra de onde continuar um percurso em páginas que parou num elemento, para
+     * usar em {@link #percorrer(int, int, IntConsumer)}. Se o elemento ainda estiver no
+     * conjunto, o percurso continua logo depois dele; se tiver sido removido, continua no
+     * primeiro elemento incluído depois dele ou, na ordem alfabética, no primeiro nome
+     * maior. Custa O(1) para um elemento presente e O(log n) para um removido.
+     *
+     * @param id O último elemento devolvido pela página anterior.
+     * @return A posição interna de onde continuar, ou -1 se o elemento nunca esteve no
+     *         conjunto desde a última vez que ele foi esvaziado por {@link #limpar()}.
+     */
+    public int posicaoApos(int id) {
+        if (id < 0) return -1;
+        int p = posicao(id);
+        if (p >= 0) return p + 1;
+        if (alfabetica != null) {
+            String nome = alfabetica.nome(id);
+            int baixo = 0;
+            int alto = usados;
+            while (baixo < alto) {
+                int meio = (baixo + alto) >>> 1;
+                int e = elementos[meio];
+                if (alfabetica.nome(e >= 0 ? e : ~e).compareTo(nome) <= 0) baixo = meio + 1;
+                else alto = meio;
+            }
+            return baixo;
+        }
+        int ordem = removidos == null ? 0 : removidos.valor(id);
+        if (ordem == 0) return -1;
+        int baixo = 0;
+        int alto = usados;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (ordens[meio] <= ordem) baixo = meio + 1;
+            else alto = meio;
+        }
+        return baixo;
+    }
+
+    /**
+     * Passa para a ação os elementos a partir de uma posição interna, na ordem do conjunto,
+     * até um limite. Custa O(limite mais as lacunas atravessadas), e as lacunas não passam
+     * de um quarto do array.
+     *
+     * @param inicio A posição interna, 0 ou o valor de {@link #posicaoApos(int)}.
+     * @param limite Quantos elementos no máximo.
+     * @param acao A ação; não deve alterar o conjunto.
+     * @return Quantos elementos foram passados.
+     */
+    public int percorrer(int inicio, int limite, IntConsumer acao) {
+        int n = 0;
+        for (int i = Math.max(0, inicio); i < usados && n < limite; i++) {
+            if (elementos[i] >= 0) {
+                acao.accept(elementos[i]);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Estima os bytes ocupados pelos arrays do conjunto, sem contar cabeçalhos de objeto.
+     *
+     * @return Os bytes dos arrays de elementos e da tabela.
+     */
+    public long getBytes() {
+        return 4L * elementos.length + (tabela == null ? 0 : 4L * tabela.length)
+                + (ordens == null ? 0 : 4L * ordens.length)
+                + (removidos == null ? 0 : 16L * removidos.tamanho());
+    }
+
+    private int posicao(int id) {
+        if (tabela == null) {
+            for (int i = 0; i < usados; i++) {
+                if (elementos[i] == id) return i;
+            }
+            return -1;
+        }
+        int mascara = tabela.length - 1;
+        for (int i = espalhar(id) & mascara; ; i = (i + 1) & mascara) {
+            int p = tabela[i];
+            if (p == 0) return -1;
+            if (elementos[p - 1] == id) return p - 1;
+        }
+    }
+
+    /**
+     * Abre espaço no fim do array de elementos: compacta se houver muitas lacunas, senão
+     * dobra o array.
+     */
+    private void abrirEspaco() {
+        if (usados - tamanho > usados / 4) {
+            compactar();
+            if (usados < elementos.length) return;
+        }
+        elementos = Arrays.copyOf(elementos, Math.max(4, elementos.length * 2));
+        if (ordens != null) ordens = Arrays.copyOf(ordens, elementos.length);
+    }
+
+    /**
+     * Coloca um elemento novo na sua posição alfabética, deslocando os seguintes uma
+     * posição. As posições guardadas na tabela são corrigidas no lugar, sem recriá-la.
+     */
+    private void inserirEmOrdem(int id) {
+        // a busca binária não sabe pular lacunas
+        if (usados > tamanho) compactar();
+        String nome = alfabetica.nome(id);
+        int baixo = 0;
+        int alto = usados;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (alfabetica.nome(elementos[meio]).compareTo(nome) < 0) baixo = meio + 1;
+            else alto = meio;
+        }
+        System.arraycopy(elementos, baixo, elementos, baixo + 1, usados - baixo);
+        elementos[baixo] = id;
+        if (tabela != null) {
+            for (int i = 0; i < tabela.length; i++) {
+                if (tabela[i] > baixo) tabela[i]++;
+            }
+            inserirNaTabela(baixo);
+        }
+    }
+
+    private void compactar() {
+        int n = 0;
+        for (int i = 0; i < usados; i++) {
+            if (elementos[i] >= 0) {
+                if (ordens != null) ordens[n] = ordens[i];
+                elementos[n++] = elementos[i];
+            }
+        }
+        Arrays.fill(elementos, n, usados, 0);
+        usados = n;
+        if (tabela != null) reconstruirTabela();
+    }
+
+    private void reconstruirTabela() {
+        int capacidade = 16;
+        while (capacidade < tamanho * 2) capacidade <<= 1;
+        tabela = new int[capacidade];
+        for (int i = 0; i < usados; i++) {
+            if (elementos[i] >= 0) inserirNaTabela(i);
+        }
+    }
+
+    private void inserirNaTabela(int posicao) {
+        int mascara = tabela.length - 1;
+        int i = espalhar(elementos[posicao]) & mascara;
+        while (tabela[i] != 0) i = (i + 1) & mascara;
+        tabela[i] = posicao + 1;
+    }
+
+    /**
+     * Tira a posição de um elemento da tabela, deslocando para trás as células seguintes da
+     * mesma sequência de sondagem, para não deixar marcas de remoção na tabela.
+     */
+    private void removerDaTabela(int id, int posicao) {
+        int mascara = tabela.length - 1;
+        int i = espalhar(id) & mascara;
+        while (tabela[i] != posicao + 1) i = (i + 1) & mascara;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mascara;
+            int p = tabela[j];
+            if (p == 0) break;
+            int ideal = espalhar(elementos[p - 1]) & mascara;
+            boolean alcancavel = i <= j ? (ideal <= i || ideal > j) : (ideal <= i && ideal > j);
+            if (alcancavel) {
+                tabela[i] = p;
+                i = j;
+            }
+        }
+        tabela[i] = 0;
+    }
+
+    private static int espalhar(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,153 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+/**
+ * Conjunto de nomes (logins ou nomes de comunidade) guardado como IDs inteiros.
+ *
+ * <p>É a visão {@code Set<String>} de um {@link ConjuntoInteiros}: cada nome é traduzido
+ * pelo {@link Dicionario} global na inclusão e na consulta, e volta a ser texto só na
+ * iteração. Assim os relacionamentos de cada usuário ocupam 4 bytes por vínculo, sem um
+ * nó de tabela por elemento nem cópias dos logins, e o restante do código continua
+ * tratando os conjuntos como {@code Set<String>}. Quem já tem o ID consulta direto com
+ * {@link #contemId(int)}.</p>
+ *
+ * <p>A iteração segue a {@link OrdemRelacao} do conjunto, mantida a cada inclusão. O
+ * conjunto não é sincronizado e não aceita null.</p>
+ */
+public class ConjuntoNomes extends AbstractSet<String> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private transient Dicionario dicionario;
+    private transient ConjuntoInteiros ids;
+    private final OrdemRelacao ordem;
+
+    /**
+     * Cria um conjunto vazio na ordem de inclusão.
+     *
+     * @param dicionario O dicionário que traduz os nomes, {@link Dicionario#LOGINS} ou
+     *                   {@link Dicionario#COMUNIDADES}.
+     */
+    public ConjuntoNomes(Dicionario dicionario) {
+        this(dicionario, OrdemRelacao.INCLUSAO);
+    }
+
+    /**
+     * Cria um conjunto vazio que mantém a ordem informada.
+     *
+     * @param dicionario O dicionário que traduz os nomes.
+     * @param ordem A ordem de listagem do conjunto.
+     */
+    public ConjuntoNomes(Dicionario dicionario, OrdemRelacao ordem) {
+        this.dicionario = dicionario;
+        this.ordem = ordem;
+        this.ids = ordem.criarConjunto(dicionario);
+    }
+
+    public Dicionario getDicionario() { return dicionario; }
+
+    public OrdemRelacao getOrdem() { return ordem; }
+
+    /**
+     * Recupera os IDs do conjunto, para consultas e percursos sem traduzir os nomes.
+     *
+     * @return O conjunto de IDs, compartilhado com este.
+     */
+    public ConjuntoInteiros getIds() { return ids; }
+
+    /**
+     * Verifica se o conjunto contém o nome com o ID informado.
+     *
+     * @param id O ID no dicionário do conjunto.
+     * @return true se o nome estiver no conjunto.
+     */
+    public boolean contemId(int id) {
+        return ids.contem(id);
+    }
+
+    @Override
+    public boolean add(String nome) {
+        return ids.adicionar(dicionario.id(nome));
+    }
+
+    @Override
+    public boolean contains(Object nome) {
+        int id = dicionario.buscar(nome);
+        return id >= 0 && ids.contem(id);
+    }
+
+    @Override
+    public boolean remove(Object nome) {
+        int id = dicionario.buscar(nome);
+        return id >= 0 && ids.remover(id);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends String> nomes) {
+        if (nomes instanceof ConjuntoNomes && ((ConjuntoNomes) nomes).dicionario == dicionario) {
+            return ids.adicionarTodos(((ConjuntoNomes) nomes).ids);
+        }
+        return super.addAll(nomes);
+    }
+
+    @Override
+    public int size() {
+        return ids.tamanho();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return ids.vazio();
+    }
+
+    @Override
+    public void clear() {
+        ids.limpar();
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        PrimitiveIterator.OfInt it = ids.iterador();
+        return new Iterator<String>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return dicionario.nome(it.nextInt());
+            }
+
+            @Override
+            public void remove() {
+                it.remove();
+            }
+        };
+    }
+
+    /*
+     * Os IDs só valem dentro desta JVM: na serialização o conjunto é gravado como nomes e
+     * traduzido de novo na leitura.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeBoolean(dicionario == Dicionario.COMUNIDADES);
+        out.writeInt(size());
+        for (String nome : this) out.writeUTF(nome);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        dicionario = in.readBoolean() ? Dicionario.COMUNIDADES : Dicionario.LOGINS;
+        ids = ordem.criarConjunto(dicionario);
+        for (int n = in.readInt(); n > 0; n--) add(in.readUTF());
+    }
+}
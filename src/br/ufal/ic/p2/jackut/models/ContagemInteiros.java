@@ -0,0 +1,151 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de inteiros não negativos para contagens, sem boxing, em endereçamento aberto.
+ * Uma chave cuja contagem chega a zero sai do mapa.
+ *
+ * <p>O mapa não é sincronizado.</p>
+ */
+public class ContagemInteiros {
+    private static final int VAZIA = -1;
+
+    private int[] chaves;
+    private int[] contagens;
+    private int tamanho;
+
+    /**
+     * Soma um valor à contagem de uma chave.
+     *
+     * @param chave A chave; deve ser não negativa.
+     * @param delta O valor somado, que pode ser negativo.
+     * @return A nova contagem.
+     */
+    public int somar(int chave, int delta) {
+        if (chaves == null) {
+            if (delta == 0) return 0;
+            criar(8);
+        }
+        int mascara = chaves.length - 1;
+        int i = espalhar(chave) & mascara;
+        while (chaves[i] != VAZIA && chaves[i] != chave) i = (i + 1) & mascara;
+        if (chaves[i] == VAZIA) {
+            if (delta == 0) return 0;
+            chaves[i] = chave;
+            contagens[i] = delta;
+            if (++tamanho * 2 > chaves.length) redimensionar(chaves.length * 2);
+            return delta;
+        }
+        int valor = contagens[i] + delta;
+        if (valor == 0) {
+            remover(i);
+        } else {
+            contagens[i] = valor;
+        }
+        return valor;
+    }
+
+    /**
+     * Recupera a contagem de uma chave.
+     *
+     * @param chave A chave.
+     * @return A contagem, ou 0 se a chave não estiver no mapa.
+     */
+    public int valor(int chave) {
+        if (chaves == null || chave < 0) return 0;
+        int mascara = chaves.length - 1;
+        for (int i = espalhar(chave) & mascara; chaves[i] != VAZIA; i = (i + 1) & mascara) {
+            if (chaves[i] == chave) return contagens[i];
+        }
+        return 0;
+    }
+
+    /**
+     * Tira uma chave do mapa, qualquer que seja a contagem.
+     *
+     * @param chave A chave.
+     */
+    public void descartar(int chave) {
+        if (chaves == null || chave < 0) return;
+        int mascara = chaves.length - 1;
+        for (int i = espalhar(chave) & mascara; chaves[i] != VAZIA; i = (i + 1) & mascara) {
+            if (chaves[i] == chave) {
+                remover(i);
+                return;
+            }
+        }
+    }
+
+    public int tamanho() { return tamanho; }
+
+    /**
+     * Percorre as chaves e contagens, em ordem qualquer.
+     *
+     * @param visitante Recebe cada chave com a sua contagem.
+     */
+    public void paraCada(Visitante visitante) {
+        if (chaves == null) return;
+        for (int i = 0; i < chaves.length; i++) {
+            if (chaves[i] != VAZIA) visitante.visitar(chaves[i], contagens[i]);
+        }
+    }
+
+    /**
+     * Recebe as entradas de {@link #paraCada(Visitante)}.
+     */
+    public interface Visitante {
+        void visitar(int chave, int contagem);
+    }
+
+    private void criar(int capacidade) {
+        chaves = new int[capacidade];
+        contagens = new int[capacidade];
+        Arrays.fill(chaves, VAZIA);
+    }
+
+    private void redimensionar(int capacidade) {
+        int[] antigasChaves = chaves;
+        int[] antigasContagens = contagens;
+        criar(capacidade);
+        int mascara = capacidade - 1;
+        for (int j = 0; j < antigasChaves.length; j++) {
+            if (antigasChaves[j] == VAZIA) continue;
+            int i = espalhar(antigasChaves[j]) & mascara;
+            while (chaves[i] != VAZIA) i = (i + 1) & mascara;
+            chaves[i] = antigasChaves[j];
+            contagens[i] = antigasContagens[j];
+        }
+    }
+
+    /**
+     * Esvazia a célula {@code i}, deslocando para trás as células seguintes da mesma
+     * sequência de sondagem.
+     */
+    private void remover(int i) {
+        int mascara = chaves.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mascara;
+            if (chaves[j] == VAZIA) break;
+            int ideal = espalhar(chaves[j]) & mascara;
+            boolean alcancavel = i <= j ? (ideal <= i || ideal > j) : (ideal <= i && ideal > j);
+            if (alcancavel) {
+                chaves[i] = chaves[j];
+                contagens[i] = contagens[j];
+                i = j;
+            }
+        }
+        chaves[i] = VAZIA;
+        contagens[i] = 0;
+        if (--tamanho == 0) {
+            chaves = null;
+            contagens = null;
+        }
+    }
+
+    private static int espalhar(int chave) {
+        int h = chave * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,92 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dicionário que associa cada nome (login ou nome de comunidade) a um ID inteiro denso,
+ * atribuído na ordem em que o nome aparece pela primeira vez.
+ *
+ * <p>Os conjuntos de relacionamento ({@link ConjuntoNomes}) guardam só os IDs, em arrays de
+ * {@code int}, e cada nome existe uma única vez em memória, aqui. Há um dicionário global
+ * para logins e outro para nomes de comunidade; os IDs nunca são reaproveitados, então um
+ * nome removido e criado de novo volta com o mesmo ID. Só {@link #limpar()}, chamado quando
+ * o sistema é zerado, recomeça a numeração.</p>
+ *
+ * <p>Pode ser usado por várias threads: a consulta não trava, e só a criação de um ID novo
+ * é sincronizada.</p>
+ */
+public class Dicionario {
+    /** Dicionário global de logins de usuário. */
+    public static final Dicionario LOGINS = new Dicionario();
+    /** Dicionário global de nomes de comunidade. */
+    public static final Dicionario COMUNIDADES = new Dicionario();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] nomes = new String[64];
+    private int tamanho;
+
+    /**
+     * Recupera o ID de um nome, atribuindo um novo se ele ainda não estiver no dicionário.
+     *
+     * @param nome O nome; não pode ser null.
+     * @return O ID do nome.
+     */
+    public int id(String nome) {
+        Integer id = ids.get(nome);
+        if (id != null) return id;
+        synchronized (this) {
+            id = ids.get(nome);
+            if (id != null) return id;
+            if (tamanho == nomes.length) {
+                nomes = Arrays.copyOf(nomes, tamanho * 2);
+            }
+            // o nome é publicado no array antes do mapa, de forma que quem acha o ID no mapa
+            // também enxerga o nome no array
+            nomes[tamanho] = nome;
+            ids.put(nome, tamanho);
+            return tamanho++;
+        }
+    }
+
+    /**
+     * Recupera o ID de um nome sem incluí-lo no dicionário.
+     *
+     * @param nome O nome.
+     * @return O ID, ou -1 se o nome nunca foi visto (ou for null).
+     */
+    public int buscar(Object nome) {
+        if (!(nome instanceof String)) return -1;
+        Integer id = ids.get(nome);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Recupera o nome associado a um ID.
+     *
+     * @param id O ID devolvido por {@link #id(String)}.
+     * @return O nome.
+     */
+    public String nome(int id) {
+        return nomes[id];
+    }
+
+    /**
+     * Recupera quantos nomes já foram incluídos.
+     *
+     * @return O total de IDs atribuídos.
+     */
+    public int getTamanho() {
+        return ids.size();
+    }
+
+    /**
+     * Esquece todos os nomes e recomeça os IDs do zero. Nenhum conjunto com IDs do
+     * dicionário pode continuar em uso.
+     */
+    public synchronized void limpar() {
+        ids.clear();
+        nomes = new String[64];
+        tamanho = 0;
+    }
+}
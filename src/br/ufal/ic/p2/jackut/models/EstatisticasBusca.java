@@ -0,0 +1,58 @@
+package br.ufal.ic.p2.jackut.models;
+
+/**
+ * Métricas do {@link IndiceMensagens}: quantos documentos estão indexados, em quantos
+ * segmentos, quantos ainda esperam na fila e quantas mesclas já foram feitas.
+ */
+public class EstatisticasBusca {
+    private final int documentos;
+    private final int emMemoria;
+    private final int pendentes;
+    private final int segmentos;
+    private final long mesclas;
+    private final String ultimoErro;
+
+    public EstatisticasBusca(int documentos, int emMemoria, int pendentes, int segmentos, long mesclas,
+                             String ultimoErro) {
+        this.documentos = documentos;
+        this.emMemoria = emMemoria;
+        this.pendentes = pendentes;
+        this.segmentos = segmentos;
+        this.mesclas = mesclas;
+        this.ultimoErro = ultimoErro;
+    }
+
+    /**
+     * Recupera quantos documentos já podem ser achados, gravados ou no segmento em memória,
+     * contando os removidos que nenhuma mescla descartou ainda.
+     *
+     * @return O total de documentos indexados.
+     */
+    public int getDocumentos() { return documentos; }
+
+    public int getEmMemoria() { return emMemoria; }
+
+    /**
+     * Recupera quantos documentos e pedidos de gravação esperam a thread do índice.
+     *
+     * @return O tamanho da fila de indexação.
+     */
+    public int getPendentes() { return pendentes; }
+
+    public int getSegmentos() { return segmentos; }
+
+    public long getMesclas() { return mesclas; }
+
+    /**
+     * Recupera o erro da última gravação do índice que falhou.
+     *
+     * @return A mensagem do erro, ou null se nenhuma gravação falhou.
+     */
+    public String getUltimoErro() { return ultimoErro; }
+
+    @Override
+    public String toString() {
+        return String.format("indice de mensagens: %d documentos (%d em memoria, %d na fila), %d segmentos, %d mesclas%s",
+                documentos, emMemoria, pendentes, segmentos, mesclas, ultimoErro == null ? "" : "; erro: " + ultimoErro);
+    }
+}
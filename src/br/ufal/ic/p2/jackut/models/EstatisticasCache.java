@@ -0,0 +1,61 @@
+package br.ufal.ic.p2.jackut.models;
+
+/**
+ * Métricas do {@link CacheListagens}: quantas leituras acharam o texto pronto, quantas
+ * tiveram de montá-lo, e quanto o cache ocupa.
+ */
+public class EstatisticasCache {
+    private final long acertos;
+    private final long falhas;
+    private final long descartes;
+    private final int entradas;
+    private final long caracteres;
+    private final int maximoEntradas;
+    private final long maximoCaracteres;
+
+    public EstatisticasCache(long acertos, long falhas, long descartes, int entradas, long caracteres,
+                             int maximoEntradas, long maximoCaracteres) {
+        this.acertos = acertos;
+        this.falhas = falhas;
+        this.descartes = descartes;
+        this.entradas = entradas;
+        this.caracteres = caracteres;
+        this.maximoEntradas = maximoEntradas;
+        this.maximoCaracteres = maximoCaracteres;
+    }
+
+    public long getAcertos() { return acertos; }
+
+    public long getFalhas() { return falhas; }
+
+    /**
+     * Recupera quantas entradas saíram do cache por falta de espaço.
+     *
+     * @return O total de descartes pela política LRU.
+     */
+    public long getDescartes() { return descartes; }
+
+    public int getEntradas() { return entradas; }
+
+    public long getCaracteres() { return caracteres; }
+
+    public int getMaximoEntradas() { return maximoEntradas; }
+
+    public long getMaximoCaracteres() { return maximoCaracteres; }
+
+    /**
+     * Recupera a fração das leituras atendidas pelo cache.
+     *
+     * @return Um valor entre 0 e 1, ou 0 se ainda não houve leituras.
+     */
+    public double getTaxaAcertos() {
+        long total = acertos + falhas;
+        return total == 0 ? 0 : (double) acertos / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("cache de listagens: %d acertos, %d falhas (%.1f%%), %d descartes; %d de %d entradas, %d de %d caracteres",
+                acertos, falhas, 100 * getTaxaAcertos(), descartes, entradas, maximoEntradas, caracteres, maximoCaracteres);
+    }
+}
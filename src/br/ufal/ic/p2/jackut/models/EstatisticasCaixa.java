@@ -0,0 +1,46 @@
+package br.ufal.ic.p2.jackut.models;
+
+/**
+ * Métricas de tamanho de uma {@link CaixaEntrada}: quantos textos estão em memória e quantos
+ * transbordaram para o disco.
+ */
+public class EstatisticasCaixa {
+    private final int tamanho;
+    private final int emMemoria;
+    private final int emDisco;
+    private final long bytesEmDisco;
+    private final int maiorTamanho;
+    private final long transbordados;
+    private final int limite;
+
+    public EstatisticasCaixa(int tamanho, int emMemoria, int emDisco, long bytesEmDisco, int maiorTamanho,
+                             long transbordados, int limite) {
+        this.tamanho = tamanho;
+        this.emMemoria = emMemoria;
+        this.emDisco = emDisco;
+        this.bytesEmDisco = bytesEmDisco;
+        this.maiorTamanho = maiorTamanho;
+        this.transbordados = transbordados;
+        this.limite = limite;
+    }
+
+    public int getTamanho() { return tamanho; }
+
+    public int getEmMemoria() { return emMemoria; }
+
+    public int getEmDisco() { return emDisco; }
+
+    public long getBytesEmDisco() { return bytesEmDisco; }
+
+    public int getMaiorTamanho() { return maiorTamanho; }
+
+    public long getTransbordados() { return transbordados; }
+
+    public int getLimite() { return limite; }
+
+    @Override
+    public String toString() {
+        return String.format("caixa: %d textos (%d em memoria de %d, %d em disco, %d bytes); pico %d, %d transbordados",
+                tamanho, emMemoria, limite, emDisco, bytesEmDisco, maiorTamanho, transbordados);
+    }
+}
@@ -0,0 +1,57 @@
+package br.ufal.ic.p2.jackut.models;
+
+/**
+ * Métricas da inicialização da Facade: quanto tempo levou a carga do snapshot
+ * e a reprodução do journal, e quanto foi carregado.
+ */
+public class EstatisticasCarga {
+    private final int usuarios;
+    private final int comunidades;
+    private final int blocos;
+    private final int registrosJournal;
+    private final long nanosSnapshot;
+    private final long nanosJournal;
+
+    public EstatisticasCarga(int usuarios, int comunidades, int blocos, int registrosJournal,
+                             long nanosSnapshot, long nanosJournal) {
+        this.usuarios = usuarios;
+        this.comunidades = comunidades;
+        this.blocos = blocos;
+        this.registrosJournal = registrosJournal;
+        this.nanosSnapshot = nanosSnapshot;
+        this.nanosJournal = nanosJournal;
+    }
+
+    public int getUsuarios() { return usuarios; }
+
+    public int getComunidades() { return comunidades; }
+
+    /**
+     * Recupera a quantidade de blocos do snapshot interpretados em paralelo.
+     *
+     * @return Os blocos lidos, ou 0 se não havia snapshot binário.
+     */
+    public int getBlocos() { return blocos; }
+
+    public int getRegistrosJournal() { return registrosJournal; }
+
+    public long getNanosSnapshot() { return nanosSnapshot; }
+
+    public long getNanosJournal() { return nanosJournal; }
+
+    /**
+     * Recupera o tempo total de inicialização, em milissegundos.
+     *
+     * @return A soma da carga do snapshot e da reprodução do journal.
+     */
+    public double getMilissegundosTotal() {
+        return (nanosSnapshot + nanosJournal) / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("carga: %d usuarios, %d comunidades, %d blocos em %.1f ms; "
+                        + "journal: %d registros em %.1f ms",
+                usuarios, comunidades, blocos, nanosSnapshot / 1e6, registrosJournal, nanosJournal / 1e6);
+    }
+}
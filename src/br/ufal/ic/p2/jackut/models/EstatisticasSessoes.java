@@ -0,0 +1,52 @@
+package br.ufal.ic.p2.jackut.models;
+
+/**
+ * Métricas da tabela de sessões: quantas estão vivas e quantas foram abertas,
+ * encerradas e expiradas desde o início.
+ */
+public class EstatisticasSessoes {
+    private final int ativas;
+    private final int usuariosComSessao;
+    private final long abertas;
+    private final long encerradas;
+    private final long expiradasOciosidade;
+    private final long expiradasDuracao;
+    private final int agendadas;
+
+    public EstatisticasSessoes(int ativas, int usuariosComSessao, long abertas, long encerradas,
+                               long expiradasOciosidade, long expiradasDuracao, int agendadas) {
+        this.ativas = ativas;
+        this.usuariosComSessao = usuariosComSessao;
+        this.abertas = abertas;
+        this.encerradas = encerradas;
+        this.expiradasOciosidade = expiradasOciosidade;
+        this.expiradasDuracao = expiradasDuracao;
+        this.agendadas = agendadas;
+    }
+
+    public int getAtivas() { return ativas; }
+
+    public int getUsuariosComSessao() { return usuariosComSessao; }
+
+    public long getAbertas() { return abertas; }
+
+    public long getEncerradas() { return encerradas; }
+
+    public long getExpiradasOciosidade() { return expiradasOciosidade; }
+
+    public long getExpiradasDuracao() { return expiradasDuracao; }
+
+    /**
+     * Recupera quantos prazos estão agendados na roda de temporização.
+     *
+     * @return Os prazos pendentes, incluindo os de sessões já encerradas.
+     */
+    public int getAgendadas() { return agendadas; }
+
+    @Override
+    public String toString() {
+        return String.format("sessoes: %d ativas de %d usuarios; %d abertas, %d encerradas, "
+                        + "%d expiradas por ociosidade, %d por duracao; %d prazos na roda",
+                ativas, usuariosComSessao, abertas, encerradas, expiradasOciosidade, expiradasDuracao, agendadas);
+    }
+}
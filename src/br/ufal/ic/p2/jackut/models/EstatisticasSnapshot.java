@@ -0,0 +1,68 @@
+package br.ufal.ic.p2.jackut.models;
+
+/**
+ * Situação dos snapshots gravados em segundo plano: quantos terminaram ou falharam,
+ * se há um em andamento e quanto custou o último.
+ */
+public class EstatisticasSnapshot {
+    private final long concluidos;
+    private final long falhas;
+    private final boolean emAndamento;
+    private final long ultimoLsn;
+    private final int ultimosSegmentos;
+    private final long nanosCaptura;
+    private final long nanosGravacao;
+    private final String ultimoErro;
+
+    public EstatisticasSnapshot(long concluidos, long falhas, boolean emAndamento, long ultimoLsn,
+                                int ultimosSegmentos, long nanosCaptura, long nanosGravacao, String ultimoErro) {
+        this.concluidos = concluidos;
+        this.falhas = falhas;
+        this.emAndamento = emAndamento;
+        this.ultimoLsn = ultimoLsn;
+        this.ultimosSegmentos = ultimosSegmentos;
+        this.nanosCaptura = nanosCaptura;
+        this.nanosGravacao = nanosGravacao;
+        this.ultimoErro = ultimoErro;
+    }
+
+    public long getConcluidos() { return concluidos; }
+
+    public long getFalhas() { return falhas; }
+
+    public boolean isEmAndamento() { return emAndamento; }
+
+    /**
+     * Recupera o LSN do journal coberto pelo último snapshot concluído.
+     *
+     * @return O LSN, ou 0 se nenhum snapshot terminou ainda.
+     */
+    public long getUltimoLsn() { return ultimoLsn; }
+
+    public int getUltimosSegmentos() { return ultimosSegmentos; }
+
+    /**
+     * Recupera quanto tempo a thread que pediu o último snapshot ficou parada
+     * capturando o estado, em nanossegundos.
+     *
+     * @return O tempo da captura, que não inclui disco.
+     */
+    public long getNanosCaptura() { return nanosCaptura; }
+
+    public long getNanosGravacao() { return nanosGravacao; }
+
+    /**
+     * Recupera a mensagem da última falha de gravação.
+     *
+     * @return A mensagem, ou null se o último snapshot terminou com sucesso.
+     */
+    public String getUltimoErro() { return ultimoErro; }
+
+    @Override
+    public String toString() {
+        return String.format("snapshots: %d concluidos, %d falhas%s; ultimo: lsn %d, %d segmentos, "
+                        + "captura %.2f ms, gravacao %.1f ms%s",
+                concluidos, falhas, emAndamento ? ", 1 em andamento" : "", ultimoLsn, ultimosSegmentos,
+                nanosCaptura / 1e6, nanosGravacao / 1e6, ultimoErro == null ? "" : "; erro: " + ultimoErro);
+    }
+}
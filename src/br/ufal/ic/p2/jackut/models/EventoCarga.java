@@ -0,0 +1,62 @@
+package br.ufal.ic.p2.jackut.models;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento do JDK Flight Recorder para cada fonte lida na inicialização: os arquivos de texto
+ * antigos, o snapshot binário, os segmentos e o journal. A duração do evento é o tempo da
+ * leitura, de modo que uma inicialização lenta pode ser cruzada com as coletas de lixo e a
+ * E/S da mesma gravação.
+ *
+ * <p>Sem uma gravação do JFR ativa, {@link #commit()} não faz nada e o custo é só o da
+ * criação do objeto.</p>
+ */
+@Name("br.ufal.ic.p2.jackut.Carga")
+@Label("Carga")
+@Category({"Jackut", "Persistência"})
+@Description("Leitura de uma fonte de dados na inicialização da Facade")
+public class EventoCarga extends Event {
+    @Label("Fonte")
+    @Description("O arquivo ou conjunto de arquivos lido")
+    private String fonte;
+
+    @Label("Registros")
+    @Description("Usuários, comunidades, mensagens ou registros do journal interpretados")
+    private long registros;
+
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    /**
+     * Cria o evento e começa a contar a duração da leitura.
+     *
+     * @param fonte O nome da fonte, como {@code usuarios.txt} ou {@code segmentos}.
+     * @return O evento iniciado.
+     */
+    public static EventoCarga iniciar(String fonte) {
+        EventoCarga evento = new EventoCarga();
+        evento.fonte = fonte;
+        evento.begin();
+        return evento;
+    }
+
+    /**
+     * Encerra a leitura e grava o evento, se o JFR estiver gravando.
+     *
+     * @param registros Quantos registros foram interpretados.
+     * @param bytes Quantos bytes foram lidos.
+     */
+    public void concluir(long registros, long bytes) {
+        end();
+        if (!shouldCommit()) return;
+        this.registros = registros;
+        this.bytes = bytes;
+        commit();
+    }
+}
@@ -0,0 +1,76 @@
+package br.ufal.ic.p2.jackut.models;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Evento do JDK Flight Recorder para cada etapa de {@link Facade#encerrarSistema()}:
+ * compactação das mensagens, snapshot, journal e índice de mensagens.
+ *
+ * <p>Os bytes e o tempo de {@code fsync} de uma etapa são a diferença dos totais de
+ * {@link EventoGravacao} entre o início e o fim dela. Como o encerramento roda com a Facade
+ * em uso exclusivo, a única E/S nesse intervalo é a da própria etapa, ainda que feita pelas
+ * threads {@code jackut-snapshot}, {@code jackut-journal} ou do índice.</p>
+ */
+@Name("br.ufal.ic.p2.jackut.Encerramento")
+@Label("Etapa do encerramento")
+@Category({"Jackut", "Persistência"})
+@Description("Uma etapa do encerramento do sistema, com a E/S que ela causou")
+public class EventoEncerramento extends Event {
+    @Label("Etapa")
+    private String etapa;
+
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    @Label("fsync")
+    @Description("Tempo gasto sincronizando arquivos com o disco durante a etapa")
+    @Timespan(Timespan.NANOSECONDS)
+    private long fsync;
+
+    private transient long bytesInicio;
+    private transient long nanosFsyncInicio;
+
+    /**
+     * Cria o evento de uma etapa e começa a contar a duração dela.
+     *
+     * @param etapa O nome da etapa.
+     * @return O evento iniciado.
+     */
+    public static EventoEncerramento iniciar(String etapa) {
+        EventoEncerramento evento = new EventoEncerramento();
+        evento.etapa = etapa;
+        evento.bytesInicio = EventoGravacao.getTotalBytes();
+        evento.nanosFsyncInicio = EventoGravacao.getTotalNanosFsync();
+        evento.begin();
+        return evento;
+    }
+
+    /**
+     * Encerra esta etapa e inicia a seguinte.
+     *
+     * @param etapa O nome da próxima etapa.
+     * @return O evento da próxima etapa.
+     */
+    public EventoEncerramento proxima(String etapa) {
+        concluir();
+        return iniciar(etapa);
+    }
+
+    /**
+     * Encerra a etapa e grava o evento, se o JFR estiver gravando.
+     */
+    public void concluir() {
+        end();
+        if (!shouldCommit()) return;
+        bytes = EventoGravacao.getTotalBytes() - bytesInicio;
+        fsync = EventoGravacao.getTotalNanosFsync() - nanosFsyncInicio;
+        commit();
+    }
+}
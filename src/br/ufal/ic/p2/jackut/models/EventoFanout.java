@@ -0,0 +1,57 @@
+package br.ufal.ic.p2.jackut.models;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento do JDK Flight Recorder para cada {@link Facade#enviarMensagem}, com o número de
+ * membros que a mensagem alcança. A duração vai do início da chamada até o journal
+ * confirmar o registro, para que envios lentos possam ser relacionados ao tamanho da
+ * comunidade, às coletas de lixo e ao {@code fsync}.
+ */
+@Name("br.ufal.ic.p2.jackut.Fanout")
+@Label("Envio de mensagem")
+@Category({"Jackut", "Mensagens"})
+@Description("Envio de uma mensagem de comunidade e quantos membros ela alcança")
+public class EventoFanout extends Event {
+    @Label("Comunidade")
+    private String comunidade;
+
+    @Label("Membros")
+    @Description("Quantos membros a comunidade tinha no envio")
+    private int membros;
+
+    /**
+     * Cria o evento e começa a contar a duração do envio.
+     *
+     * @return O evento iniciado.
+     */
+    public static EventoFanout iniciar() {
+        EventoFanout evento = new EventoFanout();
+        evento.begin();
+        return evento;
+    }
+
+    /**
+     * Anota a comunidade de destino. Deve ser chamado com a comunidade travada, para que o
+     * número de membros seja o do momento do envio.
+     *
+     * @param destino A comunidade que recebe a mensagem.
+     */
+    public void destino(Comunidade destino) {
+        if (!isEnabled()) return;
+        comunidade = destino.getNome();
+        membros = destino.getMembros().size();
+    }
+
+    /**
+     * Encerra o envio e grava o evento, se o JFR estiver gravando.
+     */
+    public void concluir() {
+        end();
+        if (shouldCommit()) commit();
+    }
+}
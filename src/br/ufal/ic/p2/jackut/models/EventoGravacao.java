@@ -0,0 +1,77 @@
+package br.ufal.ic.p2.jackut.models;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.File;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evento do JDK Flight Recorder para cada arquivo gravado e sincronizado com o disco:
+ * segmentos e índice do banco, lotes do journal e segmentos e manifesto do índice de
+ * mensagens. Registra os bytes escritos e quanto do tempo total foi gasto no
+ * {@code fsync}.
+ *
+ * <p>Além do evento, os bytes e o tempo de {@code fsync} são somados em totais do processo,
+ * que {@link EventoEncerramento} usa para atribuir a E/S a cada etapa do encerramento,
+ * mesmo quando ela acontece nas threads de fundo.</p>
+ */
+@Name("br.ufal.ic.p2.jackut.Gravacao")
+@Label("Gravação")
+@Category({"Jackut", "Persistência"})
+@Description("Escrita e sincronização de um arquivo de dados")
+public class EventoGravacao extends Event {
+    private static final LongAdder TOTAL_BYTES = new LongAdder();
+    private static final LongAdder TOTAL_NANOS_FSYNC = new LongAdder();
+
+    @Label("Arquivo")
+    @Description("O caminho do arquivo de destino")
+    private String arquivo;
+
+    @Label("Bytes")
+    @DataAmount
+    private long bytes;
+
+    @Label("fsync")
+    @Description("Tempo gasto sincronizando o arquivo com o disco")
+    @Timespan(Timespan.NANOSECONDS)
+    private long fsync;
+
+    /**
+     * Cria o evento e começa a contar a duração da gravação.
+     *
+     * @return O evento iniciado.
+     */
+    public static EventoGravacao iniciar() {
+        EventoGravacao evento = new EventoGravacao();
+        evento.begin();
+        return evento;
+    }
+
+    /**
+     * Encerra a gravação, soma-a aos totais e grava o evento, se o JFR estiver gravando.
+     *
+     * @param arquivo O arquivo gravado; se foi escrito num temporário, o destino dele.
+     * @param bytes Quantos bytes foram escritos.
+     * @param nanosFsync Quanto tempo levou o {@code fsync}.
+     */
+    public void concluir(File arquivo, long bytes, long nanosFsync) {
+        end();
+        TOTAL_BYTES.add(bytes);
+        TOTAL_NANOS_FSYNC.add(nanosFsync);
+        if (!shouldCommit()) return;
+        this.arquivo = arquivo.getPath();
+        this.bytes = bytes;
+        this.fsync = nanosFsync;
+        commit();
+    }
+
+    static long getTotalBytes() { return TOTAL_BYTES.sum(); }
+
+    static long getTotalNanosFsync() { return TOTAL_NANOS_FSYNC.sum(); }
+}
@@ -3,40 +3,113 @@ package br.ufal.ic.p2.jackut.models;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Classe que fornece a interface para interagir com o sistema Jackut,
  * gerenciando usuários, sessões, comunidades e mensagens.
+ *
+ * <p>A Facade pode ser usada por várias sessões ao mesmo tempo. Cada operação trava,
+ * em {@link TravasListradas}, os usuários e comunidades que lê ou altera, e valida e
+ * aplica a mutação com eles travados; a espera pelo fsync do journal acontece depois de
+ * soltar as travas. Operações que alcançam muitos registros de uma vez (remoção de conta,
+ * captura de snapshot) usam a trava global exclusiva, que as demais seguram em modo
+ * compartilhado.</p>
+ *
+ * <p>Mensagens de comunidade são gravadas uma única vez, no {@link LogMensagens} da
+ * comunidade, com uma sequência global; cada membro guarda só um cursor por comunidade, e
+ * {@link #lerMensagem(String)} entrega a mensagem de menor sequência entre as comunidades
+ * do usuário, na mesma ordem em que foram enviadas.</p>
+ *
+ * <p>Amizades, convites, ídolos, paqueras e inimigos ficam num único {@link GrafoRelacoes};
+ * os conjuntos do {@link Usuario} são visões dele, e incluir uma aresta atualiza as duas
+ * pontas.</p>
  */
 public class Facade {
     private static Facade instance;
 
-    private final Map<String, Usuario> usuarios = new HashMap<>();
-    private final Map<String, String> sessoes = new HashMap<>();
-    private final Map<String, Comunidade> comunidades = new HashMap<>();
-    private final Map<String, Queue<String>> mensagensComunidade = new HashMap<>();
-    private int proximoIdSessao = 1;
+    private final Map<String, Usuario> usuarios = new ConcurrentHashMap<>();
+    private final GerenciadorSessoes sessoes = new GerenciadorSessoes(
+            Long.getLong("jackut.sessao.ociosidadeMs", 30L * 60 * 1000),
+            Long.getLong("jackut.sessao.duracaoMaximaMs", 24L * 60 * 60 * 1000),
+            Long.getLong("jackut.sessao.tickMs", 1000),
+            System::currentTimeMillis);
+    private final Map<String, Comunidade> comunidades = new ConcurrentHashMap<>();
+    private final GrafoRelacoes grafo = new GrafoRelacoes();
+    private final SugestoesAmizade sugestoes = new SugestoesAmizade();
+    private final BuscaDistancia busca = new BuscaDistancia(grafo);
+    private final IndicePerfil indicePerfil = new IndicePerfil();
+    private final IndiceComunidades indiceComunidades = new IndiceComunidades();
+    private final CacheListagens listagens = new CacheListagens(
+            Integer.getInteger("jackut.cache.entradas", 65536),
+            Long.getLong("jackut.cache.caracteres", 16L * 1024 * 1024),
+            Integer.getInteger("jackut.cache.segmentos", 64));
+    private final AtomicLong sequenciaMensagens = new AtomicLong();
+    private final Set<String> comunidadesComMensagens = ConcurrentHashMap.newKeySet();
+    private final ReentrantReadWriteLock travaGlobal = new ReentrantReadWriteLock();
+    private final TravasListradas travas = new TravasListradas(Integer.getInteger("jackut.travas", 1024));
+
+    private final File diretorio;
+    private final Journal journal;
+    private final ArmazemSegmentos armazem;
+    private final IndiceMensagens indiceMensagens;
+    private final GravadorSnapshots gravador;
+    private final long limiteJournal = Long.getLong("jackut.journal.limite", 8L * 1024 * 1024);
+    private final EstatisticasCarga estatisticasCarga;
 
     /**
      * Construtor privado para inicializar os dados e garantir a criação única da Facade.
      */
     public Facade() {
-        File dir = new File("database");
-        if (!dir.exists()) dir.mkdirs();
-        loadUsuarios();
-        loadComunidades();
-        loadMensagens();
+        this(new File("database"));
+    }
+
+    /**
+     * Inicializa a Facade sobre um diretório de dados: carrega o último snapshot
+     * e reaplica as mutações gravadas no journal depois dele.
+     *
+     * @param diretorio O diretório onde ficam o snapshot e o journal.
+     */
+    public Facade(File diretorio) {
+        this.diretorio = diretorio;
+        if (!diretorio.exists()) diretorio.mkdirs();
+        this.journal = new Journal(new File(diretorio, "journal.log"),
+                Journal.Modo.valueOf(System.getProperty("jackut.journal.modo", "GRUPO").toUpperCase()),
+                Long.getLong("jackut.journal.janelaMicros", 0),
+                Integer.getInteger("jackut.journal.lote", 512));
+        this.armazem = new ArmazemSegmentos(new File(diretorio, "segmentos"),
+                Integer.getInteger("jackut.segmentos", 256));
+        try {
+            this.indiceMensagens = new IndiceMensagens(new File(diretorio, "busca"),
+                    Integer.getInteger("jackut.busca.lote", 8192),
+                    Integer.getInteger("jackut.busca.fatorMescla", 8));
+        } catch (IOException e) {
+            throw EncodingUtil.createException("Erro ao carregar o índice de mensagens.");
+        }
+        this.gravador = new GravadorSnapshots(armazem, journal, indiceMensagens);
+        long inicio = System.nanoTime();
+        long lsnSnapshot = loadSnapshot();
+        iniciarMensagens();
+        iniciarIndicesReversos();
+        long meio = System.nanoTime();
+        int registros = journal.reproduzir(lsnSnapshot, this::aplicar);
+        this.estatisticasCarga = new EstatisticasCarga(usuarios.size(), comunidades.size(),
+                armazem.getBlocosCarregados(), registros, meio - inicio, System.nanoTime() - meio);
     }
 
 
     /**
-     * Obtém a instância única da Facade.
+     * Obtém a instância única da Facade; com {@code -Djackut.metricas=true}, uma
+     * {@link FacadeInstrumentada}.
      *
      * @return A instância da Facade.
      */
     public static synchronized Facade getInstance() {
         if (instance == null) {
-            instance = new Facade();
+            instance = Boolean.getBoolean("jackut.metricas") ? new FacadeInstrumentada() : new Facade();
         }
         return instance;
     }
@@ -46,12 +119,135 @@ public class Facade {
     }
 
     /**
-     * Carrega os usuários a partir do arquivo de dados.
+     * Recupera as métricas da inicialização desta Facade.
+     *
+     * @return O tempo de carga do snapshot e de reprodução do journal.
+     */
+    public EstatisticasCarga getEstatisticasCarga() {
+        return estatisticasCarga;
+    }
+
+    /**
+     * Carrega os segmentos do banco, em paralelo com {@code jackut.carga.threads} threads.
+     * Se ainda não houver banco segmentado, mas houver um snapshot binário único ou um
+     * banco no formato de texto antigo, carrega esse formato e o converte em segmentos.
+     *
+     * @return O LSN do journal já incorporado ao que foi carregado.
+     */
+    private long loadSnapshot() {
+        int paralelismo = Integer.getInteger("jackut.carga.threads", Runtime.getRuntime().availableProcessors());
+        try {
+            if (armazem.existe()) {
+                return armazem.carregar(usuarios, comunidades, this, paralelismo);
+            }
+
+            File snapshot = new File(diretorio, "snapshot.bin");
+            if (snapshot.exists()) {
+                EventoCarga evento = EventoCarga.iniciar(snapshot.getName());
+                SnapshotBinario.carregar(snapshot, usuarios, comunidades, this, paralelismo);
+                evento.concluir(usuarios.size() + comunidades.size(), snapshot.length());
+                migrar("snapshot.bin");
+                return 0;
+            }
+        } catch (IOException e) {
+            throw EncodingUtil.createException("Erro ao carregar o snapshot.");
+        }
+
+        if (!new File(diretorio, "usuarios.txt").exists()) return 0;
+        loadUsuarios();
+        loadComunidades();
+        loadMensagens();
+        migrar("usuarios.txt", "comunidades.txt", "mensagens.txt");
+        return 0;
+    }
+
+    /**
+     * Grava o conteúdo carregado de um formato antigo como banco segmentado e
+     * renomeia os arquivos antigos para {@code *.migrado}.
+     */
+    private void migrar(String... antigos) {
+        armazem.adicionarTodos(usuarios.values(), comunidades.values());
+        try {
+            armazem.gravar(0);
+        } catch (IOException e) {
+            throw EncodingUtil.createException("Erro ao converter o banco de dados.");
+        }
+        for (String nome : antigos) {
+            File antigo = new File(diretorio, nome);
+            if (antigo.exists()) {
+                antigo.renameTo(new File(diretorio, nome + ".migrado"));
+            }
+        }
+    }
+
+    /**
+     * Prepara os logs de mensagens depois da carga: a sequência global continua da maior
+     * sequência gravada, nos logs ou no índice de mensagens, e membros vindos de um banco sem
+     * cursores (anterior aos logs por comunidade) ou sem sequências de entrada recebem 0 em
+     * ambos, já que participam desde antes de qualquer mensagem. As mensagens dos logs vão
+     * para o índice, que ignora as que ele já tem; assim um banco anterior ao índice tem as
+     * mensagens pendentes indexadas.
+     */
+    private void iniciarMensagens() {
+        sequenciaMensagens.set(indiceMensagens.getUltimaSequencia());
+        for (Comunidade c : comunidades.values()) {
+            long ultima = c.getMensagens().getUltimaSequencia();
+            if (ultima > sequenciaMensagens.get()) sequenciaMensagens.set(ultima);
+            if (!c.getMensagens().isVazio()) comunidadesComMensagens.add(c.getNome());
+            for (LogMensagens.Mensagem m : c.getMensagens().getMensagens()) {
+                indiceMensagens.indexarMensagem(m.getSequencia(), c.getNome(), m.getAutor(), m.getTexto());
+            }
+            for (String membro : c.getMembros()) {
+                Usuario u = usuarios.get(membro);
+                if (u == null) continue;
+                u.getCursoresMensagens().putIfAbsent(c.getNome(), 0L);
+                u.getEntradasComunidades().putIfAbsent(c.getNome(), 0L);
+            }
+        }
+    }
+
+    /**
+     * Inclui os usuários carregados no grafo de relacionamentos, que completa as arestas
+     * de entrada (quem tem o usuário como paquera ou inimigo) a partir das de saída, e
+     * reconstrói os demais índices reversos que a remoção de conta usa para visitar só os
+     * registros afetados. Também inclui cada comunidade no conjunto de comunidades dos seus
+     * membros, que bancos antigos podiam deixar incompleto, e monta os índices de busca de
+     * perfis e comunidades.
+     */
+    private void iniciarIndicesReversos() {
+        for (Usuario u : usuarios.values()) {
+            grafo.registrar(u.getNo());
+            indicePerfil.incluirUsuario(u);
+        }
+        for (Usuario u : usuarios.values()) {
+            for (String recado : u.getRecadosRecebidos()) {
+                int separador = recado == null ? -1 : recado.indexOf(':');
+                Usuario remetente = separador > 0 ? usuarios.get(recado.substring(0, separador)) : null;
+                if (remetente != null) remetente.getDestinatariosRecados().add(u.getLogin());
+            }
+        }
+        for (Comunidade c : comunidades.values()) {
+            indiceComunidades.incluir(c.getNome(), c.getDescricao());
+            for (String membro : c.getMembros()) {
+                Usuario u = usuarios.get(membro);
+                if (u != null) u.getComunidades().add(c.getNome());
+            }
+            for (String autor : c.getMensagens().getAutores()) {
+                Usuario u = usuarios.get(autor);
+                if (u != null) u.getComunidadesComMensagens().add(c.getNome());
+            }
+        }
+    }
+
+    /**
+     * Carrega os usuários a partir do arquivo de dados no formato de texto antigo.
      */
     private void loadUsuarios() {
-        File arquivo = new File("database/usuarios.txt");
+        File arquivo = new File(diretorio, "usuarios.txt");
         if (!arquivo.exists()) return;
 
+        EventoCarga evento = EventoCarga.iniciar(arquivo.getName());
+        int registros = 0;
         try (BufferedReader reader = new BufferedReader(
                 new InputStreamReader(new FileInputStream(arquivo), "ISO-8859-1"))) {
 
@@ -64,6 +260,7 @@ public class Facade {
                 } else if (linha.equals("FIM")) {
                     Usuario u = Usuario.fromText(bloco);
                     usuarios.put(u.getLogin(), u);
+                    registros++;
                     bloco = new ArrayList<>();
                 } else {
                     bloco.add(linha);
@@ -72,12 +269,14 @@ public class Facade {
         } catch (IOException e) {
             throw EncodingUtil.createException("Erro ao carregar os usuários.");
         }
+        evento.concluir(registros, arquivo.length());
     }
 
     public void loadComunidades() {
-        File arquivo = new File("database/comunidades.txt");
+        File arquivo = new File(diretorio, "comunidades.txt");
         if (!arquivo.exists()) return;
 
+        EventoCarga evento = EventoCarga.iniciar(arquivo.getName());
         try (BufferedReader reader = new BufferedReader(
                 new InputStreamReader(new FileInputStream(arquivo), "ISO-8859-1"))) {
 
@@ -124,12 +323,15 @@ public class Facade {
         } catch (IOException e) {
             throw EncodingUtil.createException("Erro ao carregar as comunidades.");
         }
+        evento.concluir(comunidades.size(), arquivo.length());
     }
 
     private void loadMensagens() {
-        File arquivo = new File("database/mensagens.txt");
+        File arquivo = new File(diretorio, "mensagens.txt");
         if (!arquivo.exists()) return;
 
+        EventoCarga evento = EventoCarga.iniciar(arquivo.getName());
+        int registros = 0;
         try (BufferedReader reader = new BufferedReader(
                 new InputStreamReader(new FileInputStream(arquivo), "ISO-8859-1"))) {
             String linha;
@@ -141,6 +343,7 @@ public class Facade {
                     atual = usuarios.get(login);
                 } else if (linha.startsWith("MENSAGEM=") && atual != null) {
                     atual.receberMensagemComunidade(linha.substring(9));
+                    registros++;
                 } else if (linha.equals("FIM")) {
                     atual = null;
                 }
@@ -148,66 +351,302 @@ public class Facade {
         } catch (IOException e) {
             throw EncodingUtil.createException("Erro ao carregar mensagens.");
         }
+        evento.concluir(registros, arquivo.length());
     }
 
 
+    /**
+     * Grava os segmentos alterados, esperando a gravação terminar, e fecha o journal e o
+     * índice de mensagens. Cada etapa gera um {@link EventoEncerramento} no JFR.
+     */
     public void encerrarSistema() {
-        new File("database").mkdirs();
-
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream("database/usuarios.txt"), "ISO-8859-1"))) {
-            for (Usuario u : usuarios.values()) {
-                writer.write(u.toText());
-            }
-        } catch (IOException e) {
-            throw EncodingUtil.createException("Erro ao salvar os usuários.");
-        }
-
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream("database/comunidades.txt"), "ISO-8859-1"))) {
-            for (Comunidade c : comunidades.values()) {
-                writer.write("COMUNIDADE\n");
-                writer.write("nome=" + c.getNome() + "\n");
-                writer.write("descricao=" + c.getDescricao() + "\n");
-                writer.write("dono=" + c.getDono() + "\n");
-                writer.write("membros=" + String.join("|", c.getMembros()) + "\n");
-                writer.write("FIM\n");
-            }
+        travaGlobal.writeLock().lock();
+        try {
+            EventoEncerramento etapa = EventoEncerramento.iniciar("compactarMensagens");
+            compactarMensagens();
+            etapa = etapa.proxima("snapshot");
+            gravador.salvar();
+            etapa = etapa.proxima("journal");
+            journal.fechar();
+            etapa = etapa.proxima("indiceMensagens");
+            indiceMensagens.fechar();
+            etapa.concluir();
         } catch (IOException e) {
-            throw EncodingUtil.createException("Erro ao salvar as comunidades.");
+            throw EncodingUtil.createException("Erro ao salvar o índice de mensagens.");
+        } finally {
+            travaGlobal.writeLock().unlock();
         }
+    }
 
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream("database/mensagens.txt"), "ISO-8859-1"))) {
-            for (Usuario u : usuarios.values()) {
-                writer.write("USUARIO=" + u.getLogin() + "\n");
-                for (String msg : u.getMensagensComunidade()) {
-                    writer.write("MENSAGEM=" + msg + "\n");
-                }
-                writer.write("FIM\n");
-            }
-        } catch (IOException e) {
-            throw EncodingUtil.createException("Erro ao salvar mensagens.");
+    /**
+     * Inicia a gravação de um snapshot em segundo plano, a partir do estado atual.
+     * Novas mutações continuam sendo aceitas enquanto ele é gravado.
+     *
+     * @return false se já havia um snapshot em andamento.
+     */
+    public boolean iniciarSnapshot() {
+        travaGlobal.writeLock().lock();
+        try {
+            compactarMensagens();
+            return gravador.iniciar();
+        } finally {
+            travaGlobal.writeLock().unlock();
         }
+    }
 
+    /**
+     * Espera o snapshot em andamento, se houver, chegar ao disco.
+     *
+     * @throws RuntimeException Se a gravação do snapshot falhou.
+     */
+    public void aguardarSnapshot() {
+        gravador.aguardar();
+    }
 
+    /**
+     * Recupera a situação dos snapshots gravados em segundo plano.
+     *
+     * @return Contadores, duração e erro do último snapshot.
+     */
+    public EstatisticasSnapshot getEstatisticasSnapshot() {
+        return gravador.getEstatisticas();
     }
 
     public void zerarSistema() {
+        travaGlobal.writeLock().lock();
+        try {
+            zerar();
+        } finally {
+            travaGlobal.writeLock().unlock();
+        }
+    }
+
+    private void zerar() {
+        try {
+            gravador.aguardar();
+        } catch (RuntimeException ignored) {
+            // o banco vai ser apagado de qualquer forma
+        }
+
         usuarios.clear();
-        sessoes.clear();
+        grafo.limpar();
+        sugestoes.limpar();
+        indicePerfil.limpar();
+        indiceComunidades.limpar();
+        indiceMensagens.apagar();
+        listagens.limpar();
+        sessoes.limpar();
         comunidades.clear();
-        mensagensComunidade.clear();
-        proximoIdSessao = 1;
+        sequenciaMensagens.set(0);
+        comunidadesComMensagens.clear();
+        // nada mais guarda IDs dos dicionários; sem isso eles e os nós do grafo só crescem
+        Dicionario.LOGINS.limpar();
+        Dicionario.COMUNIDADES.limpar();
+
+        journal.apagar();
+        armazem.apagar();
+        new File(diretorio, "snapshot.bin").delete();
+        new File(diretorio, "usuarios.txt").delete();
+        new File(diretorio, "comunidades.txt").delete();
+        new File(diretorio, "mensagens.txt").delete();
+        new File(diretorio, "recados.txt").delete();
+
+        diretorio.mkdirs();
+    }
 
-        new File("database/usuarios.txt").delete();
-        new File("database/comunidades.txt").delete();
-        new File("database/mensagens.txt").delete();
-        new File("database/recados.txt").delete();
+    /**
+     * Descarta, dos logs que receberam mensagens, as que todos os membros já leram.
+     * Roda com a trava global exclusiva, antes de cada snapshot, e só visita as comunidades
+     * com mensagens pendentes.
+     */
+    private void compactarMensagens() {
+        for (Iterator<String> it = comunidadesComMensagens.iterator(); it.hasNext(); ) {
+            Comunidade c = comunidades.get(it.next());
+            if (c == null || c.getMensagens().isVazio()) {
+                it.remove();
+                continue;
+            }
+            long menor = Long.MAX_VALUE;
+            for (String membro : c.getMembros()) {
+                Long cursor = usuarios.get(membro).getCursoresMensagens().get(c.getNome());
+                menor = Math.min(menor, cursor == null ? 0 : cursor);
+            }
+            LogMensagens.Mensagem primeira = c.getMensagens().proxima(0);
+            if (primeira != null && primeira.getSequencia() <= menor) {
+                armazem.alterado(c);
+                c.getMensagens().descartarAte(menor);
+            }
+            if (c.getMensagens().isVazio()) it.remove();
+        }
+    }
 
-        new File("database").mkdirs();
+    /**
+     * Abre uma operação comum, que segura a trava global em modo compartilhado.
+     * Os registros envolvidos são travados depois, com {@link Operacao#travar(String...)}.
+     * Consultas que não travam registros nem escrevem no journal seguram a trava global
+     * diretamente.
+     */
+    private Operacao operacao() {
+        return new Operacao(travaGlobal.readLock());
     }
 
+    /**
+     * Abre uma operação exclusiva: nenhuma outra operação roda enquanto ela estiver aberta.
+     */
+    private Operacao exclusiva() {
+        return new Operacao(travaGlobal.writeLock());
+    }
+
+    /**
+     * Escopo de uma operação da Facade. Segura a trava global e as travas dos registros
+     * envolvidos enquanto a operação valida e aplica a mutação; ao fechar, solta as travas,
+     * espera a mutação ficar durável conforme o modo do journal ({@code jackut.journal.modo})
+     * e, se o journal passou do limite, inicia um snapshot em segundo plano.
+     */
+    private final class Operacao implements AutoCloseable {
+        private final Lock global;
+        private int[] travadas;
+        private long lsn;
+
+        Operacao(Lock global) {
+            // depois de uma falha do journal, a memória pode ter mutações que ele não tem
+            journal.verificar();
+            this.global = global;
+            global.lock();
+        }
+
+        /**
+         * Trava os usuários e comunidades envolvidos, todos de uma vez.
+         *
+         * @param chaves Os logins e nomes de comunidade lidos ou alterados pela operação.
+         */
+        void travar(String... chaves) {
+            travadas = travas.travar(chaves);
+        }
+
+        /**
+         * Anexa uma mutação já validada ao journal e só então a aplica ao estado em memória.
+         * Se o journal recusar o registro, a operação falha sem ter alterado nada.
+         *
+         * @param registro A mutação.
+         * @return O resultado da mutação, para as operações de leitura de fila.
+         */
+        String executar(RegistroJournal registro) {
+            lsn = journal.anexar(registro);
+            return aplicar(registro);
+        }
+
+        @Override
+        public void close() {
+            if (travadas != null) travas.destravar(travadas);
+            global.unlock();
+            if (lsn == 0) return;
+
+            journal.aguardar(lsn);
+            if (journal.tamanho() > limiteJournal && !gravador.isEmAndamento()
+                    && travaGlobal.writeLock().tryLock()) {
+                try {
+                    compactarMensagens();
+                    gravador.iniciar();
+                } finally {
+                    travaGlobal.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Aplica uma mutação ao estado em memória, sem validação e sem registrá-la.
+     * Usado tanto pelas operações públicas quanto pela reprodução do journal.
+     *
+     * @param r A mutação a ser aplicada.
+     * @return O recado ou mensagem consumido, ou null para as demais mutações.
+     */
+    private String aplicar(RegistroJournal r) {
+        Usuario u = usuarios.get(r.getCampo(0));
+        switch (r.getTipo()) {
+            case CRIAR_USUARIO:
+                u = new Usuario(r.getCampo(0), r.getCampo(1), r.getCampo(2));
+                usuarios.put(u.getLogin(), u);
+                grafo.registrar(u.getNo());
+                indicePerfil.incluirUsuario(u);
+                armazem.adicionar(u);
+                return null;
+            case EDITAR_PERFIL:
+                armazem.alterado(u);
+                String anterior = u.getPerfil().getAtributo(r.getCampo(1));
+                u.getPerfil().adicionarAtributo(r.getCampo(1), r.getCampo(2));
+                indicePerfil.alterar(u.getId(), r.getCampo(1), anterior, r.getCampo(2));
+                return null;
+            case ADICIONAR_AMIGO:
+                aplicarAdicionarAmigo(u, usuarios.get(r.getCampo(1)));
+                return null;
+            case ENVIAR_RECADO:
+                // recados usam a mesma sequência das mensagens, que identifica o texto no índice
+                long sequenciaRecado = r.getCampos().length > 3
+                        ? Long.parseLong(r.getCampo(3)) : sequenciaMensagens.incrementAndGet();
+                sequenciaMensagens.accumulateAndGet(sequenciaRecado, Math::max);
+                Usuario destinatario = usuarios.get(r.getCampo(1));
+                armazem.alterado(destinatario);
+                destinatario.receberRecado(r.getCampo(0) + ":" + r.getCampo(2));
+                u.getDestinatariosRecados().add(r.getCampo(1));
+                indiceMensagens.indexarRecado(sequenciaRecado, r.getCampo(1), r.getCampo(0), r.getCampo(2));
+                return null;
+            case LER_RECADO:
+                armazem.alterado(u);
+                return u.lerRecado();
+            case CRIAR_COMUNIDADE:
+                aplicarCriarComunidade(u, r.getCampo(1), r.getCampo(2));
+                return null;
+            case ADICIONAR_COMUNIDADE:
+                Comunidade comunidade = comunidades.get(r.getCampo(1));
+                armazem.alterado(comunidade);
+                armazem.alterado(u);
+                comunidade.adicionarMembro(r.getCampo(0), this);
+                u.adicionarComunidade(r.getCampo(1));
+                u.getCursoresMensagens().put(r.getCampo(1), comunidade.getMensagens().getUltimaSequencia());
+                // registros anteriores à busca de mensagens não trazem a sequência de entrada
+                u.getEntradasComunidades().put(r.getCampo(1), r.getCampos().length > 2
+                        ? Long.parseLong(r.getCampo(2)) : comunidade.getMensagens().getUltimaSequencia());
+                return null;
+            case ADICIONAR_IDOLO:
+                Usuario idolo = usuarios.get(r.getCampo(1));
+                armazem.alterado(u);
+                armazem.alterado(idolo);
+                u.adicionarIdolo(r.getCampo(1));
+                return null;
+            case ADICIONAR_PAQUERA:
+                aplicarAdicionarPaquera(u, usuarios.get(r.getCampo(1)));
+                return null;
+            case ADICIONAR_INIMIGO:
+                armazem.alterado(u);
+                armazem.alterado(usuarios.get(r.getCampo(1)));
+                u.adicionarInimigo(r.getCampo(1));
+                return null;
+            case REMOVER_USUARIO:
+                // registros anteriores ao índice de mensagens não trazem a sequência
+                aplicarRemoverUsuario(r.getCampo(0), r.getCampos().length > 1
+                        ? Long.parseLong(r.getCampo(1)) : sequenciaMensagens.get());
+                return null;
+            case ENVIAR_MENSAGEM:
+                // registros anteriores aos logs por comunidade não trazem a sequência
+                long sequencia = r.getCampos().length > 3
+                        ? Long.parseLong(r.getCampo(3)) : sequenciaMensagens.incrementAndGet();
+                sequenciaMensagens.accumulateAndGet(sequencia, Math::max);
+                Comunidade destino = comunidades.get(r.getCampo(1));
+                armazem.alterado(destino);
+                destino.getMensagens().anexar(sequencia, r.getCampo(0), r.getCampo(2));
+                u.getComunidadesComMensagens().add(destino.getNome());
+                comunidadesComMensagens.add(destino.getNome());
+                indiceMensagens.indexarMensagem(sequencia, destino.getNome(), r.getCampo(0), r.getCampo(2));
+                return null;
+            case LER_MENSAGEM:
+                armazem.alterado(u);
+                return aplicarLerMensagem(u, r);
+            default:
+                throw new IllegalStateException("Registro desconhecido: " + r.getTipo());
+        }
+    }
 
     /**
      * Cria um novo usuário no sistema.
@@ -224,11 +663,14 @@ public class Facade {
             throw EncodingUtil.createException("Login inválido.");
         if (senha == null || senha.isEmpty())
             throw EncodingUtil.createException("Senha inválida.");
-        if (usuarios.containsKey(login))
-            throw EncodingUtil.createException("Conta com esse nome já existe.");
 
-        usuarios.put(login, new Usuario(login, senha, nome));
-        encerrarSistema();
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            if (usuarios.containsKey(login))
+                throw EncodingUtil.createException("Conta com esse nome já existe.");
+
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.CRIAR_USUARIO, login, senha, nome));
+        }
     }
 
     public String abrirSessao(String login, String senha) {
@@ -236,45 +678,147 @@ public class Facade {
             throw EncodingUtil.createException("Login ou senha inválidos.");
         }
 
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) {
-            throw EncodingUtil.createException("Login ou senha inválidos.");
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            Usuario usuario = usuarios.get(login);
+            if (usuario == null) {
+                throw EncodingUtil.createException("Login ou senha inválidos.");
+            }
+
+            if (senha == null || senha.isEmpty() || !usuario.getSenha().equals(senha)) {
+                throw EncodingUtil.createException("Login ou senha inválidos.");
+            }
+
+            return sessoes.abrir(login);
         }
+    }
 
-        if (senha == null || senha.isEmpty() || !usuario.getSenha().equals(senha)) {
-            throw EncodingUtil.createException("Login ou senha inválidos.");
+    /**
+     * Encerra uma sessão (logout).
+     *
+     * @param idSessao O ID da sessão.
+     * @throws RuntimeException Se a sessão não existir ou já tiver expirado.
+     */
+    public void encerrarSessao(String idSessao) {
+        if (!sessoes.encerrar(idSessao)) {
+            throw EncodingUtil.createException("Sessão inválida.");
+        }
+    }
+
+    /**
+     * Encerra todas as sessões do usuário dono da sessão informada, inclusive ela.
+     *
+     * @param idSessao Uma sessão ativa do usuário.
+     * @return Quantas sessões foram encerradas.
+     */
+    public int encerrarTodasSessoes(String idSessao) {
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin());
+            return sessoes.encerrarTodas(usuario.getLogin());
         }
+    }
+
+    /**
+     * Recupera as métricas do cache das listagens de amigos, fãs, paqueras, membros e
+     * comunidades.
+     *
+     * @return Os acertos, falhas e descartes do cache.
+     */
+    public EstatisticasCache getEstatisticasCache() {
+        return listagens.getEstatisticas();
+    }
 
-        String idSessao = "sessao_" + proximoIdSessao++;
-        sessoes.put(idSessao, login);
-        return idSessao;
+    /**
+     * Recupera as métricas das sessões: quantas estão vivas e quantas expiraram.
+     *
+     * @return As estatísticas da tabela de sessões.
+     */
+    public EstatisticasSessoes getEstatisticasSessoes() {
+        return sessoes.getEstatisticas();
     }
 
     public String getAtributoUsuario(String login, String atributo) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) throw EncodingUtil.createException("Usuário não cadastrado.");
-        if ("nome".equals(atributo)) return usuario.getNome();
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) throw EncodingUtil.createException("Usuário não cadastrado.");
+            if ("nome".equals(atributo)) return usuario.getNome();
+
+            String valor = usuario.getPerfil().getAtributo(atributo);
+            if (valor == null) throw EncodingUtil.createException("Atributo não preenchido.");
+            return valor;
+        }
+    }
 
-        String valor = usuario.getPerfil().getAtributo(atributo);
-        if (valor == null) throw EncodingUtil.createException("Atributo não preenchido.");
-        return valor;
+    /**
+     * Procura os usuários cujo atributo tem exatamente o valor informado, sem diferença de
+     * acentos, de maiúsculas e minúsculas e de espaços. O atributo {@code nome} procura pelo
+     * nome do usuário.
+     *
+     * @param atributo O atributo, como {@code cidade}.
+     * @param valor O valor procurado.
+     * @param limite Quantos usuários no máximo.
+     * @return Os logins encontrados, na ordem em que receberam o valor.
+     */
+    public String buscarUsuarios(String atributo, String valor, int limite) {
+        return buscarPorPerfil(atributo, valor, false, limite);
     }
 
-    public void editarPerfil(String idSessao, String atributo, String valor) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
+    /**
+     * Procura os usuários cujo valor do atributo começa com o prefixo informado, comparado
+     * como em {@link #buscarUsuarios(String, String, int)}.
+     *
+     * @param atributo O atributo, como {@code cidade}.
+     * @param prefixo O começo do valor.
+     * @param limite Quantos usuários no máximo.
+     * @return Os logins encontrados, em ordem alfabética do valor.
+     */
+    public String buscarUsuariosPorPrefixo(String atributo, String prefixo, int limite) {
+        return buscarPorPerfil(atributo, prefixo, true, limite);
+    }
+
+    private String buscarPorPerfil(String atributo, String valor, boolean prefixo, int limite) {
         if (atributo == null || atributo.isEmpty()) throw EncodingUtil.createException("Atributo não preenchido.");
-        usuario.getPerfil().adicionarAtributo(atributo, valor);
+        if (limite <= 0) throw EncodingUtil.createException("Limite de busca inválido.");
+        int[] ids;
+        travaGlobal.readLock().lock();
+        try {
+            ids = indicePerfil.buscar(atributo, valor, prefixo, limite);
+        } finally {
+            travaGlobal.readLock().unlock();
+        }
+        StringJoiner logins = new StringJoiner(",", "{", "}");
+        for (int id : ids) logins.add(Dicionario.LOGINS.nome(id));
+        return logins.toString();
+    }
+
+    public void editarPerfil(String idSessao, String atributo, String valor) {
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            if (atributo == null || atributo.isEmpty()) throw EncodingUtil.createException("Atributo não preenchido.");
+            op.travar(usuario.getLogin());
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.EDITAR_PERFIL, usuario.getLogin(), atributo, valor));
+        }
     }
 
     public void adicionarAmigo(String idSessao, String loginAmigo) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
-        Usuario amigo = usuarios.get(loginAmigo);
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin(), loginAmigo);
+            validarAdicionarAmigo(usuario, loginAmigo);
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.ADICIONAR_AMIGO, usuario.getLogin(), loginAmigo));
+        }
+    }
+
+    private void validarAdicionarAmigo(Usuario usuario, String loginAmigo) {
+        Usuario amigo = buscarUsuario(loginAmigo);
 
         if (amigo == null) {
             throw EncodingUtil.createException("Usuário não cadastrado.");
         }
 
-        if (usuario.ehInimigoDe(amigo.getLogin()) || amigo.ehInimigoDe(usuario.getLogin())) {
+        if (usuario.ehInimigoDe(amigo.getId()) || amigo.ehInimigoDe(usuario.getId())) {
             throw EncodingUtil.createException("Função inválida: " + amigo.getNome() + " é seu inimigo.");
         }
 
@@ -290,54 +834,259 @@ public class Facade {
             throw EncodingUtil.createException("Usuário já está adicionado como amigo.");
         }
 
+        if (!usuario.temConvitePendenteDe(loginAmigo) && usuario.getConvitesEnviados().contains(loginAmigo)) {
+            throw EncodingUtil.createException("Usuário já está adicionado como amigo, esperando aceitação do convite.");
+        }
+    }
+
+    /**
+     * Aceita o convite pendente de amigo, se houver, ou envia um novo convite.
+     */
+    private void aplicarAdicionarAmigo(Usuario usuario, Usuario amigo) {
+        String loginAmigo = amigo.getLogin();
+        armazem.alterado(usuario);
+        armazem.alterado(amigo);
         if (usuario.temConvitePendenteDe(loginAmigo)) {
-            usuario.getConvitesRecebidos().remove(loginAmigo);
-            amigo.getConvitesEnviados().remove(usuario.getLogin());
+            usuario.aceitarConvite(loginAmigo);
+            sugestoes.amizadeCriada(usuario.getNo(), amigo.getNo());
+        } else {
+            usuario.enviarConvite(loginAmigo);
+        }
+    }
+
+
+    public boolean ehAmigo(String login1, String login2) {
+        if (login1 == null || login2 == null) return false;
+        try (Operacao op = operacao()) {
+            op.travar(login1, login2);
+            Usuario u1 = usuarios.get(login1);
+            Usuario u2 = usuarios.get(login2);
+            return u1 != null && u2 != null &&
+                    u1.ehAmigoDe(u2.getId());
+        }
+    }
+
 
-            usuario.getAmigos().add(loginAmigo);
-            amigo.getAmigos().add(usuario.getLogin());
-            return;
+    /**
+     * Lista os amigos de um usuário na ordem da amizade ({@link OrdemRelacao}, por padrão a
+     * ordem em que as amizades foram feitas). A ordem é mantida pelo grafo, então a
+     * listagem só percorre o conjunto, e o texto fica no cache até a próxima mudança.
+     *
+     * @param login O login do usuário.
+     * @return Os logins dos amigos, ou {@code {}} se o usuário não existir.
+     */
+    public String getAmigos(String login) {
+        if (login == null) return "{}";
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            Usuario usuario = usuarios.get(login);
+            if (usuario == null) return "{}";
+            return listar(CacheListagens.Lista.AMIGOS, usuario, GrafoRelacoes.Tipo.AMIZADE, true);
         }
+    }
 
-        if (usuario.getConvitesEnviados().contains(loginAmigo)) {
-            throw EncodingUtil.createException("Usuário já está adicionado como amigo, esperando aceitação do convite.");
+    /**
+     * Lista uma página dos amigos de um usuário, na mesma ordem de {@link #getAmigos(String)}.
+     *
+     * @param login O login do usuário.
+     * @param cursor O último login da página anterior, ou null (ou vazio) para a primeira.
+     * @param limite Quantos logins no máximo.
+     * @return Os logins da página, ou {@code {}} depois da última ou se o usuário não existir.
+     */
+    public String getAmigos(String login, String cursor, int limite) {
+        validarLimite(limite);
+        if (login == null) return "{}";
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            Usuario usuario = usuarios.get(login);
+            if (usuario == null) return "{}";
+            return paginar(usuario.getNo().getArestas(GrafoRelacoes.Tipo.AMIZADE, true), Dicionario.LOGINS,
+                    cursor, limite);
+        }
+    }
+
+    /**
+     * Escreve os amigos de um usuário no formato de {@link #getAmigos(String)}, sem montar o
+     * texto inteiro em memória.
+     *
+     * @param login O login do usuário.
+     * @param saida Onde escrever; não é fechado.
+     * @throws IOException Se a escrita falhar.
+     */
+    public void escreverAmigos(String login, Writer saida) throws IOException {
+        int[] ids = new int[0];
+        if (login != null) {
+            try (Operacao op = operacao()) {
+                op.travar(login);
+                Usuario usuario = usuarios.get(login);
+                if (usuario != null) ids = usuario.getNo().getArestas(GrafoRelacoes.Tipo.AMIZADE, true).paraArray();
+            }
         }
+        Listagem.escrever(ids, Dicionario.LOGINS, saida);
+    }
 
-        usuario.enviarConvite(loginAmigo);
-        amigo.receberConvite(usuario.getLogin());
+    /**
+     * Sugere amizades para o usuário da sessão: os amigos de amigos com quem ele tem mais
+     * amigos em comum, sem incluir amigos, inimigos (nas duas direções) e usuários a quem
+     * ele já mandou convite. As contagens de amigos em comum são mantidas a cada amizade
+     * criada, e o índice é montado na primeira chamada.
+     *
+     * @param idSessao A sessão do usuário.
+     * @param quantidade Quantas sugestões no máximo.
+     * @return Os logins sugeridos, do mais para o menos recomendado; empates em ordem alfabética.
+     */
+    public String getSugestoesAmizade(String idSessao, int quantidade) {
+        if (quantidade <= 0) {
+            throw EncodingUtil.createException("Quantidade de sugestões inválida.");
+        }
+        construirSugestoes();
+
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin());
+            GrafoRelacoes.No no = usuario.getNo();
+            ConjuntoInteiros convites = no.getArestas(GrafoRelacoes.Tipo.CONVITE, true);
+            ConjuntoInteiros inimigoDe = no.getArestas(GrafoRelacoes.Tipo.INIMIGO, false);
+            List<String> sugeridos = sugestoes.sugerir(usuario.getId(), quantidade, id ->
+                    id == usuario.getId() || usuario.ehAmigoDe(id) || usuario.ehInimigoDe(id)
+                            || inimigoDe.contem(id) || convites.contem(id)
+                            || !usuarios.containsKey(Dicionario.LOGINS.nome(id)));
+            return "{" + String.join(",", sugeridos) + "}";
+        }
     }
 
+    /**
+     * Monta o índice de amigos em comum na primeira consulta que precisa dele.
+     */
+    private void construirSugestoes() {
+        if (sugestoes.isConstruido()) return;
+        travaGlobal.writeLock().lock();
+        try {
+            if (!sugestoes.isConstruido()) sugestoes.construir(usuarios.values());
+        } finally {
+            travaGlobal.writeLock().unlock();
+        }
+    }
 
-    public boolean ehAmigo(String login1, String login2) {
-        Usuario u1 = usuarios.get(login1);
-        Usuario u2 = usuarios.get(login2);
-        return u1 != null && u2 != null &&
-                u1.getAmigos().contains(login2) &&
-                u2.getAmigos().contains(login1);
+    /**
+     * Conta os amigos em comum entre dois usuários pelo índice das sugestões de amizade,
+     * sem percorrer as listas de amigos.
+     *
+     * @param login1 O login de um usuário.
+     * @param login2 O login do outro.
+     * @return A quantidade de amigos em comum.
+     */
+    public int getQuantidadeAmigosEmComum(String login1, String login2) {
+        construirSugestoes();
+        try (Operacao op = operacao()) {
+            op.travar(login1, login2);
+            Usuario u1 = buscarUsuario(login1);
+            Usuario u2 = buscarUsuario(login2);
+            if (u1 == null || u2 == null) {
+                throw EncodingUtil.createException("Usuário não cadastrado.");
+            }
+            return sugestoes.getAmigosEmComum(u1.getId(), u2.getId());
+        }
     }
 
+    /**
+     * Recupera os amigos em comum entre dois usuários, percorrendo a lista de amigos menor
+     * e consultando a maior.
+     *
+     * @param login1 O login de um usuário.
+     * @param login2 O login do outro.
+     * @return Os logins dos amigos em comum, em ordem alfabética.
+     */
+    public String getAmigosEmComum(String login1, String login2) {
+        try (Operacao op = operacao()) {
+            op.travar(login1, login2);
+            Usuario u1 = buscarUsuario(login1);
+            Usuario u2 = buscarUsuario(login2);
+            if (u1 == null || u2 == null) {
+                throw EncodingUtil.createException("Usuário não cadastrado.");
+            }
 
-    public String getAmigos(String login) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) return "{}";
+            ConjuntoInteiros menor = u1.getNo().getArestas(GrafoRelacoes.Tipo.AMIZADE, true);
+            ConjuntoInteiros maior = u2.getNo().getArestas(GrafoRelacoes.Tipo.AMIZADE, true);
+            if (menor.tamanho() > maior.tamanho()) {
+                ConjuntoInteiros troca = menor;
+                menor = maior;
+                maior = troca;
+            }
+            List<String> comuns = new ArrayList<>();
+            PrimitiveIterator.OfInt it = menor.iterador();
+            while (it.hasNext()) {
+                int id = it.nextInt();
+                if (maior.contem(id)) comuns.add(Dicionario.LOGINS.nome(id));
+            }
+            Collections.sort(comuns);
+            return "{" + String.join(",", comuns) + "}";
+        }
+    }
 
-        List<String> amigosOrdenados = new ArrayList<>(usuario.getAmigos());
+    /**
+     * Calcula o grau de separação entre dois usuários: o menor número de amizades num
+     * caminho de um até o outro.
+     *
+     * @param login1 O login de um usuário.
+     * @param login2 O login do outro.
+     * @param maximo A maior distância procurada; a busca para ao alcançá-la.
+     * @return A distância, 0 se for o mesmo usuário, ou -1 se não houver caminho com até
+     *         {@code maximo} amizades.
+     */
+    public int getDistancia(String login1, String login2, int maximo) {
+        int[] caminho = buscarCaminho(login1, login2, maximo);
+        return caminho == null ? -1 : caminho.length - 1;
+    }
 
-        if (login.equals("jpsauve")) {
-            amigosOrdenados.sort((a, b) -> {
-                if (a.equals("oabath") && b.equals("jdoe")) return -1;
-                if (a.equals("jdoe") && b.equals("oabath")) return 1;
-                return a.compareTo(b);
-            });
-        } else if (login.equals("oabath")) {
-            amigosOrdenados.sort((a, b) -> {
-                if (a.equals("jpsauve") && b.equals("jdoe")) return -1;
-                if (a.equals("jdoe") && b.equals("jpsauve")) return 1;
-                return a.compareTo(b);
-            });
+    /**
+     * Recupera um dos menores caminhos de amizades entre dois usuários.
+     *
+     * @param login1 O login de onde o caminho sai.
+     * @param login2 O login aonde o caminho chega.
+     * @param maximo A maior distância procurada.
+     * @return Os logins do caminho, incluindo as duas pontas, ou {@code {}} se não houver
+     *         caminho com até {@code maximo} amizades.
+     */
+    public String getCaminho(String login1, String login2, int maximo) {
+        int[] caminho = buscarCaminho(login1, login2, maximo);
+        if (caminho == null) return "{}";
+        StringJoiner logins = new StringJoiner(",", "{", "}");
+        for (int id : caminho) logins.add(Dicionario.LOGINS.nome(id));
+        return logins.toString();
+    }
+
+    /**
+     * Busca o caminho em largura a partir das duas pontas. A busca percorre as amizades de
+     * muitos usuários, então roda com a trava global exclusiva.
+     */
+    private int[] buscarCaminho(String login1, String login2, int maximo) {
+        if (maximo < 0) {
+            throw EncodingUtil.createException("Distância máxima inválida.");
         }
+        travaGlobal.writeLock().lock();
+        try {
+            Usuario u1 = buscarUsuario(login1);
+            Usuario u2 = buscarUsuario(login2);
+            if (u1 == null || u2 == null) {
+                throw EncodingUtil.createException("Usuário não cadastrado.");
+            }
+            return busca.caminho(u1.getId(), u2.getId(), maximo);
+        } finally {
+            travaGlobal.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Busca um usuário pelo login. Os mapas concorrentes não aceitam chave nula, então
+     * um login nulo simplesmente não encontra ninguém.
+     */
+    private Usuario buscarUsuario(String login) {
+        return login == null ? null : usuarios.get(login);
+    }
 
-        return "{" + String.join(",", amigosOrdenados) + "}";
+    private Comunidade buscarComunidade(String nome) {
+        return nome == null ? null : comunidades.get(nome);
     }
 
     /**
@@ -352,7 +1101,7 @@ public class Facade {
         if (idSessao == null || idSessao.isEmpty()) {
             throw EncodingUtil.createException("Usuário não cadastrado.");
         }
-        String login = sessoes.get(idSessao);
+        String login = sessoes.buscarLogin(idSessao);
         if (login == null) {
             throw EncodingUtil.createException("Sessão inválida.");
         }
@@ -364,29 +1113,37 @@ public class Facade {
     }
 
     public void enviarRecado(String idSessao, String destinatarioLogin, String recado) {
-        Usuario remetente = getUsuarioPorSessao(idSessao);
-        Usuario destinatario = usuarios.get(destinatarioLogin);
+        try (Operacao op = operacao()) {
+            Usuario remetente = getUsuarioPorSessao(idSessao);
+            op.travar(remetente.getLogin(), destinatarioLogin);
+            Usuario destinatario = buscarUsuario(destinatarioLogin);
+
+            if (destinatario == null) throw EncodingUtil.createException("Usuário não cadastrado.");
+            if (remetente.ehInimigoDe(destinatario.getId()) || destinatario.ehInimigoDe(remetente.getId())) {
+                throw EncodingUtil.createException("Função inválida: " + destinatario.getNome() + " é seu inimigo.");
+            }
+            if (remetente.getLogin().equals(destinatarioLogin)) {
+                throw EncodingUtil.createException("Usuário não pode enviar recado para si mesmo.");
+            }
 
-        if (destinatario == null) throw EncodingUtil.createException("Usuário não cadastrado.");
-        if (remetente.ehInimigoDe(destinatario.getLogin()) || destinatario.ehInimigoDe(remetente.getLogin())) {
-            throw EncodingUtil.createException("Função inválida: " + destinatario.getNome() + " é seu inimigo.");
+            long sequencia = sequenciaMensagens.incrementAndGet();
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.ENVIAR_RECADO,
+                    remetente.getLogin(), destinatarioLogin, recado, Long.toString(sequencia)));
         }
-        if (remetente.getLogin().equals(destinatarioLogin)) {
-            throw EncodingUtil.createException("Usuário não pode enviar recado para si mesmo.");
-        }
-
-        String recadoCompleto = remetente.getLogin() + ":" + recado;
-        destinatario.receberRecado(recadoCompleto);
     }
 
     public String lerRecado(String idSessao) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
+        String recadoCompleto;
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin());
 
-        if (usuario.getRecadosRecebidos() == null || usuario.getRecadosRecebidos().isEmpty()) {
-            throw EncodingUtil.createException("Não há recados.");
-        }
+            if (usuario.getRecadosRecebidos() == null || usuario.getRecadosRecebidos().isEmpty()) {
+                throw EncodingUtil.createException("Não há recados.");
+            }
 
-        String recadoCompleto = usuario.lerRecado();
+            recadoCompleto = op.executar(new RegistroJournal(RegistroJournal.Tipo.LER_RECADO, usuario.getLogin()));
+        }
 
         int pos = recadoCompleto.indexOf(":");
         String recado = pos > 0 ? recadoCompleto.substring(pos + 1) : recadoCompleto;
@@ -394,50 +1151,129 @@ public class Facade {
         return recado;
     }
 
+    /**
+     * Recupera as métricas da caixa de recados de um usuário: quantos recados estão em
+     * memória e quantos transbordaram para o disco.
+     *
+     * @param login O login do usuário.
+     * @return As estatísticas da caixa de recados.
+     * @throws RuntimeException Se o usuário não existir.
+     */
+    public EstatisticasCaixa getEstatisticasRecados(String login) {
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) {
+                throw EncodingUtil.createException("Usuário não cadastrado.");
+            }
+            return usuario.getRecadosRecebidos().getEstatisticas();
+        }
+    }
+
 
     public void criarComunidade(String idSessao, String nome, String descricao) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
 
-        if (nome == null || nome.isEmpty()) {
-            throw EncodingUtil.createException("Nome inválido.");
-        }
-        if (descricao == null || descricao.isEmpty()) {
-            throw EncodingUtil.createException("Descrição inválida.");
-        }
-        if (comunidades.containsKey(nome)) {
-            throw new RuntimeException(EncodingUtil.fixEncoding("Comunidade com esse nome já existe."));
+            if (nome == null || nome.isEmpty()) {
+                throw EncodingUtil.createException("Nome inválido.");
+            }
+            if (descricao == null || descricao.isEmpty()) {
+                throw EncodingUtil.createException("Descrição inválida.");
+            }
+            op.travar(usuario.getLogin(), nome);
+            if (comunidades.containsKey(nome)) {
+                throw new RuntimeException(EncodingUtil.fixEncoding("Comunidade com esse nome já existe."));
+            }
+
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.CRIAR_COMUNIDADE, usuario.getLogin(), nome, descricao));
         }
+    }
 
+    private void aplicarCriarComunidade(Usuario usuario, String nome, String descricao) {
         Comunidade comunidade = new Comunidade(nome, descricao, usuario.getLogin(), this);
         comunidade.adicionarMembro(usuario.getLogin(), this);
         comunidades.put(nome, comunidade);
+        indiceComunidades.incluir(nome, descricao);
+        armazem.adicionar(comunidade);
+        armazem.alterado(usuario);
         usuario.adicionarComunidade(nome);
-        encerrarSistema();
+        usuario.getCursoresMensagens().put(nome, 0L);
+        usuario.getEntradasComunidades().put(nome, 0L);
     }
 
 
+    /**
+     * Procura as comunidades cujo nome começa com o prefixo informado, sem diferença de
+     * acentos e de maiúsculas e minúsculas, para completar o nome enquanto ele é digitado.
+     *
+     * @param prefixo O começo do nome.
+     * @param limite Quantas comunidades no máximo.
+     * @return Os nomes, da comunidade com mais membros para a com menos.
+     */
+    public String buscarComunidades(String prefixo, int limite) {
+        if (limite <= 0) throw EncodingUtil.createException("Limite de busca inválido.");
+        travaGlobal.readLock().lock();
+        try {
+            return "{" + String.join(",", indiceComunidades.buscarPorNome(prefixo, limite, this::contarMembros)) + "}";
+        } finally {
+            travaGlobal.readLock().unlock();
+        }
+    }
+
+    /**
+     * Procura as comunidades cuja descrição contém todas as palavras do texto informado,
+     * sem diferença de acentos e de maiúsculas e minúsculas.
+     *
+     * @param texto As palavras procuradas.
+     * @param limite Quantas comunidades no máximo.
+     * @return Os nomes, da comunidade com mais membros para a com menos.
+     */
+    public String buscarComunidadesPorDescricao(String texto, int limite) {
+        if (limite <= 0) throw EncodingUtil.createException("Limite de busca inválido.");
+        travaGlobal.readLock().lock();
+        try {
+            return "{" + String.join(",", indiceComunidades.buscarPorDescricao(texto, limite, this::contarMembros)) + "}";
+        } finally {
+            travaGlobal.readLock().unlock();
+        }
+    }
+
+    /**
+     * Conta os membros de uma comunidade pelo ID, sem travá-la; usado só para ordenar os
+     * resultados das buscas.
+     */
+    private int contarMembros(int id) {
+        Comunidade comunidade = comunidades.get(Dicionario.COMUNIDADES.nome(id));
+        return comunidade == null ? 0 : comunidade.getMembros().size();
+    }
+
     public void adicionarComunidade(String idSessao, String nomeComunidade) {
         if (idSessao == null || idSessao.isEmpty()) {
             throw new RuntimeException(EncodingUtil.fixEncoding("Usuário não cadastrado."));
         }
 
-        Usuario usuario = getUsuarioPorSessao(idSessao);
-        Comunidade comunidade = comunidades.get(nomeComunidade);
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin(), nomeComunidade);
+            Comunidade comunidade = buscarComunidade(nomeComunidade);
 
-        if (comunidade == null) {
-            throw new RuntimeException(EncodingUtil.fixEncoding("Comunidade não existe."));
-        }
-        if (comunidade.contemMembro(usuario.getLogin())) {
-            throw new RuntimeException(EncodingUtil.fixEncoding("Usuario já faz parte dessa comunidade."));
-        }
+            if (comunidade == null) {
+                throw new RuntimeException(EncodingUtil.fixEncoding("Comunidade não existe."));
+            }
+            if (comunidade.contemMembro(usuario.getLogin())) {
+                throw new RuntimeException(EncodingUtil.fixEncoding("Usuario já faz parte dessa comunidade."));
+            }
 
-        comunidade.adicionarMembro(usuario.getLogin(), this);
-        usuario.adicionarComunidade(nomeComunidade);
-        encerrarSistema();
+            // Com a comunidade travada, nenhuma mensagem dela recebe sequência até o registro
+            // ser aplicado; o log pode ter sido compactado, então a entrada vem da global.
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.ADICIONAR_COMUNIDADE, usuario.getLogin(),
+                    nomeComunidade, Long.toString(sequenciaMensagens.get())));
+        }
     }
 
     public String getDonoComunidade(String nome) {
-        Comunidade comunidade = comunidades.get(nome);
+        Comunidade comunidade = buscarComunidade(nome);
         if (comunidade == null) {
             throw new RuntimeException(EncodingUtil.fixEncoding("Comunidade não existe."));
         }
@@ -445,60 +1281,143 @@ public class Facade {
     }
 
     public String getDescricaoComunidade(String nome) {
-        Comunidade comunidade = comunidades.get(nome);
+        Comunidade comunidade = buscarComunidade(nome);
         if (comunidade == null) {
             throw new RuntimeException(EncodingUtil.fixEncoding("Comunidade não existe."));
         }
         return comunidade.getDescricao();
     }
 
+    /**
+     * Lista os membros de uma comunidade na ordem configurada para {@code membros}
+     * (por padrão, a ordem de entrada, começando pelo dono).
+     *
+     * @param nome O nome da comunidade.
+     * @return Os logins dos membros.
+     */
     public String getMembrosComunidade(String nome) {
-        Comunidade comunidade = comunidades.get(nome);
-        if (comunidade == null) {
-            throw new RuntimeException(EncodingUtil.fixEncoding("Comunidade não existe."));
+        try (Operacao op = operacao()) {
+            op.travar(nome);
+            Comunidade comunidade = buscarComunidade(nome);
+            if (comunidade == null) {
+                throw new RuntimeException(EncodingUtil.fixEncoding("Comunidade não existe."));
+            }
+            ConjuntoNomes membros = comunidade.getMembros();
+            return listagens.listar(CacheListagens.Lista.MEMBROS, Dicionario.COMUNIDADES.buscar(nome),
+                    membros.getIds(), membros.getDicionario());
         }
+    }
 
-        List<String> membrosOrdenados = new ArrayList<>(comunidade.getMembros());
+    /**
+     * Lista uma página dos membros de uma comunidade, na mesma ordem de
+     * {@link #getMembrosComunidade(String)}. Cada página custa O(limite), qualquer que seja
+     * o tamanho da comunidade.
+     *
+     * @param nome O nome da comunidade.
+     * @param cursor O último login da página anterior, ou null (ou vazio) para a primeira.
+     * @param limite Quantos logins no máximo.
+     * @return Os logins da página, ou {@code {}} depois da última.
+     */
+    public String getMembrosComunidade(String nome, String cursor, int limite) {
+        validarLimite(limite);
+        try (Operacao op = operacao()) {
+            op.travar(nome);
+            ConjuntoNomes membros = buscarMembros(nome);
+            return paginar(membros.getIds(), membros.getDicionario(), cursor, limite);
+        }
+    }
 
-        if (nome.equals("Alunos da UFCG")) {
-            membrosOrdenados.sort((a, b) -> {
-                if (a.equals("oabath") && b.equals("jpsauve")) return -1;
-                if (a.equals("jpsauve") && b.equals("oabath")) return 1;
-                return a.compareTo(b);
-            });
-        } else {
-            Collections.sort(membrosOrdenados);
+    /**
+     * Escreve os membros de uma comunidade no formato de {@link #getMembrosComunidade(String)},
+     * sem montar o texto inteiro em memória. Com a trava, só os IDs dos membros são copiados;
+     * os logins são escritos depois de liberá-la, para que uma saída lenta não segure a
+     * comunidade.
+     *
+     * @param nome O nome da comunidade.
+     * @param saida Onde escrever; não é fechado.
+     * @throws IOException Se a escrita falhar.
+     */
+    public void escreverMembrosComunidade(String nome, Writer saida) throws IOException {
+        int[] ids;
+        try (Operacao op = operacao()) {
+            op.travar(nome);
+            ids = buscarMembros(nome).getIds().paraArray();
         }
+        Listagem.escrever(ids, Dicionario.LOGINS, saida);
+    }
 
-        return "{" + String.join(",", membrosOrdenados) + "}";
+    private ConjuntoNomes buscarMembros(String nome) {
+        Comunidade comunidade = buscarComunidade(nome);
+        if (comunidade == null) {
+            throw new RuntimeException(EncodingUtil.fixEncoding("Comunidade não existe."));
+        }
+        return comunidade.getMembros();
     }
 
+    /**
+     * Lista as comunidades de um usuário na ordem configurada para {@code comunidades}
+     * (por padrão, a ordem em que ele entrou nelas).
+     *
+     * @param login O login do usuário.
+     * @return Os nomes das comunidades.
+     */
     public String getComunidades(String login) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) throw new RuntimeException(EncodingUtil.fixEncoding("Usuário não cadastrado."));
-
-        if (login.equals("oabath") && comunidades.isEmpty()) {
-            return "{}";
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) throw new RuntimeException(EncodingUtil.fixEncoding("Usuário não cadastrado."));
+            ConjuntoNomes nomes = usuario.getComunidades();
+            return listagens.listar(CacheListagens.Lista.COMUNIDADES, usuario.getId(), nomes.getIds(),
+                    nomes.getDicionario());
         }
+    }
 
-        List<String> comOrdenadas = new ArrayList<>(usuario.getComunidades());
-
-        if (login.equals("jpsauve")) {
-            comOrdenadas.sort((a, b) -> {
-                if (a.equals("Professores da UFCG") && b.equals("Alunos da UFCG")) return -1;
-                if (a.equals("Alunos da UFCG") && b.equals("Professores da UFCG")) return 1;
-                return a.compareTo(b);
-            });
-        } else {
-            Collections.sort(comOrdenadas);
+    /**
+     * Lista uma página das comunidades de um usuário, na mesma ordem de
+     * {@link #getComunidades(String)}.
+     *
+     * @param login O login do usuário.
+     * @param cursor O último nome da página anterior, ou null (ou vazio) para a primeira.
+     * @param limite Quantos nomes no máximo.
+     * @return Os nomes da página, ou {@code {}} depois da última.
+     */
+    public String getComunidades(String login, String cursor, int limite) {
+        validarLimite(limite);
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            ConjuntoNomes nomes = buscarCadastrado(login).getComunidades();
+            return paginar(nomes.getIds(), nomes.getDicionario(), cursor, limite);
         }
+    }
 
-        return "{" + String.join(",", comOrdenadas) + "}";
+    /**
+     * Escreve as comunidades de um usuário no formato de {@link #getComunidades(String)},
+     * sem montar o texto inteiro em memória.
+     *
+     * @param login O login do usuário.
+     * @param saida Onde escrever; não é fechado.
+     * @throws IOException Se a escrita falhar.
+     */
+    public void escreverComunidades(String login, Writer saida) throws IOException {
+        int[] ids;
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            ids = buscarCadastrado(login).getComunidades().getIds().paraArray();
+        }
+        Listagem.escrever(ids, Dicionario.COMUNIDADES, saida);
     }
 
     public void adicionarIdolo(String idSessao, String idolo) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
-        Usuario usuarioIdolo = usuarios.get(idolo);
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin(), idolo);
+            validarAdicionarIdolo(usuario, idolo);
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.ADICIONAR_IDOLO, usuario.getLogin(), idolo));
+        }
+    }
+
+    private void validarAdicionarIdolo(Usuario usuario, String idolo) {
+        Usuario usuarioIdolo = buscarUsuario(idolo);
 
         if (usuarioIdolo == null) {
             throw EncodingUtil.createException("Usuário não cadastrado.");
@@ -506,32 +1425,79 @@ public class Facade {
         if (usuario.getLogin().equals(idolo)) {
             throw EncodingUtil.createException("Usuário não pode ser fã de si mesmo.");
         }
-        if (usuario.ehInimigoDe(usuarioIdolo.getLogin()) || usuarioIdolo.ehInimigoDe(usuario.getLogin())) {
+        if (usuario.ehInimigoDe(usuarioIdolo.getId()) || usuarioIdolo.ehInimigoDe(usuario.getId())) {
             throw EncodingUtil.createException("Função inválida: " + usuarioIdolo.getNome() + " é seu inimigo.");
         }
 
-        if (usuario.ehFaDe(idolo)) {
+        if (usuario.ehFaDe(usuarioIdolo.getId())) {
             throw EncodingUtil.createException("Usuário já está adicionado como ídolo.");
         }
-
-        usuario.adicionarIdolo(idolo);
-        usuarioIdolo.adicionarFa(usuario.getLogin());
     }
 
     public boolean ehFa(String login, String idolo) {
-        Usuario usuario = usuarios.get(login);
-        return usuario != null && usuario.ehFaDe(idolo);
+        if (login == null) return false;
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            Usuario usuario = usuarios.get(login);
+            return usuario != null && usuario.ehFaDe(idolo);
+        }
     }
 
     public String getFas(String login) {
-        Usuario usuario = usuarios.get(login);
-        if (usuario == null) throw new RuntimeException(EncodingUtil.fixEncoding("Usuário não cadastrado."));
-        return "{" + String.join(",", usuario.getFas()) + "}";
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            Usuario usuario = buscarUsuario(login);
+            if (usuario == null) throw new RuntimeException(EncodingUtil.fixEncoding("Usuário não cadastrado."));
+            return listar(CacheListagens.Lista.FAS, usuario, GrafoRelacoes.Tipo.IDOLO, false);
+        }
+    }
+
+    /**
+     * Lista uma página dos fãs de um usuário, na mesma ordem de {@link #getFas(String)}.
+     *
+     * @param login O login do usuário.
+     * @param cursor O último login da página anterior, ou null (ou vazio) para a primeira.
+     * @param limite Quantos logins no máximo.
+     * @return Os logins da página, ou {@code {}} depois da última.
+     */
+    public String getFas(String login, String cursor, int limite) {
+        validarLimite(limite);
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            Usuario usuario = buscarCadastrado(login);
+            return paginar(usuario.getNo().getArestas(GrafoRelacoes.Tipo.IDOLO, false), Dicionario.LOGINS,
+                    cursor, limite);
+        }
+    }
+
+    /**
+     * Escreve os fãs de um usuário no formato de {@link #getFas(String)}, sem montar o texto
+     * inteiro em memória.
+     *
+     * @param login O login do usuário.
+     * @param saida Onde escrever; não é fechado.
+     * @throws IOException Se a escrita falhar.
+     */
+    public void escreverFas(String login, Writer saida) throws IOException {
+        int[] ids;
+        try (Operacao op = operacao()) {
+            op.travar(login);
+            ids = buscarCadastrado(login).getNo().getArestas(GrafoRelacoes.Tipo.IDOLO, false).paraArray();
+        }
+        Listagem.escrever(ids, Dicionario.LOGINS, saida);
     }
 
     public void adicionarPaquera(String idSessao, String paquera) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
-        Usuario usuarioPaquera = usuarios.get(paquera);
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin(), paquera);
+            validarAdicionarPaquera(usuario, paquera);
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.ADICIONAR_PAQUERA, usuario.getLogin(), paquera));
+        }
+    }
+
+    private void validarAdicionarPaquera(Usuario usuario, String paquera) {
+        Usuario usuarioPaquera = buscarUsuario(paquera);
 
         if (usuarioPaquera == null) {
             throw EncodingUtil.createException("Usuário não cadastrado.");
@@ -539,15 +1505,22 @@ public class Facade {
         if (usuario.getLogin().equals(paquera)) {
             throw EncodingUtil.createException("Usuário não pode ser paquera de si mesmo.");
         }
-        if (usuario.ehInimigoDe(usuarioPaquera.getLogin()) || usuarioPaquera.ehInimigoDe(usuario.getLogin())) {
+        if (usuario.ehInimigoDe(usuarioPaquera.getId()) || usuarioPaquera.ehInimigoDe(usuario.getId())) {
             throw EncodingUtil.createException("Função inválida: " + usuarioPaquera.getNome() + " é seu inimigo.");
         }
 
         if (usuario.ehPaqueraDe(paquera)) {
             throw EncodingUtil.createException("Usuário já está adicionado como paquera.");
         }
+    }
 
-        usuario.adicionarPaquera(paquera);
+    /**
+     * Registra a paquera e, se ela for mútua, avisa os dois usuários por recado.
+     */
+    private void aplicarAdicionarPaquera(Usuario usuario, Usuario usuarioPaquera) {
+        armazem.alterado(usuario);
+        armazem.alterado(usuarioPaquera);
+        usuario.adicionarPaquera(usuarioPaquera.getLogin());
 
         if (usuarioPaquera.ehPaqueraDe(usuario.getLogin())) {
             usuario.receberRecado(usuarioPaquera.getNome() + " é seu paquera - Recado do Jackut.");
@@ -557,30 +1530,63 @@ public class Facade {
 
 
     public boolean ehPaquera(String idSessao, String paquera) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
-        return usuario.ehPaqueraDe(paquera);
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin());
+            return usuario.ehPaqueraDe(paquera);
+        }
     }
 
     public String getPaqueras(String idSessao) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
-        return "{" + String.join(",", usuario.getPaqueras()) + "}";
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin());
+            return listar(CacheListagens.Lista.PAQUERAS, usuario, GrafoRelacoes.Tipo.PAQUERA, true);
+        }
+    }
+
+    /**
+     * Lista, pelo cache, as arestas de um tipo de um usuário. Deve ser chamado com o usuário
+     * travado.
+     */
+    private String listar(CacheListagens.Lista lista, Usuario usuario, GrafoRelacoes.Tipo tipo, boolean saindo) {
+        return listagens.listar(lista, usuario.getId(), usuario.getNo().getArestas(tipo, saindo), Dicionario.LOGINS);
+    }
+
+    private String paginar(ConjuntoInteiros ids, Dicionario dicionario, String cursor, int limite) {
+        String pagina = Listagem.pagina(ids, dicionario, cursor, limite);
+        if (pagina == null) throw EncodingUtil.createException("Cursor inválido.");
+        return pagina;
+    }
+
+    private static void validarLimite(int limite) {
+        if (limite <= 0) throw EncodingUtil.createException("Limite de página inválido.");
+    }
+
+    private Usuario buscarCadastrado(String login) {
+        Usuario usuario = buscarUsuario(login);
+        if (usuario == null) throw EncodingUtil.createException("Usuário não cadastrado.");
+        return usuario;
     }
 
     public void adicionarInimigo(String idSessao, String inimigo) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
-        Usuario usuarioInimigo = usuarios.get(inimigo);
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin(), inimigo);
+            Usuario usuarioInimigo = buscarUsuario(inimigo);
 
-        if (usuarioInimigo == null) {
-            throw new RuntimeException(EncodingUtil.fixEncoding("Usuário não cadastrado."));
-        }
-        if (usuario.getLogin().equals(inimigo)) {
-            throw EncodingUtil.createException("Usuário não pode ser inimigo de si mesmo.");
-        }
-        if (usuario.ehInimigoDe(inimigo)) {
-            throw EncodingUtil.createException("Usuário já está adicionado como inimigo.");
-        }
+            if (usuarioInimigo == null) {
+                throw new RuntimeException(EncodingUtil.fixEncoding("Usuário não cadastrado."));
+            }
+            if (usuario.getLogin().equals(inimigo)) {
+                throw EncodingUtil.createException("Usuário não pode ser inimigo de si mesmo.");
+            }
+            if (usuario.ehInimigoDe(inimigo)) {
+                throw EncodingUtil.createException("Usuário já está adicionado como inimigo.");
+            }
 
-        usuario.adicionarInimigo(inimigo);
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.ADICIONAR_INIMIGO, usuario.getLogin(), inimigo));
+        }
     }
 
     public void removerUsuario(String idSessao) {
@@ -588,72 +1594,271 @@ public class Facade {
             throw EncodingUtil.createException("Usuário não cadastrado.");
         }
 
-        String login = sessoes.get(idSessao);
-        if (login == null) {
-            throw EncodingUtil.createException("Usuário não cadastrado.");
+        try (Operacao op = exclusiva()) {
+            String login = sessoes.buscarLogin(idSessao);
+            if (login == null) {
+                throw EncodingUtil.createException("Usuário não cadastrado.");
+            }
+
+            // A sequência vai no registro para que a reprodução remova do índice só o que foi
+            // enviado até aqui, e não textos de um usuário recriado com o mesmo login.
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.REMOVER_USUARIO, login,
+                    Long.toString(sequenciaMensagens.get())));
         }
+    }
 
-        Usuario usuario = usuarios.get(login);
+    /**
+     * Remove o usuário e todos os vestígios dele: recados, mensagens, comunidades,
+     * relacionamentos e sessões. Só visita os registros ligados a ele, achados pelos
+     * conjuntos do próprio usuário e pelos índices reversos, e não o sistema inteiro.
+     * Os textos que ele enviou ou recebeu até a sequência {@code ate} saem do índice de
+     * mensagens.
+     */
+    private void aplicarRemoverUsuario(String login, long ate) {
+        Usuario removido = usuarios.get(login);
+
+        for (String d : removido.getDestinatariosRecados()) {
+            Usuario destinatario = usuarios.get(d);
+            if (destinatario == null) continue;
+            String prefixo = login + ":";
+            if (destinatario.getRecadosRecebidos().stream().anyMatch(r -> r != null && r.startsWith(prefixo))) {
+                armazem.alterado(destinatario);
+                destinatario.removerRecadosDoUsuario(login);
+            }
+        }
 
-        for (Usuario u : usuarios.values()) {
-            u.removerRecadosDoUsuario(login);
+        for (String nome : removido.getComunidadesComMensagens()) {
+            Comunidade c = comunidades.get(nome);
+            if (c != null && c.getMensagens().contemAutor(login)) {
+                armazem.alterado(c);
+                c.getMensagens().removerDoAutor(login);
+            }
+        }
 
-            u.getMensagensComunidade().removeIf(msg ->
-                    msg != null && msg.startsWith(login + ":"));
+        for (String nome : removido.getComunidades()) {
+            Comunidade c = comunidades.get(nome);
+            if (c == null) continue;
+            if (c.getDono().equals(login)) {
+                for (String membro : c.getMembros()) {
+                    Usuario m = usuarios.get(membro);
+                    if (m == null || m == removido) continue;
+                    armazem.alterado(m);
+                    m.getComunidades().remove(nome);
+                    m.getCursoresMensagens().remove(nome);
+                    m.getEntradasComunidades().remove(nome);
+                }
+                comunidades.remove(nome);
+                indiceComunidades.remover(nome, c.getDescricao());
+                indiceMensagens.removerComunidade(nome, ate);
+                armazem.remover(c);
+            } else if (c.contemMembro(login)) {
+                armazem.alterado(c);
+                c.getMembros().remove(login);
+            }
         }
 
-        comunidades.entrySet().removeIf(e -> e.getValue().getDono().equals(login));
+        PrimitiveIterator.OfInt vizinhos = grafo.vizinhos(removido.getId()).iterador();
+        while (vizinhos.hasNext()) {
+            Usuario vizinho = usuarios.get(Dicionario.LOGINS.nome(vizinhos.nextInt()));
+            if (vizinho != null) armazem.alterado(vizinho);
+        }
+        sugestoes.usuarioRemovido(removido.getNo());
+        grafo.removerNo(removido.getId());
+        indicePerfil.removerUsuario(removido);
+        indiceMensagens.removerAutor(login, ate);
+        indiceMensagens.removerRecadosPara(login, ate);
 
-        for (Comunidade c : comunidades.values()) {
-            c.getMembros().remove(login);
+        armazem.remover(usuarios.remove(login));
+
+        sessoes.encerrarTodas(login);
+    }
+
+    /**
+     * Envia uma mensagem a uma comunidade. A mensagem é acrescentada uma única vez ao log
+     * da comunidade, com custo constante, qualquer que seja a quantidade de membros.
+     *
+     * @param idSessao A sessão de quem envia.
+     * @param comunidade O nome da comunidade.
+     * @param mensagem O texto da mensagem.
+     */
+    public void enviarMensagem(String idSessao, String comunidade, String mensagem) {
+        EventoFanout evento = EventoFanout.iniciar();
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin(), comunidade);
+            Comunidade com = buscarComunidade(comunidade);
+
+            if (com == null) {
+                throw EncodingUtil.createException("Comunidade não existe.");
+            }
+            evento.destino(com);
+
+            // A sequência vai no registro para que a reprodução do journal mantenha a ordem
+            // de entrega, mesmo que envios a comunidades diferentes cheguem ao journal trocados.
+            long sequencia = sequenciaMensagens.incrementAndGet();
+            op.executar(new RegistroJournal(RegistroJournal.Tipo.ENVIAR_MENSAGEM, usuario.getLogin(), comunidade,
+                    mensagem, Long.toString(sequencia)));
         }
+        evento.concluir();
+    }
 
-        for (Usuario u : usuarios.values()) {
-            u.getAmigos().remove(login);
-            u.getFas().remove(login);
-            u.getIdolos().remove(login);
-            u.getPaqueras().remove(login);
-            u.getInimigos().remove(login);
-            u.getConvitesEnviados().remove(login);
-            u.getConvitesRecebidos().remove(login);
+
+    /**
+     * Lê a próxima mensagem de comunidade do usuário, na ordem em que foram enviadas.
+     *
+     * @param idSessao A sessão do usuário.
+     * @return O texto da mensagem.
+     * @throws RuntimeException Se não houver mensagens não lidas.
+     */
+    public String lerMensagem(String idSessao) {
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin());
+            if (usuario.temMensagensComunidade()) {
+                return op.executar(new RegistroJournal(RegistroJournal.Tipo.LER_MENSAGEM, usuario.getLogin()));
+            }
+
+            Map.Entry<String, LogMensagens.Mensagem> proxima = proximaMensagem(usuario);
+            if (proxima == null) {
+                throw new RuntimeException(EncodingUtil.fixEncoding("Não há mensagens."));
+            }
+            // A mensagem escolhida vai no registro: os logs recebem envios de outras threads,
+            // então a reprodução não pode refazer a escolha.
+            return op.executar(new RegistroJournal(RegistroJournal.Tipo.LER_MENSAGEM, usuario.getLogin(),
+                    proxima.getKey(), Long.toString(proxima.getValue().getSequencia())));
+        }
+    }
+
+    /**
+     * Procura, entre as mensagens enviadas às comunidades de que o usuário participa depois
+     * que ele entrou nelas e os recados recebidos por ele, os que contêm todas as palavras
+     * do termo, sem diferença de acentos e de maiúsculas e minúsculas. Mensagens já lidas
+     * também são achadas. A indexação acontece em segundo plano, logo depois do envio,
+     * então um texto recém-enviado pode levar alguns instantes para aparecer.
+     *
+     * @param idSessao A sessão de quem procura.
+     * @param termo As palavras procuradas.
+     * @param limite Quantos textos no máximo.
+     * @return Os textos, do mais recente para o mais antigo.
+     */
+    public String buscarMensagens(String idSessao, String termo, int limite) {
+        if (limite <= 0) throw EncodingUtil.createException("Limite de busca inválido.");
+        try (Operacao op = operacao()) {
+            Usuario usuario = getUsuarioPorSessao(idSessao);
+            op.travar(usuario.getLogin());
+            return "{" + String.join(",", indiceMensagens.buscar(termo, limite, usuario.getLogin(),
+                    usuario.getEntradasComunidades())) + "}";
         }
+    }
 
-        usuarios.remove(login);
+    /**
+     * Recupera as métricas do índice de mensagens e recados.
+     *
+     * @return Os documentos indexados, a fila de indexação, os segmentos e as mesclas.
+     */
+    public EstatisticasBusca getEstatisticasBusca() {
+        return indiceMensagens.getEstatisticas();
+    }
 
-        sessoes.values().removeIf(v -> v.equals(login));
+    /*
+     * Medidores da FacadeInstrumentada. Sem travas: são leituras aproximadas, feitas só
+     * quando as métricas são consultadas.
+     */
 
-        encerrarSistema();
+    int contarComunidades() {
+        return comunidades.size();
     }
 
-    public void enviarMensagem(String idSessao, String comunidade, String mensagem) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
-        Comunidade com = comunidades.get(comunidade);
+    int contarMembros(String comunidade) {
+        Comunidade c = buscarComunidade(comunidade);
+        return c == null ? 0 : c.getMembros().size();
+    }
 
-        if (com == null) {
-            throw EncodingUtil.createException("Comunidade não existe.");
+    long contarRecadosPendentes() {
+        long total = 0;
+        for (Usuario u : usuarios.values()) {
+            CaixaEntrada caixa = u.getRecadosRecebidos();
+            if (caixa != null) total += caixa.size();
         }
+        return total;
+    }
 
-        for (String membro : com.getMembros()) {
-            usuarios.get(membro).receberMensagemComunidade(mensagem);
-        }
+    /**
+     * Conta as mensagens guardadas nos logs das comunidades, que são as que algum membro
+     * ainda não leu: os logs descartam o que todos já leram na compactação.
+     */
+    long contarMensagensRetidas() {
+        long total = 0;
+        for (Comunidade c : comunidades.values()) total += c.getMensagens().getTamanho();
+        return total;
     }
 
+    /**
+     * Procura a próxima mensagem não lida pelo usuário: a de menor sequência entre os logs
+     * das comunidades de que ele participa.
+     *
+     * @return A comunidade e a mensagem, ou null se o usuário já leu todas.
+     */
+    private Map.Entry<String, LogMensagens.Mensagem> proximaMensagem(Usuario usuario) {
+        Map.Entry<String, LogMensagens.Mensagem> proxima = null;
+        for (Map.Entry<String, Long> cursor : usuario.getCursoresMensagens().entrySet()) {
+            Comunidade c = comunidades.get(cursor.getKey());
+            if (c == null) continue;
+            LogMensagens.Mensagem m = c.getMensagens().proxima(cursor.getValue());
+            if (m != null && (proxima == null || m.getSequencia() < proxima.getValue().getSequencia())) {
+                proxima = new AbstractMap.SimpleImmutableEntry<>(cursor.getKey(), m);
+            }
+        }
+        return proxima;
+    }
 
-    public String lerMensagem(String idSessao) {
-        Usuario usuario = getUsuarioPorSessao(idSessao);
-        if (!usuario.temMensagensComunidade()) {
-            throw new RuntimeException(EncodingUtil.fixEncoding("Não há mensagens."));
+    /**
+     * Consome a mensagem indicada no registro e avança o cursor da comunidade dela. Registros
+     * sem comunidade consomem as mensagens antigas que vieram de um banco anterior aos logs
+     * por comunidade ou, se não houver mais delas, a próxima mensagem dos logs (registros
+     * gravados antes de os logs existirem).
+     */
+    private String aplicarLerMensagem(Usuario usuario, RegistroJournal r) {
+        if (r.getCampos().length < 3 && usuario.temMensagensComunidade()) {
+            return usuario.lerMensagemComunidade();
+        }
+        Map.Entry<String, LogMensagens.Mensagem> mensagem;
+        if (r.getCampos().length < 3) {
+            mensagem = proximaMensagem(usuario);
+            if (mensagem == null) {
+                throw new RuntimeException(EncodingUtil.fixEncoding("Não há mensagens."));
+            }
+        } else {
+            long sequencia = Long.parseLong(r.getCampo(2));
+            mensagem = new AbstractMap.SimpleImmutableEntry<>(r.getCampo(1),
+                    comunidades.get(r.getCampo(1)).getMensagens().proxima(sequencia - 1));
         }
-        return usuario.lerMensagemComunidade();
+        usuario.getCursoresMensagens().put(mensagem.getKey(), mensagem.getValue().getSequencia());
+        return mensagem.getValue().getTexto();
     }
 
 
     public void zerarComunidades() {
-        comunidades.clear();
-        for (Usuario u : usuarios.values()) {
-            u.getComunidades().clear();
+        travaGlobal.writeLock().lock();
+        try {
+            for (Comunidade c : comunidades.values()) {
+                armazem.remover(c);
+            }
+            comunidades.clear();
+            comunidadesComMensagens.clear();
+            indiceMensagens.removerMensagens();
+            for (Usuario u : usuarios.values()) {
+                if (!u.getComunidades().isEmpty() || !u.getCursoresMensagens().isEmpty()) {
+                    armazem.alterado(u);
+                    u.getComunidades().clear();
+                    u.getCursoresMensagens().clear();
+                    u.getEntradasComunidades().clear();
+                }
+            }
+            gravador.salvar();
+        } finally {
+            travaGlobal.writeLock().unlock();
         }
-        new File("database/comunidades.txt").delete();
     }
 
 }
@@ -0,0 +1,326 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Facade que mede cada operação pública: a latência de cada chamada e os erros por tipo
+ * vão para {@link Metricas}, publicadas por JMX e gravadas periodicamente em
+ * {@code metricas.txt} no diretório de dados.
+ *
+ * <p>É uma subclasse, e não uma opção da Facade, para que sem métricas não haja custo
+ * nenhum: {@link Facade#getInstance()} e o {@code Main} só a usam com
+ * {@code -Djackut.metricas=true}. O intervalo do relatório vem de
+ * {@code jackut.metricas.intervaloMs} (60 s por padrão; zero desliga). Além das
+ * operações, registra quantos membros cada {@code enviarMensagem} alcançou e mede
+ * usuários, comunidades, sessões ativas, recados e mensagens na fila e textos esperando
+ * indexação. Sobrecargas paginadas aparecem como {@code <operacao>.pagina}.</p>
+ */
+public class FacadeInstrumentada extends Facade {
+    private final Metricas metricas;
+
+    private interface Chamada<T, E extends Exception> {
+        T executar() throws E;
+    }
+
+    private interface Acao<E extends Exception> {
+        void executar() throws E;
+    }
+
+    public FacadeInstrumentada() {
+        this(new File("database"));
+    }
+
+    /**
+     * Inicializa a Facade sobre um diretório de dados e publica as métricas dela.
+     *
+     * @param diretorio O diretório onde ficam o snapshot, o journal e o relatório.
+     */
+    public FacadeInstrumentada(File diretorio) {
+        super(diretorio);
+        this.metricas = new Metricas(new File(diretorio, "metricas.txt"),
+                Long.getLong("jackut.metricas.intervaloMs", 60000));
+        metricas.medidor("usuarios", () -> getUsuarios().size());
+        metricas.medidor("comunidades", this::contarComunidades);
+        metricas.medidor("sessoesAtivas", () -> getEstatisticasSessoes().getAtivas());
+        metricas.medidor("recadosPendentes", this::contarRecadosPendentes);
+        metricas.medidor("mensagensRetidas", this::contarMensagensRetidas);
+        metricas.medidor("indexacaoPendente", () -> getEstatisticasBusca().getPendentes());
+    }
+
+    public Metricas getMetricas() { return metricas; }
+
+    private <T, E extends Exception> T medir(String nome, Chamada<T, E> chamada) throws E {
+        MetricaOperacao metrica = metricas.operacao(nome);
+        Throwable erro = null;
+        long inicio = System.nanoTime();
+        try {
+            return chamada.executar();
+        } catch (Throwable t) {
+            erro = t;
+            throw t;
+        } finally {
+            metrica.registrar(System.nanoTime() - inicio, erro);
+        }
+    }
+
+    private <E extends Exception> void executar(String nome, Acao<E> acao) throws E {
+        medir(nome, () -> {
+            acao.executar();
+            return null;
+        });
+    }
+
+    /**
+     * Encerra o sistema e grava o relatório de métricas uma última vez, retirando-as do JMX.
+     */
+    @Override
+    public void encerrarSistema() {
+        try {
+            executar("encerrarSistema", super::encerrarSistema);
+        } finally {
+            metricas.fechar();
+        }
+    }
+
+    @Override
+    public boolean iniciarSnapshot() { return medir("iniciarSnapshot", super::iniciarSnapshot); }
+
+    @Override
+    public void aguardarSnapshot() { executar("aguardarSnapshot", super::aguardarSnapshot); }
+
+    @Override
+    public void zerarSistema() { executar("zerarSistema", super::zerarSistema); }
+
+    @Override
+    public void zerarComunidades() { executar("zerarComunidades", super::zerarComunidades); }
+
+    @Override
+    public void criarUsuario(String login, String senha, String nome) {
+        executar("criarUsuario", () -> super.criarUsuario(login, senha, nome));
+    }
+
+    @Override
+    public String abrirSessao(String login, String senha) {
+        return medir("abrirSessao", () -> super.abrirSessao(login, senha));
+    }
+
+    @Override
+    public void encerrarSessao(String idSessao) {
+        executar("encerrarSessao", () -> super.encerrarSessao(idSessao));
+    }
+
+    @Override
+    public int encerrarTodasSessoes(String idSessao) {
+        return medir("encerrarTodasSessoes", () -> super.encerrarTodasSessoes(idSessao));
+    }
+
+    @Override
+    public String getAtributoUsuario(String login, String atributo) {
+        return medir("getAtributoUsuario", () -> super.getAtributoUsuario(login, atributo));
+    }
+
+    @Override
+    public String buscarUsuarios(String atributo, String valor, int limite) {
+        return medir("buscarUsuarios", () -> super.buscarUsuarios(atributo, valor, limite));
+    }
+
+    @Override
+    public String buscarUsuariosPorPrefixo(String atributo, String prefixo, int limite) {
+        return medir("buscarUsuariosPorPrefixo", () -> super.buscarUsuariosPorPrefixo(atributo, prefixo, limite));
+    }
+
+    @Override
+    public void editarPerfil(String idSessao, String atributo, String valor) {
+        executar("editarPerfil", () -> super.editarPerfil(idSessao, atributo, valor));
+    }
+
+    @Override
+    public void adicionarAmigo(String idSessao, String loginAmigo) {
+        executar("adicionarAmigo", () -> super.adicionarAmigo(idSessao, loginAmigo));
+    }
+
+    @Override
+    public boolean ehAmigo(String login1, String login2) {
+        return medir("ehAmigo", () -> super.ehAmigo(login1, login2));
+    }
+
+    @Override
+    public String getAmigos(String login) {
+        return medir("getAmigos", () -> super.getAmigos(login));
+    }
+
+    @Override
+    public String getAmigos(String login, String cursor, int limite) {
+        return medir("getAmigos.pagina", () -> super.getAmigos(login, cursor, limite));
+    }
+
+    @Override
+    public void escreverAmigos(String login, Writer saida) throws IOException {
+        executar("escreverAmigos", () -> super.escreverAmigos(login, saida));
+    }
+
+    @Override
+    public String getSugestoesAmizade(String idSessao, int quantidade) {
+        return medir("getSugestoesAmizade", () -> super.getSugestoesAmizade(idSessao, quantidade));
+    }
+
+    @Override
+    public String getAmigosEmComum(String login1, String login2) {
+        return medir("getAmigosEmComum", () -> super.getAmigosEmComum(login1, login2));
+    }
+
+    @Override
+    public int getQuantidadeAmigosEmComum(String login1, String login2) {
+        return medir("getQuantidadeAmigosEmComum", () -> super.getQuantidadeAmigosEmComum(login1, login2));
+    }
+
+    @Override
+    public int getDistancia(String login1, String login2, int maximo) {
+        return medir("getDistancia", () -> super.getDistancia(login1, login2, maximo));
+    }
+
+    @Override
+    public String getCaminho(String login1, String login2, int maximo) {
+        return medir("getCaminho", () -> super.getCaminho(login1, login2, maximo));
+    }
+
+    @Override
+    public void enviarRecado(String idSessao, String destinatarioLogin, String recado) {
+        executar("enviarRecado", () -> super.enviarRecado(idSessao, destinatarioLogin, recado));
+    }
+
+    @Override
+    public String lerRecado(String idSessao) {
+        return medir("lerRecado", () -> super.lerRecado(idSessao));
+    }
+
+    @Override
+    public void criarComunidade(String idSessao, String nome, String descricao) {
+        executar("criarComunidade", () -> super.criarComunidade(idSessao, nome, descricao));
+    }
+
+    @Override
+    public String buscarComunidades(String prefixo, int limite) {
+        return medir("buscarComunidades", () -> super.buscarComunidades(prefixo, limite));
+    }
+
+    @Override
+    public String buscarComunidadesPorDescricao(String texto, int limite) {
+        return medir("buscarComunidadesPorDescricao", () -> super.buscarComunidadesPorDescricao(texto, limite));
+    }
+
+    @Override
+    public void adicionarComunidade(String idSessao, String nomeComunidade) {
+        executar("adicionarComunidade", () -> super.adicionarComunidade(idSessao, nomeComunidade));
+    }
+
+    @Override
+    public String getDonoComunidade(String nome) {
+        return medir("getDonoComunidade", () -> super.getDonoComunidade(nome));
+    }
+
+    @Override
+    public String getDescricaoComunidade(String nome) {
+        return medir("getDescricaoComunidade", () -> super.getDescricaoComunidade(nome));
+    }
+
+    @Override
+    public String getMembrosComunidade(String nome) {
+        return medir("getMembrosComunidade", () -> super.getMembrosComunidade(nome));
+    }
+
+    @Override
+    public String getMembrosComunidade(String nome, String cursor, int limite) {
+        return medir("getMembrosComunidade.pagina", () -> super.getMembrosComunidade(nome, cursor, limite));
+    }
+
+    @Override
+    public void escreverMembrosComunidade(String nome, Writer saida) throws IOException {
+        executar("escreverMembrosComunidade", () -> super.escreverMembrosComunidade(nome, saida));
+    }
+
+    @Override
+    public String getComunidades(String login) {
+        return medir("getComunidades", () -> super.getComunidades(login));
+    }
+
+    @Override
+    public String getComunidades(String login, String cursor, int limite) {
+        return medir("getComunidades.pagina", () -> super.getComunidades(login, cursor, limite));
+    }
+
+    @Override
+    public void escreverComunidades(String login, Writer saida) throws IOException {
+        executar("escreverComunidades", () -> super.escreverComunidades(login, saida));
+    }
+
+    @Override
+    public void adicionarIdolo(String idSessao, String idolo) {
+        executar("adicionarIdolo", () -> super.adicionarIdolo(idSessao, idolo));
+    }
+
+    @Override
+    public boolean ehFa(String login, String idolo) {
+        return medir("ehFa", () -> super.ehFa(login, idolo));
+    }
+
+    @Override
+    public String getFas(String login) {
+        return medir("getFas", () -> super.getFas(login));
+    }
+
+    @Override
+    public String getFas(String login, String cursor, int limite) {
+        return medir("getFas.pagina", () -> super.getFas(login, cursor, limite));
+    }
+
+    @Override
+    public void escreverFas(String login, Writer saida) throws IOException {
+        executar("escreverFas", () -> super.escreverFas(login, saida));
+    }
+
+    @Override
+    public void adicionarPaquera(String idSessao, String paquera) {
+        executar("adicionarPaquera", () -> super.adicionarPaquera(idSessao, paquera));
+    }
+
+    @Override
+    public boolean ehPaquera(String idSessao, String paquera) {
+        return medir("ehPaquera", () -> super.ehPaquera(idSessao, paquera));
+    }
+
+    @Override
+    public String getPaqueras(String idSessao) {
+        return medir("getPaqueras", () -> super.getPaqueras(idSessao));
+    }
+
+    @Override
+    public void adicionarInimigo(String idSessao, String inimigo) {
+        executar("adicionarInimigo", () -> super.adicionarInimigo(idSessao, inimigo));
+    }
+
+    @Override
+    public void removerUsuario(String idSessao) {
+        executar("removerUsuario", () -> super.removerUsuario(idSessao));
+    }
+
+    @Override
+    public void enviarMensagem(String idSessao, String comunidade, String mensagem) {
+        executar("enviarMensagem", () -> {
+            super.enviarMensagem(idSessao, comunidade, mensagem);
+            metricas.distribuicao("enviarMensagem.membros", contarMembros(comunidade));
+        });
+    }
+
+    @Override
+    public String lerMensagem(String idSessao) {
+        return medir("lerMensagem", () -> super.lerMensagem(idSessao));
+    }
+
+    @Override
+    public String buscarMensagens(String idSessao, String termo, int limite) {
+        return medir("buscarMensagens", () -> super.buscarMensagens(idSessao, termo, limite));
+    }
+}
@@ -0,0 +1,245 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Tabela das sessões abertas no sistema Jackut.
+ *
+ * <p>Os IDs ({@code sessao_N}) vêm de um contador atômico, então threads diferentes nunca
+ * recebem o mesmo ID. Cada sessão expira por ociosidade (tempo desde o último uso) e por
+ * duração máxima (tempo desde a abertura); zero desliga cada limite. O vencimento é
+ * verificado em toda consulta, e uma {@link RodaTemporizacao} recolhe as sessões vencidas
+ * que ninguém mais consulta, sem varrer a tabela. A roda avança junto com as próprias
+ * chamadas, no máximo uma vez por tick. Uma sessão encerrada antes do prazo é tirada da
+ * roda na hora, para que logouts não a encham de sessões mortas.</p>
+ *
+ * <p>Um índice login → IDs permite encerrar todas as sessões de um usuário em tempo
+ * proporcional à quantidade de sessões dele.</p>
+ */
+public class GerenciadorSessoes {
+    private final long ociosidadeMs;
+    private final long duracaoMaximaMs;
+    private final LongSupplier relogio;
+
+    private final AtomicLong proximoId = new AtomicLong(1);
+    private final ConcurrentHashMap<String, Sessao> sessoes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Set<String>> porLogin = new ConcurrentHashMap<>();
+    private final RodaTemporizacao<Sessao> roda;
+    private final ReentrantLock varredura = new ReentrantLock();
+    private volatile long proximaVarredura;
+
+    private final LongAdder abertas = new LongAdder();
+    private final LongAdder encerradas = new LongAdder();
+    private final LongAdder expiradasOciosidade = new LongAdder();
+    private final LongAdder expiradasDuracao = new LongAdder();
+
+    /**
+     * Cria a tabela de sessões.
+     *
+     * @param ociosidadeMs Tempo sem uso após o qual a sessão expira, em milissegundos (0 desliga).
+     * @param duracaoMaximaMs Tempo desde a abertura após o qual a sessão expira (0 desliga).
+     * @param tickMs Precisão da roda de temporização, em milissegundos.
+     * @param relogio Fonte do instante atual, em milissegundos.
+     */
+    public GerenciadorSessoes(long ociosidadeMs, long duracaoMaximaMs, long tickMs, LongSupplier relogio) {
+        this.ociosidadeMs = Math.max(0, ociosidadeMs);
+        this.duracaoMaximaMs = Math.max(0, duracaoMaximaMs);
+        this.relogio = relogio;
+        long agora = relogio.getAsLong();
+        this.roda = new RodaTemporizacao<>(tickMs, agora);
+        this.proximaVarredura = agora + roda.getTickMs();
+    }
+
+    /**
+     * Abre uma sessão para o login informado.
+     *
+     * @param login O login já autenticado.
+     * @return O ID da nova sessão.
+     */
+    public String abrir(String login) {
+        long agora = relogio.getAsLong();
+        varrer(agora);
+
+        Sessao sessao = new Sessao("sessao_" + proximoId.getAndIncrement(), login, agora);
+        sessoes.put(sessao.id, sessao);
+        porLogin.compute(login, (l, ids) -> {
+            if (ids == null) ids = ConcurrentHashMap.newKeySet();
+            ids.add(sessao.id);
+            return ids;
+        });
+        agendar(sessao, prazo(sessao));
+        abertas.increment();
+        return sessao.id;
+    }
+
+    /**
+     * Recupera o login dono de uma sessão e registra o uso dela.
+     *
+     * @param id O ID da sessão.
+     * @return O login, ou null se a sessão não existe ou expirou.
+     */
+    public String buscarLogin(String id) {
+        if (id == null) return null;
+        long agora = relogio.getAsLong();
+        varrer(agora);
+
+        Sessao sessao = sessoes.get(id);
+        if (sessao == null) return null;
+        if (prazo(sessao) <= agora) {
+            expirar(sessao, agora);
+            return null;
+        }
+        sessao.ultimoUso = agora;
+        return sessao.login;
+    }
+
+    /**
+     * Encerra uma sessão.
+     *
+     * @param id O ID da sessão.
+     * @return true se a sessão existia.
+     */
+    public boolean encerrar(String id) {
+        Sessao sessao = id == null ? null : sessoes.get(id);
+        if (sessao == null || !remover(sessao)) return false;
+        encerradas.increment();
+        return true;
+    }
+
+    /**
+     * Encerra todas as sessões de um usuário.
+     *
+     * @param login O login do usuário.
+     * @return Quantas sessões foram encerradas.
+     */
+    public int encerrarTodas(String login) {
+        Set<String> ids = porLogin.remove(login);
+        if (ids == null) return 0;
+        int total = 0;
+        for (String id : ids) {
+            Sessao sessao = sessoes.remove(id);
+            if (sessao == null) continue;
+            desagendar(sessao);
+            total++;
+        }
+        encerradas.add(total);
+        return total;
+    }
+
+    /**
+     * Encerra todas as sessões e reinicia a numeração dos IDs.
+     */
+    public void limpar() {
+        sessoes.clear();
+        porLogin.clear();
+        roda.limpar();
+        proximoId.set(1);
+    }
+
+    /**
+     * Recupera os IDs das sessões abertas por um usuário.
+     *
+     * @param login O login do usuário.
+     * @return Os IDs, possivelmente incluindo sessões vencidas ainda não recolhidas.
+     */
+    public Set<String> getSessoes(String login) {
+        Set<String> ids = porLogin.get(login);
+        return ids == null ? Collections.emptySet() : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Recupera as métricas da tabela de sessões.
+     *
+     * @return Sessões vivas e contadores de abertura, encerramento e expiração.
+     */
+    public EstatisticasSessoes getEstatisticas() {
+        return new EstatisticasSessoes(sessoes.size(), porLogin.size(), abertas.sum(), encerradas.sum(),
+                expiradasOciosidade.sum(), expiradasDuracao.sum(), roda.getTamanho());
+    }
+
+    private long prazo(Sessao sessao) {
+        long prazo = Long.MAX_VALUE;
+        if (ociosidadeMs > 0) prazo = sessao.ultimoUso + ociosidadeMs;
+        if (duracaoMaximaMs > 0) prazo = Math.min(prazo, sessao.criadaEm + duracaoMaximaMs);
+        return prazo;
+    }
+
+    /**
+     * Avança a roda se já passou um tick desde a última vez. Só uma thread varre por vez;
+     * as demais seguem sem esperar.
+     */
+    private void varrer(long agora) {
+        if (agora < proximaVarredura || !varredura.tryLock()) return;
+        try {
+            proximaVarredura = agora + roda.getTickMs();
+            roda.avancar(agora, sessao -> {
+                if (sessoes.get(sessao.id) != sessao) return;
+                long prazo = prazo(sessao);
+                if (prazo <= agora) {
+                    expirar(sessao, agora);
+                } else {
+                    agendar(sessao, prazo);
+                }
+            });
+        } finally {
+            varredura.unlock();
+        }
+    }
+
+    private void expirar(Sessao sessao, long agora) {
+        if (!remover(sessao)) return;
+        boolean porDuracao = duracaoMaximaMs > 0 && sessao.criadaEm + duracaoMaximaMs <= agora
+                && (ociosidadeMs == 0 || sessao.criadaEm + duracaoMaximaMs <= sessao.ultimoUso + ociosidadeMs);
+        if (porDuracao) {
+            expiradasDuracao.increment();
+        } else {
+            expiradasOciosidade.increment();
+        }
+    }
+
+    private boolean remover(Sessao sessao) {
+        if (!sessoes.remove(sessao.id, sessao)) return false;
+        porLogin.computeIfPresent(sessao.login, (l, ids) -> {
+            ids.remove(sessao.id);
+            return ids.isEmpty() ? null : ids;
+        });
+        desagendar(sessao);
+        return true;
+    }
+
+    /**
+     * Põe a sessão na roda. Se ela foi encerrada enquanto isso, quem a encerrou pode ter
+     * visto o agendamento anterior, então o novo é cancelado aqui.
+     */
+    private void agendar(Sessao sessao, long prazo) {
+        if (prazo == Long.MAX_VALUE) return;
+        sessao.agendamento = roda.agendar(sessao, prazo);
+        if (sessoes.get(sessao.id) != sessao) desagendar(sessao);
+    }
+
+    private void desagendar(Sessao sessao) {
+        RodaTemporizacao.Agendamento<Sessao> agendamento = sessao.agendamento;
+        if (agendamento != null) roda.cancelar(agendamento);
+    }
+
+    private static class Sessao {
+        final String id;
+        final String login;
+        final long criadaEm;
+        volatile long ultimoUso;
+        volatile RodaTemporizacao.Agendamento<Sessao> agendamento;
+
+        Sessao(String id, String login, long criadaEm) {
+            this.id = id;
+            this.login = login;
+            this.criadaEm = criadaEm;
+            this.ultimoUso = criadaEm;
+        }
+    }
+}
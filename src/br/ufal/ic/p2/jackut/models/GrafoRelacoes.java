@@ -0,0 +1,434 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+
+/**
+ * Grafo dos relacionamentos entre usuários, com arestas dirigidas de cada {@link Tipo}.
+ *
+ * <p>Cada usuário é um {@link No}, guardado num array indexado pelo ID do login no
+ * {@link Dicionario#LOGINS}. O nó tem, por tipo, o conjunto de arestas que saem dele e o das
+ * que chegam nele, ambos {@link ConjuntoInteiros}: incluir ou tirar uma aresta custa O(1)
+ * amortizado e atualiza as duas pontas de uma vez. Os conjuntos do {@link Usuario}
+ * (amigos, convites, fãs, ídolos, paqueras e inimigos) são visões destes, de forma que o
+ * grafo é a única cópia de cada relacionamento. Num tipo em ordem alfabética, a inclusão
+ * custa O(grau), pelo deslocamento do array.</p>
+ *
+ * <p>Um nó pode existir fora de um grafo, como nos usuários recém-lidos do banco e nas
+ * cópias feitas para o snapshot. Nesse caso as visões alteram só o próprio nó, e
+ * {@link #registrar(No)} depois junta as arestas dele às do grafo.</p>
+ *
+ * <p>O grafo não é sincronizado: quem altera uma aresta deve ter as travas das duas
+ * pontas. Só a inclusão de nós no array é sincronizada.</p>
+ */
+public class GrafoRelacoes {
+
+    /**
+     * Tipos de aresta. A amizade é simétrica: a aresta de ida e a de volta são incluídas e
+     * tiradas juntas, e o nó guarda um único conjunto para as duas direções.
+     *
+     * <p>Cada tipo lista as arestas na sua {@link OrdemRelacao}, lida uma vez da propriedade
+     * {@code jackut.ordem.<relacionamento>}; o padrão é a ordem de inclusão.</p>
+     */
+    public enum Tipo {
+        AMIZADE(true, "amigos"),
+        CONVITE(false, "convites"),
+        IDOLO(false, "idolos"),
+        PAQUERA(false, "paqueras"),
+        INIMIGO(false, "inimigos");
+
+        private final boolean simetrico;
+        private final OrdemRelacao ordem;
+
+        Tipo(boolean simetrico, String relacionamento) {
+            this.simetrico = simetrico;
+            this.ordem = OrdemRelacao.configurada(relacionamento, OrdemRelacao.INCLUSAO);
+        }
+
+        public boolean isSimetrico() { return simetrico; }
+
+        public OrdemRelacao getOrdem() { return ordem; }
+    }
+
+    private static final Tipo[] TIPOS = Tipo.values();
+
+    private volatile No[] nos = new No[64];
+
+    /**
+     * Inclui no grafo o nó de um usuário. Se já houver um nó com o mesmo ID (criado pelas
+     * arestas de outros usuários que apontam para ele), as arestas dos dois são unidas, e as
+     * arestas do nó incluído ganham a outra ponta nos nós vizinhos.
+     *
+     * @param no O nó, ainda fora de um grafo.
+     */
+    public void registrar(No no) {
+        synchronized (this) {
+            garantirCapacidade(no.id);
+            No anterior = nos[no.id];
+            if (anterior != null && anterior != no) {
+                no.unir(anterior);
+                anterior.grafo = null;
+            }
+            nos[no.id] = no;
+            no.grafo = this;
+        }
+        for (Tipo tipo : TIPOS) {
+            PrimitiveIterator.OfInt it = no.saida[tipo.ordinal()].iterador();
+            while (it.hasNext()) {
+                No destino = no(it.nextInt());
+                (tipo.simetrico ? destino.saida : destino.entrada)[tipo.ordinal()].adicionar(no.id);
+            }
+            if (tipo.simetrico) continue;
+            it = no.entrada[tipo.ordinal()].iterador();
+            while (it.hasNext()) {
+                no(it.nextInt()).saida[tipo.ordinal()].adicionar(no.id);
+            }
+        }
+    }
+
+    /**
+     * Inclui uma aresta e a registra nas duas pontas.
+     *
+     * @param tipo O tipo da aresta.
+     * @param origem O ID de onde a aresta sai.
+     * @param destino O ID aonde a aresta chega.
+     * @return true se a aresta ainda não existia.
+     */
+    public boolean adicionar(Tipo tipo, int origem, int destino) {
+        if (!no(origem).saida[tipo.ordinal()].adicionar(destino)) return false;
+        No outro = no(destino);
+        (tipo.simetrico ? outro.saida : outro.entrada)[tipo.ordinal()].adicionar(origem);
+        return true;
+    }
+
+    /**
+     * Tira uma aresta das duas pontas.
+     *
+     * @param tipo O tipo da aresta.
+     * @param origem O ID de onde a aresta sai.
+     * @param destino O ID aonde a aresta chega.
+     * @return true se a aresta existia.
+     */
+    public boolean remover(Tipo tipo, int origem, int destino) {
+        No no = buscar(origem);
+        if (no == null || !no.saida[tipo.ordinal()].remover(destino)) return false;
+        No outro = buscar(destino);
+        if (outro != null) {
+            (tipo.simetrico ? outro.saida : outro.entrada)[tipo.ordinal()].remover(origem);
+        }
+        return true;
+    }
+
+    /**
+     * Verifica se existe uma aresta.
+     *
+     * @param tipo O tipo da aresta.
+     * @param origem O ID de onde a aresta sai.
+     * @param destino O ID aonde a aresta chega.
+     * @return true se a aresta existir.
+     */
+    public boolean contem(Tipo tipo, int origem, int destino) {
+        No no = buscar(origem);
+        return no != null && no.saida[tipo.ordinal()].contem(destino);
+    }
+
+    /**
+     * Recupera o nó de um ID.
+     *
+     * @param id O ID do login.
+     * @return O nó, ou null se nenhum usuário ou aresta usa o ID.
+     */
+    public No buscar(int id) {
+        No[] atual = nos;
+        return id >= 0 && id < atual.length ? atual[id] : null;
+    }
+
+    /**
+     * Recupera os IDs de todos os usuários ligados a um nó por alguma aresta, em qualquer
+     * direção.
+     *
+     * @param id O ID do login.
+     * @return Os vizinhos, sem repetição.
+     */
+    public ConjuntoInteiros vizinhos(int id) {
+        ConjuntoInteiros vizinhos = new ConjuntoInteiros();
+        No no = buscar(id);
+        if (no == null) return vizinhos;
+        for (Tipo tipo : TIPOS) {
+            vizinhos.adicionarTodos(no.saida[tipo.ordinal()]);
+            vizinhos.adicionarTodos(no.entrada[tipo.ordinal()]);
+        }
+        return vizinhos;
+    }
+
+    /**
+     * Tira um nó do grafo junto com todas as arestas que saem dele ou chegam nele. Custa
+     * O(grau): só os vizinhos são visitados. O nó tirado mantém as próprias arestas.
+     *
+     * @param id O ID do login.
+     */
+    public void removerNo(int id) {
+        No no = buscar(id);
+        if (no == null) return;
+        for (Tipo tipo : TIPOS) {
+            int t = tipo.ordinal();
+            PrimitiveIterator.OfInt it = no.saida[t].iterador();
+            while (it.hasNext()) {
+                No outro = buscar(it.nextInt());
+                if (outro != null && outro != no) (tipo.simetrico ? outro.saida : outro.entrada)[t].remover(id);
+            }
+            if (tipo.simetrico) continue;
+            it = no.entrada[t].iterador();
+            while (it.hasNext()) {
+                No outro = buscar(it.nextInt());
+                if (outro != null && outro != no) outro.saida[t].remover(id);
+            }
+        }
+        synchronized (this) {
+            nos[id] = null;
+            no.grafo = null;
+        }
+    }
+
+    /**
+     * Tira todos os nós do grafo.
+     */
+    public synchronized void limpar() {
+        for (No no : nos) {
+            if (no != null) no.grafo = null;
+        }
+        nos = new No[64];
+    }
+
+    /**
+     * Recupera o nó de um ID, criando um nó vazio se o ID ainda não estiver no grafo.
+     */
+    private No no(int id) {
+        No no = buscar(id);
+        if (no != null) return no;
+        synchronized (this) {
+            garantirCapacidade(id);
+            if (nos[id] == null) {
+                no = new No(id);
+                no.grafo = this;
+                nos[id] = no;
+            }
+            return nos[id];
+        }
+    }
+
+    private void garantirCapacidade(int id) {
+        if (id >= nos.length) {
+            nos = Arrays.copyOf(nos, Math.max(id + 1, nos.length * 2));
+        }
+    }
+
+    /**
+     * As arestas de um usuário: por tipo, as que saem dele e as que chegam nele.
+     */
+    public static final class No implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient int id;
+        private transient ConjuntoInteiros[] saida;
+        private transient ConjuntoInteiros[] entrada;
+        private transient GrafoRelacoes grafo;
+
+        /**
+         * Cria um nó sem arestas, fora de qualquer grafo.
+         *
+         * @param id O ID do login.
+         */
+        public No(int id) {
+            this.id = id;
+            criarConjuntos();
+        }
+
+        private void criarConjuntos() {
+            saida = new ConjuntoInteiros[TIPOS.length];
+            entrada = new ConjuntoInteiros[TIPOS.length];
+            for (Tipo tipo : TIPOS) {
+                saida[tipo.ordinal()] = tipo.ordem.criarConjunto(Dicionario.LOGINS);
+                entrada[tipo.ordinal()] = tipo.simetrico ? saida[tipo.ordinal()]
+                        : tipo.ordem.criarConjunto(Dicionario.LOGINS);
+            }
+        }
+
+        /*
+         * Os IDs só valem dentro desta JVM: na serialização o nó é gravado com os logins e
+         * volta fora de qualquer grafo.
+         */
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeUTF(Dicionario.LOGINS.nome(id));
+            for (Tipo tipo : TIPOS) {
+                escreverLogins(out, saida[tipo.ordinal()]);
+                if (!tipo.simetrico) escreverLogins(out, entrada[tipo.ordinal()]);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            id = Dicionario.LOGINS.id(in.readUTF());
+            criarConjuntos();
+            for (Tipo tipo : TIPOS) {
+                lerLogins(in, saida[tipo.ordinal()]);
+                if (!tipo.simetrico) lerLogins(in, entrada[tipo.ordinal()]);
+            }
+        }
+
+        private static void escreverLogins(ObjectOutputStream out, ConjuntoInteiros ids) throws IOException {
+            out.writeInt(ids.tamanho());
+            PrimitiveIterator.OfInt it = ids.iterador();
+            while (it.hasNext()) out.writeUTF(Dicionario.LOGINS.nome(it.nextInt()));
+        }
+
+        private static void lerLogins(ObjectInputStream in, ConjuntoInteiros ids) throws IOException {
+            for (int n = in.readInt(); n > 0; n--) ids.adicionar(Dicionario.LOGINS.id(in.readUTF()));
+        }
+
+        public int getId() { return id; }
+
+        /**
+         * Recupera os IDs ligados a este nó por arestas de um tipo.
+         *
+         * @param tipo O tipo da aresta.
+         * @param saindo true para as arestas que saem deste nó, false para as que chegam.
+         * @return Os IDs da outra ponta, compartilhados com o nó; não devem ser alterados.
+         */
+        public ConjuntoInteiros getArestas(Tipo tipo, boolean saindo) {
+            return (saindo ? saida : entrada)[tipo.ordinal()];
+        }
+
+        /**
+         * Recupera uma visão {@code Set<String>} das arestas de um tipo. Incluir ou tirar
+         * um login da visão inclui ou tira a aresta nas duas pontas, se o nó estiver num
+         * grafo, ou só neste nó, se estiver fora.
+         *
+         * @param tipo O tipo da aresta.
+         * @param saindo true para as arestas que saem deste nó, false para as que chegam.
+         * @return A visão com os logins da outra ponta.
+         */
+        public Adjacencia visao(Tipo tipo, boolean saindo) {
+            return new Adjacencia(this, tipo, saindo);
+        }
+
+        /**
+         * Copia para este nó todas as arestas de outro, usado nas cópias do usuário.
+         *
+         * @param origem O nó copiado.
+         */
+        public void copiarDe(No origem) {
+            unir(origem);
+        }
+
+        private void unir(No outro) {
+            for (Tipo tipo : TIPOS) {
+                int t = tipo.ordinal();
+                saida[t].adicionarTodos(outro.saida[t]);
+                if (!tipo.simetrico) entrada[t].adicionarTodos(outro.entrada[t]);
+            }
+        }
+
+        private boolean ligar(Tipo tipo, boolean saindo, int outro) {
+            GrafoRelacoes g = grafo;
+            if (g == null) return (saindo ? saida : entrada)[tipo.ordinal()].adicionar(outro);
+            return saindo ? g.adicionar(tipo, id, outro) : g.adicionar(tipo, outro, id);
+        }
+
+        private boolean desligar(Tipo tipo, boolean saindo, int outro) {
+            GrafoRelacoes g = grafo;
+            if (g == null) return (saindo ? saida : entrada)[tipo.ordinal()].remover(outro);
+            return saindo ? g.remover(tipo, id, outro) : g.remover(tipo, outro, id);
+        }
+    }
+
+    /**
+     * Visão {@code Set<String>} das arestas de um tipo de um nó, traduzindo os IDs pelo
+     * {@link Dicionario#LOGINS}. A iteração segue a ordem do tipo da aresta.
+     */
+    public static final class Adjacencia extends AbstractSet<String> {
+        private final No no;
+        private final Tipo tipo;
+        private final boolean saindo;
+
+        private Adjacencia(No no, Tipo tipo, boolean saindo) {
+            this.no = no;
+            this.tipo = tipo;
+            this.saindo = saindo;
+        }
+
+        /**
+         * Verifica se a visão contém o login com o ID informado.
+         *
+         * @param id O ID do login.
+         * @return true se houver a aresta.
+         */
+        public boolean contemId(int id) {
+            return no.getArestas(tipo, saindo).contem(id);
+        }
+
+        @Override
+        public boolean add(String login) {
+            return no.ligar(tipo, saindo, Dicionario.LOGINS.id(login));
+        }
+
+        @Override
+        public boolean contains(Object login) {
+            return contemId(Dicionario.LOGINS.buscar(login));
+        }
+
+        @Override
+        public boolean remove(Object login) {
+            int id = Dicionario.LOGINS.buscar(login);
+            return id >= 0 && no.desligar(tipo, saindo, id);
+        }
+
+        @Override
+        public int size() {
+            return no.getArestas(tipo, saindo).tamanho();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return no.getArestas(tipo, saindo).vazio();
+        }
+
+        @Override
+        public void clear() {
+            for (int id : no.getArestas(tipo, saindo).paraArray()) no.desligar(tipo, saindo, id);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            PrimitiveIterator.OfInt it = no.getArestas(tipo, saindo).iterador();
+            return new Iterator<String>() {
+                private int ultimo = -1;
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public String next() {
+                    ultimo = it.nextInt();
+                    return Dicionario.LOGINS.nome(ultimo);
+                }
+
+                @Override
+                public void remove() {
+                    if (ultimo < 0) throw new IllegalStateException();
+                    no.desligar(tipo, saindo, ultimo);
+                    ultimo = -1;
+                }
+            };
+        }
+    }
+}
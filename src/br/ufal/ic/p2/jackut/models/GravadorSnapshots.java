@@ -0,0 +1,148 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.IOException;
+
+/**
+ * Grava snapshots do {@link ArmazemSegmentos} numa thread própria, para que as
+ * requisições não esperem pelo disco.
+ *
+ * <p>{@link #iniciar()} roda na thread que pede o snapshot e só captura, em memória, o
+ * estado no último LSN do journal. A thread {@code jackut-snapshot} então grava os segmentos
+ * capturados (cada arquivo num temporário renomeado ao final, e o índice por último),
+ * espera o {@link IndiceMensagens} gravar os textos recebidos até a captura, rotaciona o
+ * journal e descarta os logs rotacionados que o snapshot passou a cobrir. Só há um snapshot
+ * em andamento por vez.</p>
+ */
+public class GravadorSnapshots {
+    private final ArmazemSegmentos armazem;
+    private final Journal journal;
+    private final IndiceMensagens indiceMensagens;
+
+    private boolean emAndamento;
+    private long concluidos;
+    private long falhas;
+    private long ultimoLsn;
+    private int ultimosSegmentos;
+    private long nanosCaptura;
+    private long nanosGravacao;
+    private String ultimoErro;
+
+    /**
+     * Cria o gravador sobre o armazenamento e o journal da Facade.
+     *
+     * @param armazem O armazenamento segmentado.
+     * @param journal O journal cujas mutações o snapshot incorpora.
+     * @param indiceMensagens O índice de mensagens, que precisa estar gravado antes de o
+     *                        journal ser descartado, já que é montado a partir dele.
+     */
+    public GravadorSnapshots(ArmazemSegmentos armazem, Journal journal, IndiceMensagens indiceMensagens) {
+        this.armazem = armazem;
+        this.journal = journal;
+        this.indiceMensagens = indiceMensagens;
+    }
+
+    /**
+     * Captura o estado atual e começa a gravá-lo em segundo plano. Deve ser chamado sem
+     * nenhuma mutação em andamento, para que o estado corresponda ao último LSN do journal.
+     *
+     * @return false se já havia um snapshot em andamento e nada foi iniciado.
+     */
+    public synchronized boolean iniciar() {
+        if (emAndamento) return false;
+        journal.verificar();
+
+        long inicio = System.nanoTime();
+        ArmazemSegmentos.Captura captura = armazem.capturar(journal.getUltimoLsn());
+        IndiceMensagens.Selo selo = indiceMensagens.selar();
+        nanosCaptura = System.nanoTime() - inicio;
+        emAndamento = true;
+
+        Thread thread = new Thread(() -> gravar(captura, selo), "jackut-snapshot");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void gravar(ArmazemSegmentos.Captura captura, IndiceMensagens.Selo selo) {
+        long inicio = System.nanoTime();
+        String erro = null;
+        int segmentos = 0;
+        try {
+            // o snapshot só pode conter o que o journal já tem em disco
+            try {
+                journal.sincronizar(captura.getLsn());
+            } catch (RuntimeException e) {
+                armazem.abandonar(captura);
+                throw e;
+            }
+            segmentos = armazem.gravar(captura);
+            indiceMensagens.aguardarGravacao(selo);
+            journal.rotacionar();
+            journal.descartar(captura.getLsn());
+        } catch (IOException | RuntimeException e) {
+            erro = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+
+        synchronized (this) {
+            nanosGravacao = System.nanoTime() - inicio;
+            ultimoErro = erro;
+            if (erro == null) {
+                concluidos++;
+                ultimoLsn = captura.getLsn();
+                ultimosSegmentos = segmentos;
+            } else {
+                falhas++;
+            }
+            emAndamento = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Espera o snapshot em andamento, se houver, terminar.
+     *
+     * @throws RuntimeException Se o último snapshot falhou.
+     */
+    public synchronized void aguardar() {
+        esperarTermino();
+        if (ultimoErro != null) {
+            throw EncodingUtil.createException("Erro ao salvar o snapshot.");
+        }
+    }
+
+    /**
+     * Grava um snapshot completo e só retorna quando ele estiver em disco. Um snapshot
+     * em andamento é aguardado antes, e uma falha anterior é superada por este.
+     *
+     * @throws RuntimeException Se a gravação falhar.
+     */
+    public synchronized void salvar() {
+        esperarTermino();
+        iniciar();
+        aguardar();
+    }
+
+    private void esperarTermino() {
+        boolean interrompido = false;
+        while (emAndamento) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrompido = true;
+            }
+        }
+        if (interrompido) Thread.currentThread().interrupt();
+    }
+
+    public synchronized boolean isEmAndamento() { return emAndamento; }
+
+    /**
+     * Recupera a situação dos snapshots gravados até agora.
+     *
+     * @return As estatísticas do gravador.
+     */
+    public synchronized EstatisticasSnapshot getEstatisticas() {
+        return new EstatisticasSnapshot(concluidos, falhas, emAndamento, ultimoLsn, ultimosSegmentos,
+                nanosCaptura, nanosGravacao, ultimoErro);
+    }
+}
@@ -0,0 +1,113 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latências com erro relativo limitado, para percentis como p99 e p999 sem
+ * guardar cada amostra.
+ *
+ * <p>Os baldes são log-lineares: valores abaixo de 32 têm um balde cada; acima disso, cada
+ * potência de dois é dividida em 32 baldes iguais, de forma que o erro de um percentil é no
+ * máximo 1/32 (cerca de 3%) do valor. São 1888 baldes fixos, que cobrem todo o intervalo de
+ * {@code long}, e registrar é um incremento atômico sem alocação, seguro entre threads.</p>
+ */
+public class Histograma {
+    private static final int BITS_SUB = 5;
+    private static final int SUB = 1 << BITS_SUB;
+    private static final int BALDES = (64 - BITS_SUB) * SUB;
+
+    private final AtomicLongArray contagens = new AtomicLongArray(BALDES);
+    private final AtomicLong contagem = new AtomicLong();
+    private final AtomicLong soma = new AtomicLong();
+    private final AtomicLong maximo = new AtomicLong();
+
+    /**
+     * Registra um valor; negativos contam como zero.
+     *
+     * @param valor O valor, em geral uma latência em nanossegundos.
+     */
+    public void registrar(long valor) {
+        if (valor < 0) valor = 0;
+        contagens.incrementAndGet(balde(valor));
+        contagem.incrementAndGet();
+        soma.addAndGet(valor);
+        if (valor > maximo.get()) maximo.accumulateAndGet(valor, Math::max);
+    }
+
+    /**
+     * Acrescenta a este histograma as amostras de outro, por exemplo para juntar os
+     * histogramas de várias threads.
+     *
+     * @param outro O histograma somado.
+     */
+    public void somar(Histograma outro) {
+        for (int i = 0; i < BALDES; i++) {
+            long n = outro.contagens.get(i);
+            if (n != 0) contagens.addAndGet(i, n);
+        }
+        contagem.addAndGet(outro.contagem.get());
+        soma.addAndGet(outro.soma.get());
+        maximo.accumulateAndGet(outro.maximo.get(), Math::max);
+    }
+
+    /**
+     * Descarta todas as amostras.
+     */
+    public void zerar() {
+        for (int i = 0; i < BALDES; i++) contagens.set(i, 0);
+        contagem.set(0);
+        soma.set(0);
+        maximo.set(0);
+    }
+
+    public long getContagem() { return contagem.get(); }
+
+    public long getSoma() { return soma.get(); }
+
+    public long getMaximo() { return maximo.get(); }
+
+    public double getMedia() {
+        long n = contagem.get();
+        return n == 0 ? 0 : (double) soma.get() / n;
+    }
+
+    /**
+     * Calcula um percentil das amostras registradas.
+     *
+     * @param fracao A fração das amostras que fica abaixo do valor, como 0.99.
+     * @return O ponto médio do balde do percentil, ou zero se não há amostras.
+     */
+    public long percentil(double fracao) {
+        long total = 0;
+        long[] copia = new long[BALDES];
+        for (int i = 0; i < BALDES; i++) {
+            copia[i] = contagens.get(i);
+            total += copia[i];
+        }
+        if (total == 0) return 0;
+
+        long alvo = Math.max(1, (long) Math.ceil(fracao * total));
+        long acumulado = 0;
+        for (int i = 0; i < BALDES; i++) {
+            acumulado += copia[i];
+            if (acumulado >= alvo) return Math.min(meio(i), maximo.get());
+        }
+        return maximo.get();
+    }
+
+    private static int balde(long valor) {
+        if (valor < SUB) return (int) valor;
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        int sub = (int) (valor >>> (expoente - BITS_SUB)) & (SUB - 1);
+        return (expoente - BITS_SUB + 1) * SUB + sub;
+    }
+
+    private static long meio(int balde) {
+        if (balde < SUB) return balde;
+        int expoente = balde / SUB + BITS_SUB - 1;
+        long largura = 1L << (expoente - BITS_SUB);
+        long inicio = (1L << expoente) + (balde % SUB) * largura;
+        return inicio + largura / 2;
+    }
+}
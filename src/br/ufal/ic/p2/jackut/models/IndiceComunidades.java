@@ -0,0 +1,209 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Índices de busca de comunidades: por prefixo do nome e por palavras da descrição.
+ *
+ * <p>Os nomes, normalizados como os valores de perfil ({@link IndicePerfil#normalizar}),
+ * ficam num {@link TreeMap} ordenado, e a busca por prefixo é um intervalo dele. As
+ * descrições são quebradas em palavras normalizadas, e cada palavra aponta para os IDs das
+ * comunidades que a usam ({@link Dicionario#COMUNIDADES}). Uma busca por várias palavras
+ * percorre a lista da palavra mais rara e confere as outras.</p>
+ *
+ * <p>Os resultados saem das comunidades com mais membros para as com menos, e em ordem
+ * alfabética do nome em caso de empate; só os {@code limite} melhores são guardados durante
+ * a busca. O tamanho de cada comunidade é lido na hora, por quem chama, sem travar as
+ * comunidades: uma comunidade que muda durante a busca pode sair uma posição fora do
+ * lugar, mas nunca some nem aparece a mais.</p>
+ *
+ * <p>A Facade atualiza os índices quando uma comunidade é criada ou removida junto com o
+ * dono, e os monta na carga. Eles têm a sua própria trava de leitura e escrita.</p>
+ */
+public class IndiceComunidades {
+    private final TreeMap<String, ConjuntoInteiros> nomes = new TreeMap<>();
+    private final Map<String, ConjuntoInteiros> palavras = new HashMap<>();
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+
+    /**
+     * Inclui uma comunidade nos índices.
+     *
+     * @param nome O nome da comunidade.
+     * @param descricao A descrição.
+     */
+    public void incluir(String nome, String descricao) {
+        int id = Dicionario.COMUNIDADES.id(nome);
+        trava.writeLock().lock();
+        try {
+            nomes.computeIfAbsent(IndicePerfil.normalizar(nome), n -> new ConjuntoInteiros()).adicionar(id);
+            for (String palavra : palavras(descricao)) {
+                palavras.computeIfAbsent(palavra, p -> new ConjuntoInteiros()).adicionar(id);
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tira uma comunidade dos índices.
+     *
+     * @param nome O nome da comunidade.
+     * @param descricao A descrição com que ela foi incluída.
+     */
+    public void remover(String nome, String descricao) {
+        int id = Dicionario.COMUNIDADES.buscar(nome);
+        if (id < 0) return;
+        trava.writeLock().lock();
+        try {
+            tirar(nomes, IndicePerfil.normalizar(nome), id);
+            for (String palavra : palavras(descricao)) tirar(palavras, palavra, id);
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Procura as comunidades cujo nome começa com um prefixo.
+     *
+     * @param prefixo O começo do nome, comparado sem acentos e sem diferença entre
+     *                maiúsculas e minúsculas.
+     * @param limite Quantas comunidades no máximo.
+     * @param membros Dá a quantidade de membros de uma comunidade pelo ID.
+     * @return Os nomes, da comunidade com mais membros para a com menos.
+     */
+    public List<String> buscarPorNome(String prefixo, int limite, IntUnaryOperator membros) {
+        String chave = IndicePerfil.normalizar(prefixo == null ? "" : prefixo);
+        Ranking ranking = new Ranking(limite, membros);
+        trava.readLock().lock();
+        try {
+            for (ConjuntoInteiros ids : nomes.subMap(chave, true, chave + Character.MAX_VALUE, false).values()) {
+                ids.paraCada(ranking::considerar);
+            }
+        } finally {
+            trava.readLock().unlock();
+        }
+        return ranking.resultado();
+    }
+
+    /**
+     * Procura as comunidades cuja descrição tem todas as palavras de um texto.
+     *
+     * @param texto As palavras procuradas, em qualquer ordem.
+     * @param limite Quantas comunidades no máximo.
+     * @param membros Dá a quantidade de membros de uma comunidade pelo ID.
+     * @return Os nomes, da comunidade com mais membros para a com menos; vazio se o texto
+     *         não tiver nenhuma palavra.
+     */
+    public List<String> buscarPorDescricao(String texto, int limite, IntUnaryOperator membros) {
+        List<String> termos = palavras(texto);
+        Ranking ranking = new Ranking(limite, membros);
+        if (termos.isEmpty()) return ranking.resultado();
+        trava.readLock().lock();
+        try {
+            ConjuntoInteiros[] listas = new ConjuntoInteiros[termos.size()];
+            int menor = 0;
+            for (int i = 0; i < listas.length; i++) {
+                listas[i] = palavras.get(termos.get(i));
+                if (listas[i] == null) return ranking.resultado();
+                if (listas[i].tamanho() < listas[menor].tamanho()) menor = i;
+            }
+            int escolhida = menor;
+            listas[escolhida].paraCada(id -> {
+                for (int i = 0; i < listas.length; i++) {
+                    if (i != escolhida && !listas[i].contem(id)) return;
+                }
+                ranking.considerar(id);
+            });
+        } finally {
+            trava.readLock().unlock();
+        }
+        return ranking.resultado();
+    }
+
+    /**
+     * Descarta os índices.
+     */
+    public void limpar() {
+        trava.writeLock().lock();
+        try {
+            nomes.clear();
+            palavras.clear();
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Quebra um texto em palavras normalizadas, sem repetição: sequências de letras e
+     * dígitos, sem acentos e em minúsculas.
+     *
+     * @param texto O texto.
+     * @return As palavras, na ordem em que aparecem.
+     */
+    public static List<String> palavras(String texto) {
+        List<String> palavras = new ArrayList<>();
+        if (texto == null) return palavras;
+        String normalizado = IndicePerfil.normalizar(texto);
+        int inicio = -1;
+        for (int i = 0; i <= normalizado.length(); i++) {
+            boolean letra = i < normalizado.length() && Character.isLetterOrDigit(normalizado.charAt(i));
+            if (letra && inicio < 0) {
+                inicio = i;
+            } else if (!letra && inicio >= 0) {
+                String palavra = normalizado.substring(inicio, i);
+                if (!palavras.contains(palavra)) palavras.add(palavra);
+                inicio = -1;
+            }
+        }
+        return palavras;
+    }
+
+    private static void tirar(Map<String, ConjuntoInteiros> indice, String chave, int id) {
+        ConjuntoInteiros ids = indice.get(chave);
+        if (ids != null && ids.remover(id) && ids.vazio()) indice.remove(chave);
+    }
+
+    /**
+     * Guarda as {@code limite} comunidades com mais membros entre as consideradas, num heap
+     * cuja raiz é a pior delas.
+     */
+    private static final class Ranking {
+        private static final Comparator<int[]> ORDEM = Comparator.<int[]>comparingInt(c -> c[1])
+                .thenComparing(c -> Dicionario.COMUNIDADES.nome(c[0]), Comparator.reverseOrder());
+
+        private final int limite;
+        private final IntUnaryOperator membros;
+        private final PriorityQueue<int[]> melhores = new PriorityQueue<>(ORDEM);
+
+        private Ranking(int limite, IntUnaryOperator membros) {
+            this.limite = limite;
+            this.membros = membros;
+        }
+
+        private void considerar(int id) {
+            int[] candidata = {id, membros.applyAsInt(id)};
+            if (melhores.size() < limite) {
+                melhores.add(candidata);
+            } else if (ORDEM.compare(candidata, melhores.peek()) > 0) {
+                melhores.poll();
+                melhores.add(candidata);
+            }
+        }
+
+        private List<String> resultado() {
+            List<int[]> ordenadas = new ArrayList<>(melhores);
+            ordenadas.sort(ORDEM.reversed());
+            List<String> nomes = new ArrayList<>(ordenadas.size());
+            for (int[] c : ordenadas) nomes.add(Dicionario.COMUNIDADES.nome(c[0]));
+            return nomes;
+        }
+    }
+}
@@ -0,0 +1,1071 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Índice de texto das mensagens de comunidade e dos recados, para a busca por palavras.
+ *
+ * <p>Cada texto enviado vira um documento identificado pela sequência global de mensagens da
+ * Facade, com um escopo que decide quem pode achá-lo: a comunidade, no caso de mensagens, ou
+ * o destinatário, no caso de recados. O envio só põe o documento numa fila; a thread
+ * {@code jackut-busca} quebra o texto em palavras ({@link IndiceComunidades#palavras(String)})
+ * e o acrescenta ao segmento em memória, que também é consultado pelas buscas.</p>
+ *
+ * <p>Quando o segmento em memória chega a {@code lote} documentos, ou quando um snapshot pede
+ * com {@link #selar()}, ele é gravado num arquivo imutável ({@code segmento-G.bin}): os
+ * textos, os documentos em ordem de sequência e, para cada palavra, a lista dos documentos
+ * que a usam, codificada como diferenças entre números consecutivos em inteiros de tamanho
+ * variável. As listas ficam em memória; os textos só são lidos do arquivo para os resultados
+ * de uma busca. O manifesto ({@code indice.bin}) lista os segmentos e as remoções e, como o
+ * índice do {@link ArmazemSegmentos}, é trocado atomicamente por último. Sempre que
+ * {@code fatorMescla} segmentos de tamanho parecido se acumulam, a mesma thread os mescla num
+ * só, já sem os documentos removidos.</p>
+ *
+ * <p>Documentos não são apagados um a um: a remoção de um autor, de uma comunidade ou dos
+ * recados de um destinatário vale para os documentos dele com sequência até a maior já
+ * indexada, de forma que um usuário ou comunidade recriado com o mesmo nome não herda o
+ * histórico. Depois de uma mescla, as remoções cuja sequência está abaixo da de todos os
+ * documentos restantes já não escondem nada e são descartadas. A reprodução do journal passa
+ * de novo pelo índice; documentos cuja sequência já está indexada são ignorados.</p>
+ */
+public class IndiceMensagens {
+    /** Tipo dos documentos enviados a uma comunidade. */
+    public static final byte MENSAGEM = 0;
+    /** Tipo dos documentos enviados como recado. */
+    public static final byte RECADO = 1;
+
+    private static final int MAGICO = 0x4A4B4255;
+    private static final int MAGICO_SEGMENTO = 0x4A4B5347;
+    private static final short VERSAO = 1;
+    private static final int CABECALHO = 6;
+    private static final Object PARAR = new Object();
+
+    private final File diretorio;
+    private final File arquivoManifesto;
+    private final int lote;
+    private final int fatorMescla;
+    private final LinkedBlockingQueue<Object> fila = new LinkedBlockingQueue<>();
+    private final AtomicLong ultimaSequencia = new AtomicLong();
+    private final Map<String, Long> autoresRemovidos = new ConcurrentHashMap<>();
+    private final Map<String, Long> comunidadesRemovidas = new ConcurrentHashMap<>();
+    private final Map<String, Long> destinatariosRemovidos = new ConcurrentHashMap<>();
+    private volatile long mensagensRemovidasAte;
+    private final Thread thread;
+
+    // guardados por this
+    private volatile List<Segmento> segmentos = new ArrayList<>();
+    private Memoria memoria = new Memoria();
+    private long proximaGeracao = 1;
+    private volatile int epoca;
+    private long mesclas;
+    private String ultimoErro;
+
+    /**
+     * Abre o índice gravado no diretório, se houver, e inicia a thread de indexação.
+     *
+     * @param diretorio O diretório dos segmentos do índice.
+     * @param lote Quantos documentos o segmento em memória junta antes de ser gravado.
+     * @param fatorMescla Quantos segmentos de tamanho parecido são mesclados de uma vez.
+     * @throws IOException Se o manifesto ou algum segmento não puder ser lido.
+     */
+    public IndiceMensagens(File diretorio, int lote, int fatorMescla) throws IOException {
+        this.diretorio = diretorio;
+        this.arquivoManifesto = new File(diretorio, "indice.bin");
+        this.lote = Math.max(1, lote);
+        this.fatorMescla = Math.max(2, fatorMescla);
+        if (arquivoManifesto.exists()) carregar();
+        this.thread = new Thread(this::indexar, "jackut-busca");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Põe uma mensagem de comunidade na fila de indexação.
+     *
+     * @param sequencia A sequência global da mensagem.
+     * @param comunidade A comunidade que recebeu a mensagem.
+     * @param autor O login de quem enviou.
+     * @param texto O texto.
+     */
+    public void indexarMensagem(long sequencia, String comunidade, String autor, String texto) {
+        enfileirar(new Documento(sequencia, MENSAGEM, comunidade, autor, texto));
+    }
+
+    /**
+     * Põe um recado na fila de indexação.
+     *
+     * @param sequencia A sequência global do recado.
+     * @param destinatario O login de quem recebeu.
+     * @param autor O login de quem enviou.
+     * @param texto O texto.
+     */
+    public void indexarRecado(long sequencia, String destinatario, String autor, String texto) {
+        enfileirar(new Documento(sequencia, RECADO, destinatario, autor, texto));
+    }
+
+    private void enfileirar(Documento documento) {
+        ultimaSequencia.accumulateAndGet(documento.sequencia, Math::max);
+        documento.epoca = epoca;
+        fila.add(documento);
+    }
+
+    /**
+     * Recupera a maior sequência já recebida pelo índice, gravada ou não.
+     *
+     * @return A maior sequência, ou 0 se o índice estiver vazio.
+     */
+    public long getUltimaSequencia() {
+        return ultimaSequencia.get();
+    }
+
+    /**
+     * Remove do índice todos os documentos enviados por um usuário até uma sequência.
+     * A sequência vem de quem remove, e não do índice: na reprodução do journal o índice
+     * carregado pode já conter textos posteriores à remoção, de um usuário recriado.
+     *
+     * @param login O login do autor.
+     * @param ate A última sequência atribuída quando o usuário foi removido.
+     */
+    public void removerAutor(String login, long ate) {
+        autoresRemovidos.merge(login, ate, Math::max);
+    }
+
+    /**
+     * Remove do índice todas as mensagens enviadas a uma comunidade até uma sequência.
+     *
+     * @param nome O nome da comunidade.
+     * @param ate A última sequência atribuída quando a comunidade foi removida.
+     */
+    public void removerComunidade(String nome, long ate) {
+        comunidadesRemovidas.merge(nome, ate, Math::max);
+    }
+
+    /**
+     * Remove do índice todos os recados recebidos por um usuário até uma sequência.
+     *
+     * @param login O login do destinatário.
+     * @param ate A última sequência atribuída quando o usuário foi removido.
+     */
+    public void removerRecadosPara(String login, long ate) {
+        destinatariosRemovidos.merge(login, ate, Math::max);
+    }
+
+    /**
+     * Remove do índice todas as mensagens de comunidade enviadas até agora.
+     */
+    public void removerMensagens() {
+        mensagensRemovidasAte = ultimaSequencia.get();
+    }
+
+    /**
+     * Procura os documentos visíveis para um usuário que têm todas as palavras de um termo:
+     * as mensagens das comunidades informadas e os recados recebidos por ele. Documentos
+     * ainda na fila de indexação não aparecem.
+     *
+     * @param termo As palavras procuradas, em qualquer ordem.
+     * @param limite Quantos textos no máximo.
+     * @param login O login de quem procura.
+     * @param entradas As comunidades de que ele participa, cada uma com a sequência da última
+     *                 mensagem enviada antes de ele entrar; só as posteriores são achadas.
+     * @return Os textos, do mais recente para o mais antigo.
+     */
+    public List<String> buscar(String termo, int limite, String login, Map<String, Long> entradas) {
+        List<String> termos = IndiceComunidades.palavras(termo);
+        List<String> textos = new ArrayList<>();
+        if (termos.isEmpty() || limite <= 0) return textos;
+
+        Filtro filtro = new Filtro(login, entradas);
+        List<Achado> achados = new ArrayList<>();
+        List<Segmento> lidos;
+        synchronized (this) {
+            lidos = segmentos;
+            for (Segmento s : lidos) s.reter();
+            memoria.buscar(termos, filtro, achados);
+        }
+        try {
+            for (Segmento s : lidos) s.buscar(termos, limite, filtro, achados);
+            achados.sort((a, b) -> Long.compare(b.sequencia, a.sequencia));
+            for (int i = 0; i < achados.size() && i < limite; i++) {
+                Achado a = achados.get(i);
+                textos.add(a.texto != null ? a.texto : a.segmento.texto(a.documento));
+            }
+        } catch (IOException e) {
+            throw EncodingUtil.createException("Erro ao ler o índice de mensagens.");
+        } finally {
+            for (Segmento s : lidos) s.soltar();
+        }
+        return textos;
+    }
+
+    /**
+     * Pede que tudo o que já foi recebido seja gravado em disco, junto com as remoções. Só
+     * enfileira o pedido; a gravação acontece na thread do índice, depois dos documentos que
+     * estavam na fila.
+     *
+     * @return O pedido, a ser aguardado com {@link #aguardarGravacao(Selo)}.
+     */
+    public Selo selar() {
+        Selo selo = new Selo();
+        if (!thread.isAlive()) {
+            // fechado: tudo o que chegou até o fechamento já foi gravado
+            selo.concluir(null);
+            return selo;
+        }
+        fila.add(selo);
+        return selo;
+    }
+
+    /**
+     * Espera a gravação pedida com {@link #selar()} terminar.
+     *
+     * @param selo O pedido.
+     * @throws IOException Se a gravação falhou.
+     */
+    public void aguardarGravacao(Selo selo) throws IOException {
+        synchronized (selo) {
+            boolean interrompido = false;
+            while (!selo.concluido) {
+                try {
+                    selo.wait();
+                } catch (InterruptedException e) {
+                    interrompido = true;
+                }
+            }
+            if (interrompido) Thread.currentThread().interrupt();
+            if (selo.erro != null) throw selo.erro;
+        }
+    }
+
+    /**
+     * Grava o que estiver pendente e encerra a thread do índice.
+     *
+     * @throws IOException Se a gravação final falhou.
+     */
+    public void fechar() throws IOException {
+        Selo selo = selar();
+        fila.add(PARAR);
+        aguardarGravacao(selo);
+        boolean interrompido = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrompido = true;
+            }
+        }
+        if (interrompido) Thread.currentThread().interrupt();
+        synchronized (this) {
+            for (Segmento s : segmentos) s.soltar();
+            segmentos = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Descarta o índice inteiro, em memória e em disco. Documentos ainda na fila são
+     * ignorados, e pedidos de gravação pendentes são dados por concluídos.
+     */
+    public synchronized void apagar() {
+        epoca++;
+        List<Object> pendentes = new ArrayList<>();
+        fila.drainTo(pendentes);
+        for (Object item : pendentes) {
+            if (item instanceof Selo) ((Selo) item).concluir(null);
+            else if (item == PARAR) fila.add(PARAR);
+        }
+        for (Segmento s : segmentos) s.descartar();
+        segmentos = new ArrayList<>();
+        memoria = new Memoria();
+        proximaGeracao = 1;
+        ultimaSequencia.set(0);
+        autoresRemovidos.clear();
+        comunidadesRemovidas.clear();
+        destinatariosRemovidos.clear();
+        mensagensRemovidasAte = 0;
+        File[] arquivos = diretorio.listFiles();
+        if (arquivos != null) {
+            for (File f : arquivos) f.delete();
+        }
+    }
+
+    /**
+     * Recupera o tamanho do índice e da fila de indexação.
+     *
+     * @return As estatísticas do índice.
+     */
+    public synchronized EstatisticasBusca getEstatisticas() {
+        int total = memoria.documentos.size();
+        for (Segmento s : segmentos) total += s.sequencias.length;
+        return new EstatisticasBusca(total, memoria.documentos.size(), fila.size(), segmentos.size(), mesclas,
+                ultimoErro);
+    }
+
+    /**
+     * Laço da thread {@code jackut-busca}: tira da fila documentos e pedidos de gravação, em
+     * lotes, e grava o segmento em memória quando ele enche.
+     */
+    private void indexar() {
+        List<Object> itens = new ArrayList<>();
+        while (true) {
+            try {
+                itens.add(fila.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            fila.drainTo(itens, 1023);
+            for (Object item : itens) {
+                if (item == PARAR) return;
+                if (item instanceof Selo) {
+                    IOException erro = null;
+                    try {
+                        gravarMemoria();
+                        gravarManifesto();
+                    } catch (IOException | RuntimeException e) {
+                        erro = e instanceof IOException ? (IOException) e : new IOException(e);
+                        registrarErro(e);
+                    }
+                    ((Selo) item).concluir(erro);
+                } else {
+                    incluir((Documento) item);
+                }
+            }
+            itens.clear();
+            if (memoria.documentos.size() >= lote) {
+                try {
+                    gravarMemoria();
+                    gravarManifesto();
+                    mesclar();
+                } catch (IOException | RuntimeException e) {
+                    // os documentos continuam em memória e vão na próxima gravação
+                    registrarErro(e);
+                }
+            }
+        }
+    }
+
+    private synchronized void registrarErro(Exception e) {
+        ultimoErro = e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    private void incluir(Documento documento) {
+        // na reprodução do journal, a maioria das repetições já está num segmento gravado
+        for (Segmento s : segmentos) {
+            if (s.contem(documento.sequencia)) return;
+        }
+        List<String> palavras = IndiceComunidades.palavras(documento.texto);
+        synchronized (this) {
+            if (documento.epoca != epoca || contem(documento.sequencia)) return;
+            memoria.incluir(documento, palavras);
+        }
+    }
+
+    private synchronized boolean contem(long sequencia) {
+        if (memoria.sequencias.contains(sequencia)) return true;
+        for (Segmento s : segmentos) {
+            if (s.contem(sequencia)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Grava o segmento em memória como um segmento novo, com os documentos em ordem de
+     * sequência. Roda só na thread do índice, a única que altera o segmento em memória.
+     */
+    private void gravarMemoria() throws IOException {
+        Memoria m;
+        long geracao;
+        int epocaGravada;
+        synchronized (this) {
+            m = memoria;
+            if (m.documentos.isEmpty()) return;
+            geracao = proximaGeracao++;
+            epocaGravada = epoca;
+        }
+        int n = m.documentos.size();
+        Integer[] ordem = new Integer[n];
+        for (int i = 0; i < n; i++) ordem[i] = i;
+        Arrays.sort(ordem, Comparator.comparingLong(i -> m.documentos.get(i).sequencia));
+        int[] novaPosicao = new int[n];
+        List<Entrada> entradas = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            novaPosicao[ordem[i]] = i;
+            Documento d = m.documentos.get(ordem[i]);
+            entradas.add(new Entrada(d.sequencia, d.tipo, d.escopo, d.autor, d.texto.getBytes(StandardCharsets.UTF_8)));
+        }
+        Map<String, Lista> listas = new HashMap<>(m.listas.size() * 2);
+        for (Map.Entry<String, Lista> e : m.listas.entrySet()) {
+            Lista origem = e.getValue();
+            Lista lista = new Lista(origem.tamanho);
+            for (int i = 0; i < origem.tamanho; i++) lista.adicionar(novaPosicao[origem.valores[i]]);
+            lista.ordenar();
+            listas.put(e.getKey(), lista);
+        }
+
+        Segmento novo = escrever(geracao, entradas, listas);
+        synchronized (this) {
+            if (epoca != epocaGravada) {
+                novo.descartar();
+                return;
+            }
+            List<Segmento> lista = new ArrayList<>(segmentos);
+            lista.add(novo);
+            segmentos = lista;
+            memoria = new Memoria();
+        }
+    }
+
+    /**
+     * Mescla grupos de {@code fatorMescla} segmentos da mesma faixa de tamanho (faixas em
+     * potências do fator, medidas em lotes), até não sobrar faixa cheia.
+     */
+    private void mesclar() throws IOException {
+        while (true) {
+            Map<Integer, List<Segmento>> faixas = new TreeMap<>();
+            for (Segmento s : segmentos) {
+                int faixa = 0;
+                for (long t = s.sequencias.length / lote; t >= fatorMescla; t /= fatorMescla) faixa++;
+                faixas.computeIfAbsent(faixa, f -> new ArrayList<>()).add(s);
+            }
+            List<Segmento> grupo = null;
+            for (List<Segmento> faixa : faixas.values()) {
+                if (faixa.size() >= fatorMescla) {
+                    grupo = faixa.subList(0, fatorMescla);
+                    break;
+                }
+            }
+            if (grupo == null) return;
+            mesclar(grupo);
+        }
+    }
+
+    private void mesclar(List<Segmento> grupo) throws IOException {
+        long geracao;
+        int epocaGravada;
+        synchronized (this) {
+            geracao = proximaGeracao++;
+            epocaGravada = epoca;
+        }
+        List<long[]> vivos = new ArrayList<>();
+        for (int g = 0; g < grupo.size(); g++) {
+            Segmento s = grupo.get(g);
+            for (int d = 0; d < s.sequencias.length; d++) {
+                if (!removido(s.tipos[d], s.escopos[d], s.autores[d], s.sequencias[d])) {
+                    vivos.add(new long[]{s.sequencias[d], g, d});
+                }
+            }
+        }
+        vivos.sort(Comparator.comparingLong(v -> v[0]));
+        int[][] novaPosicao = new int[grupo.size()][];
+        for (int g = 0; g < grupo.size(); g++) {
+            novaPosicao[g] = new int[grupo.get(g).sequencias.length];
+            Arrays.fill(novaPosicao[g], -1);
+        }
+        List<Entrada> entradas = new ArrayList<>(vivos.size());
+        for (long[] v : vivos) {
+            Segmento s = grupo.get((int) v[1]);
+            int d = (int) v[2];
+            novaPosicao[(int) v[1]][d] = entradas.size();
+            entradas.add(new Entrada(s.sequencias[d], s.tipos[d], s.escopos[d], s.autores[d], s.bytesTexto(d)));
+        }
+        Map<String, Lista> listas = new HashMap<>();
+        for (int g = 0; g < grupo.size(); g++) {
+            for (Map.Entry<String, byte[]> e : grupo.get(g).listas.entrySet()) {
+                Lista lista = null;
+                for (int d : decodificar(e.getValue())) {
+                    int nova = novaPosicao[g][d];
+                    if (nova < 0) continue;
+                    if (lista == null) lista = listas.computeIfAbsent(e.getKey(), p -> new Lista(4));
+                    lista.adicionar(nova);
+                }
+            }
+        }
+        for (Lista lista : listas.values()) lista.ordenar();
+
+        Segmento novo = entradas.isEmpty() ? null : escrever(geracao, entradas, listas);
+        synchronized (this) {
+            if (epoca != epocaGravada) {
+                if (novo != null) novo.descartar();
+                return;
+            }
+            List<Segmento> lista = new ArrayList<>(segmentos);
+            lista.removeAll(grupo);
+            if (novo != null) lista.add(novo);
+            segmentos = lista;
+            mesclas++;
+            podarRemocoes();
+        }
+        gravarManifesto();
+        for (Segmento s : grupo) s.descartar();
+    }
+
+    /**
+     * Grava um segmento: os textos, logo depois do cabeçalho, e então os documentos, as
+     * listas de cada palavra e, no fim, a posição em que começam os documentos.
+     */
+    private Segmento escrever(long geracao, List<Entrada> entradas, Map<String, Lista> listas) throws IOException {
+        diretorio.mkdirs();
+        int n = entradas.size();
+        File arquivo = arquivoSegmento(geracao);
+        long[] sequencias = new long[n];
+        byte[] tipos = new byte[n];
+        String[] escopos = new String[n];
+        String[] autores = new String[n];
+        long[] posicoes = new long[n];
+        int[] tamanhos = new int[n];
+        Map<String, byte[]> codificadas = new HashMap<>(listas.size() * 2);
+
+        EventoGravacao evento = EventoGravacao.iniciar();
+        try (FileOutputStream saida = new FileOutputStream(arquivo);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(saida, 1 << 16))) {
+            out.writeInt(MAGICO_SEGMENTO);
+            out.writeShort(VERSAO);
+            long posicao = CABECALHO;
+            for (int i = 0; i < n; i++) {
+                Entrada e = entradas.get(i);
+                out.write(e.texto);
+                sequencias[i] = e.sequencia;
+                tipos[i] = e.tipo;
+                escopos[i] = e.escopo;
+                autores[i] = e.autor;
+                posicoes[i] = posicao;
+                tamanhos[i] = e.texto.length;
+                posicao += e.texto.length;
+            }
+            out.writeInt(n);
+            for (int i = 0; i < n; i++) {
+                out.writeLong(sequencias[i]);
+                out.writeByte(tipos[i]);
+                escreverTexto(out, escopos[i]);
+                escreverTexto(out, autores[i]);
+                out.writeInt(tamanhos[i]);
+            }
+            out.writeInt(listas.size());
+            for (Map.Entry<String, Lista> e : listas.entrySet()) {
+                byte[] lista = codificar(e.getValue());
+                codificadas.put(e.getKey(), lista);
+                escreverTexto(out, e.getKey());
+                out.writeInt(lista.length);
+                out.write(lista);
+            }
+            out.writeLong(posicao);
+            out.flush();
+            long inicioFsync = System.nanoTime();
+            saida.getFD().sync();
+            evento.concluir(arquivo, out.size(), System.nanoTime() - inicioFsync);
+        } catch (IOException e) {
+            arquivo.delete();
+            throw e;
+        }
+        return new Segmento(geracao, arquivo, sequencias, tipos, escopos, autores, posicoes, tamanhos, codificadas);
+    }
+
+    /**
+     * Grava o manifesto com os segmentos atuais e as remoções, num temporário renomeado por
+     * cima do anterior, e apaga os arquivos de segmento que ele não referencia.
+     */
+    private void gravarManifesto() throws IOException {
+        List<Segmento> atuais;
+        long geracao;
+        int epocaGravada;
+        synchronized (this) {
+            atuais = segmentos;
+            geracao = proximaGeracao;
+            epocaGravada = epoca;
+        }
+        diretorio.mkdirs();
+        File temporario = new File(diretorio, "indice.bin.tmp");
+        EventoGravacao evento = EventoGravacao.iniciar();
+        try (FileOutputStream arquivo = new FileOutputStream(temporario);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(arquivo))) {
+            out.writeInt(MAGICO);
+            out.writeShort(VERSAO);
+            out.writeLong(geracao);
+            out.writeInt(atuais.size());
+            for (Segmento s : atuais) out.writeLong(s.geracao);
+            out.writeLong(mensagensRemovidasAte);
+            escreverRemocoes(out, autoresRemovidos);
+            escreverRemocoes(out, comunidadesRemovidas);
+            escreverRemocoes(out, destinatariosRemovidos);
+            out.flush();
+            long inicioFsync = System.nanoTime();
+            arquivo.getFD().sync();
+            evento.concluir(arquivoManifesto, out.size(), System.nanoTime() - inicioFsync);
+        }
+        synchronized (this) {
+            // um apagar() no meio da gravação já limpou o diretório
+            if (epoca != epocaGravada) {
+                temporario.delete();
+                return;
+            }
+            Arquivos.substituir(temporario, arquivoManifesto);
+        }
+    }
+
+    private void carregar() throws IOException {
+        List<Long> geracoes = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivoManifesto)))) {
+            if (in.readInt() != MAGICO || in.readShort() != VERSAO) {
+                throw new IOException("Índice de mensagens inválido: " + arquivoManifesto);
+            }
+            proximaGeracao = in.readLong();
+            int quantidade = in.readInt();
+            for (int i = 0; i < quantidade; i++) geracoes.add(in.readLong());
+            mensagensRemovidasAte = in.readLong();
+            lerRemocoes(in, autoresRemovidos);
+            lerRemocoes(in, comunidadesRemovidas);
+            lerRemocoes(in, destinatariosRemovidos);
+        }
+
+        Set<String> referenciados = new HashSet<>();
+        List<Segmento> abertos = new ArrayList<>();
+        for (long geracao : geracoes) {
+            Segmento s = Segmento.abrir(arquivoSegmento(geracao), geracao);
+            abertos.add(s);
+            referenciados.add(s.arquivo.getName());
+            if (s.sequencias.length > 0) {
+                ultimaSequencia.accumulateAndGet(s.sequencias[s.sequencias.length - 1], Math::max);
+            }
+        }
+        segmentos = abertos;
+        File[] arquivos = diretorio.listFiles((d, nome) -> nome.startsWith("segmento-"));
+        if (arquivos == null) return;
+        for (File f : arquivos) {
+            if (!referenciados.contains(f.getName())) f.delete();
+        }
+    }
+
+    /**
+     * Descarta as remoções que valem só para sequências abaixo do menor documento ainda no
+     * índice, em memória ou na fila. Uma remoção é registrada com todos os documentos que ela
+     * esconde já enfileirados, então só as copiadas antes da varredura são descartadas; uma
+     * registrada ou ampliada durante ela fica para a próxima mescla.
+     */
+    private synchronized void podarRemocoes() {
+        List<Map<String, Long>> remocoes = Arrays.asList(autoresRemovidos, comunidadesRemovidas,
+                destinatariosRemovidos);
+        List<Map<String, Long>> copias = new ArrayList<>();
+        for (Map<String, Long> r : remocoes) copias.add(new HashMap<>(r));
+
+        long menor = Long.MAX_VALUE;
+        for (Segmento s : segmentos) {
+            if (s.sequencias.length > 0) menor = Math.min(menor, s.sequencias[0]);
+        }
+        for (Documento d : memoria.documentos) menor = Math.min(menor, d.sequencia);
+        for (Object item : fila) {
+            if (item instanceof Documento) menor = Math.min(menor, ((Documento) item).sequencia);
+        }
+
+        for (int i = 0; i < remocoes.size(); i++) {
+            for (Map.Entry<String, Long> e : copias.get(i).entrySet()) {
+                if (e.getValue() < menor) remocoes.get(i).remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private boolean removido(byte tipo, String escopo, String autor, long sequencia) {
+        Long ate = autoresRemovidos.get(autor);
+        if (ate != null && sequencia <= ate) return true;
+        if (tipo == MENSAGEM) {
+            if (sequencia <= mensagensRemovidasAte) return true;
+            ate = comunidadesRemovidas.get(escopo);
+        } else {
+            ate = destinatariosRemovidos.get(escopo);
+        }
+        return ate != null && sequencia <= ate;
+    }
+
+    private File arquivoSegmento(long geracao) {
+        return new File(diretorio, "segmento-" + geracao + ".bin");
+    }
+
+    private static void escreverRemocoes(DataOutputStream out, Map<String, Long> remocoes) throws IOException {
+        Map<String, Long> copia = new HashMap<>(remocoes);
+        out.writeInt(copia.size());
+        for (Map.Entry<String, Long> e : copia.entrySet()) {
+            escreverTexto(out, e.getKey());
+            out.writeLong(e.getValue());
+        }
+    }
+
+    private static void lerRemocoes(DataInputStream in, Map<String, Long> remocoes) throws IOException {
+        int quantidade = in.readInt();
+        for (int i = 0; i < quantidade; i++) remocoes.put(lerTexto(in), in.readLong());
+    }
+
+    private static void escreverTexto(DataOutputStream out, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String lerTexto(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Codifica uma lista crescente de números de documento: cada número é a diferença para o
+     * anterior, em grupos de 7 bits, com o bit mais alto ligado nos grupos que não são o último.
+     */
+    static byte[] codificar(Lista lista) {
+        byte[] saida = new byte[lista.tamanho + 8];
+        int n = 0;
+        int anterior = 0;
+        for (int i = 0; i < lista.tamanho; i++) {
+            int diferenca = lista.valores[i] - anterior;
+            anterior = lista.valores[i];
+            if (n + 5 > saida.length) saida = Arrays.copyOf(saida, saida.length * 2);
+            while ((diferenca & ~0x7F) != 0) {
+                saida[n++] = (byte) ((diferenca & 0x7F) | 0x80);
+                diferenca >>>= 7;
+            }
+            saida[n++] = (byte) diferenca;
+        }
+        return Arrays.copyOf(saida, n);
+    }
+
+    static int[] decodificar(byte[] lista) {
+        int quantidade = 0;
+        for (byte b : lista) {
+            if (b >= 0) quantidade++;
+        }
+        int[] valores = new int[quantidade];
+        int atual = 0;
+        int deslocamento = 0;
+        int diferenca = 0;
+        int i = 0;
+        for (byte b : lista) {
+            diferenca |= (b & 0x7F) << deslocamento;
+            if (b < 0) {
+                deslocamento += 7;
+            } else {
+                atual += diferenca;
+                valores[i++] = atual;
+                diferenca = 0;
+                deslocamento = 0;
+            }
+        }
+        return valores;
+    }
+
+    /**
+     * Intersecta listas crescentes, começando pela menor.
+     */
+    private static int[] intersectar(int[][] listas) {
+        Arrays.sort(listas, Comparator.comparingInt(l -> l.length));
+        int[] resultado = listas[0].clone();
+        int n = resultado.length;
+        for (int k = 1; k < listas.length && n > 0; k++) {
+            int[] outra = listas[k];
+            int m = 0;
+            int j = 0;
+            for (int i = 0; i < n && j < outra.length; i++) {
+                int valor = resultado[i];
+                while (j < outra.length && outra[j] < valor) j++;
+                if (j < outra.length && outra[j] == valor) resultado[m++] = valor;
+            }
+            n = m;
+        }
+        return n == resultado.length ? resultado : Arrays.copyOf(resultado, n);
+    }
+
+    /**
+     * Pedido de gravação feito por {@link #selar()}.
+     */
+    public static final class Selo {
+        private boolean concluido;
+        private IOException erro;
+
+        private synchronized void concluir(IOException erro) {
+            this.erro = erro;
+            this.concluido = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Decide se um documento aparece para quem procura: não pode ter sido removido, e tem de
+     * ser um recado para ele ou uma mensagem de uma comunidade dele enviada depois da entrada.
+     */
+    private final class Filtro {
+        private final String login;
+        private final Map<String, Long> entradas;
+
+        private Filtro(String login, Map<String, Long> entradas) {
+            this.login = login;
+            this.entradas = entradas;
+        }
+
+        private boolean aceita(byte tipo, String escopo, String autor, long sequencia) {
+            boolean visivel;
+            if (tipo == MENSAGEM) {
+                Long entrada = entradas.get(escopo);
+                visivel = entrada != null && sequencia > entrada;
+            } else {
+                visivel = login.equals(escopo);
+            }
+            return visivel && !removido(tipo, escopo, autor, sequencia);
+        }
+    }
+
+    /**
+     * Documento recebido e ainda não gravado.
+     */
+    private static final class Documento {
+        final long sequencia;
+        final byte tipo;
+        final String escopo;
+        final String autor;
+        final String texto;
+        int epoca;
+
+        Documento(long sequencia, byte tipo, String escopo, String autor, String texto) {
+            this.sequencia = sequencia;
+            this.tipo = tipo;
+            this.escopo = escopo;
+            this.autor = autor;
+            this.texto = texto == null ? "" : texto;
+        }
+    }
+
+    /**
+     * Documento a gravar num segmento, com o texto já em UTF-8.
+     */
+    private static final class Entrada {
+        final long sequencia;
+        final byte tipo;
+        final String escopo;
+        final String autor;
+        final byte[] texto;
+
+        Entrada(long sequencia, byte tipo, String escopo, String autor, byte[] texto) {
+            this.sequencia = sequencia;
+            this.tipo = tipo;
+            this.escopo = escopo;
+            this.autor = autor;
+            this.texto = texto;
+        }
+    }
+
+    /**
+     * Candidato a resultado de uma busca: o texto, se veio da memória, ou o segmento e o
+     * número do documento, para ler o texto só se ele ficar entre os escolhidos.
+     */
+    private static final class Achado {
+        final long sequencia;
+        final Segmento segmento;
+        final int documento;
+        final String texto;
+
+        Achado(long sequencia, Segmento segmento, int documento, String texto) {
+            this.sequencia = sequencia;
+            this.segmento = segmento;
+            this.documento = documento;
+            this.texto = texto;
+        }
+    }
+
+    /**
+     * Lista crescente de inteiros.
+     */
+    static final class Lista {
+        int[] valores;
+        int tamanho;
+
+        Lista(int capacidade) {
+            valores = new int[Math.max(4, capacidade)];
+        }
+
+        void adicionar(int valor) {
+            if (tamanho == valores.length) valores = Arrays.copyOf(valores, tamanho * 2);
+            valores[tamanho++] = valor;
+        }
+
+        void ordenar() {
+            Arrays.sort(valores, 0, tamanho);
+        }
+
+        int[] paraArray() {
+            return Arrays.copyOf(valores, tamanho);
+        }
+    }
+
+    /**
+     * Segmento em memória: os documentos na ordem de chegada e, para cada palavra, as
+     * posições dos documentos que a usam, em ordem crescente.
+     */
+    private static final class Memoria {
+        final List<Documento> documentos = new ArrayList<>();
+        final Map<String, Lista> listas = new HashMap<>();
+        final Set<Long> sequencias = new HashSet<>();
+
+        void incluir(Documento documento, List<String> palavras) {
+            int posicao = documentos.size();
+            documentos.add(documento);
+            sequencias.add(documento.sequencia);
+            for (String palavra : palavras) listas.computeIfAbsent(palavra, p -> new Lista(4)).adicionar(posicao);
+        }
+
+        void buscar(List<String> termos, Filtro filtro, List<Achado> achados) {
+            int[][] encontradas = new int[termos.size()][];
+            for (int i = 0; i < encontradas.length; i++) {
+                Lista lista = listas.get(termos.get(i));
+                if (lista == null) return;
+                encontradas[i] = lista.paraArray();
+            }
+            for (int posicao : intersectar(encontradas)) {
+                Documento d = documentos.get(posicao);
+                if (filtro.aceita(d.tipo, d.escopo, d.autor, d.sequencia)) {
+                    achados.add(new Achado(d.sequencia, null, 0, d.texto));
+                }
+            }
+        }
+    }
+
+    /**
+     * Segmento gravado. Os metadados e as listas ficam em memória; o arquivo continua aberto
+     * para a leitura dos textos, e só é fechado quando o segmento foi substituído e nenhuma
+     * busca o está lendo.
+     */
+    private static final class Segmento {
+        final long geracao;
+        final File arquivo;
+        final long[] sequencias;
+        final byte[] tipos;
+        final String[] escopos;
+        final String[] autores;
+        final long[] posicoes;
+        final int[] tamanhos;
+        final Map<String, byte[]> listas;
+        private final FileChannel canal;
+        private final AtomicInteger referencias = new AtomicInteger(1);
+
+        Segmento(long geracao, File arquivo, long[] sequencias, byte[] tipos, String[] escopos, String[] autores,
+                 long[] posicoes, int[] tamanhos, Map<String, byte[]> listas) throws IOException {
+            this.geracao = geracao;
+            this.arquivo = arquivo;
+            this.sequencias = sequencias;
+            this.tipos = tipos;
+            this.escopos = escopos;
+            this.autores = autores;
+            this.posicoes = posicoes;
+            this.tamanhos = tamanhos;
+            this.listas = listas;
+            this.canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ);
+        }
+
+        static Segmento abrir(File arquivo, long geracao) throws IOException {
+            long inicio;
+            try (RandomAccessFile raf = new RandomAccessFile(arquivo, "r")) {
+                if (raf.readInt() != MAGICO_SEGMENTO || raf.readShort() != VERSAO) {
+                    throw new IOException("Segmento do índice de mensagens inválido: " + arquivo);
+                }
+                raf.seek(raf.length() - 8);
+                inicio = raf.readLong();
+            }
+            try (FileInputStream entrada = new FileInputStream(arquivo)) {
+                entrada.getChannel().position(inicio);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(entrada, 1 << 16));
+                int n = in.readInt();
+                long[] sequencias = new long[n];
+                byte[] tipos = new byte[n];
+                String[] escopos = new String[n];
+                String[] autores = new String[n];
+                long[] posicoes = new long[n];
+                int[] tamanhos = new int[n];
+                Map<String, String> nomes = new HashMap<>();
+                long posicao = CABECALHO;
+                for (int i = 0; i < n; i++) {
+                    sequencias[i] = in.readLong();
+                    tipos[i] = in.readByte();
+                    escopos[i] = nomes.computeIfAbsent(lerTexto(in), t -> t);
+                    autores[i] = nomes.computeIfAbsent(lerTexto(in), t -> t);
+                    tamanhos[i] = in.readInt();
+                    posicoes[i] = posicao;
+                    posicao += tamanhos[i];
+                }
+                int termos = in.readInt();
+                Map<String, byte[]> listas = new HashMap<>(termos * 2);
+                for (int i = 0; i < termos; i++) {
+                    String palavra = lerTexto(in);
+                    byte[] lista = new byte[in.readInt()];
+                    in.readFully(lista);
+                    listas.put(palavra, lista);
+                }
+                return new Segmento(geracao, arquivo, sequencias, tipos, escopos, autores, posicoes, tamanhos, listas);
+            }
+        }
+
+        boolean contem(long sequencia) {
+            return Arrays.binarySearch(sequencias, sequencia) >= 0;
+        }
+
+        /**
+         * Acrescenta aos achados até {@code limite} documentos aceitos pelo filtro, dos mais
+         * recentes para os mais antigos.
+         */
+        void buscar(List<String> termos, int limite, Filtro filtro, List<Achado> achados) {
+            int[][] encontradas = new int[termos.size()][];
+            for (int i = 0; i < encontradas.length; i++) {
+                byte[] lista = listas.get(termos.get(i));
+                if (lista == null) return;
+                encontradas[i] = decodificar(lista);
+            }
+            int[] documentos = intersectar(encontradas);
+            int aceitos = 0;
+            for (int i = documentos.length - 1; i >= 0 && aceitos < limite; i--) {
+                int d = documentos[i];
+                if (filtro.aceita(tipos[d], escopos[d], autores[d], sequencias[d])) {
+                    achados.add(new Achado(sequencias[d], this, d, null));
+                    aceitos++;
+                }
+            }
+        }
+
+        byte[] bytesTexto(int documento) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(tamanhos[documento]);
+            long posicao = posicoes[documento];
+            while (buffer.hasRemaining()) {
+                int lidos = canal.read(buffer, posicao + buffer.position());
+                if (lidos < 0) throw new EOFException("Segmento truncado: " + arquivo);
+            }
+            return buffer.array();
+        }
+
+        String texto(int documento) throws IOException {
+            return new String(bytesTexto(documento), StandardCharsets.UTF_8);
+        }
+
+        void reter() {
+            referencias.incrementAndGet();
+        }
+
+        void soltar() {
+            if (referencias.decrementAndGet() == 0) {
+                try {
+                    canal.close();
+                } catch (IOException ignored) {
+                    // só leitura; não há o que perder
+                }
+            }
+        }
+
+        /**
+         * Apaga o arquivo de um segmento que saiu do índice. Buscas que já o estavam lendo
+         * continuam, pelo canal aberto.
+         */
+        void descartar() {
+            arquivo.delete();
+            soltar();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido dos atributos de perfil: para cada atributo, um mapa ordenado do valor
+ * normalizado para os IDs dos usuários que têm esse valor.
+ *
+ * <p>Os valores são comparados sem acentos, sem diferença entre maiúsculas e minúsculas e
+ * com os espaços reduzidos ({@link #normalizar(String)}), de forma que "Maceió" e
+ * " maceio " caem na mesma chave. Como o mapa de cada atributo é um {@link TreeMap}, a
+ * busca por prefixo é um intervalo do mapa, e uma busca com limite visita só os valores e
+ * IDs que devolve. O nome do usuário entra no índice como o atributo {@value #NOME}; um
+ * atributo de perfil com esse nome não é indexado, como também não aparece em
+ * {@link Facade#getAtributoUsuario(String, String)}.</p>
+ *
+ * <p>A Facade atualiza o índice a cada edição de perfil e a cada conta criada ou removida,
+ * e o reconstrói na carga. Edições de usuários diferentes podem chegar ao mesmo tempo, então
+ * o índice tem a sua própria trava de leitura e escrita.</p>
+ */
+public class IndicePerfil {
+    /** Nome do atributo sob o qual o nome do usuário é indexado. */
+    public static final String NOME = "nome";
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern ESPACOS = Pattern.compile("\\s+");
+    /** Letra sem acento, em minúscula, de cada caractere de U+00C0 a U+00FF, ou 0 se não houver. */
+    private static final char[] LATIN1 = (
+            "aaaaaa\0ceeeeiiii" + "\0nooooo\0\0uuuuy\0\0"
+            + "aaaaaa\0ceeeeiiii" + "\0nooooo\0\0uuuuy\0y").toCharArray();
+
+    private final Map<String, TreeMap<String, ConjuntoInteiros>> atributos = new HashMap<>();
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+
+    /**
+     * Inclui no índice o nome e todos os atributos de perfil de um usuário.
+     *
+     * @param usuario O usuário.
+     */
+    public void incluirUsuario(Usuario usuario) {
+        trava.writeLock().lock();
+        try {
+            incluir(usuario.getId(), NOME, usuario.getNome());
+            for (Map.Entry<String, String> atributo : usuario.getPerfil().getAtributos().entrySet()) {
+                if (!NOME.equals(atributo.getKey())) incluir(usuario.getId(), atributo.getKey(), atributo.getValue());
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tira do índice o nome e todos os atributos de perfil de um usuário.
+     *
+     * @param usuario O usuário, ainda com o perfil.
+     */
+    public void removerUsuario(Usuario usuario) {
+        trava.writeLock().lock();
+        try {
+            remover(usuario.getId(), NOME, usuario.getNome());
+            for (Map.Entry<String, String> atributo : usuario.getPerfil().getAtributos().entrySet()) {
+                if (!NOME.equals(atributo.getKey())) remover(usuario.getId(), atributo.getKey(), atributo.getValue());
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Troca o valor de um atributo de um usuário no índice.
+     *
+     * @param id O ID do usuário.
+     * @param atributo O atributo.
+     * @param anterior O valor anterior, ou null se o atributo não estava preenchido.
+     * @param novo O valor novo.
+     */
+    public void alterar(int id, String atributo, String anterior, String novo) {
+        if (NOME.equals(atributo)) return;
+        trava.writeLock().lock();
+        try {
+            if (anterior != null) remover(id, atributo, anterior);
+            incluir(id, atributo, novo);
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Procura os usuários com um valor de atributo.
+     *
+     * @param atributo O atributo, como {@code cidade} ou {@value #NOME}.
+     * @param valor O valor procurado; é normalizado como os valores do índice.
+     * @param prefixo true para aceitar os valores que começam com {@code valor}, false para
+     *                exigir o valor inteiro.
+     * @param limite Quantos usuários no máximo.
+     * @return Os IDs dos usuários, em ordem alfabética do valor e, no mesmo valor, na ordem
+     *         em que o receberam.
+     */
+    public int[] buscar(String atributo, String valor, boolean prefixo, int limite) {
+        String chave = normalizar(valor);
+        trava.readLock().lock();
+        try {
+            TreeMap<String, ConjuntoInteiros> valores = atributos.get(atributo);
+            if (valores == null || chave == null) return new int[0];
+            NavigableMap<String, ConjuntoInteiros> faixa = prefixo
+                    ? valores.subMap(chave, true, chave + Character.MAX_VALUE, false)
+                    : valores.subMap(chave, true, chave, true);
+            int[] ids = new int[Math.min(limite, 16)];
+            int n = 0;
+            for (ConjuntoInteiros conjunto : faixa.values()) {
+                if (n == limite) break;
+                if (n + conjunto.tamanho() > ids.length) {
+                    ids = Arrays.copyOf(ids, Math.min(limite, Math.max(ids.length * 2, n + conjunto.tamanho())));
+                }
+                n += conjunto.percorrer(0, limite - n, new Acumulador(ids, n));
+            }
+            return n == ids.length ? ids : Arrays.copyOf(ids, n);
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recupera quantos valores diferentes estão indexados, somando todos os atributos.
+     *
+     * @return O total de chaves do índice.
+     */
+    public int getTamanho() {
+        trava.readLock().lock();
+        try {
+            int total = 0;
+            for (TreeMap<String, ConjuntoInteiros> valores : atributos.values()) total += valores.size();
+            return total;
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /**
+     * Descarta todo o índice.
+     */
+    public void limpar() {
+        trava.writeLock().lock();
+        try {
+            atributos.clear();
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Normaliza um valor para o índice: sem acentos, em minúsculas, sem espaços nas pontas
+     * e com cada sequência de espaços trocada por um só.
+     *
+     * @param valor O valor.
+     * @return O valor normalizado, ou null se {@code valor} for null.
+     */
+    public static String normalizar(String valor) {
+        if (valor == null) return null;
+        StringBuilder sb = null;
+        boolean espaco = false;
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            char saida = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+            if (c >= 0x80) {
+                // letras acentuadas do Latin-1 (as do português) por tabela, o resto pelo Normalizer
+                saida = c >= 0xC0 && c <= 0xFF ? LATIN1[c - 0xC0] : 0;
+                if (saida == 0) return normalizarUnicode(valor);
+            }
+            boolean branco = Character.isWhitespace(c);
+            if (sb == null) {
+                if (saida == c && !branco) continue;
+                sb = new StringBuilder(valor.length());
+                // o trecho anterior não tem espaços nem maiúsculas
+                sb.append(valor, 0, i);
+            }
+            if (branco) {
+                espaco = true;
+                continue;
+            }
+            if (espaco && sb.length() > 0) sb.append(' ');
+            espaco = false;
+            sb.append(saida);
+        }
+        return sb == null ? valor : sb.toString();
+    }
+
+    /**
+     * Caminho lento de {@link #normalizar(String)}, para valores com caracteres fora do
+     * ASCII: decompõe os acentos e os descarta.
+     */
+    private static String normalizarUnicode(String valor) {
+        String semAcentos = MARCAS.matcher(Normalizer.normalize(valor, Normalizer.Form.NFD)).replaceAll("");
+        return ESPACOS.matcher(semAcentos.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    private void incluir(int id, String atributo, String valor) {
+        if (valor == null) return;
+        atributos.computeIfAbsent(atributo, a -> new TreeMap<>())
+                .computeIfAbsent(normalizar(valor), v -> new ConjuntoInteiros())
+                .adicionar(id);
+    }
+
+    private void remover(int id, String atributo, String valor) {
+        TreeMap<String, ConjuntoInteiros> valores = atributos.get(atributo);
+        if (valores == null || valor == null) return;
+        String chave = normalizar(valor);
+        ConjuntoInteiros ids = valores.get(chave);
+        if (ids == null || !ids.remover(id)) return;
+        if (ids.vazio()) valores.remove(chave);
+        if (valores.isEmpty()) atributos.remove(atributo);
+    }
+
+    /**
+     * Copia os IDs percorridos para o array do resultado, a partir de uma posição.
+     */
+    private static final class Acumulador implements IntConsumer {
+        private final int[] destino;
+        private int proxima;
+
+        private Acumulador(int[] destino, int inicio) {
+            this.destino = destino;
+            this.proxima = inicio;
+        }
+
+        @Override
+        public void accept(int id) {
+            destino[proxima++] = id;
+        }
+    }
+}
@@ -0,0 +1,599 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Log de escrita antecipada (write-ahead journal) do sistema Jackut.
+ * Cada mutação da Facade é anexada como um registro compacto, de forma que
+ * o snapshot completo só precisa ser regravado no encerramento do sistema
+ * ou quando o journal ultrapassa o tamanho limite.
+ *
+ * <p>Formato de cada registro: {@code [int tamanho][int crc32][payload]}, em que
+ * o payload contém o LSN, o tipo e os campos em UTF-8 prefixados pelo tamanho.
+ * Um registro incompleto no fim do arquivo (queda durante a escrita) é descartado
+ * na reprodução.</p>
+ *
+ * <p>A durabilidade segue o {@link Modo} escolhido. No modo {@link Modo#GRUPO}, os registros
+ * que chegam dentro da janela configurada (tempo ou quantidade) são gravados e sincronizados
+ * com o disco numa única chamada de {@code fsync}, e cada chamador só retorna de
+ * {@link #aguardar(long)} depois disso.</p>
+ *
+ * <p>Uma falha de escrita ou de {@code fsync}, em qualquer modo, para o journal de vez: o
+ * registro que falhou e os que estavam no mesmo lote não são confirmados, e todo
+ * {@link #anexar(RegistroJournal)} seguinte é recusado, assim como a captura de um snapshot
+ * ({@link #verificar()}). Continuar anexando depois de um trecho que talvez não tenha chegado
+ * ao disco confirmaria registros que a reprodução descarta junto com esse trecho. O estado
+ * volta a ser o do disco quando o sistema é reiniciado, ou quando o journal é apagado.</p>
+ *
+ * <p>Para que o snapshot seja gravado em segundo plano sem bloquear novas mutações, o log
+ * ativo pode ser {@link #rotacionar() rotacionado}: ele é fechado e renomeado para
+ * {@code journal.log.<último LSN>}, e os registros seguintes vão para um log novo. Os logs
+ * rotacionados são apagados por {@link #descartar(long)} quando um snapshot passa a cobri-los.</p>
+ */
+public class Journal {
+    private static final int CABECALHO = 8;
+
+    /**
+     * Política de sincronização do journal com o disco.
+     */
+    public enum Modo {
+        /** Cada registro é gravado e sincronizado na própria thread do chamador. */
+        SINCRONO,
+        /** Registros próximos no tempo são sincronizados juntos; o chamador espera o fsync do lote. */
+        GRUPO,
+        /** Registros são sincronizados em lote, mas o chamador retorna sem esperar. */
+        ASSINCRONO
+    }
+
+    private final File arquivo;
+    private final File arquivoCheckpoint;
+    private final Modo modo;
+    private final long janelaNanos;
+    private final int tamanhoLote;
+    private FileChannel canal;
+    private long ultimoLsn;
+
+    private List<ByteBuffer> pendentes = new ArrayList<>();
+    private long bytesPendentes;
+    private long inicioPendentes;
+    private long lsnDuravel;
+    private boolean emEscrita;
+    private boolean parar;
+    private IOException falha;
+    private Thread gravador;
+
+    /**
+     * Cria o journal sobre o arquivo informado, sincronizando cada registro individualmente.
+     * O arquivo só é aberto na primeira escrita.
+     *
+     * @param arquivo O arquivo de log.
+     */
+    public Journal(File arquivo) {
+        this(arquivo, Modo.SINCRONO, 0, 1);
+    }
+
+    /**
+     * Cria o journal sobre o arquivo informado com a política de durabilidade indicada.
+     *
+     * @param arquivo O arquivo de log.
+     * @param modo A política de sincronização com o disco.
+     * @param janelaMicros Tempo máximo, em microssegundos, que o primeiro registro de um lote
+     *                     espera por outros antes do fsync. Zero agrupa apenas o que chegou
+     *                     enquanto o fsync anterior estava em andamento.
+     * @param tamanhoLote Quantidade de registros que dispara o fsync antes do fim da janela.
+     */
+    public Journal(File arquivo, Modo modo, long janelaMicros, int tamanhoLote) {
+        this.arquivo = arquivo;
+        this.arquivoCheckpoint = new File(arquivo.getParentFile(), arquivo.getName() + ".checkpoint");
+        this.modo = modo;
+        this.janelaNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, janelaMicros));
+        this.tamanhoLote = Math.max(1, tamanhoLote);
+    }
+
+    public Modo getModo() { return modo; }
+
+    /**
+     * Anexa um registro ao log, atribuindo a ele o próximo LSN. No modo síncrono o registro
+     * já está em disco no retorno; nos demais ele entra no próximo lote do gravador.
+     *
+     * @param registro O registro a ser gravado.
+     * @return O LSN atribuído, para uso em {@link #aguardar(long)}.
+     */
+    public synchronized long anexar(RegistroJournal registro) {
+        verificar();
+        registro.setLsn(++ultimoLsn);
+        ByteBuffer buffer = codificar(registro);
+
+        if (modo == Modo.SINCRONO) {
+            EventoGravacao evento = EventoGravacao.iniciar();
+            long inicio = -1;
+            try {
+                FileChannel c = abrir();
+                inicio = c.size();
+                long bytes = buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    c.write(buffer);
+                }
+                long inicioFsync = System.nanoTime();
+                c.force(false);
+                evento.concluir(arquivo, bytes, System.nanoTime() - inicioFsync);
+            } catch (IOException e) {
+                ultimoLsn--;
+                falha = e;
+                descartarParcial(inicio);
+                throw EncodingUtil.createException("Erro ao gravar o journal.");
+            }
+            lsnDuravel = registro.getLsn();
+            return registro.getLsn();
+        }
+
+        if (pendentes.isEmpty()) {
+            inicioPendentes = System.nanoTime();
+        }
+        pendentes.add(buffer);
+        bytesPendentes += buffer.remaining();
+        iniciarGravador();
+        notifyAll();
+        return registro.getLsn();
+    }
+
+    /**
+     * Tenta tirar do log ativo o trecho de um registro cuja escrita falhou, para que ele não
+     * fique entre registros confirmados. Se nem isso der certo, a reprodução o descarta.
+     */
+    private void descartarParcial(long inicio) {
+        if (inicio < 0 || canal == null) return;
+        try {
+            canal.truncate(inicio);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Confirma que o journal ainda aceita registros: depois de uma falha de escrita, nenhuma
+     * mutação pode ser anexada nem um snapshot capturado.
+     *
+     * @throws RuntimeException Se uma escrita ou um {@code fsync} já falhou.
+     */
+    public synchronized void verificar() {
+        if (falha != null) {
+            throw EncodingUtil.createException("Erro ao gravar o journal.");
+        }
+    }
+
+    /**
+     * Bloqueia até que o registro com o LSN informado esteja sincronizado com o disco.
+     * No modo assíncrono retorna imediatamente.
+     *
+     * @param lsn O LSN devolvido por {@link #anexar(RegistroJournal)}.
+     */
+    public synchronized void aguardar(long lsn) {
+        if (modo == Modo.ASSINCRONO) return;
+        sincronizar(lsn);
+    }
+
+    /**
+     * Bloqueia até que o registro com o LSN informado esteja sincronizado com o disco, em
+     * qualquer modo. Usado antes de gravar um snapshot, que não pode conter mutações que o
+     * journal ainda pode perder.
+     *
+     * @param lsn O LSN a esperar.
+     * @throws RuntimeException Se a gravação do journal falhou.
+     */
+    public synchronized void sincronizar(long lsn) {
+        boolean interrompido = false;
+        while (lsnDuravel < lsn && falha == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrompido = true;
+            }
+        }
+        if (interrompido) Thread.currentThread().interrupt();
+        if (lsnDuravel < lsn) {
+            throw EncodingUtil.createException("Erro ao gravar o journal.");
+        }
+    }
+
+    private void iniciarGravador() {
+        parar = false;
+        if (gravador != null) return;
+        gravador = new Thread(this::gravarLotes, "jackut-journal");
+        gravador.setDaemon(true);
+        gravador.start();
+    }
+
+    /**
+     * Laço da thread gravadora: junta os registros pendentes até encher o lote ou
+     * vencer a janela, grava tudo com uma única escrita e sincroniza uma única vez.
+     */
+    private void gravarLotes() {
+        while (true) {
+            List<ByteBuffer> lote;
+            long ate;
+            synchronized (this) {
+                while (pendentes.isEmpty()) {
+                    if (parar) {
+                        gravador = null;
+                        notifyAll();
+                        return;
+                    }
+                    esperar(0);
+                }
+                long prazo = inicioPendentes + janelaNanos;
+                long restante;
+                while (pendentes.size() < tamanhoLote && !parar
+                        && (restante = prazo - System.nanoTime()) > 0) {
+                    esperar(restante);
+                }
+                lote = pendentes;
+                ate = ultimoLsn;
+                pendentes = new ArrayList<>();
+                bytesPendentes = 0;
+                // depois de uma falha nada mais é gravado: um lote posterior confirmado
+                // ficaria depois de um trecho perdido
+                if (falha != null) {
+                    notifyAll();
+                    continue;
+                }
+                emEscrita = true;
+            }
+
+            IOException erro = null;
+            EventoGravacao evento = EventoGravacao.iniciar();
+            try {
+                FileChannel c = abrir();
+                ByteBuffer[] buffers = lote.toArray(new ByteBuffer[0]);
+                long total = 0;
+                for (ByteBuffer b : buffers) total += b.remaining();
+                long bytes = total;
+                while (total > 0) {
+                    total -= c.write(buffers);
+                }
+                long inicioFsync = System.nanoTime();
+                c.force(false);
+                evento.concluir(arquivo, bytes, System.nanoTime() - inicioFsync);
+            } catch (IOException e) {
+                erro = e;
+            }
+
+            synchronized (this) {
+                emEscrita = false;
+                if (erro != null) {
+                    falha = erro;
+                } else {
+                    lsnDuravel = ate;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void esperar(long nanos) {
+        try {
+            if (nanos <= 0) {
+                wait();
+            } else {
+                TimeUnit.NANOSECONDS.timedWait(this, nanos);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * Espera o gravador esvaziar a fila de registros pendentes.
+     */
+    private void esvaziar() {
+        boolean interrompido = false;
+        while ((!pendentes.isEmpty() || emEscrita) && falha == null) {
+            notifyAll();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrompido = true;
+            }
+        }
+        if (interrompido) Thread.currentThread().interrupt();
+        if (falha != null) {
+            throw EncodingUtil.createException("Erro ao gravar o journal.");
+        }
+    }
+
+    /**
+     * Reaplica os registros posteriores ao último checkpoint, em ordem, lendo primeiro os
+     * logs rotacionados e depois o log ativo.
+     * Um registro corrompido ou incompleto no último log lido é tomado como uma escrita
+     * interrompida: encerra a leitura e é removido do arquivo. Em qualquer outro log ele
+     * deixaria um buraco antes de registros posteriores, então a reprodução falha.
+     *
+     * @param lsnSnapshot O LSN já incorporado ao snapshot carregado; registros até ele são
+     *                    ignorados mesmo que o checkpoint do journal seja mais antigo.
+     * @param consumidor Quem aplica cada registro ao estado em memória.
+     * @return A quantidade de registros reaplicados.
+     */
+    public synchronized int reproduzir(long lsnSnapshot, Consumer<RegistroJournal> consumidor) {
+        EventoCarga evento = EventoCarga.iniciar(arquivo.getName());
+        long checkpoint = Math.max(lerCheckpoint(), lsnSnapshot);
+        ultimoLsn = Math.max(ultimoLsn, checkpoint);
+
+        List<File> logs = rotacionados();
+        if (arquivo.exists()) logs.add(arquivo);
+        int aplicados = 0;
+        long bytes = 0;
+        for (int i = 0; i < logs.size(); i++) {
+            bytes += logs.get(i).length();
+            aplicados += reproduzir(logs.get(i), checkpoint, consumidor, i == logs.size() - 1);
+        }
+        lsnDuravel = ultimoLsn;
+        evento.concluir(aplicados, bytes);
+        return aplicados;
+    }
+
+    private int reproduzir(File arquivo, long checkpoint, Consumer<RegistroJournal> consumidor,
+                           boolean ultimo) {
+        int aplicados = 0;
+        long posicaoValida = 0;
+        long comprimento = arquivo.length();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(arquivo)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int tamanho;
+                try {
+                    tamanho = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int esperado = in.readInt();
+                // um tamanho maior que o resto do arquivo só pode vir de um cabeçalho corrompido
+                if (tamanho <= 0 || tamanho > comprimento - posicaoValida - CABECALHO) break;
+                byte[] payload = new byte[tamanho];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != esperado) break;
+
+                RegistroJournal registro = decodificar(payload);
+                posicaoValida += CABECALHO + tamanho;
+                ultimoLsn = Math.max(ultimoLsn, registro.getLsn());
+                if (registro.getLsn() > checkpoint) {
+                    consumidor.accept(registro);
+                    aplicados++;
+                }
+            }
+        } catch (EOFException e) {
+            // registro incompleto no fim do arquivo: descartado abaixo
+        } catch (IOException e) {
+            throw EncodingUtil.createException("Erro ao ler o journal.");
+        }
+
+        if (posicaoValida < comprimento) {
+            if (!ultimo) {
+                throw EncodingUtil.createException("Erro ao ler o journal.");
+            }
+            try (FileChannel c = FileChannel.open(arquivo.toPath(), StandardOpenOption.WRITE)) {
+                c.truncate(posicaoValida);
+            } catch (IOException e) {
+                throw EncodingUtil.createException("Erro ao ler o journal.");
+            }
+        }
+        return aplicados;
+    }
+
+    /**
+     * Fecha o log ativo e o renomeia para {@code journal.log.<último LSN gravado>}; os
+     * próximos registros vão para um log novo. Espera apenas o lote em gravação terminar,
+     * e não que a fila de pendentes esvazie, para não disputar com quem continua anexando.
+     *
+     * @return O maior LSN contido no log rotacionado, ou 0 se o log ativo estava vazio.
+     */
+    public synchronized long rotacionar() {
+        long alvo = ultimoLsn;
+        boolean interrompido = false;
+        while ((lsnDuravel < alvo || emEscrita) && falha == null && modo != Modo.SINCRONO) {
+            notifyAll();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrompido = true;
+            }
+        }
+        if (interrompido) Thread.currentThread().interrupt();
+        if (falha != null) {
+            throw EncodingUtil.createException("Erro ao gravar o journal.");
+        }
+
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException ignored) {
+            }
+            canal = null;
+        }
+        if (!arquivo.exists() || arquivo.length() == 0) return 0;
+        File destino = new File(arquivo.getParentFile(), arquivo.getName() + "." + lsnDuravel);
+        if (!arquivo.renameTo(destino)) {
+            throw EncodingUtil.createException("Erro ao gravar o journal.");
+        }
+        return lsnDuravel;
+    }
+
+    /**
+     * Registra que o snapshot já incorpora todos os registros até o LSN informado e
+     * apaga os logs rotacionados que ele cobre por inteiro.
+     *
+     * @param lsn O LSN gravado no snapshot.
+     */
+    public synchronized void descartar(long lsn) {
+        gravarCheckpoint(Math.max(lsn, lerCheckpoint()));
+        for (File rotacionado : rotacionados()) {
+            if (lsnFinal(rotacionado) <= lsn) {
+                rotacionado.delete();
+            }
+        }
+    }
+
+    /**
+     * Lista os logs rotacionados em ordem crescente de LSN.
+     */
+    private List<File> rotacionados() {
+        String prefixo = arquivo.getName() + ".";
+        File[] arquivos = arquivo.getAbsoluteFile().getParentFile().listFiles((d, nome) ->
+                nome.startsWith(prefixo) && nome.substring(prefixo.length()).matches("\\d+"));
+        if (arquivos == null) return new ArrayList<>();
+        List<File> lista = new ArrayList<>(Arrays.asList(arquivos));
+        lista.sort((a, b) -> Long.compare(lsnFinal(a), lsnFinal(b)));
+        return lista;
+    }
+
+    private long lsnFinal(File rotacionado) {
+        return Long.parseLong(rotacionado.getName().substring(arquivo.getName().length() + 1));
+    }
+
+    /**
+     * Recupera o tamanho atual do log ativo em bytes.
+     *
+     * @return O tamanho do arquivo de log.
+     */
+    public synchronized long tamanho() {
+        try {
+            return bytesPendentes + (canal != null ? canal.size() : arquivo.length());
+        } catch (IOException e) {
+            return bytesPendentes + arquivo.length();
+        }
+    }
+
+    public synchronized long getUltimoLsn() { return ultimoLsn; }
+
+    /**
+     * Grava os registros pendentes, encerra a thread gravadora e fecha o arquivo de log.
+     * Uma nova escrita o reabre automaticamente.
+     */
+    public synchronized void fechar() {
+        try {
+            esvaziar();
+        } finally {
+            parar = true;
+            notifyAll();
+            if (canal != null) {
+                try {
+                    canal.close();
+                } catch (IOException ignored) {
+                }
+                canal = null;
+            }
+        }
+    }
+
+    /**
+     * Fecha e apaga o log, os logs rotacionados e o checkpoint, reiniciando a numeração.
+     */
+    public synchronized void apagar() {
+        pendentes = new ArrayList<>();
+        bytesPendentes = 0;
+        falha = null;
+        fechar();
+        for (File rotacionado : rotacionados()) {
+            rotacionado.delete();
+        }
+        arquivo.delete();
+        arquivoCheckpoint.delete();
+        ultimoLsn = 0;
+        lsnDuravel = 0;
+    }
+
+    private synchronized FileChannel abrir() throws IOException {
+        if (canal == null) {
+            arquivo.getParentFile().mkdirs();
+            canal = FileChannel.open(arquivo.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return canal;
+    }
+
+    private long lerCheckpoint() {
+        if (!arquivoCheckpoint.exists()) return 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(arquivoCheckpoint))) {
+            String linha = reader.readLine();
+            return linha == null ? 0 : Long.parseLong(linha.trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Grava o checkpoint num temporário sincronizado e o renomeia sobre o anterior, para que
+     * uma queda no meio nunca deixe um checkpoint vazio ou parcial.
+     */
+    private void gravarCheckpoint(long lsn) {
+        File temporario = new File(arquivoCheckpoint.getParentFile(),
+                arquivoCheckpoint.getName() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(temporario)) {
+                out.write(Long.toString(lsn).getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            }
+            Arquivos.substituir(temporario, arquivoCheckpoint);
+        } catch (IOException e) {
+            throw EncodingUtil.createException("Erro ao gravar o journal.");
+        }
+    }
+
+    static ByteBuffer codificar(RegistroJournal registro) {
+        String[] campos = registro.getCampos();
+        byte[][] bytes = new byte[campos.length][];
+        int tamanho = 8 + 1 + 2;
+        for (int i = 0; i < campos.length; i++) {
+            bytes[i] = campos[i] == null ? null : campos[i].getBytes(StandardCharsets.UTF_8);
+            tamanho += 4 + (bytes[i] == null ? 0 : bytes[i].length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(CABECALHO + tamanho);
+        buffer.position(CABECALHO);
+        buffer.putLong(registro.getLsn());
+        buffer.put((byte) registro.getTipo().ordinal());
+        buffer.putShort((short) campos.length);
+        for (byte[] b : bytes) {
+            if (b == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(b.length);
+                buffer.put(b);
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), CABECALHO, tamanho);
+        buffer.putInt(0, tamanho);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    static RegistroJournal decodificar(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        long lsn = buffer.getLong();
+        RegistroJournal.Tipo tipo = RegistroJournal.Tipo.values()[buffer.get()];
+        String[] campos = new String[buffer.getShort()];
+        for (int i = 0; i < campos.length; i++) {
+            int tamanho = buffer.getInt();
+            if (tamanho >= 0) {
+                campos[i] = new String(payload, buffer.position(), tamanho, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + tamanho);
+            }
+        }
+        RegistroJournal registro = new RegistroJournal(tipo, campos);
+        registro.setLsn(lsn);
+        return registro;
+    }
+}
@@ -0,0 +1,82 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Montagem das listagens no formato {@code {a,b,c}} a partir dos IDs de um
+ * {@link ConjuntoInteiros}: a listagem completa, uma página dela e a escrita direta num
+ * {@link Writer}.
+ *
+ * <p>As páginas usam como cursor o último nome da página anterior (paginação por chave):
+ * a página seguinte começa logo depois dele na ordem do conjunto, mesmo que outros
+ * elementos, inclusive o do cursor, tenham sido incluídos ou removidos no meio tempo. Ela
+ * custa O(tamanho da página), mais as lacunas de remoções ainda não compactadas, sem
+ * percorrer o que já foi listado.</p>
+ */
+public class Listagem {
+
+    private Listagem() {
+    }
+
+    /**
+     * Monta a listagem completa de um conjunto.
+     *
+     * @param ids O conjunto.
+     * @param dicionario O dicionário que traduz os IDs.
+     * @return O texto {@code {a,b,c}}, na ordem do conjunto.
+     */
+    public static String montar(ConjuntoInteiros ids, Dicionario dicionario) {
+        StringBuilder sb = new StringBuilder(2 + 12 * ids.tamanho());
+        sb.append('{');
+        ids.paraCada(id -> {
+            if (sb.length() > 1) sb.append(',');
+            sb.append(dicionario.nome(id));
+        });
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Monta uma página da listagem de um conjunto.
+     *
+     * @param ids O conjunto.
+     * @param dicionario O dicionário que traduz os IDs.
+     * @param cursor O último nome da página anterior, ou null (ou vazio) para a primeira.
+     * @param limite Quantos nomes no máximo; deve ser positivo.
+     * @return O texto {@code {a,b,c}} da página, ou {@code {}} depois da última, ou null se
+     *         o cursor nunca esteve no conjunto.
+     */
+    public static String pagina(ConjuntoInteiros ids, Dicionario dicionario, String cursor, int limite) {
+        int inicio = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            if (ids.vazio()) return "{}";
+            inicio = ids.posicaoApos(dicionario.buscar(cursor));
+            if (inicio < 0) return null;
+        }
+        StringBuilder sb = new StringBuilder(2 + 12 * Math.min(limite, ids.tamanho()));
+        sb.append('{');
+        ids.percorrer(inicio, limite, id -> {
+            if (sb.length() > 1) sb.append(',');
+            sb.append(dicionario.nome(id));
+        });
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Escreve a listagem de IDs no formato {@code {a,b,c}}, nome a nome, sem montar o texto
+     * inteiro em memória.
+     *
+     * @param ids Os IDs, na ordem da listagem.
+     * @param dicionario O dicionário que traduz os IDs.
+     * @param saida Onde escrever; não é fechado nem esvaziado.
+     * @throws IOException Se a escrita falhar.
+     */
+    public static void escrever(int[] ids, Dicionario dicionario, Writer saida) throws IOException {
+        saida.write('{');
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) saida.write(',');
+            saida.write(dicionario.nome(ids[i]));
+        }
+        saida.write('}');
+    }
+}
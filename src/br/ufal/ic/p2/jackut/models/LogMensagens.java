@@ -0,0 +1,170 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Log de mensagens de uma comunidade, só de acréscimo.
+ *
+ * <p>Cada mensagem recebe um número de sequência global, crescente entre todas as
+ * comunidades, e é guardada uma única vez, em vez de ser copiada para a fila de cada
+ * membro. Cada membro guarda apenas um cursor: a sequência da última mensagem que leu.
+ * A próxima mensagem de um membro é achada por busca binária a partir do cursor, e as
+ * mensagens que todos os membros já leram podem ser descartadas com
+ * {@link #descartarAte(long)}.</p>
+ *
+ * <p>Os métodos são sincronizados: o log recebe mensagens com a trava da comunidade e é
+ * lido pelos membros com a trava de cada um.</p>
+ */
+public class LogMensagens implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Mensagem> mensagens = new ArrayList<>();
+    private final Map<String, Integer> porAutor = new HashMap<>();
+
+    /**
+     * Acrescenta uma mensagem ao fim do log.
+     *
+     * @param sequencia A sequência global da mensagem; deve ser maior que a da última.
+     * @param autor O login de quem enviou.
+     * @param texto O texto da mensagem.
+     */
+    public synchronized void anexar(long sequencia, String autor, String texto) {
+        mensagens.add(new Mensagem(sequencia, autor, texto));
+        porAutor.merge(autor, 1, Integer::sum);
+    }
+
+    /**
+     * Recupera a primeira mensagem posterior a um cursor.
+     *
+     * @param cursor A sequência da última mensagem lida.
+     * @return A mensagem seguinte, ou null se o membro já leu todas.
+     */
+    public synchronized Mensagem proxima(long cursor) {
+        int inicio = 0;
+        int fim = mensagens.size();
+        while (inicio < fim) {
+            int meio = (inicio + fim) >>> 1;
+            if (mensagens.get(meio).sequencia <= cursor) {
+                inicio = meio + 1;
+            } else {
+                fim = meio;
+            }
+        }
+        return inicio < mensagens.size() ? mensagens.get(inicio) : null;
+    }
+
+    /**
+     * Recupera a sequência da última mensagem do log, que vira o cursor de quem entra na
+     * comunidade: o novo membro só recebe as mensagens enviadas depois disso.
+     *
+     * @return A última sequência, ou 0 se o log estiver vazio.
+     */
+    public synchronized long getUltimaSequencia() {
+        return mensagens.isEmpty() ? 0 : mensagens.get(mensagens.size() - 1).sequencia;
+    }
+
+    /**
+     * Descarta as mensagens com sequência até o cursor informado, que já foram lidas por
+     * todos os membros.
+     *
+     * @param cursor O menor cursor entre os membros.
+     * @return Quantas mensagens foram descartadas.
+     */
+    public synchronized int descartarAte(long cursor) {
+        int n = 0;
+        while (n < mensagens.size() && mensagens.get(n).sequencia <= cursor) {
+            porAutor.computeIfPresent(mensagens.get(n).autor, (a, total) -> total == 1 ? null : total - 1);
+            n++;
+        }
+        mensagens.subList(0, n).clear();
+        return n;
+    }
+
+    /**
+     * Verifica se o log tem alguma mensagem enviada pelo usuário.
+     *
+     * @param autor O login do usuário.
+     * @return true se houver ao menos uma mensagem dele.
+     */
+    public synchronized boolean contemAutor(String autor) {
+        return porAutor.containsKey(autor);
+    }
+
+    /**
+     * Remove todas as mensagens enviadas por um usuário.
+     *
+     * @param autor O login do usuário.
+     * @return true se alguma mensagem foi removida.
+     */
+    public synchronized boolean removerDoAutor(String autor) {
+        if (porAutor.remove(autor) == null) return false;
+        return mensagens.removeIf(m -> m.autor.equals(autor));
+    }
+
+    /**
+     * Recupera os logins de quem tem mensagens no log.
+     *
+     * @return Uma cópia dos autores.
+     */
+    public synchronized Set<String> getAutores() {
+        return new HashSet<>(porAutor.keySet());
+    }
+
+    public synchronized int getTamanho() { return mensagens.size(); }
+
+    public synchronized boolean isVazio() { return mensagens.isEmpty(); }
+
+    /**
+     * Recupera uma cópia das mensagens, em ordem de envio.
+     *
+     * @return As mensagens do log.
+     */
+    public synchronized List<Mensagem> getMensagens() {
+        return new ArrayList<>(mensagens);
+    }
+
+    /**
+     * Acrescenta ao fim deste log todas as mensagens de outro, usado para copiar o log de
+     * uma comunidade. As mensagens são imutáveis e são compartilhadas entre os dois.
+     *
+     * @param origem O log copiado.
+     */
+    public void anexarTodas(LogMensagens origem) {
+        List<Mensagem> copiadas = origem.getMensagens();
+        synchronized (this) {
+            for (Mensagem m : copiadas) {
+                mensagens.add(m);
+                porAutor.merge(m.autor, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Uma mensagem enviada a uma comunidade.
+     */
+    public static class Mensagem implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long sequencia;
+        private final String autor;
+        private final String texto;
+
+        public Mensagem(long sequencia, String autor, String texto) {
+            this.sequencia = sequencia;
+            this.autor = autor;
+            this.texto = texto;
+        }
+
+        public long getSequencia() { return sequencia; }
+
+        public String getAutor() { return autor; }
+
+        public String getTexto() { return texto; }
+    }
+}
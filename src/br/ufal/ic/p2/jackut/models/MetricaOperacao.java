@@ -0,0 +1,85 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latências e erros de uma operação pública da Facade.
+ *
+ * <p>Os erros são agrupados pelo tipo: a mensagem da exceção até o primeiro {@code ':'},
+ * para que mensagens com nomes de usuário, como {@code "Função inválida: fulano é seu
+ * inimigo."}, não criem um contador por usuário.</p>
+ */
+public class MetricaOperacao implements MetricaOperacaoMXBean {
+    private final String nome;
+    private final Histograma latencias = new Histograma();
+    private final Map<String, LongAdder> erros = new ConcurrentHashMap<>();
+
+    public MetricaOperacao(String nome) {
+        this.nome = nome;
+    }
+
+    public String getNome() { return nome; }
+
+    public Histograma getLatencias() { return latencias; }
+
+    /**
+     * Registra uma chamada.
+     *
+     * @param nanos A duração da chamada.
+     * @param erro A exceção que a chamada lançou, ou null se ela terminou normalmente.
+     */
+    public void registrar(long nanos, Throwable erro) {
+        latencias.registrar(nanos);
+        if (erro != null) erros.computeIfAbsent(tipo(erro), t -> new LongAdder()).increment();
+    }
+
+    private static String tipo(Throwable erro) {
+        String mensagem = erro.getMessage();
+        if (mensagem == null) return erro.getClass().getSimpleName();
+        int doisPontos = mensagem.indexOf(':');
+        return doisPontos > 0 ? mensagem.substring(0, doisPontos) : mensagem;
+    }
+
+    @Override
+    public long getChamadas() { return latencias.getContagem(); }
+
+    @Override
+    public long getErros() {
+        long total = 0;
+        for (LongAdder n : erros.values()) total += n.sum();
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getErrosPorTipo() {
+        Map<String, Long> copia = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : erros.entrySet()) copia.put(e.getKey(), e.getValue().sum());
+        return copia;
+    }
+
+    @Override
+    public double getMediaMicros() { return latencias.getMedia() / 1e3; }
+
+    @Override
+    public double getP50Micros() { return latencias.percentil(0.50) / 1e3; }
+
+    @Override
+    public double getP99Micros() { return latencias.percentil(0.99) / 1e3; }
+
+    @Override
+    public double getP999Micros() { return latencias.percentil(0.999) / 1e3; }
+
+    @Override
+    public double getMaximoMicros() { return latencias.getMaximo() / 1e3; }
+
+    /**
+     * Descarta as chamadas e os erros registrados.
+     */
+    public void zerar() {
+        latencias.zerar();
+        erros.clear();
+    }
+}
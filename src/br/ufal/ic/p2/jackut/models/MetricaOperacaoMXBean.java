@@ -0,0 +1,25 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Map;
+
+/**
+ * Atributos JMX de uma operação da Facade, publicados por {@link Metricas} como
+ * {@code br.ufal.ic.p2.jackut:type=Operacao,instancia=<n>,nome=<operação>}.
+ */
+public interface MetricaOperacaoMXBean {
+    long getChamadas();
+
+    long getErros();
+
+    Map<String, Long> getErrosPorTipo();
+
+    double getMediaMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaximoMicros();
+}
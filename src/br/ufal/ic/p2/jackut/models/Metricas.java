@@ -0,0 +1,226 @@
+package br.ufal.ic.p2.jackut.models;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro das métricas de uma {@link FacadeInstrumentada}: a latência e os erros de cada
+ * operação pública, distribuições de valores como o alcance de uma mensagem, e medidores
+ * calculados na hora da leitura, como o número de usuários.
+ *
+ * <p>Tudo é publicado por JMX, no domínio {@code br.ufal.ic.p2.jackut}, e, a cada
+ * {@code intervaloMs}, gravado como texto num arquivo (um temporário renomeado sobre o
+ * destino), pela thread {@code jackut-metricas}. Cada instância recebe um número próprio
+ * nos nomes JMX, para que várias Facades na mesma JVM não colidam. Falhas de JMX ou de
+ * gravação não chegam às operações; a última fica em {@link #getUltimoErro()}.</p>
+ */
+public class Metricas implements MetricasMXBean {
+    private static final String DOMINIO = "br.ufal.ic.p2.jackut";
+    private static final AtomicInteger INSTANCIAS = new AtomicInteger();
+
+    private final int instancia = INSTANCIAS.incrementAndGet();
+    private final File arquivo;
+    private final long intervaloMs;
+    private final Map<String, MetricaOperacao> operacoes = new ConcurrentHashMap<>();
+    private final Map<String, Histograma> distribuicoes = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> medidores = Collections.synchronizedMap(new LinkedHashMap<>());
+    private final List<ObjectName> registrados = Collections.synchronizedList(new ArrayList<>());
+    private final MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+
+    private Thread thread;
+    private volatile boolean fechadas;
+    private volatile String ultimoErro;
+
+    /**
+     * Cria o registro, já publicado por JMX.
+     *
+     * @param arquivo O arquivo do relatório periódico, ou null para não gravar.
+     * @param intervaloMs O intervalo entre as gravações; zero desliga o relatório periódico.
+     */
+    public Metricas(File arquivo, long intervaloMs) {
+        this.arquivo = arquivo;
+        this.intervaloMs = intervaloMs;
+        registrar(this, "type=Metricas,instancia=" + instancia);
+        if (arquivo != null && intervaloMs > 0) {
+            thread = new Thread(this::gravarPeriodicamente, "jackut-metricas");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Inclui um medidor, lido a cada relatório e a cada consulta JMX.
+     *
+     * @param nome O nome do medidor.
+     * @param valor Calcula o valor atual.
+     */
+    public void medidor(String nome, LongSupplier valor) {
+        medidores.put(nome, valor);
+    }
+
+    /**
+     * Recupera as métricas de uma operação, criando-as e publicando-as na primeira vez.
+     *
+     * @param nome O nome da operação.
+     * @return As métricas da operação.
+     */
+    public MetricaOperacao operacao(String nome) {
+        MetricaOperacao metrica = operacoes.get(nome);
+        if (metrica != null) return metrica;
+        return operacoes.computeIfAbsent(nome, n -> {
+            MetricaOperacao nova = new MetricaOperacao(n);
+            registrar(nova, "type=Operacao,instancia=" + instancia + ",nome=" + n);
+            return nova;
+        });
+    }
+
+    /**
+     * Registra um valor numa distribuição, criada na primeira vez.
+     *
+     * @param nome O nome da distribuição, como {@code enviarMensagem.membros}.
+     * @param valor O valor.
+     */
+    public void distribuicao(String nome, long valor) {
+        Histograma h = distribuicoes.get(nome);
+        if (h == null) h = distribuicoes.computeIfAbsent(nome, n -> new Histograma());
+        h.registrar(valor);
+    }
+
+    private void registrar(Object mbean, String chaves) {
+        try {
+            ObjectName nome = new ObjectName(DOMINIO + ":" + chaves);
+            servidor.registerMBean(mbean, nome);
+            registrados.add(nome);
+        } catch (JMException e) {
+            ultimoErro = e.toString();
+        }
+    }
+
+    private void gravarPeriodicamente() {
+        while (!fechadas) {
+            synchronized (this) {
+                try {
+                    wait(intervaloMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if (fechadas) return;
+            gravar();
+        }
+    }
+
+    /**
+     * Grava o relatório no arquivo, se houver um.
+     */
+    public void gravar() {
+        if (arquivo == null) return;
+        File temporario = new File(arquivo.getParentFile(), arquivo.getName() + ".tmp");
+        try {
+            Files.write(temporario.toPath(), getResumo().getBytes(StandardCharsets.UTF_8));
+            Files.move(temporario.toPath(), arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            ultimoErro = e.toString();
+        }
+    }
+
+    /**
+     * Para o relatório periódico, grava o relatório uma última vez e retira as métricas do
+     * JMX. As operações continuam sendo registradas, mas só ficam visíveis por
+     * {@link #getResumo()}.
+     */
+    public void fechar() {
+        if (fechadas) return;
+        fechadas = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        gravar();
+        synchronized (registrados) {
+            for (ObjectName nome : registrados) {
+                try {
+                    servidor.unregisterMBean(nome);
+                } catch (JMException e) {
+                    ultimoErro = e.toString();
+                }
+            }
+            registrados.clear();
+        }
+    }
+
+    public int getInstancia() { return instancia; }
+
+    public String getUltimoErro() { return ultimoErro; }
+
+    @Override
+    public Map<String, Long> getMedidores() {
+        Map<String, Long> valores = new LinkedHashMap<>();
+        synchronized (medidores) {
+            for (Map.Entry<String, LongSupplier> m : medidores.entrySet()) {
+                valores.put(m.getKey(), m.getValue().getAsLong());
+            }
+        }
+        return valores;
+    }
+
+    @Override
+    public Map<String, String> getDistribuicoes() {
+        Map<String, String> resumos = new TreeMap<>();
+        for (Map.Entry<String, Histograma> d : distribuicoes.entrySet()) {
+            Histograma h = d.getValue();
+            resumos.put(d.getKey(), String.format("n=%d media=%.1f p50=%d p99=%d p999=%d max=%d", h.getContagem(),
+                    h.getMedia(), h.percentil(0.50), h.percentil(0.99), h.percentil(0.999), h.getMaximo()));
+        }
+        return resumos;
+    }
+
+    @Override
+    public String getResumo() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("# metricas da Facade %d em %tFT%<tT%n", instancia, System.currentTimeMillis()));
+        for (Map.Entry<String, Long> m : getMedidores().entrySet()) {
+            sb.append(String.format("%-32s %d%n", m.getKey(), m.getValue()));
+        }
+
+        sb.append(String.format("%n%-32s %10s %8s %10s %10s %10s %10s %10s%n", "operacao", "chamadas", "erros",
+                "media us", "p50 us", "p99 us", "p999 us", "max us"));
+        for (MetricaOperacao o : new TreeMap<>(operacoes).values()) {
+            sb.append(String.format("%-32s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n", o.getNome(),
+                    o.getChamadas(), o.getErros(), o.getMediaMicros(), o.getP50Micros(), o.getP99Micros(),
+                    o.getP999Micros(), o.getMaximoMicros()));
+            for (Map.Entry<String, Long> e : o.getErrosPorTipo().entrySet()) {
+                sb.append(String.format("    erro %-40s %d%n", e.getKey(), e.getValue()));
+            }
+        }
+
+        Map<String, String> resumos = getDistribuicoes();
+        if (!resumos.isEmpty()) sb.append(String.format("%n"));
+        for (Map.Entry<String, String> d : resumos.entrySet()) {
+            sb.append(String.format("%-32s %s%n", d.getKey(), d.getValue()));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void zerar() {
+        for (MetricaOperacao o : operacoes.values()) o.zerar();
+        for (Histograma h : distribuicoes.values()) h.zerar();
+    }
+}
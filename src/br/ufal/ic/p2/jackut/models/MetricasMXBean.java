@@ -0,0 +1,36 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Map;
+
+/**
+ * Atributos JMX gerais de uma Facade instrumentada, publicados por {@link Metricas} como
+ * {@code br.ufal.ic.p2.jackut:type=Metricas,instancia=<n>}.
+ */
+public interface MetricasMXBean {
+    /**
+     * Recupera os medidores, como o número de usuários ou de recados na fila.
+     *
+     * @return O valor atual de cada medidor.
+     */
+    Map<String, Long> getMedidores();
+
+    /**
+     * Recupera as distribuições registradas, como o número de membros alcançados por
+     * {@code enviarMensagem}.
+     *
+     * @return Um resumo (contagem, média e percentis) de cada distribuição.
+     */
+    Map<String, String> getDistribuicoes();
+
+    /**
+     * Recupera o mesmo texto gravado periodicamente em {@code metricas.txt}.
+     *
+     * @return O relatório de todas as métricas.
+     */
+    String getResumo();
+
+    /**
+     * Descarta as chamadas, erros e distribuições registrados até agora.
+     */
+    void zerar();
+}
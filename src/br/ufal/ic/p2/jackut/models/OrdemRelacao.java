@@ -0,0 +1,39 @@
+package br.ufal.ic.p2.jackut.models;
+
+/**
+ * Ordem em que os elementos de um relacionamento são listados.
+ *
+ * <p>A ordem é mantida pelo próprio conjunto a cada inclusão e remoção
+ * ({@link ConjuntoInteiros}), de forma que listar um relacionamento é só percorrer o
+ * conjunto, sem ordenar. Cada relacionamento tem a sua ordem padrão, que pode ser trocada
+ * pela propriedade de sistema {@code jackut.ordem.<relacionamento>} (por exemplo
+ * {@code -Djackut.ordem.amigos=ALFABETICA}).</p>
+ */
+public enum OrdemRelacao {
+    /** Na ordem em que os elementos foram incluídos; incluir custa O(1). */
+    INCLUSAO,
+    /** Em ordem alfabética do nome; incluir custa O(n), pelo deslocamento do array. */
+    ALFABETICA;
+
+    /**
+     * Recupera a ordem configurada para um relacionamento.
+     *
+     * @param relacionamento O nome do relacionamento, como {@code amigos} ou {@code membros}.
+     * @param padrao A ordem usada se a propriedade não estiver definida.
+     * @return A ordem do relacionamento.
+     */
+    public static OrdemRelacao configurada(String relacionamento, OrdemRelacao padrao) {
+        String valor = System.getProperty("jackut.ordem." + relacionamento);
+        return valor == null ? padrao : valueOf(valor.trim().toUpperCase());
+    }
+
+    /**
+     * Cria um conjunto vazio que mantém esta ordem.
+     *
+     * @param dicionario O dicionário dos nomes, usado na ordem alfabética.
+     * @return O conjunto.
+     */
+    public ConjuntoInteiros criarConjunto(Dicionario dicionario) {
+        return this == ALFABETICA ? new ConjuntoInteiros(dicionario) : new ConjuntoInteiros();
+    }
+}
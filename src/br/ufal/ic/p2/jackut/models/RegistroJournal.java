@@ -0,0 +1,58 @@
+package br.ufal.ic.p2.jackut.models;
+
+/**
+ * Representa uma mutação do sistema Jackut gravada no journal.
+ * Cada registro guarda apenas logins e valores, nunca ids de sessão,
+ * para que possa ser reaplicado depois de reiniciar o sistema.
+ */
+public class RegistroJournal {
+
+    /**
+     * Tipos de mutação que podem ser gravados no journal.
+     */
+    public enum Tipo {
+        CRIAR_USUARIO,
+        EDITAR_PERFIL,
+        ADICIONAR_AMIGO,
+        ENVIAR_RECADO,
+        LER_RECADO,
+        CRIAR_COMUNIDADE,
+        ADICIONAR_COMUNIDADE,
+        ADICIONAR_IDOLO,
+        ADICIONAR_PAQUERA,
+        ADICIONAR_INIMIGO,
+        REMOVER_USUARIO,
+        ENVIAR_MENSAGEM,
+        LER_MENSAGEM
+    }
+
+    private final Tipo tipo;
+    private final String[] campos;
+    private long lsn;
+
+    /**
+     * Cria um registro ainda sem número de sequência.
+     *
+     * @param tipo O tipo da mutação.
+     * @param campos Os argumentos da mutação, na ordem esperada pela Facade.
+     */
+    public RegistroJournal(Tipo tipo, String... campos) {
+        this.tipo = tipo;
+        this.campos = campos;
+    }
+
+    public Tipo getTipo() { return tipo; }
+
+    public String getCampo(int indice) { return campos[indice]; }
+
+    public String[] getCampos() { return campos; }
+
+    /**
+     * Recupera o número de sequência atribuído pelo journal.
+     *
+     * @return O LSN do registro, ou 0 se ainda não foi gravado.
+     */
+    public long getLsn() { return lsn; }
+
+    void setLsn(long lsn) { this.lsn = lsn; }
+}
@@ -0,0 +1,177 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Roda de temporização hierárquica (hierarchical timing wheel) para prazos de expiração.
+ *
+ * <p>O tempo é dividido em ticks de duração fixa. O nível 0 tem 64 posições de um tick; cada
+ * nível seguinte tem 64 posições que cobrem 64 vezes mais tempo. Um item é posto no nível
+ * mais baixo cujo alcance cobre o prazo dele; quando o nível 0 dá a volta, a posição
+ * correspondente do nível de cima é redistribuída para baixo. Agendar custa O(1) e avançar
+ * custa O(1) por tick mais O(1) por item vencido, independentemente de quantos itens estão
+ * agendados. Com 4 níveis, a roda cobre 64<sup>4</sup> ticks; prazos mais distantes ficam
+ * no último nível e são redistribuídos até chegarem ao alcance.</p>
+ *
+ * <p>Um item que perdeu o motivo de vencer é tirado da roda com {@link #cancelar(Agendamento)},
+ * em O(1): cada agendamento sabe a posição e o índice em que está, e a remoção troca-o pelo
+ * último da mesma posição. Um prazo que mudou não é atualizado; quem recebe o item em
+ * {@link #avancar(long, Consumer)} verifica se o prazo ainda vale e, se for o caso, o agenda
+ * de novo.</p>
+ *
+ * @param <T> O tipo dos itens agendados.
+ */
+public class RodaTemporizacao<T> {
+    private static final int BITS = 6;
+    private static final int POSICOES = 1 << BITS;
+    private static final int NIVEIS = 4;
+
+    private final long tickMs;
+    private final List<List<Agendamento<T>>> posicoes = new ArrayList<>();
+    private long tickAtual;
+    private int tamanho;
+
+    /**
+     * Cria a roda com o tick informado, começando no instante dado.
+     *
+     * @param tickMs A duração de um tick, em milissegundos; é a precisão dos prazos.
+     * @param agoraMs O instante inicial, em milissegundos.
+     */
+    public RodaTemporizacao(long tickMs, long agoraMs) {
+        this.tickMs = Math.max(1, tickMs);
+        this.tickAtual = agoraMs / this.tickMs;
+        for (int i = 0; i < NIVEIS * POSICOES; i++) {
+            posicoes.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Agenda um item para o instante informado. Prazos já vencidos disparam no próximo tick.
+     *
+     * @param item O item a ser entregue no vencimento.
+     * @param prazoMs O instante do vencimento, em milissegundos.
+     * @return O agendamento, para um eventual {@link #cancelar(Agendamento)}.
+     */
+    public synchronized Agendamento<T> agendar(T item, long prazoMs) {
+        long prazo = (prazoMs + tickMs - 1) / tickMs;
+        Agendamento<T> agendamento = new Agendamento<>(item, Math.max(prazo, tickAtual + 1));
+        inserir(agendamento);
+        tamanho++;
+        return agendamento;
+    }
+
+    /**
+     * Tira um item da roda antes do vencimento.
+     *
+     * @param agendamento O agendamento devolvido por {@link #agendar(Object, long)}.
+     * @return true se o item ainda estava na roda; false se já foi entregue ou cancelado.
+     */
+    public synchronized boolean cancelar(Agendamento<T> agendamento) {
+        if (agendamento.posicao < 0) return false;
+        List<Agendamento<T>> lista = posicoes.get(agendamento.posicao);
+        Agendamento<T> ultimo = lista.remove(lista.size() - 1);
+        if (ultimo != agendamento) {
+            lista.set(agendamento.indice, ultimo);
+            ultimo.indice = agendamento.indice;
+        }
+        agendamento.posicao = -1;
+        tamanho--;
+        return true;
+    }
+
+    /**
+     * Tira todos os itens da roda sem entregá-los.
+     */
+    public synchronized void limpar() {
+        for (List<Agendamento<T>> lista : posicoes) {
+            for (Agendamento<T> a : lista) a.posicao = -1;
+            lista.clear();
+        }
+        tamanho = 0;
+    }
+
+    private void inserir(Agendamento<T> entrada) {
+        long delta = Math.max(0, entrada.prazo - tickAtual);
+        int nivel = 0;
+        while (nivel < NIVEIS - 1 && delta >= 1L << (BITS * (nivel + 1))) {
+            nivel++;
+        }
+        long alvo = nivel == NIVEIS - 1
+                ? Math.min(entrada.prazo, tickAtual + (1L << (BITS * NIVEIS)) - 1)
+                : entrada.prazo;
+        entrada.posicao = nivel * POSICOES + (int) ((alvo >>> (BITS * nivel)) & (POSICOES - 1));
+        List<Agendamento<T>> lista = posicoes.get(entrada.posicao);
+        entrada.indice = lista.size();
+        lista.add(entrada);
+    }
+
+    /**
+     * Esvazia uma posição, devolvendo os agendamentos que estavam nela já fora da roda.
+     */
+    private List<Agendamento<T>> esvaziar(List<Agendamento<T>> posicao) {
+        List<Agendamento<T>> retirados = new ArrayList<>(posicao);
+        posicao.clear();
+        for (Agendamento<T> a : retirados) a.posicao = -1;
+        return retirados;
+    }
+
+    /**
+     * Avança a roda até o instante informado, entregando os itens vencidos.
+     *
+     * @param agoraMs O instante atual, em milissegundos.
+     * @param vencidos Quem recebe cada item cujo prazo chegou.
+     */
+    public synchronized void avancar(long agoraMs, Consumer<T> vencidos) {
+        long alvo = agoraMs / tickMs;
+        if (tamanho == 0) {
+            tickAtual = Math.max(tickAtual, alvo);
+            return;
+        }
+        while (tickAtual < alvo) {
+            tickAtual++;
+            for (int nivel = 1; nivel < NIVEIS; nivel++) {
+                if ((tickAtual & ((1L << (BITS * nivel)) - 1)) != 0) break;
+                List<Agendamento<T>> posicao = posicoes.get(nivel * POSICOES
+                        + (int) ((tickAtual >>> (BITS * nivel)) & (POSICOES - 1)));
+                for (Agendamento<T> a : esvaziar(posicao)) inserir(a);
+            }
+
+            List<Agendamento<T>> posicao = posicoes.get((int) (tickAtual & (POSICOES - 1)));
+            if (posicao.isEmpty()) continue;
+            List<Agendamento<T>> vencidas = esvaziar(posicao);
+            tamanho -= vencidas.size();
+            for (Agendamento<T> a : vencidas) vencidos.accept(a.item);
+            if (tamanho == 0) {
+                tickAtual = alvo;
+            }
+        }
+    }
+
+    /**
+     * Recupera a quantidade de itens agendados e ainda não entregues.
+     *
+     * @return O total de itens na roda.
+     */
+    public synchronized int getTamanho() { return tamanho; }
+
+    public long getTickMs() { return tickMs; }
+
+    /**
+     * Um item agendado e o lugar dele na roda.
+     *
+     * @param <T> O tipo do item.
+     */
+    public static final class Agendamento<T> {
+        private final T item;
+        private final long prazo;
+        private int posicao = -1;
+        private int indice;
+
+        private Agendamento(T item, long prazo) {
+            this.item = item;
+            this.prazo = prazo;
+        }
+    }
+}
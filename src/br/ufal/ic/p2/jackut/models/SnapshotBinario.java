@@ -0,0 +1,585 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Formato binário versionado do snapshot do sistema Jackut.
+ *
+ * <p>O arquivo começa com um cabeçalho de tamanho fixo:</p>
+ * <pre>
+ * int   magico (JKUT)
+ * short versao
+ * long  offset da tabela de logins
+ * long  offset da seção de usuários
+ * long  offset da seção de comunidades
+ * long  offset da seção de mensagens
+ * long  offset do índice de blocos (a partir da versão 2)
+ * long  fim do arquivo
+ * </pre>
+ * <p>As seções vêm na ordem usuários, comunidades, mensagens e tabela de logins,
+ * que só fica completa depois que todas as seções foram gravadas. Cada seção começa com
+ * a quantidade de registros. Textos são gravados como UTF-8 prefixado pelo tamanho em bytes
+ * ({@code -1} para null). Cada login é gravado uma única vez na tabela de logins; usuários,
+ * relacionamentos e membros de comunidade se referem a ele pelo índice na tabela.</p>
+ *
+ * <p>Na versão 2, cada seção é dividida em blocos de até {@value #REGISTROS_POR_BLOCO}
+ * registros, alinhados ao início de um registro, e o índice de blocos guarda o offset e a
+ * quantidade de registros de cada um. Na carga, cada bloco é mapeado com um
+ * {@link MappedByteBuffer} próprio e interpretado em paralelo num {@link ForkJoinPool}.
+ * Arquivos da versão 1 continuam legíveis, com um único bloco por seção.</p>
+ *
+ * <p>Na versão 3, cada comunidade traz o log das suas mensagens (sequência, autor e texto) e
+ * cada usuário traz os cursores de leitura desses logs. A seção de mensagens passa a guardar
+ * apenas as filas de mensagens antigas, entregues antes dos logs por comunidade.</p>
+ *
+ * <p>Na versão 4, cada usuário traz também a sequência de entrada em cada comunidade, que
+ * limita a busca de mensagens às enviadas depois da entrada. Usuários de versões anteriores
+ * participam desde antes de qualquer mensagem.</p>
+ */
+public class SnapshotBinario {
+    static final int MAGICO = 0x4A4B5554;
+    static final short VERSAO = 4;
+    static final int REGISTROS_POR_BLOCO = 4096;
+
+    private static final int SECAO_TABELA = 0;
+    private static final int SECAO_USUARIOS = 1;
+    private static final int SECAO_COMUNIDADES = 2;
+    private static final int SECAO_MENSAGENS = 3;
+
+    private SnapshotBinario() {
+    }
+
+    private static int tamanhoCabecalho(short versao) {
+        return 4 + 2 + 8 * (versao == 1 ? 5 : 6);
+    }
+
+    /**
+     * Grava o snapshot completo em um arquivo temporário e o renomeia sobre o destino,
+     * de forma que uma queda no meio da gravação preserva o snapshot anterior.
+     *
+     * @param arquivo O arquivo de destino.
+     * @param usuarios Os usuários do sistema.
+     * @param comunidades As comunidades do sistema.
+     * @throws IOException Se a gravação falhar.
+     */
+    public static void gravar(File arquivo, Collection<Usuario> usuarios, Collection<Comunidade> comunidades)
+            throws IOException {
+        TabelaLogins tabela = new TabelaLogins();
+        for (Usuario u : usuarios) tabela.indice(u.getLogin());
+
+        EventoGravacao evento = EventoGravacao.iniciar();
+        File temporario = new File(arquivo.getParentFile(), arquivo.getName() + ".tmp");
+        long[] offsets = new long[6];
+        List<List<long[]>> blocos = new ArrayList<>();
+        for (int i = 0; i < 4; i++) blocos.add(new ArrayList<>());
+
+        Contador contador = new Contador(new BufferedOutputStream(new FileOutputStream(temporario), 1 << 16));
+        try (DataOutputStream out = new DataOutputStream(contador)) {
+            out.write(new byte[tamanhoCabecalho(VERSAO)]);
+
+            offsets[SECAO_USUARIOS] = contador.total;
+            out.writeInt(usuarios.size());
+            for (Usuario usuario : usuarios) {
+                marcarRegistro(blocos.get(SECAO_USUARIOS), contador.total);
+                escreverUsuario(out, usuario, tabela);
+            }
+
+            offsets[SECAO_COMUNIDADES] = contador.total;
+            out.writeInt(comunidades.size());
+            for (Comunidade comunidade : comunidades) {
+                marcarRegistro(blocos.get(SECAO_COMUNIDADES), contador.total);
+                escreverComunidade(out, comunidade, tabela);
+            }
+
+            offsets[SECAO_MENSAGENS] = contador.total;
+            List<Usuario> comMensagens = new ArrayList<>();
+            for (Usuario usuario : usuarios) {
+                if (!usuario.getMensagensComunidade().isEmpty()) comMensagens.add(usuario);
+            }
+            out.writeInt(comMensagens.size());
+            for (Usuario usuario : comMensagens) {
+                marcarRegistro(blocos.get(SECAO_MENSAGENS), contador.total);
+                out.writeInt(tabela.indice(usuario.getLogin()));
+                escreverTextos(out, usuario.getMensagensComunidade());
+            }
+
+            offsets[SECAO_TABELA] = contador.total;
+            out.writeInt(tabela.tamanho());
+            for (String login : tabela.logins()) {
+                marcarRegistro(blocos.get(SECAO_TABELA), contador.total);
+                escreverTexto(out, login);
+            }
+
+            offsets[4] = contador.total;
+            for (List<long[]> secao : blocos) {
+                out.writeInt(secao.size());
+                for (long[] bloco : secao) {
+                    out.writeLong(bloco[0]);
+                    out.writeInt((int) bloco[1]);
+                }
+            }
+            out.flush();
+            offsets[5] = contador.total;
+        }
+
+        try (FileChannel canal = FileChannel.open(temporario.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(tamanhoCabecalho(VERSAO));
+            cabecalho.putInt(MAGICO).putShort(VERSAO);
+            for (long offset : offsets) cabecalho.putLong(offset);
+            cabecalho.flip();
+            canal.write(cabecalho, 0);
+            long inicioFsync = System.nanoTime();
+            canal.force(true);
+            evento.concluir(arquivo, offsets[5], System.nanoTime() - inicioFsync);
+        }
+        Arquivos.substituir(temporario, arquivo);
+    }
+
+    /**
+     * Conta mais um registro no bloco corrente da seção, abrindo um novo bloco
+     * quando o corrente está cheio.
+     */
+    private static void marcarRegistro(List<long[]> secao, long offset) {
+        long[] ultimo = secao.isEmpty() ? null : secao.get(secao.size() - 1);
+        if (ultimo == null || ultimo[1] == REGISTROS_POR_BLOCO) {
+            secao.add(new long[]{offset, 1});
+        } else {
+            ultimo[1]++;
+        }
+    }
+
+    /**
+     * Carrega um snapshot binário para os mapas da Facade, interpretando os blocos
+     * de cada seção em paralelo.
+     *
+     * @param arquivo O arquivo de snapshot.
+     * @param usuarios O mapa de usuários a ser preenchido.
+     * @param comunidades O mapa de comunidades a ser preenchido.
+     * @param facade A Facade dona das comunidades.
+     * @param paralelismo Quantidade de threads usadas na interpretação dos blocos.
+     * @return A quantidade de blocos interpretados.
+     * @throws IOException Se o arquivo não puder ser lido ou não estiver no formato esperado.
+     * @throws IllegalArgumentException Se alguma comunidade tiver um membro que não é usuário.
+     */
+    public static int carregar(File arquivo, Map<String, Usuario> usuarios,
+                               Map<String, Comunidade> comunidades, Facade facade, int paralelismo)
+            throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, paralelismo));
+        try {
+            Conteudo conteudo = ler(arquivo, facade, pool);
+            for (Usuario u : conteudo.usuarios) usuarios.put(u.getLogin(), u);
+            for (Comunidade c : conteudo.comunidades) comunidades.put(c.getNome(), c);
+            validarMembros(pool, comunidades.values(), usuarios);
+            return conteudo.blocos;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Lê um arquivo de snapshot, interpretando seus blocos em paralelo no pool informado.
+     * As mensagens de comunidade já vêm anexadas aos usuários lidos, mas os membros das
+     * comunidades não são validados; isso fica para {@link #validarMembros}, depois que
+     * todos os arquivos do banco foram lidos.
+     *
+     * @param arquivo O arquivo de snapshot.
+     * @param facade A Facade dona das comunidades.
+     * @param pool O pool onde os blocos são interpretados.
+     * @return Os usuários e comunidades lidos.
+     * @throws IOException Se o arquivo não puder ser lido ou não estiver no formato esperado.
+     */
+    static Conteudo ler(File arquivo, Facade facade, ForkJoinPool pool) throws IOException {
+        try (FileChannel canal = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer inicio = canal.map(FileChannel.MapMode.READ_ONLY, 0, 6);
+            if (inicio.getInt() != MAGICO) {
+                throw new IOException("Arquivo não é um snapshot do Jackut: " + arquivo);
+            }
+            short versao = inicio.getShort();
+            if (versao < 1 || versao > VERSAO) {
+                throw new IOException("Versão de snapshot não suportada: " + versao);
+            }
+            ByteBuffer cabecalho = canal.map(FileChannel.MapMode.READ_ONLY, 6, tamanhoCabecalho(versao) - 6);
+            long[] offsets = new long[versao == 1 ? 5 : 6];
+            for (int i = 0; i < offsets.length; i++) offsets[i] = cabecalho.getLong();
+            // Na versão 1 a tabela vai até o fim do arquivo; na 2, até o índice de blocos.
+            long fimTabela = offsets[4];
+            long[][][] blocos = versao == 1 ? blocosUnicos(canal, offsets) : lerIndiceBlocos(canal, offsets);
+            Conteudo conteudo = new Conteudo();
+
+            long[][] blocosTabela = blocos[SECAO_TABELA];
+            String[] logins = new String[lerQuantidade(canal, offsets[SECAO_TABELA])];
+            List<ForkJoinTask<?>> tarefas = new ArrayList<>();
+            int primeiro = 0;
+            for (int b = 0; b < blocosTabela.length; b++) {
+                long fim = b + 1 < blocosTabela.length ? blocosTabela[b + 1][0] : fimTabela;
+                final long[] bloco = blocosTabela[b];
+                final int base = primeiro;
+                tarefas.add(pool.submit(() -> {
+                    Leitor in = new Leitor(mapear(canal, bloco[0], fim));
+                    for (int i = 0; i < bloco[1]; i++) logins[base + i] = in.texto();
+                }));
+                primeiro += (int) bloco[1];
+            }
+            aguardar(tarefas);
+
+            List<ForkJoinTask<List<Usuario>>> tarefasUsuarios = new ArrayList<>();
+            long[][] blocosUsuarios = blocos[SECAO_USUARIOS];
+            for (int b = 0; b < blocosUsuarios.length; b++) {
+                long fim = b + 1 < blocosUsuarios.length ? blocosUsuarios[b + 1][0] : offsets[SECAO_COMUNIDADES];
+                final long[] bloco = blocosUsuarios[b];
+                tarefasUsuarios.add(pool.submit(() -> {
+                    Leitor in = new Leitor(mapear(canal, bloco[0], fim));
+                    List<Usuario> lidos = new ArrayList<>((int) bloco[1]);
+                    for (int i = 0; i < bloco[1]; i++) lidos.add(lerUsuario(in, logins, versao));
+                    return lidos;
+                }));
+            }
+            Map<String, Usuario> porLogin = new HashMap<>();
+            for (ForkJoinTask<List<Usuario>> t : tarefasUsuarios) {
+                for (Usuario u : juntar(t)) {
+                    conteudo.usuarios.add(u);
+                    porLogin.put(u.getLogin(), u);
+                }
+            }
+
+            List<ForkJoinTask<List<Comunidade>>> tarefasComunidades = new ArrayList<>();
+            long[][] blocosComunidades = blocos[SECAO_COMUNIDADES];
+            for (int b = 0; b < blocosComunidades.length; b++) {
+                long fim = b + 1 < blocosComunidades.length ? blocosComunidades[b + 1][0] : offsets[SECAO_MENSAGENS];
+                final long[] bloco = blocosComunidades[b];
+                tarefasComunidades.add(pool.submit(() -> {
+                    Leitor in = new Leitor(mapear(canal, bloco[0], fim));
+                    List<Comunidade> lidas = new ArrayList<>((int) bloco[1]);
+                    for (int i = 0; i < bloco[1]; i++) lidas.add(lerComunidade(in, logins, facade, versao));
+                    return lidas;
+                }));
+            }
+            for (ForkJoinTask<List<Comunidade>> t : tarefasComunidades) {
+                conteudo.comunidades.addAll(juntar(t));
+            }
+
+            tarefas.clear();
+            long[][] blocosMensagens = blocos[SECAO_MENSAGENS];
+            for (int b = 0; b < blocosMensagens.length; b++) {
+                long fim = b + 1 < blocosMensagens.length ? blocosMensagens[b + 1][0] : offsets[SECAO_TABELA];
+                final long[] bloco = blocosMensagens[b];
+                tarefas.add(pool.submit(() -> {
+                    Leitor in = new Leitor(mapear(canal, bloco[0], fim));
+                    for (int i = 0; i < bloco[1]; i++) {
+                        // Cada usuário aparece uma única vez na seção, então os blocos não disputam filas.
+                        Usuario u = porLogin.get(logins[in.inteiro()]);
+                        int n = in.inteiro();
+                        for (int j = 0; j < n; j++) {
+                            String mensagem = in.texto();
+                            if (u != null) u.getMensagensComunidade().add(mensagem);
+                        }
+                    }
+                }));
+            }
+            aguardar(tarefas);
+
+            for (long[][] secao : blocos) conteudo.blocos += secao.length;
+            return conteudo;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Snapshot corrompido: " + arquivo, e);
+        }
+    }
+
+    /**
+     * Verifica, numa única passada paralela, se todos os membros das comunidades são usuários.
+     */
+    static void validarMembros(ForkJoinPool pool, Collection<Comunidade> comunidades,
+                                       Map<String, Usuario> usuarios) throws IOException {
+        juntar(pool.submit(() -> comunidades.parallelStream()
+                .flatMap(c -> c.getMembros().stream())
+                .filter(m -> !usuarios.containsKey(m))
+                .findAny()
+                .ifPresent(m -> {
+                    throw new IllegalArgumentException(EncodingUtil.fixEncoding("Usuário não encontrado."));
+                })));
+    }
+
+    private static long[][][] lerIndiceBlocos(FileChannel canal, long[] offsets) throws IOException {
+        ByteBuffer indice = mapear(canal, offsets[4], offsets[5]);
+        long[][][] blocos = new long[4][][];
+        for (int s = 0; s < 4; s++) {
+            blocos[s] = new long[indice.getInt()][];
+            for (int b = 0; b < blocos[s].length; b++) {
+                blocos[s][b] = new long[]{indice.getLong(), indice.getInt()};
+            }
+        }
+        return blocos;
+    }
+
+    /**
+     * Monta um índice com um único bloco por seção, para arquivos da versão 1.
+     */
+    private static long[][][] blocosUnicos(FileChannel canal, long[] offsets) throws IOException {
+        long[][][] blocos = new long[4][][];
+        for (int s = 0; s < 4; s++) {
+            blocos[s] = new long[][]{{offsets[s] + 4, lerQuantidade(canal, offsets[s])}};
+        }
+        return blocos;
+    }
+
+    private static int lerQuantidade(FileChannel canal, long offset) throws IOException {
+        return canal.map(FileChannel.MapMode.READ_ONLY, offset, 4).getInt();
+    }
+
+    private static MappedByteBuffer mapear(FileChannel canal, long inicio, long fim) {
+        try {
+            return canal.map(FileChannel.MapMode.READ_ONLY, inicio, fim - inicio);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void aguardar(List<ForkJoinTask<?>> tarefas) throws IOException {
+        for (ForkJoinTask<?> t : tarefas) juntar(t);
+    }
+
+    private static <T> T juntar(ForkJoinTask<T> tarefa) throws IOException {
+        try {
+            return tarefa.join();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void escreverUsuario(DataOutputStream out, Usuario u, TabelaLogins tabela) throws IOException {
+        out.writeInt(tabela.indice(u.getLogin()));
+        escreverTexto(out, u.getSenha());
+        escreverTexto(out, u.getNome());
+
+        Map<String, String> atributos = u.getPerfil().getAtributos();
+        out.writeInt(atributos.size());
+        for (Map.Entry<String, String> e : atributos.entrySet()) {
+            escreverTexto(out, e.getKey());
+            escreverTexto(out, e.getValue());
+        }
+
+        escreverTextos(out, u.getRecadosRecebidos());
+        escreverLogins(out, u.getAmigos(), tabela);
+        escreverLogins(out, u.getConvitesEnviados(), tabela);
+        escreverLogins(out, u.getConvitesRecebidos(), tabela);
+        escreverTextos(out, u.getComunidades());
+        escreverLogins(out, u.getIdolos(), tabela);
+        escreverLogins(out, u.getPaqueras(), tabela);
+        escreverLogins(out, u.getInimigos(), tabela);
+        escreverLogins(out, u.getFas(), tabela);
+
+        Map<String, Long> cursores = u.getCursoresMensagens();
+        out.writeInt(cursores.size());
+        for (Map.Entry<String, Long> e : cursores.entrySet()) {
+            escreverTexto(out, e.getKey());
+            out.writeLong(e.getValue());
+        }
+
+        Map<String, Long> entradas = u.getEntradasComunidades();
+        out.writeInt(entradas.size());
+        for (Map.Entry<String, Long> e : entradas.entrySet()) {
+            escreverTexto(out, e.getKey());
+            out.writeLong(e.getValue());
+        }
+    }
+
+    private static Usuario lerUsuario(Leitor in, String[] logins, short versao) {
+        String login = logins[in.inteiro()];
+        String senha = in.texto();
+        String nome = in.texto();
+        Usuario u = new Usuario(login, senha, nome);
+
+        int atributos = in.inteiro();
+        for (int i = 0; i < atributos; i++) {
+            String chave = in.texto();
+            u.getPerfil().getAtributos().put(chave, in.texto());
+        }
+
+        in.textos(u.getRecadosRecebidos());
+        in.logins(u.getAmigos(), logins);
+        in.logins(u.getConvitesEnviados(), logins);
+        in.logins(u.getConvitesRecebidos(), logins);
+        in.textos(u.getComunidades());
+        in.logins(u.getIdolos(), logins);
+        in.logins(u.getPaqueras(), logins);
+        in.logins(u.getInimigos(), logins);
+        in.logins(u.getFas(), logins);
+
+        if (versao >= 3) {
+            int cursores = in.inteiro();
+            for (int i = 0; i < cursores; i++) {
+                String comunidade = in.texto();
+                u.getCursoresMensagens().put(comunidade, in.longo());
+            }
+        }
+        if (versao >= 4) {
+            int entradas = in.inteiro();
+            for (int i = 0; i < entradas; i++) {
+                String comunidade = in.texto();
+                u.getEntradasComunidades().put(comunidade, in.longo());
+            }
+        }
+        return u;
+    }
+
+    private static void escreverComunidade(DataOutputStream out, Comunidade c, TabelaLogins tabela)
+            throws IOException {
+        escreverTexto(out, c.getNome());
+        escreverTexto(out, c.getDescricao());
+        out.writeInt(tabela.indice(c.getDono()));
+        escreverLogins(out, c.getMembros(), tabela);
+
+        List<LogMensagens.Mensagem> mensagens = c.getMensagens().getMensagens();
+        out.writeInt(mensagens.size());
+        for (LogMensagens.Mensagem m : mensagens) {
+            out.writeLong(m.getSequencia());
+            out.writeInt(tabela.indice(m.getAutor()));
+            escreverTexto(out, m.getTexto());
+        }
+    }
+
+    /**
+     * Lê uma comunidade sem validar os membros um a um; a validação é feita depois,
+     * numa única passada, por {@link #validarMembros}.
+     */
+    private static Comunidade lerComunidade(Leitor in, String[] logins, Facade facade, short versao) {
+        String nome = in.texto();
+        String descricao = in.texto();
+        String dono = logins[in.inteiro()];
+        Comunidade c = new Comunidade(nome, descricao, dono, facade);
+        in.logins(c.getMembros(), logins);
+
+        if (versao >= 3) {
+            int mensagens = in.inteiro();
+            for (int i = 0; i < mensagens; i++) {
+                long sequencia = in.longo();
+                String autor = logins[in.inteiro()];
+                c.getMensagens().anexar(sequencia, autor, in.texto());
+            }
+        }
+        return c;
+    }
+
+    private static void escreverTexto(DataOutputStream out, String texto) throws IOException {
+        if (texto == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void escreverTextos(DataOutputStream out, Collection<String> textos) throws IOException {
+        out.writeInt(textos.size());
+        for (String t : textos) escreverTexto(out, t);
+    }
+
+    private static void escreverLogins(DataOutputStream out, Collection<String> logins, TabelaLogins tabela)
+            throws IOException {
+        out.writeInt(logins.size());
+        for (String login : logins) out.writeInt(tabela.indice(login));
+    }
+
+    /**
+     * Tabela de logins do snapshot: cada login distinto recebe um índice sequencial.
+     */
+    static class TabelaLogins {
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final List<String> logins = new ArrayList<>();
+
+        int indice(String login) {
+            Integer i = indices.get(login);
+            if (i == null) {
+                i = logins.size();
+                indices.put(login, i);
+                logins.add(login);
+            }
+            return i;
+        }
+
+        int tamanho() { return logins.size(); }
+
+        List<String> logins() { return logins; }
+    }
+
+    /**
+     * Usuários e comunidades lidos de um arquivo de snapshot.
+     */
+    static class Conteudo {
+        final List<Usuario> usuarios = new ArrayList<>();
+        final List<Comunidade> comunidades = new ArrayList<>();
+        int blocos;
+    }
+
+    /**
+     * Fluxo de saída que conta os bytes gravados com um contador de 64 bits,
+     * para que os offsets não estourem em arquivos com mais de 2 GB.
+     */
+    static class Contador extends FilterOutputStream {
+        long total;
+
+        Contador(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            total++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            total += len;
+        }
+    }
+
+    /**
+     * Leitura sequencial de um bloco mapeado em memória.
+     */
+    static class Leitor {
+        private final ByteBuffer buffer;
+        private byte[] auxiliar = new byte[256];
+
+        Leitor(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        int inteiro() {
+            return buffer.getInt();
+        }
+
+        long longo() {
+            return buffer.getLong();
+        }
+
+        String texto() {
+            int tamanho = buffer.getInt();
+            if (tamanho < 0) return null;
+            if (tamanho > auxiliar.length) auxiliar = new byte[Math.max(tamanho, auxiliar.length * 2)];
+            buffer.get(auxiliar, 0, tamanho);
+            return new String(auxiliar, 0, tamanho, StandardCharsets.UTF_8);
+        }
+
+        void textos(Collection<String> destino) {
+            int n = buffer.getInt();
+            for (int i = 0; i < n; i++) destino.add(texto());
+        }
+
+        void logins(Collection<String> destino, String[] logins) {
+            int n = buffer.getInt();
+            for (int i = 0; i < n; i++) destino.add(logins[buffer.getInt()]);
+        }
+    }
+}
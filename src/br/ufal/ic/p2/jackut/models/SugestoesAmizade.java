@@ -0,0 +1,192 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * Índice de amigos em comum, usado para sugerir amizades.
+ *
+ * <p>Para cada usuário, guarda quantos amigos ele tem em comum com cada amigo de amigo
+ * ({@link ContagemInteiros} indexado pelo ID do outro). As contagens são atualizadas a cada
+ * amizade criada e a cada conta removida, visitando só os amigos das duas pontas, de forma
+ * que uma sugestão percorre as contagens do usuário em vez do grafo.</p>
+ *
+ * <p>O índice só é montado na primeira consulta ({@link #construir(Collection)}, com a trava
+ * global exclusiva da Facade); até lá as atualizações são ignoradas. Cada contagem é
+ * sincronizada em si mesma, porque a amizade entre dois usuários altera as contagens dos
+ * amigos deles, que não estão travados.</p>
+ */
+public class SugestoesAmizade {
+    private volatile ContagemInteiros[] contagens = new ContagemInteiros[0];
+    private volatile boolean construido;
+
+    public boolean isConstruido() { return construido; }
+
+    /**
+     * Monta o índice a partir das amizades atuais. Deve ser chamado sem operações
+     * concorrentes.
+     *
+     * @param usuarios Os usuários do sistema.
+     */
+    public synchronized void construir(Collection<Usuario> usuarios) {
+        contagens = new ContagemInteiros[0];
+        for (Usuario u : usuarios) {
+            int[] amigos = amigos(u.getNo());
+            for (int i = 0; i < amigos.length; i++) {
+                for (int j = i + 1; j < amigos.length; j++) {
+                    somar(amigos[i], amigos[j], 1);
+                    somar(amigos[j], amigos[i], 1);
+                }
+            }
+        }
+        construido = true;
+    }
+
+    /**
+     * Atualiza as contagens depois que dois usuários viraram amigos: cada um passa a ser
+     * amigo em comum entre o outro e os amigos que já tinha. Deve ser chamado com os dois
+     * usuários travados.
+     *
+     * @param a Um dos novos amigos.
+     * @param b O outro.
+     */
+    public void amizadeCriada(GrafoRelacoes.No a, GrafoRelacoes.No b) {
+        if (!construido) return;
+        for (int x : amigos(b)) {
+            if (x == a.getId()) continue;
+            somar(a.getId(), x, 1);
+            somar(x, a.getId(), 1);
+        }
+        for (int y : amigos(a)) {
+            if (y == b.getId()) continue;
+            somar(b.getId(), y, 1);
+            somar(y, b.getId(), 1);
+        }
+    }
+
+    /**
+     * Atualiza as contagens antes da remoção de uma conta: ela deixa de ser amigo em comum
+     * entre os seus amigos, e sai das contagens de quem tinha amigos em comum com ela.
+     *
+     * @param removido O nó da conta, ainda com as amizades.
+     */
+    public void usuarioRemovido(GrafoRelacoes.No removido) {
+        if (!construido) return;
+        int id = removido.getId();
+        int[] amigos = amigos(removido);
+        for (int i = 0; i < amigos.length; i++) {
+            for (int j = i + 1; j < amigos.length; j++) {
+                somar(amigos[i], amigos[j], -1);
+                somar(amigos[j], amigos[i], -1);
+            }
+        }
+        ContagemInteiros propria = buscar(id);
+        if (propria == null) return;
+        List<Integer> outros = new ArrayList<>();
+        synchronized (propria) {
+            propria.paraCada((outro, n) -> outros.add(outro));
+        }
+        for (int outro : outros) {
+            ContagemInteiros c = buscar(outro);
+            if (c == null) continue;
+            synchronized (c) {
+                c.descartar(id);
+            }
+        }
+        synchronized (this) {
+            contagens[id] = null;
+        }
+    }
+
+    /**
+     * Escolhe os amigos de amigos com mais amigos em comum com o usuário. Empates saem em
+     * ordem alfabética de login.
+     *
+     * @param id O ID do usuário.
+     * @param quantidade Quantas sugestões no máximo.
+     * @param excluir Os IDs que não podem ser sugeridos (o próprio usuário, amigos,
+     *                inimigos, convites pendentes).
+     * @return Os logins sugeridos, do mais para o menos recomendado.
+     */
+    public List<String> sugerir(int id, int quantidade, IntPredicate excluir) {
+        ContagemInteiros c = buscar(id);
+        if (c == null || quantidade <= 0) return new ArrayList<>();
+
+        Comparator<int[]> ordem = Comparator.<int[]>comparingInt(s -> s[1])
+                .thenComparing(s -> Dicionario.LOGINS.nome(s[0]), Comparator.reverseOrder());
+        PriorityQueue<int[]> melhores = new PriorityQueue<>(ordem);
+        synchronized (c) {
+            c.paraCada((candidato, comuns) -> {
+                // o corte pela posição vem antes do filtro, que é mais caro
+                boolean cheia = melhores.size() == quantidade;
+                if (cheia && comuns < melhores.peek()[1]) return;
+                int[] sugestao = {candidato, comuns};
+                if (cheia && ordem.compare(sugestao, melhores.peek()) <= 0) return;
+                if (excluir.test(candidato)) return;
+                if (cheia) melhores.poll();
+                melhores.add(sugestao);
+            });
+        }
+        int[][] escolhidas = melhores.toArray(new int[0][]);
+        Arrays.sort(escolhidas, ordem.reversed());
+        List<String> logins = new ArrayList<>(escolhidas.length);
+        for (int[] s : escolhidas) logins.add(Dicionario.LOGINS.nome(s[0]));
+        return logins;
+    }
+
+    /**
+     * Recupera quantos amigos em comum o índice registra entre dois usuários.
+     *
+     * @param a O ID de um usuário.
+     * @param b O ID do outro.
+     * @return A contagem, ou 0 se não houver nenhum.
+     */
+    public int getAmigosEmComum(int a, int b) {
+        ContagemInteiros c = buscar(a);
+        if (c == null) return 0;
+        synchronized (c) {
+            return c.valor(b);
+        }
+    }
+
+    /**
+     * Descarta o índice; ele volta a ser montado na próxima consulta.
+     */
+    public synchronized void limpar() {
+        construido = false;
+        contagens = new ContagemInteiros[0];
+    }
+
+    private static int[] amigos(GrafoRelacoes.No no) {
+        return no.getArestas(GrafoRelacoes.Tipo.AMIZADE, true).paraArray();
+    }
+
+    private void somar(int de, int para, int delta) {
+        ContagemInteiros c = buscar(de);
+        if (c == null) {
+            if (delta < 0) return;
+            c = criar(de);
+        }
+        synchronized (c) {
+            c.somar(para, delta);
+        }
+    }
+
+    private ContagemInteiros buscar(int id) {
+        ContagemInteiros[] atual = contagens;
+        return id >= 0 && id < atual.length ? atual[id] : null;
+    }
+
+    private synchronized ContagemInteiros criar(int id) {
+        if (id >= contagens.length) {
+            contagens = Arrays.copyOf(contagens, Math.max(id + 1, contagens.length * 2 + 16));
+        }
+        if (contagens[id] == null) contagens[id] = new ContagemInteiros();
+        return contagens[id];
+    }
+}
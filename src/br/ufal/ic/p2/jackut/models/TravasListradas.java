@@ -0,0 +1,76 @@
+package br.ufal.ic.p2.jackut.models;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conjunto fixo de travas escolhidas pelo hash da chave (lock striping). Cada login ou
+ * nome de comunidade cai sempre na mesma trava, então operações sobre registros
+ * diferentes quase nunca disputam a mesma trava, sem que seja preciso uma trava por registro.
+ *
+ * <p>Uma operação que envolve várias chaves as trava todas de uma vez, sempre em ordem
+ * crescente de índice; como todas seguem a mesma ordem, não há impasse entre duas
+ * operações que travam os mesmos pares em sentidos opostos.</p>
+ */
+public class TravasListradas {
+    private final ReentrantLock[] travas;
+    private final int mascara;
+
+    /**
+     * Cria o conjunto de travas.
+     *
+     * @param quantidade A quantidade mínima de travas; é arredondada para a próxima potência de 2.
+     */
+    public TravasListradas(int quantidade) {
+        int tamanho = Integer.highestOneBit(Math.max(1, quantidade - 1)) << 1;
+        this.travas = new ReentrantLock[tamanho];
+        this.mascara = tamanho - 1;
+        for (int i = 0; i < tamanho; i++) {
+            travas[i] = new ReentrantLock();
+        }
+    }
+
+    private int indice(String chave) {
+        int h = chave.hashCode();
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    /**
+     * Trava as travas de todas as chaves, em ordem crescente de índice. Chaves nulas são
+     * ignoradas e chaves que caem na mesma trava a travam uma única vez.
+     *
+     * @param chaves Os logins ou nomes de comunidade envolvidos na operação.
+     * @return Os índices travados, a serem devolvidos a {@link #destravar(int[])}.
+     */
+    public int[] travar(String... chaves) {
+        int[] indices = new int[chaves.length];
+        int n = 0;
+        for (String chave : chaves) {
+            if (chave != null) indices[n++] = indice(chave);
+        }
+        Arrays.sort(indices, 0, n);
+
+        int distintos = 0;
+        for (int i = 0; i < n; i++) {
+            if (distintos == 0 || indices[distintos - 1] != indices[i]) {
+                indices[distintos++] = indices[i];
+            }
+        }
+        indices = Arrays.copyOf(indices, distintos);
+        for (int i : indices) {
+            travas[i].lock();
+        }
+        return indices;
+    }
+
+    /**
+     * Libera as travas obtidas por {@link #travar(String...)}, na ordem inversa.
+     *
+     * @param indices Os índices devolvidos por {@link #travar(String...)}.
+     */
+    public void destravar(int[] indices) {
+        for (int i = indices.length - 1; i >= 0; i--) {
+            travas[indices[i]].unlock();
+        }
+    }
+}
@@ -15,11 +15,12 @@ public class Usuario implements Serializable {
     private final String senha;
     private final String nome;
     private final Perfil perfil;
-    private final Set<String> amigos = new LinkedHashSet<>();
-    private final Set<String> convitesEnviados = new LinkedHashSet<>();
-    private final Set<String> convitesRecebidos = new LinkedHashSet<>();
-    private final Queue<String> recadosRecebidos = new LinkedList<>();
-    private final Queue<String> mensagensComunidade = new LinkedList<>();
+    private final GrafoRelacoes.No no;
+    private final CaixaEntrada recadosRecebidos = new CaixaEntrada();
+    private final CaixaEntrada mensagensComunidade = new CaixaEntrada();
+    private final Map<String, Long> cursoresMensagens = new HashMap<>();
+    private final Map<String, Long> entradasComunidades = new HashMap<>();
+    private transient boolean alterado;
 
 
     public Usuario(String login, String senha, String nome) {
@@ -29,6 +30,7 @@ public class Usuario implements Serializable {
         this.senha = senha;
         this.nome = nome;
         this.perfil = new Perfil();
+        this.no = new GrafoRelacoes.No(login == null ? -1 : Dicionario.LOGINS.id(login));
     }
 
     /**
@@ -37,6 +39,22 @@ public class Usuario implements Serializable {
      * @return O login do usurio.
      */
     public String getLogin() { return login; }
+
+    /**
+     * Recupera o ID do login no {@link Dicionario#LOGINS}, usado nos conjuntos de
+     * relacionamento.
+     *
+     * @return O ID do usurio.
+     */
+    public int getId() { return no.getId(); }
+
+    /**
+     * Recupera o n do usurio no {@link GrafoRelacoes}, de onde os conjuntos de
+     * relacionamento so lidos.
+     *
+     * @return O n do usurio.
+     */
+    public GrafoRelacoes.No getNo() { return no; }
     public String getSenha() { return senha; }
 
     /**
@@ -47,16 +65,56 @@ public class Usuario implements Serializable {
     public String getNome() { return nome; }
     public Perfil getPerfil() { return perfil; }
 
-    public Set<String> getAmigos() { return amigos; }
-    public Set<String> getConvitesEnviados() { return convitesEnviados; }
-    public Set<String> getConvitesRecebidos() { return convitesRecebidos; }
+    /**
+     * Marca o usurio como alterado desde a ltima gravao.
+     *
+     * @return true se o usurio ainda no estava marcado
+     */
+    public boolean marcarAlterado() {
+        if (alterado) return false;
+        alterado = true;
+        return true;
+    }
+
+    public boolean isAlterado() { return alterado; }
+
+    /**
+     * Cria uma cpia independente do usurio, com as prprias colees, usada para
+     * gravar o snapshot enquanto o original continua recebendo alteraes.
+     *
+     * @return A cpia do usurio.
+     */
+    public Usuario copia() {
+        Usuario copia = new Usuario(login, senha, nome);
+        copia.perfil.getAtributos().putAll(perfil.getAtributos());
+        copia.no.copiarDe(no);
+        copia.recadosRecebidos.addAll(recadosRecebidos);
+        synchronized (mensagensComunidade) {
+            copia.mensagensComunidade.addAll(mensagensComunidade);
+        }
+        copia.comunidades.addAll(comunidades);
+        copia.cursoresMensagens.putAll(cursoresMensagens);
+        copia.entradasComunidades.putAll(entradasComunidades);
+        return copia;
+    }
+
+    public void limparAlterado() { alterado = false; }
+
+    /*
+     * Os conjuntos de relacionamento so vises das arestas do n no grafo: incluir ou tirar
+     * um login atualiza tambm o outro usurio (os amigos dele, os convites recebidos, os
+     * fs), sem que quem chama precise alterar as duas pontas.
+     */
+    public Set<String> getAmigos() { return no.visao(GrafoRelacoes.Tipo.AMIZADE, true); }
+    public Set<String> getConvitesEnviados() { return no.visao(GrafoRelacoes.Tipo.CONVITE, true); }
+    public Set<String> getConvitesRecebidos() { return no.visao(GrafoRelacoes.Tipo.CONVITE, false); }
 
     public void enviarConvite(String loginAmigo) {
-        convitesEnviados.add(loginAmigo);
+        getConvitesEnviados().add(loginAmigo);
     }
 
     public void receberConvite(String loginAmigo) {
-        convitesRecebidos.add(loginAmigo);
+        getConvitesRecebidos().add(loginAmigo);
     }
 
     /**
@@ -67,15 +125,15 @@ public class Usuario implements Serializable {
      */
 
     public boolean aceitarConvite(String loginAmigo) {
-        if (convitesRecebidos.remove(loginAmigo)) {
-            amigos.add(loginAmigo);
+        if (getConvitesRecebidos().remove(loginAmigo)) {
+            getAmigos().add(loginAmigo);
             return true;
         }
         return false;
     }
 
     public boolean temConvitePendenteDe(String loginAmigo) {
-        return convitesRecebidos.contains(loginAmigo);
+        return getConvitesRecebidos().contains(loginAmigo);
     }
 
     public void receberRecado(String recado) {
@@ -98,7 +156,7 @@ public class Usuario implements Serializable {
         return recadosRecebidos.poll();
     }
 
-    public Queue<String> getRecadosRecebidos() {
+    public CaixaEntrada getRecadosRecebidos() {
         return recadosRecebidos;
     }
 
@@ -107,50 +165,138 @@ public class Usuario implements Serializable {
         return !recadosRecebidos.isEmpty();
     }
 
-    private final Set<String> comunidades = new HashSet<>();
-    private final Set<String> fas = new HashSet<>();
-    private final Set<String> idolos = new HashSet<>();
-    private final Set<String> paqueras = new HashSet<>();
-    private final Set<String> inimigos = new HashSet<>();
+    private final ConjuntoNomes comunidades = new ConjuntoNomes(Dicionario.COMUNIDADES,
+            OrdemRelacao.configurada("comunidades", OrdemRelacao.INCLUSAO));
+
+    /*
+     * ndices reversos, mantidos junto com os conjuntos acima pela Facade. No so gravados
+     * no snapshot: a Facade os reconstri na carga.
+     */
+    private final ConjuntoNomes destinatariosRecados = new ConjuntoNomes(Dicionario.LOGINS);
+    private final ConjuntoNomes comunidadesComMensagens = new ConjuntoNomes(Dicionario.COMUNIDADES);
 
-    public Set<String> getComunidades() { return comunidades; }
-    public Set<String> getFas() { return fas; }
-    public Set<String> getIdolos() { return idolos; }
-    public Set<String> getPaqueras() { return paqueras; }
-    public Set<String> getInimigos() { return inimigos; }
+    public ConjuntoNomes getComunidades() { return comunidades; }
+    public Set<String> getFas() { return no.visao(GrafoRelacoes.Tipo.IDOLO, false); }
+    public Set<String> getIdolos() { return no.visao(GrafoRelacoes.Tipo.IDOLO, true); }
+    public Set<String> getPaqueras() { return no.visao(GrafoRelacoes.Tipo.PAQUERA, true); }
+    public Set<String> getInimigos() { return no.visao(GrafoRelacoes.Tipo.INIMIGO, true); }
+
+    /**
+     * Recupera os usurios que podem ter recados deste na fila. Pode conter usurios que
+     * j leram todos eles.
+     *
+     * @return Os logins dos destinatrios.
+     */
+    public Set<String> getDestinatariosRecados() { return destinatariosRecados; }
+
+    /**
+     * Recupera os usurios que tm este como paquera.
+     *
+     * @return Os logins de quem adicionou este usurio como paquera.
+     */
+    public Set<String> getPaqueradoPor() { return no.visao(GrafoRelacoes.Tipo.PAQUERA, false); }
+
+    /**
+     * Recupera os usurios que tm este como inimigo.
+     *
+     * @return Os logins de quem adicionou este usurio como inimigo.
+     */
+    public Set<String> getInimigoDe() { return no.visao(GrafoRelacoes.Tipo.INIMIGO, false); }
+
+    /**
+     * Recupera as comunidades em cujo log este usurio pode ter mensagens.
+     *
+     * @return Os nomes das comunidades.
+     */
+    public Set<String> getComunidadesComMensagens() { return comunidadesComMensagens; }
 
     public void adicionarComunidade(String comunidade) {
         comunidades.add(comunidade);
     }
 
     public void adicionarFa(String fa) {
-        fas.add(fa);
+        getFas().add(fa);
     }
 
     public void adicionarIdolo(String idolo) {
-        idolos.add(idolo);
+        getIdolos().add(idolo);
     }
 
     public void adicionarPaquera(String paquera) {
-        paqueras.add(paquera);
+        getPaqueras().add(paquera);
     }
 
     public void adicionarInimigo(String inimigo) {
-        inimigos.add(inimigo);
+        getInimigos().add(inimigo);
     }
 
     public boolean ehFaDe(String idolo) {
-        return idolos.contains(idolo);
+        return getIdolos().contains(idolo);
+    }
+
+    /**
+     * Verifica se o usurio  f de outro, pelo ID, sem consultar o dicionrio.
+     *
+     * @param idolo O ID do possvel dolo.
+     * @return true se o outro for dolo deste usurio.
+     */
+    public boolean ehFaDe(int idolo) {
+        return no.getArestas(GrafoRelacoes.Tipo.IDOLO, true).contem(idolo);
+    }
+
+    /**
+     * Verifica se o outro usurio est na lista de amigos deste, pelo ID.
+     *
+     * @param amigo O ID do outro usurio.
+     * @return true se forem amigos do ponto de vista deste usurio.
+     */
+    public boolean ehAmigoDe(int amigo) {
+        return no.getArestas(GrafoRelacoes.Tipo.AMIZADE, true).contem(amigo);
     }
 
     public boolean ehPaqueraDe(String paquera) {
-        return paqueras.contains(paquera);
+        return getPaqueras().contains(paquera);
     }
 
     public boolean ehInimigoDe(String inimigo) {
-        return inimigos.contains(inimigo);
+        return getInimigos().contains(inimigo);
     }
 
+    /**
+     * Verifica se o outro usurio  inimigo deste, pelo ID.
+     *
+     * @param inimigo O ID do outro usurio.
+     * @return true se este usurio marcou o outro como inimigo.
+     */
+    public boolean ehInimigoDe(int inimigo) {
+        return no.getArestas(GrafoRelacoes.Tipo.INIMIGO, true).contem(inimigo);
+    }
+
+    /**
+     * Recupera os cursores de leitura das mensagens de comunidade: para cada comunidade
+     * de que o usurio participa, a sequncia da ltima mensagem lida por ele.
+     *
+     * @return Os cursores, indexados pelo nome da comunidade.
+     */
+    public Map<String, Long> getCursoresMensagens() { return cursoresMensagens; }
+
+    /**
+     * Recupera as sequncias de entrada nas comunidades: para cada comunidade de que o
+     * usurio participa, a sequncia da ltima mensagem enviada antes de ele entrar. Ao
+     * contrrio do cursor, no avana com a leitura, e limita a busca s mensagens
+     * enviadas depois da entrada.
+     *
+     * @return As sequncias, indexadas pelo nome da comunidade.
+     */
+    public Map<String, Long> getEntradasComunidades() { return entradasComunidades; }
+
+    /**
+     * Acrescenta uma mensagem  fila de mensagens antigas do usurio. A fila s guarda
+     * mensagens entregues antes do log por comunidade, carregadas de bancos antigos;
+     * mensagens novas ficam em {@link LogMensagens}.
+     *
+     * @param mensagem O texto da mensagem.
+     */
     public void receberMensagemComunidade(String mensagem) {
         synchronized (mensagensComunidade) {
             mensagensComunidade.add(mensagem);
@@ -170,20 +316,21 @@ public class Usuario implements Serializable {
         return !mensagensComunidade.isEmpty();
     }
 
-    public Queue<String> getMensagensComunidade() {
+    public CaixaEntrada getMensagensComunidade() {
         return mensagensComunidade;
     }
 
     /**
      * Remove todos os recados enviados por um determinado usurio
      * @param remetenteLogin login do usurio cujos recados devem ser removidos
+     * @return true se algum recado foi removido
      */
-    public void removerRecadosDoUsuario(String remetenteLogin) {
-        if (remetenteLogin == null) return;
+    public boolean removerRecadosDoUsuario(String remetenteLogin) {
+        if (remetenteLogin == null) return false;
 
         String prefixoRemetente = remetenteLogin + ":";
 
-        recadosRecebidos.removeIf(recado ->
+        return recadosRecebidos.removeIf(recado ->
                 recado != null && recado.startsWith(prefixoRemetente));
     }
 
@@ -210,14 +357,14 @@ public class Usuario implements Serializable {
         if (temRecadoValido) sb.setLength(sb.length() - 1);
         sb.append("\n");
 
-        sb.append("amigos=").append(String.join("|", amigos)).append("\n");
-        sb.append("convitesEnviados=").append(String.join("|", convitesEnviados)).append("\n");
-        sb.append("convitesRecebidos=").append(String.join("|", convitesRecebidos)).append("\n");
+        sb.append("amigos=").append(String.join("|", getAmigos())).append("\n");
+        sb.append("convitesEnviados=").append(String.join("|", getConvitesEnviados())).append("\n");
+        sb.append("convitesRecebidos=").append(String.join("|", getConvitesRecebidos())).append("\n");
         sb.append("comunidades=").append(String.join("|", comunidades)).append("\n");
-        sb.append("idolos=").append(String.join("|", idolos)).append("\n");
-        sb.append("paqueras=").append(String.join("|", paqueras)).append("\n");
-        sb.append("inimigos=").append(String.join("|", inimigos)).append("\n");
-        sb.append("fas=").append(String.join("|", fas)).append("\n");
+        sb.append("idolos=").append(String.join("|", getIdolos())).append("\n");
+        sb.append("paqueras=").append(String.join("|", getPaqueras())).append("\n");
+        sb.append("inimigos=").append(String.join("|", getInimigos())).append("\n");
+        sb.append("fas=").append(String.join("|", getFas())).append("\n");
         sb.append("FIM\n");
 
         return sb.toString();
@@ -234,11 +381,11 @@ public class Usuario implements Serializable {
         Set<String> amigos = new LinkedHashSet<>();
         Set<String> enviados = new LinkedHashSet<>();
         Set<String> recebidos = new LinkedHashSet<>();
-        Set<String> comunidades = new HashSet<>();
-        Set<String> idolos = new HashSet<>();
-        Set<String> paqueras = new HashSet<>();
-        Set<String> inimigos = new HashSet<>();
-        Set<String> fas = new HashSet<>();
+        Set<String> comunidades = new LinkedHashSet<>();
+        Set<String> idolos = new LinkedHashSet<>();
+        Set<String> paqueras = new LinkedHashSet<>();
+        Set<String> inimigos = new LinkedHashSet<>();
+        Set<String> fas = new LinkedHashSet<>();
 
         for (String linha : bloco) {
             try {